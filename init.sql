@@ -11,10 +11,56 @@ CREATE TABLE IF NOT EXISTS rate_limits (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     
     INDEX idx_api_key (api_key),
+    INDEX idx_created_at_id (created_at, id),
     CONSTRAINT chk_request_limit_positive CHECK (request_limit > 0),
     CONSTRAINT chk_window_seconds_positive CHECK (window_seconds > 0)
 );
 
+-- Create usage_rollups table for per-minute and per-hour usage history (bucket_start in UTC)
+CREATE TABLE IF NOT EXISTS usage_rollups (
+    api_key VARCHAR(255) NOT NULL,
+    granularity VARCHAR(8) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    allowed_count BIGINT NOT NULL DEFAULT 0,
+    denied_count BIGINT NOT NULL DEFAULT 0,
+    
+    PRIMARY KEY (api_key, granularity, bucket_start)
+);
+
+-- Create concurrency_limits table for adaptive in-flight request limits
+CREATE TABLE IF NOT EXISTS concurrency_limits (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    api_key VARCHAR(255) NOT NULL UNIQUE,
+    algorithm VARCHAR(16) NOT NULL,
+    initial_limit INT NOT NULL,
+    min_limit INT NOT NULL,
+    max_limit INT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    
+    CONSTRAINT chk_concurrency_limits_range CHECK (min_limit > 0 AND min_limit <= initial_limit AND initial_limit <= max_limit)
+);
+
+-- Create rate_limit_outbox table for rule-change events awaiting publication to RocketMQ
+CREATE TABLE IF NOT EXISTS rate_limit_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    tag VARCHAR(32) NOT NULL,
+    api_key VARCHAR(255) NOT NULL,
+    payload VARCHAR(2000) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    published_at TIMESTAMP NULL,
+    claimed_by VARCHAR(64) NULL,
+    claimed_until TIMESTAMP NULL,
+    
+    INDEX idx_outbox_published_id (published_at, id)
+);
+
+-- Create replica_heartbeat table used to measure read replica lag (one row per limiter node)
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    node_id VARCHAR(64) PRIMARY KEY,
+    beat_millis BIGINT NOT NULL
+);
+
 -- Insert some sample data for testing
 INSERT INTO rate_limits (api_key, request_limit, window_seconds) VALUES
 ('test-key-1', 100, 60),
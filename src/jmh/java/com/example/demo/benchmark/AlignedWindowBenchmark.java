@@ -0,0 +1,130 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.config.RedisConfig;
+import com.example.demo.counter.RedisCounterStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Redis work of one /check (weighted increment + reset time), first-request windows vs
+ * epoch-aligned windows.
+ *
+ * - first-request: try_increment_counter.lua (GET, INCRBY, TTL, EXPIRE on a new window) plus a TTL round trip
+ * - aligned: try_increment_aligned_counter.lua (GET, INCRBY, EXPIREAT); the reset time is computed locally
+ *
+ * Besides latency, tear-down prints Redis round trips and commands executed per check, taken from
+ * INFO stats and INFO commandstats (commands run inside scripts are counted there too).
+ * Needs an otherwise idle Redis at localhost:6379; pass "-jvmArgsAppend -Dbenchmark.redis.host=..." for another one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AlignedWindowBenchmark {
+    
+    private static final int WINDOW_SECONDS = 60;
+    private static final int KEYS = 10000;
+    
+    @Param({"first-request", "aligned"})
+    private String windows;
+    
+    private String[] apiKeys;
+    private RedisCounterStore store;
+    private RedisTemplate<String, Object> redisTemplate;
+    private LettuceConnectionFactory connectionFactory;
+    private final LongAdder checks = new LongAdder();
+    private long roundTripsBefore;
+    private long commandsBefore;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        apiKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            apiKeys[i] = BenchmarkKeys.apiKey(i);
+        }
+        
+        connectionFactory = new LettuceConnectionFactory(
+            System.getProperty("benchmark.redis.host", "localhost"),
+            Integer.getInteger("benchmark.redis.port", 6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        
+        store = new RedisCounterStore();
+        ReflectionTestUtils.setField(store, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(store, "alignedWindows", "aligned".equals(windows));
+        
+        roundTripsBefore = roundTrips();
+        commandsBefore = commandsExecuted();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // The two INFO calls of the measurement itself are negligible next to the checks
+        long roundTrips = roundTrips() - roundTripsBefore;
+        long commands = commandsExecuted() - commandsBefore;
+        double total = Math.max(1, checks.sum());
+        System.out.printf("%n%s windows: %.2f round trips and %.2f Redis commands per check%n",
+                          windows, roundTrips / total, commands / total);
+        
+        for (String apiKey : apiKeys) {
+            store.deleteCounter(apiKey, WINDOW_SECONDS);
+        }
+        connectionFactory.destroy();
+    }
+    
+    @Benchmark
+    public long check() {
+        String apiKey = apiKeys[ThreadLocalRandom.current().nextInt(KEYS)];
+        long usage = store.tryIncrementCounter(apiKey, 1, Long.MAX_VALUE, WINDOW_SECONDS);
+        checks.increment();
+        return usage + store.getTtl(apiKey, WINDOW_SECONDS);
+    }
+    
+    private long roundTrips() {
+        return Long.parseLong(info("stats").getProperty("total_commands_processed").trim());
+    }
+    
+    /**
+     * Sum of calls over all commands in INFO commandstats, e.g. "cmdstat_get:calls=12,usec=..."
+     */
+    private long commandsExecuted() {
+        Properties commandStats = info("commandstats");
+        long calls = 0;
+        for (String name : commandStats.stringPropertyNames()) {
+            if (name.startsWith("cmdstat_")) {
+                String stats = commandStats.getProperty(name);
+                String first = stats.substring(0, stats.indexOf(','));
+                calls += Long.parseLong(first.substring("calls=".length()));
+            }
+        }
+        return calls;
+    }
+    
+    private Properties info(String section) {
+        return redisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info(section));
+    }
+}
\ No newline at end of file
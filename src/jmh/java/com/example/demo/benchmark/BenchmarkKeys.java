@@ -0,0 +1,16 @@
+package com.example.demo.benchmark;
+
+/**
+ * Deterministic API keys shaped like production keys (prefix plus 32 hex chars)
+ */
+final class BenchmarkKeys {
+    
+    private BenchmarkKeys() {
+    }
+    
+    static String apiKey(int i) {
+        long high = i * 0x9E3779B97F4A7C15L;
+        long low = ~high * 0xC2B2AE3D27D4EB4FL;
+        return "key-" + String.format("%016x%016x", high, low);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.concurrency.AdaptiveLimit;
+import com.example.demo.concurrency.AimdLimit;
+import com.example.demo.concurrency.ConcurrencyLimiter;
+import com.example.demo.concurrency.GradientLimit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of one acquire + release pair on a concurrency limiter, AIMD vs gradient.
+ *
+ * Eight threads share one key (the contended case) or spread over a pool of
+ * keys. Latency samples are synthetic, so the numbers measure only the
+ * limiter's own bookkeeping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ConcurrencyLimiterBenchmark {
+    
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    
+    @Param({"AIMD", "GRADIENT"})
+    private String algorithm;
+    
+    @Param({"1", "1000"})
+    private int keys;
+    
+    private ConcurrencyLimiter[] limiters;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiters = new ConcurrencyLimiter[keys];
+        for (int i = 0; i < keys; i++) {
+            AdaptiveLimit limit = "AIMD".equals(algorithm)
+                    ? new AimdLimit(100, 10, 1000, 0.9, TimeUnit.SECONDS.toNanos(5))
+                    : new GradientLimit(100, 10, 1000, 0.2, 600);
+            limiters[i] = new ConcurrencyLimiter(limit);
+        }
+    }
+    
+    @Benchmark
+    public int acquireRelease() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ConcurrencyLimiter limiter = limiters[keys == 1 ? 0 : random.nextInt(keys)];
+        int inFlight = limiter.tryAcquire();
+        if (inFlight > 0) {
+            limiter.release(inFlight, RTT_NANOS + random.nextInt(1_000_000), false);
+        }
+        return inFlight;
+    }
+}
\ No newline at end of file
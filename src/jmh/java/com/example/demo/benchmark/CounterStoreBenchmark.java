@@ -0,0 +1,100 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.config.RedisConfig;
+import com.example.demo.counter.CounterStore;
+import com.example.demo.counter.LocalCounterStore;
+import com.example.demo.counter.RedisCounterStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter increment throughput: Redis store vs in-process store, side by side.
+ *
+ * Eight threads increment counters for keys drawn at random from a fixed pool.
+ * The Redis backend needs a Redis at localhost:6379; pass
+ * "-jvmArgsAppend -Dbenchmark.redis.host=... -Dbenchmark.redis.port=..." for another one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CounterStoreBenchmark {
+    
+    private static final int WINDOW_SECONDS = 60;
+    
+    @Param({"local", "redis"})
+    private String backend;
+    
+    @Param({"1000", "100000"})
+    private int keys;
+    
+    private String[] apiKeys;
+    private CounterStore store;
+    private LettuceConnectionFactory connectionFactory;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        apiKeys = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            apiKeys[i] = BenchmarkKeys.apiKey(i);
+        }
+        
+        if ("redis".equals(backend)) {
+            connectionFactory = new LettuceConnectionFactory(
+                System.getProperty("benchmark.redis.host", "localhost"),
+                Integer.getInteger("benchmark.redis.port", 6379));
+            connectionFactory.afterPropertiesSet();
+            RedisCounterStore redisStore = new RedisCounterStore();
+            ReflectionTestUtils.setField(redisStore, "redisTemplate", new RedisConfig().redisTemplate(connectionFactory));
+            store = redisStore;
+        } else {
+            LocalCounterStore localStore = new LocalCounterStore();
+            ReflectionTestUtils.setField(localStore, "maxKeys", keys * 2);
+            ReflectionTestUtils.setField(localStore, "stripeCount", 64);
+            ReflectionTestUtils.setField(localStore, "tickMillis", 100L);
+            localStore.init();
+            store = localStore;
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (connectionFactory != null) {
+            for (String apiKey : apiKeys) {
+                store.deleteCounter(apiKey, WINDOW_SECONDS);
+            }
+            connectionFactory.destroy();
+        }
+    }
+    
+    @Benchmark
+    public long increment() {
+        String apiKey = apiKeys[ThreadLocalRandom.current().nextInt(keys)];
+        return store.incrementCounter(apiKey, WINDOW_SECONDS);
+    }
+    
+    @Benchmark
+    public long incrementHotKey() {
+        return store.incrementCounter(apiKeys[0], WINDOW_SECONDS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.util.CompactRuleIndex;
+import com.example.demo.util.PrefixTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Longest-prefix-match latency of the IP rule tries.
+ *
+ * IPv4 prefixes are /8 to /32 with most between /16 and /24; IPv6 prefixes are /20
+ * to /64. "uniform" probes random addresses inside the stored prefixes, so large
+ * tables pay a cache miss per trie level; "skewed" draws 90% of probes from 1,024
+ * hot networks, closer to real traffic where a few networks dominate.
+ * Trie size and memory are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class IpPrefixTrieBenchmark {
+    
+    private static final int PROBES = 1 << 16;
+    
+    @Param({"10000", "100000", "500000"})
+    private int prefixes;
+    
+    @Param({"uniform", "skewed"})
+    private String traffic;
+    
+    private PrefixTrie ipv4;
+    private PrefixTrie ipv6;
+    private long[] ipv4Probes;
+    private long[] ipv6ProbesHigh;
+    private long[] ipv6ProbesLow;
+    private int cursor;
+    
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        PrefixTrie.Builder ipv4Builder = new PrefixTrie.Builder(32);
+        PrefixTrie.Builder ipv6Builder = new PrefixTrie.Builder(128);
+        long[] ipv4Networks = new long[prefixes];
+        long[] ipv6Networks = new long[prefixes];
+        
+        for (int i = 0; i < prefixes; i++) {
+            long rule = CompactRuleIndex.pack(100 + i % 1000, 60);
+            
+            int ipv4Length = random.nextInt(10) == 0 ? 8 + random.nextInt(25) : 16 + random.nextInt(9);
+            ipv4Networks[i] = random.nextLong() & 0xFFFFFFFF00000000L;
+            ipv4Builder.put(ipv4Networks[i], 0L, ipv4Length, rule);
+            
+            // Keep the top 16 bits in 2000::/3-like space so IPv6 prefixes share upper levels
+            ipv6Networks[i] = 0x2000_0000_0000_0000L | (random.nextLong() >>> 19);
+            ipv6Builder.put(ipv6Networks[i], 0L, 20 + random.nextInt(45), rule);
+        }
+        ipv4 = ipv4Builder.build();
+        ipv6 = ipv6Builder.build();
+        System.out.printf("%nIPv4 trie: %,d prefixes, %,d nodes, %,d KB; IPv6 trie: %,d prefixes, %,d nodes, %,d KB%n",
+                          ipv4.size(), ipv4.nodeCount(), ipv4.memoryBytes() / 1024,
+                          ipv6.size(), ipv6.nodeCount(), ipv6.memoryBytes() / 1024);
+        
+        ipv4Probes = new long[PROBES];
+        ipv6ProbesHigh = new long[PROBES];
+        ipv6ProbesLow = new long[PROBES];
+        boolean skewed = "skewed".equals(traffic);
+        for (int i = 0; i < PROBES; i++) {
+            int network = skewed && random.nextInt(10) != 0 ? random.nextInt(1024) : random.nextInt(prefixes);
+            // Random host part below the /16, so most probes fall inside some stored prefix
+            ipv4Probes[i] = (ipv4Networks[network] & 0xFFFF000000000000L) | (random.nextLong() & 0x0000FFFF00000000L);
+            ipv6ProbesHigh[i] = ipv6Networks[network] | (random.nextLong() & 0xFFFFL);
+            ipv6ProbesLow[i] = random.nextLong();
+        }
+    }
+    
+    private int next() {
+        cursor = (cursor + 1) & (PROBES - 1);
+        return cursor;
+    }
+    
+    @Benchmark
+    public long ipv4Lookup() {
+        return ipv4.lookup(ipv4Probes[next()], 0L);
+    }
+    
+    @Benchmark
+    public long ipv6Lookup() {
+        int probe = next();
+        return ipv6.lookup(ipv6ProbesHigh[probe], ipv6ProbesLow[probe]);
+    }
+}
\ No newline at end of file
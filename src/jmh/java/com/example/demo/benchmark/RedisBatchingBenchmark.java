@@ -0,0 +1,119 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.config.RedisConfig;
+import com.example.demo.counter.RedisCommandBatcher;
+import com.example.demo.counter.RedisCounterStore;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Redis work of one /check (weighted increment script + TTL read), pooled vs batched.
+ *
+ * - pooled: RedisTemplate on a pool of 8 dedicated connections, one flush per command
+ * - batched: RedisCommandBatcher on one shared connection, one flush per batch
+ *
+ * Reports throughput and the latency distribution (SampleTime prints p0.99).
+ * For curves, rerun with different thread counts, e.g. "RedisBatchingBenchmark -t 1",
+ * "-t 16", "-t 64", "-t 256". Tune the window with "-p windowMicros=0,20,100".
+ * Needs a Redis at localhost:6379; pass "-jvmArgsAppend -Dbenchmark.redis.host=..." for another one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class RedisBatchingBenchmark {
+    
+    private static final int WINDOW_SECONDS = 60;
+    private static final int KEYS = 10000;
+    private static final int POOL_SIZE = 8;
+    
+    @Param({"pooled", "batched"})
+    private String mode;
+    
+    @Param({"20"})
+    private long windowMicros;
+    
+    private String[] apiKeys;
+    private RedisCounterStore store;
+    private RedisCommandBatcher batcher;
+    private LettuceConnectionFactory connectionFactory;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        apiKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            apiKeys[i] = BenchmarkKeys.apiKey(i);
+        }
+        
+        RedisStandaloneConfiguration server = new RedisStandaloneConfiguration(
+            System.getProperty("benchmark.redis.host", "localhost"),
+            Integer.getInteger("benchmark.redis.port", 6379));
+        if ("pooled".equals(mode)) {
+            GenericObjectPoolConfig<Object> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxTotal(POOL_SIZE);
+            poolConfig.setMaxIdle(POOL_SIZE);
+            connectionFactory = new LettuceConnectionFactory(server,
+                LettucePoolingClientConfiguration.builder().poolConfig(poolConfig).build());
+            connectionFactory.setShareNativeConnection(false);
+        } else {
+            connectionFactory = new LettuceConnectionFactory(server);
+        }
+        connectionFactory.afterPropertiesSet();
+        
+        store = new RedisCounterStore();
+        ReflectionTestUtils.setField(store, "redisTemplate", new RedisConfig().redisTemplate(connectionFactory));
+        if ("batched".equals(mode)) {
+            batcher = new RedisCommandBatcher();
+            ReflectionTestUtils.setField(batcher, "connectionFactory", connectionFactory);
+            ReflectionTestUtils.setField(batcher, "windowMicros", windowMicros);
+            ReflectionTestUtils.setField(batcher, "maxBatchSize", 128);
+            ReflectionTestUtils.setField(batcher, "timeoutMillis", 2000L);
+            batcher.start();
+            ReflectionTestUtils.setField(store, "batcher", batcher);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (batcher != null) {
+            System.out.printf("%nbatched %d commands in %d flushes (%.1f per flush)%n",
+                              batcher.getFlushedCommands(), batcher.getFlushes(),
+                              (double) batcher.getFlushedCommands() / Math.max(1, batcher.getFlushes()));
+            batcher.stop();
+        }
+        for (String apiKey : apiKeys) {
+            store.deleteCounter(apiKey, WINDOW_SECONDS);
+        }
+        connectionFactory.destroy();
+    }
+    
+    @Benchmark
+    public long check() {
+        String apiKey = apiKeys[ThreadLocalRandom.current().nextInt(KEYS)];
+        long usage = store.tryIncrementCounter(apiKey, 1, Long.MAX_VALUE, WINDOW_SECONDS);
+        return usage + store.getTtl(apiKey, WINDOW_SECONDS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.config.RedisConfig;
+import com.example.demo.counter.CompactRedisCounterStore;
+import com.example.demo.counter.CounterStore;
+import com.example.demo.counter.RedisCounterStore;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Reports Redis memory per counter for the plain and the compact layout.
+ *
+ * Writes the same keys through each store into an otherwise idle Redis and measures
+ * the used_memory delta, then deletes them again. Buckets default to keys / 32 so
+ * each bucket stays within the listpack limits.
+ *
+ * ./mvnw -P benchmark test-compile exec:exec -Dbenchmark.main=com.example.demo.benchmark.RedisCounterFootprint \
+ *   -Dbenchmark.args="1000000"
+ */
+public class RedisCounterFootprint {
+    
+    private static final int WINDOW_SECONDS = 3600;
+    
+    public static void main(String[] args) {
+        int keys = args.length > 0 && !args[0].isBlank() ? Integer.parseInt(args[0]) : 1_000_000;
+        int buckets = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, keys / 32);
+        
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+            System.getProperty("benchmark.redis.host", "localhost"),
+            Integer.getInteger("benchmark.redis.port", 6379));
+        connectionFactory.afterPropertiesSet();
+        RedisTemplate<String, Object> redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        
+        try {
+            System.out.printf("Measuring Redis footprint for %,d counters%n", keys);
+            
+            RedisCounterStore plain = new RedisCounterStore();
+            ReflectionTestUtils.setField(plain, "redisTemplate", redisTemplate);
+            measure("Plain (rate_limit:<apiKey> strings)", plain, redisTemplate, keys);
+            
+            CompactRedisCounterStore compact = new CompactRedisCounterStore();
+            ReflectionTestUtils.setField(compact, "redisTemplate", redisTemplate);
+            ReflectionTestUtils.setField(compact, "buckets", buckets);
+            compact.init();
+            measure(String.format("Compact (%,d listpack buckets)", buckets), compact, redisTemplate, keys);
+            
+            String sampleBucket = compact.getKeys().bucketKey(0);
+            byte[] encoding = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    (byte[]) connection.execute("OBJECT", "ENCODING".getBytes(StandardCharsets.US_ASCII),
+                                                sampleBucket.getBytes(StandardCharsets.US_ASCII)));
+            System.out.printf("Encoding of %s: %s%n", sampleBucket,
+                              encoding != null ? new String(encoding, StandardCharsets.US_ASCII) : "(empty)");
+            
+            for (int i = 0; i < keys; i++) {
+                compact.deleteCounter(BenchmarkKeys.apiKey(i), WINDOW_SECONDS);
+            }
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+    
+    private static void measure(String label, CounterStore store, RedisTemplate<String, Object> redisTemplate,
+                                int keys) {
+        long before = usedMemory(redisTemplate);
+        for (int i = 0; i < keys; i++) {
+            store.incrementCounter(BenchmarkKeys.apiKey(i), WINDOW_SECONDS);
+        }
+        long bytes = usedMemory(redisTemplate) - before;
+        System.out.printf("%-50s %,14d bytes total, %6.1f bytes/key%n", label, bytes, (double) bytes / keys);
+        
+        if (store instanceof RedisCounterStore) {
+            for (int i = 0; i < keys; i++) {
+                store.deleteCounter(BenchmarkKeys.apiKey(i), WINDOW_SECONDS);
+            }
+        }
+    }
+    
+    private static long usedMemory(RedisTemplate<String, Object> redisTemplate) {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory").trim());
+    }
+}
\ No newline at end of file
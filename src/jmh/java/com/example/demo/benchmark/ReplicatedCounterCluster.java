@@ -0,0 +1,234 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.counter.ReplicatedCounterStore;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs several replicated-counter nodes as separate JVMs on localhost and
+ * measures how well they enforce a shared limit.
+ *
+ * Every node sends increments at a fixed rate for the same keys. It admits a
+ * request when its view of the count is within the limit. Afterwards the parent
+ * reports:
+ * - accuracy: how far the cluster-wide admitted count per key went over the limit
+ * - convergence: how long after the load stopped every node saw the final total
+ *
+ * All arguments are name=value, e.g.
+ *   nodes=3 seconds=10 rate=20000 keys=100 limit=5000 syncMs=50 overPercent=5 basePort=17400
+ * Windows are one hour, aligned to the epoch, so avoid running across the top of the hour.
+ */
+public final class ReplicatedCounterCluster {
+    
+    private static final int WINDOW_SECONDS = 3600;
+    private static final long OBSERVE_MILLIS = 3000;
+    
+    private ReplicatedCounterCluster() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+            "nodes", "3", "seconds", "10", "rate", "20000", "keys", "100",
+            "limit", "5000", "syncMs", "50", "overPercent", "5", "basePort", "17400"));
+        int node = -1;
+        // exec:exec passes benchmark.args as a single argument, so split on spaces too
+        for (String arg : args) {
+            for (String option : arg.trim().split("\\s+")) {
+                int eq = option.indexOf('=');
+                if (eq > 0) {
+                    options.put(option.substring(0, eq), option.substring(eq + 1));
+                }
+            }
+        }
+        if (options.containsKey("node")) {
+            node = Integer.parseInt(options.get("node"));
+        }
+        
+        if (node >= 0) {
+            runNode(node, options);
+        } else {
+            runCluster(options);
+        }
+    }
+    
+    private static void runCluster(Map<String, String> options) throws Exception {
+        int nodes = Integer.parseInt(options.get("nodes"));
+        int seconds = Integer.parseInt(options.get("seconds"));
+        int limit = Integer.parseInt(options.get("limit"));
+        long startAt = System.currentTimeMillis() + 3000;
+        options.put("startAt", Long.toString(startAt));
+        
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<Process> processes = new ArrayList<>();
+        List<List<String>> outputs = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            List<String> command = new ArrayList<>(List.of(
+                java, "-cp", System.getProperty("java.class.path"), ReplicatedCounterCluster.class.getName()));
+            options.forEach((name, value) -> command.add(name + "=" + value));
+            command.add("node=" + i);
+            
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            List<String> lines = new ArrayList<>();
+            Thread reader = new Thread(() -> readLines(process, lines));
+            reader.start();
+            processes.add(process);
+            outputs.add(lines);
+            readers.add(reader);
+        }
+        for (int i = 0; i < nodes; i++) {
+            processes.get(i).waitFor();
+            readers.get(i).join();
+        }
+        
+        Map<String, Long> admittedByKey = new LinkedHashMap<>();
+        long attempts = 0;
+        long eagerSyncs = 0;
+        long datagrams = 0;
+        long loadEnd = 0;
+        List<List<long[]>> views = new ArrayList<>();
+        for (List<String> lines : outputs) {
+            List<long[]> view = new ArrayList<>();
+            for (String line : lines) {
+                String[] parts = line.split(" ");
+                switch (parts[0]) {
+                    case "ADMITTED" -> admittedByKey.merge(parts[1], Long.parseLong(parts[2]), Long::sum);
+                    case "ATTEMPTS" -> attempts += Long.parseLong(parts[1]);
+                    case "DONE" -> loadEnd = Math.max(loadEnd, Long.parseLong(parts[1]));
+                    case "EAGER" -> eagerSyncs += Long.parseLong(parts[1]);
+                    case "SENT" -> datagrams += Long.parseLong(parts[1]);
+                    case "VIEW" -> view.add(new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])});
+                    default -> System.out.println(line);
+                }
+            }
+            views.add(view);
+        }
+        
+        long admitted = 0;
+        long overAdmitted = 0;
+        long worstKeyOver = 0;
+        for (long keyAdmitted : admittedByKey.values()) {
+            admitted += keyAdmitted;
+            long over = Math.max(0, keyAdmitted - limit);
+            overAdmitted += over;
+            worstKeyOver = Math.max(worstKeyOver, over);
+        }
+        long allowed = (long) admittedByKey.size() * limit;
+        
+        System.out.printf("nodes=%d seconds=%d attempts=%d admitted=%d allowed=%d%n",
+                          nodes, seconds, attempts, admitted, allowed);
+        System.out.printf("over-admission: %d (%.3f%% of allowed), worst key +%d (%.3f%% of limit)%n",
+                          overAdmitted, 100.0 * overAdmitted / Math.max(1, allowed),
+                          worstKeyOver, 100.0 * worstKeyOver / limit);
+        System.out.printf("datagrams sent=%d, eager sync requests=%d%n", datagrams, eagerSyncs);
+        for (int i = 0; i < nodes; i++) {
+            // Time from the last node finishing its load until this node saw every increment
+            long converged = -1;
+            for (long[] sample : views.get(i)) {
+                if (sample[1] == attempts) {
+                    converged = Math.max(0, sample[0] - loadEnd);
+                    break;
+                }
+            }
+            System.out.println(converged >= 0
+                ? "node " + i + " converged " + converged + " ms after load stopped"
+                : "node " + i + " did not converge within " + OBSERVE_MILLIS + " ms");
+        }
+    }
+    
+    private static void runNode(int node, Map<String, String> options) throws Exception {
+        int nodes = Integer.parseInt(options.get("nodes"));
+        int basePort = Integer.parseInt(options.get("basePort"));
+        int seconds = Integer.parseInt(options.get("seconds"));
+        int rate = Integer.parseInt(options.get("rate"));
+        int keys = Integer.parseInt(options.get("keys"));
+        int limit = Integer.parseInt(options.get("limit"));
+        long startAt = Long.parseLong(options.get("startAt"));
+        
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            if (i != node) {
+                peers.add("127.0.0.1:" + (basePort + i));
+            }
+        }
+        ReplicatedCounterStore store = new ReplicatedCounterStore();
+        ReflectionTestUtils.setField(store, "nodeId", node + 1L);
+        ReflectionTestUtils.setField(store, "bindAddress", "127.0.0.1");
+        ReflectionTestUtils.setField(store, "port", basePort + node);
+        ReflectionTestUtils.setField(store, "peers", peers);
+        ReflectionTestUtils.setField(store, "secret", "benchmark-secret");
+        ReflectionTestUtils.setField(store, "syncIntervalMillis", Long.parseLong(options.get("syncMs")));
+        ReflectionTestUtils.setField(store, "maxOverAdmissionPercent", Double.parseDouble(options.get("overPercent")));
+        store.start();
+        
+        String[] apiKeys = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            apiKeys[i] = BenchmarkKeys.apiKey(i);
+        }
+        long[] admitted = new long[keys];
+        long total = (long) rate * seconds;
+        
+        sleepUntil(startAt);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long sent = 0; sent < total; sent++) {
+            int key = random.nextInt(keys);
+            if (store.incrementCounter(apiKeys[key], WINDOW_SECONDS) <= limit) {
+                admitted[key]++;
+            }
+            if (sent % 1000 == 0) {
+                // Pace to the target rate
+                sleepUntil(startAt + sent * 1000 / rate);
+            }
+        }
+        System.out.println("DONE " + System.currentTimeMillis());
+        
+        for (int i = 0; i < keys; i++) {
+            System.out.println("ADMITTED " + apiKeys[i] + " " + admitted[i]);
+        }
+        System.out.println("ATTEMPTS " + total);
+        
+        long observeEnd = System.currentTimeMillis() + OBSERVE_MILLIS;
+        long lastView = -1;
+        while (System.currentTimeMillis() < observeEnd) {
+            long view = 0;
+            for (String apiKey : apiKeys) {
+                view += store.getCurrentCount(apiKey, WINDOW_SECONDS);
+            }
+            if (view != lastView) {
+                System.out.println("VIEW " + System.currentTimeMillis() + " " + view);
+                lastView = view;
+            }
+            Thread.sleep(1);
+        }
+        System.out.println("EAGER " + store.getEagerSyncs());
+        System.out.println("SENT " + store.getSentDatagrams());
+        store.stop();
+    }
+    
+    private static void sleepUntil(long millis) throws InterruptedException {
+        long delay = millis - System.currentTimeMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+    
+    private static void readLines(Process process, List<String> lines) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            lines.add("reader failed: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
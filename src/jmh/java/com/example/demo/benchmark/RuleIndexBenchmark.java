@@ -0,0 +1,92 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.util.CompactRuleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule lookup latency: entity cache (ConcurrentHashMap of RateLimit) vs CompactRuleIndex.
+ *
+ * Keys are looked up in a pseudo-random order from a pre-built array so the
+ * measurement includes the cache misses a large table causes in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class RuleIndexBenchmark {
+    
+    @Param({"100000", "1000000", "5000000"})
+    private int rules;
+    
+    private String[] probeKeys;
+    private ConcurrentHashMap<String, RateLimit> entityCache;
+    private CompactRuleIndex onHeapIndex;
+    private CompactRuleIndex offHeapIndex;
+    private int cursor;
+    
+    @Setup
+    public void setUp() {
+        entityCache = new ConcurrentHashMap<>(rules * 2);
+        CompactRuleIndex.Builder onHeap = new CompactRuleIndex.Builder(rules, false);
+        CompactRuleIndex.Builder offHeap = new CompactRuleIndex.Builder(rules, true);
+        
+        for (int i = 0; i < rules; i++) {
+            String apiKey = BenchmarkKeys.apiKey(i);
+            RateLimit rateLimit = new RateLimit(apiKey, 100 + i % 1000, 60);
+            rateLimit.setId((long) i);
+            rateLimit.setCreatedAt(LocalDateTime.now());
+            rateLimit.setUpdatedAt(LocalDateTime.now());
+            entityCache.put(apiKey, rateLimit);
+            onHeap.put(apiKey, rateLimit.getRequestLimit(), rateLimit.getWindowSeconds());
+            offHeap.put(apiKey, rateLimit.getRequestLimit(), rateLimit.getWindowSeconds());
+        }
+        onHeapIndex = onHeap.build();
+        offHeapIndex = offHeap.build();
+        
+        // Fresh String instances so cached String hash codes do not flatter the entity cache
+        probeKeys = new String[1 << 16];
+        for (int i = 0; i < probeKeys.length; i++) {
+            probeKeys[i] = new String(BenchmarkKeys.apiKey((int) ((i * 2654435761L) % rules)).toCharArray());
+        }
+    }
+    
+    private String nextKey() {
+        cursor = (cursor + 1) & (probeKeys.length - 1);
+        return probeKeys[cursor];
+    }
+    
+    @Benchmark
+    public int entityCache() {
+        RateLimit rateLimit = entityCache.get(nextKey());
+        return rateLimit.getRequestLimit() + rateLimit.getWindowSeconds();
+    }
+    
+    @Benchmark
+    public int compactIndexOnHeap() {
+        long packed = onHeapIndex.lookup(nextKey());
+        return CompactRuleIndex.limitOf(packed) + CompactRuleIndex.windowOf(packed);
+    }
+    
+    @Benchmark
+    public int compactIndexOffHeap() {
+        long packed = offHeapIndex.lookup(nextKey());
+        return CompactRuleIndex.limitOf(packed) + CompactRuleIndex.windowOf(packed);
+    }
+}
\ No newline at end of file
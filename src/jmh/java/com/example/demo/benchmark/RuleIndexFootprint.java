@@ -0,0 +1,78 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.util.CompactRuleIndex;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports retained memory per rule for an entity cache and for CompactRuleIndex.
+ *
+ * Run with a fixed heap so GC noise stays small:
+ * ./mvnw -P benchmark test-compile exec:exec -Dbenchmark.main=com.example.demo.benchmark.RuleIndexFootprint -Dbenchmark.args=2000000
+ */
+public class RuleIndexFootprint {
+    
+    public static void main(String[] args) {
+        int rules = args.length > 0 && !args[0].isBlank() ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("Measuring footprint for %,d rules%n", rules);
+        
+        long before = usedHeap();
+        ConcurrentHashMap<String, RateLimit> entityCache = new ConcurrentHashMap<>();
+        for (int i = 0; i < rules; i++) {
+            String apiKey = BenchmarkKeys.apiKey(i);
+            RateLimit rateLimit = new RateLimit(apiKey, 100, 60);
+            rateLimit.setId((long) i);
+            rateLimit.setCreatedAt(LocalDateTime.now());
+            rateLimit.setUpdatedAt(LocalDateTime.now());
+            entityCache.put(apiKey, rateLimit);
+        }
+        long entityBytes = usedHeap() - before;
+        report("Entity cache (ConcurrentHashMap<String, RateLimit>)", entityBytes, rules);
+        Reference.reachabilityFence(entityCache);
+        entityCache = null;
+        
+        before = usedHeap();
+        CompactRuleIndex.Builder onHeap = new CompactRuleIndex.Builder(rules, false);
+        for (int i = 0; i < rules; i++) {
+            onHeap.put(BenchmarkKeys.apiKey(i), 100, 60);
+        }
+        CompactRuleIndex onHeapIndex = onHeap.build();
+        report("CompactRuleIndex (on heap)", usedHeap() - before, rules);
+        Reference.reachabilityFence(onHeapIndex);
+        
+        long directBefore = usedDirect();
+        CompactRuleIndex.Builder offHeap = new CompactRuleIndex.Builder(rules, true);
+        for (int i = 0; i < rules; i++) {
+            offHeap.put(BenchmarkKeys.apiKey(i), 100, 60);
+        }
+        CompactRuleIndex offHeapIndex = offHeap.build();
+        report("CompactRuleIndex (off heap, direct memory)", usedDirect() - directBefore, rules);
+        Reference.reachabilityFence(offHeapIndex);
+    }
+    
+    private static void report(String label, long bytes, int rules) {
+        System.out.printf("%-50s %,12d bytes total, %6.1f bytes/rule%n", label, bytes, (double) bytes / rules);
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0L;
+    }
+}
\ No newline at end of file
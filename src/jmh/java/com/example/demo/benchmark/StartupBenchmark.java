@@ -0,0 +1,158 @@
+package com.example.demo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a limiter node until its first successful /check.
+ *
+ * Starts the application from the fast-start build output several times in each mode:
+ * - jit: plain start
+ * - aot: Spring AOT initializers (-Dspring.aot.enabled=true)
+ * - cds: AOT plus the AppCDS archive from the training run
+ * Each run polls /check until it returns 200, then stops the node. MySQL and Redis must be
+ * running as for a normal start. A warm-up run creates the benchmark rule first.
+ *
+ * All arguments are name=value, e.g.
+ *   dir=target/fast-start runs=5 modes=jit,aot,cds port=18080 apiKey=startup-benchmark-key
+ */
+public final class StartupBenchmark {
+    
+    private static final long TIMEOUT_MILLIS = 120_000;
+    private static final long POLL_MILLIS = 5;
+    
+    private StartupBenchmark() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+            "dir", "target/fast-start", "runs", "5", "modes", "jit,aot,cds",
+            "port", "18080", "apiKey", "startup-benchmark-key"));
+        // exec:exec passes benchmark.args as a single argument, so split on spaces too
+        for (String arg : args) {
+            for (String option : arg.trim().split("\\s+")) {
+                int eq = option.indexOf('=');
+                if (eq > 0) {
+                    options.put(option.substring(0, eq), option.substring(eq + 1));
+                }
+            }
+        }
+        
+        Path dir = Path.of(options.get("dir"));
+        Path jar = findJar(dir);
+        int runs = Integer.parseInt(options.get("runs"));
+        int port = Integer.parseInt(options.get("port"));
+        String apiKey = options.get("apiKey");
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        
+        // Warm-up: also creates a rule with plenty of headroom for the measured runs
+        Process warmUp = launch(jar, dir, "jit", port);
+        try {
+            awaitFirstCheck(http, port, apiKey, warmUp);
+        } catch (IllegalStateException e) {
+            // No rule yet: /check answers 404 once the node is up
+        } finally {
+            createRule(http, port, apiKey);
+            stop(warmUp);
+        }
+        
+        for (String mode : options.get("modes").split(",")) {
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                Process process = launch(jar, dir, mode, port);
+                try {
+                    awaitFirstCheck(http, port, apiKey, process);
+                    millis[run] = (System.nanoTime() - start) / 1_000_000;
+                } finally {
+                    stop(process);
+                }
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-4s time to first successful check: min %d ms, median %d ms, max %d ms (%d runs)%n",
+                              mode, millis[0], millis[runs / 2], millis[runs - 1], runs);
+        }
+    }
+    
+    private static Path findJar(Path dir) throws Exception {
+        try (var files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException(
+                        "No application jar in " + dir + ", build with ./mvnw -P fast-start package"));
+        }
+    }
+    
+    private static Process launch(Path jar, Path dir, String mode, int port) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> command = new ArrayList<>(List.of(java));
+        switch (mode) {
+            case "jit" -> { }
+            case "aot" -> command.add("-Dspring.aot.enabled=true");
+            case "cds" -> {
+                command.add("-Dspring.aot.enabled=true");
+                command.add("-XX:SharedArchiveFile=" + dir.resolve("application.jsa"));
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        command.addAll(List.of("-jar", jar.toString(),
+                               "--server.port=" + port, "--spring.profiles.active=fast-start"));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir.toFile(), "startup-" + mode + ".log"))
+                .start();
+    }
+    
+    private static void awaitFirstCheck(HttpClient http, int port, String apiKey, Process process) throws Exception {
+        HttpRequest check = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/api/v1/check?apiKey=" + apiKey)).GET().build();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Node exited with " + process.exitValue() + ", see its log");
+            }
+            try {
+                int status = http.send(check, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 200) {
+                    return;
+                }
+                if (status == 404) {
+                    throw new IllegalStateException("No rule for " + apiKey);
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        throw new IllegalStateException("No successful check within " + TIMEOUT_MILLIS + " ms");
+    }
+    
+    private static void createRule(HttpClient http, int port, String apiKey) throws Exception {
+        String body = "{\"apiKey\":\"" + apiKey + "\",\"limit\":100000000,\"windowSeconds\":86400}";
+        HttpRequest create = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/limits"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        http.send(create, HttpResponse.BodyHandlers.discarding());
+    }
+    
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
\ No newline at end of file
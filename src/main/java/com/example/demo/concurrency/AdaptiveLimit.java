@@ -0,0 +1,21 @@
+package com.example.demo.concurrency;
+
+/**
+ * A concurrency limit that moves with the latency of the requests it admits
+ */
+public interface AdaptiveLimit {
+    
+    /**
+     * Current number of requests allowed in flight
+     */
+    int getLimit();
+    
+    /**
+     * Feed back one finished request.
+     *
+     * @param rttNanos how long the request took
+     * @param inFlight requests in flight when it was admitted, including itself
+     * @param dropped whether it failed in a way that signals overload (timeout, rejection downstream)
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.example.demo.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase, multiplicative decrease.
+ *
+ * Each successful sample adds one to the limit, as long as the limit is actually
+ * being used (at least half of it in flight); otherwise an idle key would grow
+ * its limit without ever testing it. A drop, or a sample slower than the
+ * timeout, multiplies the limit by the backoff ratio. Lock-free.
+ */
+public final class AimdLimit implements AdaptiveLimit {
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+    private final AtomicInteger limit;
+    
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeoutNanos) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeoutNanos;
+        this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+    }
+    
+    @Override
+    public int getLimit() {
+        return limit.get();
+    }
+    
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            limit.updateAndGet(current -> Math.max(minLimit, (int) (current * backoffRatio)));
+        } else if (inFlight * 2 >= limit.get()) {
+            limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.example.demo.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-flight request counter for one key, bounded by an adaptive limit.
+ *
+ * Acquire is a CAS on the in-flight count against the current limit. Release
+ * decrements it and reports the request's latency to the limit. Requests that
+ * other nodes have in flight (see {@link #setRemoteInFlight}) count against
+ * the same limit.
+ */
+public final class ConcurrencyLimiter {
+    
+    private volatile AdaptiveLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int remoteInFlight;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    
+    public ConcurrencyLimiter(AdaptiveLimit limit) {
+        this.limit = limit;
+    }
+    
+    /**
+     * Take a permit if one is free.
+     *
+     * @return requests in flight on this node including this one, or -1 when at the limit
+     */
+    public int tryAcquire() {
+        int allowed = limit.getLimit() - remoteInFlight;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejected.increment();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+    
+    /**
+     * Give back a permit and feed its latency to the limit.
+     *
+     * @param inFlightAtAcquire the value returned by {@link #tryAcquire}
+     */
+    public void release(int inFlightAtAcquire, long rttNanos, boolean wasDropped) {
+        inFlight.decrementAndGet();
+        if (wasDropped) {
+            dropped.increment();
+        }
+        limit.onSample(rttNanos, inFlightAtAcquire, wasDropped);
+    }
+    
+    /**
+     * Swap in a new limit after the rule changed; requests in flight stay counted
+     */
+    public void setLimit(AdaptiveLimit limit) {
+        this.limit = limit;
+    }
+    
+    public int getLimit() {
+        return limit.getLimit();
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    public int getRemoteInFlight() {
+        return remoteInFlight;
+    }
+    
+    /**
+     * Requests in flight on other nodes, as last read from Redis
+     */
+    public void setRemoteInFlight(int remoteInFlight) {
+        this.remoteInFlight = remoteInFlight;
+    }
+    
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
\ No newline at end of file
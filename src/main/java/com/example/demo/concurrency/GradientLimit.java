@@ -0,0 +1,77 @@
+package com.example.demo.concurrency;
+
+/**
+ * Latency-gradient limit.
+ *
+ * Keeps a long-term exponential average of the round-trip time as the
+ * no-load baseline. For each sample, the gradient is baseline / sample,
+ * clamped to [0.5, 1]. When latency rises above the baseline, the gradient
+ * drops below 1 and the limit shrinks in proportion. A sqrt(limit) queue
+ * allowance lets the limit keep probing upwards while latency is flat. Every
+ * new limit is blended with the previous one by the smoothing factor, so a
+ * single slow request can't collapse it. A drop counts as a gradient of 0.5.
+ *
+ * If the baseline is more than twice the current latency, it is stale
+ * (e.g. left over from an incident), so it decays faster towards the
+ * current value.
+ */
+public final class GradientLimit implements AdaptiveLimit {
+    
+    private static final double MIN_GRADIENT = 0.5;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double longRttFactor;
+    
+    // Guarded by this
+    private double estimatedLimit;
+    private double longRttNanos;
+    
+    private volatile int limit;
+    
+    /**
+     * @param smoothing weight of each new limit against the previous one, in (0, 1]
+     * @param longWindow number of samples the long-term latency average spans
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double smoothing, int longWindow) {
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.longRttFactor = 2.0 / (Math.max(1, longWindow) + 1);
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+    
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+    
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        double shortRtt = Math.max(1, rttNanos);
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos += (shortRtt - longRttNanos) * longRttFactor;
+        }
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        
+        // Nothing to learn about the limit while well under it
+        if (!dropped && inFlight * 2 < estimatedLimit) {
+            return;
+        }
+        
+        double gradient = dropped ? MIN_GRADIENT : Math.max(MIN_GRADIENT, Math.min(1.0, longRttNanos / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
\ No newline at end of file
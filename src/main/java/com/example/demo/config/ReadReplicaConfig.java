@@ -0,0 +1,111 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Splits JDBC traffic between the MySQL primary (spring.datasource) and a read replica
+ * (ratelimit.datasource.replica) when ratelimit.datasource.replica.enabled=true.
+ * Without it, Spring Boot's single auto-configured DataSource is used as before.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ratelimit.datasource.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReadReplicaConfig.class);
+    
+    @Value("${ratelimit.datasource.replica.url}")
+    private String replicaUrl;
+    
+    @Value("${ratelimit.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+    
+    @Value("${ratelimit.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+    
+    @Value("${ratelimit.datasource.replica.max-lag-ms:1000}")
+    private long maxLagMillis;
+    
+    @Value("${ratelimit.datasource.replica.heartbeat-interval-ms:500}")
+    private long heartbeatIntervalMillis;
+    
+    @Bean
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+    
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+    
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                      HikariDataSource replicaDataSource) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+            primaryDataSource, replicaDataSource, maxLagMillis, heartbeatIntervalMillis);
+        try {
+            routing.initHeartbeat(System.currentTimeMillis());
+        } catch (SQLException e) {
+            logger.warn("Failed to prepare replica heartbeat table, reads use the primary until it exists", e);
+        }
+        logger.info("Read replica routing enabled: {}, max lag {} ms", replicaUrl, maxLagMillis);
+        return routing;
+    }
+    
+    /**
+     * The DataSource JPA and repositories see. The lazy proxy delays fetching the
+     * connection until the first statement, after the transaction is marked read-only.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+    
+    @Bean
+    public ReplicaHeartbeat replicaHeartbeat(ReplicaRoutingDataSource routingDataSource) {
+        return new ReplicaHeartbeat(routingDataSource);
+    }
+    
+    /**
+     * Refreshes the replica lag measurement on a fixed delay
+     */
+    public static class ReplicaHeartbeat {
+        
+        private final ReplicaRoutingDataSource routingDataSource;
+        
+        public ReplicaHeartbeat(ReplicaRoutingDataSource routingDataSource) {
+            this.routingDataSource = routingDataSource;
+        }
+        
+        @Scheduled(fixedDelayString = "${ratelimit.datasource.replica.heartbeat-interval-ms:500}")
+        public void beat() {
+            routingDataSource.heartbeat(System.currentTimeMillis());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.example.demo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends read-only transactions to the read replica and everything else to the primary.
+ *
+ * The replica is used only when all of these hold:
+ * - the transaction is @Transactional(readOnly = true)
+ * - the last heartbeat showed replication lag within max-lag-ms
+ * - this node has not committed a write in the last max-lag-ms, so a read right
+ *   after a write still sees it
+ * If the replica cannot hand out a connection, the read falls back to the primary.
+ *
+ * Lag comes from a heartbeat row per node. The node writes its own clock to the
+ * primary and reads it back from the replica, so no cross-host clock sync is needed.
+ * Must be wrapped in a LazyConnectionDataSourceProxy, so that the connection is
+ * fetched after the transaction's read-only flag is set.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    
+    /** Whether the last connection handed to this thread came from the replica */
+    private static final ThreadLocal<Boolean> READ_FROM_REPLICA = ThreadLocal.withInitial(() -> false);
+    
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+    
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMillis;
+    private final long staleAfterMillis;
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    private volatile long lagMillis = Long.MAX_VALUE;
+    private volatile long lastHeartbeatMillis;
+    private volatile long lastWriteMillis;
+    
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long maxLagMillis, long heartbeatIntervalMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMillis = maxLagMillis;
+        // Missing three heartbeats in a row means the probe itself is failing
+        this.staleAfterMillis = heartbeatIntervalMillis * 3;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            trackWrite();
+            return PRIMARY;
+        }
+        return isReplicaUsable(System.currentTimeMillis()) ? REPLICA : PRIMARY;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (REPLICA.equals(determineCurrentLookupKey())) {
+            try {
+                Connection connection = replica.getConnection();
+                READ_FROM_REPLICA.set(true);
+                return connection;
+            } catch (SQLException e) {
+                logger.warn("Read replica unavailable, falling back to primary: {}", e.getMessage());
+                lagMillis = Long.MAX_VALUE;
+            }
+        }
+        READ_FROM_REPLICA.set(false);
+        return primary.getConnection();
+    }
+    
+    /**
+     * Whether the current transaction's queries on this thread went to the replica, which
+     * may not have seen rows committed in the last max-lag-ms. Only meaningful after the
+     * transaction has run a query; false when replica routing is off.
+     */
+    public static boolean isReadingFromReplica() {
+        return READ_FROM_REPLICA.get();
+    }
+    
+    boolean isReplicaUsable(long now) {
+        return now - lastHeartbeatMillis <= staleAfterMillis
+                && lagMillis <= maxLagMillis
+                && now - lastWriteMillis > maxLagMillis;
+    }
+    
+    /**
+     * Remember when a read-write transaction on this node commits so reads after it stay on the primary.
+     * Connections used outside a transaction (schema setup, pool checks) are not counted as writes.
+     */
+    private void trackWrite() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    lastWriteMillis = System.currentTimeMillis();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Create the heartbeat table on the primary and drop rows left by nodes that are gone
+     */
+    void initHeartbeat(long now) throws SQLException {
+        try (Connection connection = primary.getConnection()) {
+            try (Statement create = connection.createStatement()) {
+                create.execute("CREATE TABLE IF NOT EXISTS replica_heartbeat "
+                        + "(node_id VARCHAR(64) PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+            }
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM replica_heartbeat WHERE beat_millis < ?")) {
+                delete.setLong(1, now - 86_400_000L);
+                delete.executeUpdate();
+            }
+        }
+    }
+    
+    /**
+     * Write this node's clock to the primary, then measure how far the replica's copy is behind
+     */
+    void heartbeat(long now) {
+        try {
+            writeBeat(now);
+            Long replicated = readReplicatedBeat();
+            // Before the first beat replicates there is nothing to compare, so treat the replica as behind
+            lagMillis = replicated != null ? Math.max(0, now - replicated) : Long.MAX_VALUE;
+            lastHeartbeatMillis = now;
+            logger.debug("Read replica lag {} ms", lagMillis);
+        } catch (SQLException e) {
+            lagMillis = Long.MAX_VALUE;
+            logger.warn("Replica heartbeat failed, reads use the primary: {}", e.getMessage());
+        }
+    }
+    
+    private void writeBeat(long now) throws SQLException {
+        try (Connection connection = primary.getConnection()) {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE replica_heartbeat SET beat_millis = ? WHERE node_id = ?")) {
+                update.setLong(1, now);
+                update.setString(2, nodeId);
+                if (update.executeUpdate() > 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO replica_heartbeat (node_id, beat_millis) VALUES (?, ?)")) {
+                insert.setString(1, nodeId);
+                insert.setLong(2, now);
+                insert.executeUpdate();
+            }
+        }
+    }
+    
+    private Long readReplicatedBeat() throws SQLException {
+        try (Connection connection = replica.getConnection();
+             PreparedStatement select = connection.prepareStatement(
+                 "SELECT beat_millis FROM replica_heartbeat WHERE node_id = ?")) {
+            select.setString(1, nodeId);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? rows.getLong(1) : null;
+            }
+        }
+    }
+    
+    public long getLagMillis() {
+        return lagMillis;
+    }
+    
+    String getNodeId() {
+        return nodeId;
+    }
+}
\ No newline at end of file
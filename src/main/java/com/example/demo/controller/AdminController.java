@@ -0,0 +1,74 @@
+package com.example.demo.controller;
+
+import com.example.demo.counter.CompactCounterMigrator;
+import com.example.demo.model.dto.ApiResponse;
+import com.example.demo.model.dto.CounterMigrationReport;
+import com.example.demo.model.dto.HotKeysReport;
+import com.example.demo.model.dto.KeyFilterStats;
+import com.example.demo.service.ApiKeyFilter;
+import com.example.demo.service.HotKeyTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/admin")
+public class AdminController {
+    
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+    
+    @Autowired
+    private ApiKeyFilter keyFilter;
+    
+    /**
+     * Only present with ratelimit.counter-store.redis.encoding=compact
+     */
+    @Autowired(required = false)
+    private CompactCounterMigrator counterMigrator;
+    
+    /**
+     * GET /admin/hot-keys?k=10 - Top Consumers
+     * Keys with the highest request rate and those closest to their limits,
+     * served from memory as of the last refresh interval
+     */
+    @GetMapping("/hot-keys")
+    public ResponseEntity<ApiResponse<HotKeysReport>> getHotKeys(
+            @RequestParam(required = false) Integer k) {
+                
+        if (k != null && k <= 0) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("k must be positive"));
+        }
+        
+        int limit = k != null ? k : hotKeyTracker.getTopK();
+        return ResponseEntity.ok(ApiResponse.success("Hot keys retrieved successfully",
+                                                     hotKeyTracker.getReport(limit)));
+    }
+    
+    /**
+     * POST /admin/counters/migrate - Move plain Redis counters into the compact layout
+     * and report Redis memory before and after
+     */
+    @PostMapping("/counters/migrate")
+    public ResponseEntity<ApiResponse<CounterMigrationReport>> migrateCounters() {
+        if (counterMigrator == null) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Compact counter encoding is not enabled"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Counters migrated successfully", counterMigrator.migrate()));
+    }
+    
+    /**
+     * GET /admin/key-filter - Unknown-key filter size, memory, false-positive rate
+     * and how many checks it answered without MySQL or Redis
+     */
+    @GetMapping("/key-filter")
+    public ResponseEntity<ApiResponse<KeyFilterStats>> getKeyFilterStats() {
+        return ResponseEntity.ok(ApiResponse.success("Key filter stats retrieved successfully", keyFilter.getStats()));
+    }
+}
\ No newline at end of file
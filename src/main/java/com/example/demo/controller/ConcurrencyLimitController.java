@@ -0,0 +1,163 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.ConcurrencyLimit;
+import com.example.demo.model.dto.ApiResponse;
+import com.example.demo.model.dto.ConcurrencyLease;
+import com.example.demo.model.dto.ConcurrencyLimitRequest;
+import com.example.demo.model.dto.ConcurrencyStatus;
+import com.example.demo.service.ConcurrencyLimitService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/v1/concurrency")
+public class ConcurrencyLimitController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitController.class);
+    
+    @Autowired
+    private ConcurrencyLimitService concurrencyLimitService;
+    
+    /**
+     * POST /concurrency/limits - Define Concurrency Limit
+     * Limit the requests in flight for an API key; the limit adapts between minLimit and maxLimit
+     */
+    @PostMapping("/limits")
+    public ResponseEntity<ApiResponse<ConcurrencyLimit>> createConcurrencyLimit(
+            @Valid @RequestBody ConcurrencyLimitRequest request) {
+        
+        logger.info("Creating concurrency limit for API key: {}", request.getApiKey());
+        
+        try {
+            ConcurrencyLimit rule = concurrencyLimitService.createConcurrencyLimit(request);
+            return ResponseEntity.ok(ApiResponse.success("Concurrency limit saved successfully", rule));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Failed to create concurrency limit for API key: {}", request.getApiKey(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to create concurrency limit"));
+        }
+    }
+    
+    /**
+     * GET /concurrency/limits/{apiKey} - Concurrency Status
+     * The rule with this node's current limit, in-flight count, rejections and drops
+     */
+    @GetMapping("/limits/{apiKey}")
+    public ResponseEntity<ApiResponse<ConcurrencyStatus>> getConcurrencyStatus(
+            @PathVariable String apiKey) {
+        
+        try {
+            Optional<ConcurrencyStatus> status = concurrencyLimitService.getStatus(apiKey.trim());
+            
+            if (status.isPresent()) {
+                return ResponseEntity.ok(ApiResponse.success("Concurrency limit retrieved successfully", status.get()));
+            } else {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Concurrency limit not found for API key"));
+            }
+            
+        } catch (Exception e) {
+            logger.error("Failed to get concurrency limit for API key: {}", apiKey, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve concurrency limit"));
+        }
+    }
+    
+    /**
+     * DELETE /concurrency/limits/{apiKey} - Remove Concurrency Limit
+     */
+    @DeleteMapping("/limits/{apiKey}")
+    public ResponseEntity<ApiResponse<Object>> deleteConcurrencyLimit(
+            @PathVariable String apiKey) {
+        
+        logger.info("Deleting concurrency limit for API key: {}", apiKey);
+        
+        try {
+            if (concurrencyLimitService.deleteConcurrencyLimit(apiKey.trim())) {
+                return ResponseEntity.ok(ApiResponse.success("Concurrency limit deleted successfully"));
+            } else {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Concurrency limit not found for API key"));
+            }
+            
+        } catch (Exception e) {
+            logger.error("Failed to delete concurrency limit for API key: {}", apiKey, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to delete concurrency limit"));
+        }
+    }
+    
+    /**
+     * POST /concurrency/acquire?apiKey=xxx - Start a Request
+     * Returns a lease when the key is under its limit, 429 when it is not
+     */
+    @PostMapping("/acquire")
+    public ResponseEntity<ApiResponse<ConcurrencyLease>> acquire(@RequestParam String apiKey) {
+        
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("API key parameter is required"));
+        }
+        
+        try {
+            Optional<ConcurrencyLease> lease = concurrencyLimitService.acquire(apiKey.trim());
+            
+            if (lease.isPresent()) {
+                return ResponseEntity.ok(ApiResponse.success("Request allowed", lease.get()));
+            } else {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(ApiResponse.error("Request blocked", "Concurrency limit reached"));
+            }
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Concurrency limit not found for API key"));
+        } catch (Exception e) {
+            logger.error("Failed to acquire concurrency lease for API key: {}", apiKey, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to acquire concurrency lease"));
+        }
+    }
+    
+    /**
+     * POST /concurrency/release?apiKey=xxx&leaseId=1&latencyMs=25&dropped=false - Finish a Request
+     * Report the request's latency so the limit can adapt; without latencyMs the time since acquire is used.
+     * The release must reach the node that issued the lease; other nodes answer 409.
+     */
+    @PostMapping("/release")
+    public ResponseEntity<ApiResponse<Object>> release(
+            @RequestParam String apiKey,
+            @RequestParam long leaseId,
+            @RequestParam(required = false) Long latencyMs,
+            @RequestParam(defaultValue = "false") boolean dropped) {
+        
+        if (latencyMs != null && latencyMs < 0) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("latencyMs must not be negative"));
+        }
+        
+        if (!concurrencyLimitService.issuedHere(leaseId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Lease was issued by another node",
+                                            "Release the lease on the node that acquired it"));
+        }
+        
+        if (concurrencyLimitService.release(apiKey.trim(), leaseId, latencyMs, dropped)) {
+            return ResponseEntity.ok(ApiResponse.success("Lease released"));
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error("Lease not found or already released"));
+        }
+    }
+}
\ No newline at end of file
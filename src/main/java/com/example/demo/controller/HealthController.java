@@ -1,14 +1,16 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.dto.ApiResponse;
+import com.example.demo.service.DependencyHealthSampler;
+import com.example.demo.service.DependencyHealthSampler.Status;
+import com.example.demo.service.RulePreloader;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,46 +18,56 @@ import java.util.Map;
 public class HealthController {
     
     @Autowired
-    private DataSource dataSource;
+    private DependencyHealthSampler healthSampler;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private ApplicationAvailability applicationAvailability;
+    
+    @Autowired
+    private RulePreloader rulePreloader;
     
     /**
-     * Health check endpoint
+     * Health check endpoint. Answers from the background sampler's cached state,
+     * so probes from many load balancers add no load on MySQL, Redis or RocketMQ.
+     * Answers 503 when a dependency is down or the cached state is stale.
      */
     @GetMapping("/health")
     public ResponseEntity<ApiResponse<Map<String, Object>>> healthCheck() {
-        Map<String, Object> health = new HashMap<>();
-        boolean allHealthy = true;
+        Map<String, Object> health = new HashMap<>(healthSampler.getHealth());
+        Status status = healthSampler.getOverallStatus();
         
-        // Check MySQL connection
-        try {
-            Connection connection = dataSource.getConnection();
-            connection.close();
-            health.put("mysql", "UP");
-        } catch (Exception e) {
-            health.put("mysql", "DOWN - " + e.getMessage());
-            allHealthy = false;
-        }
+        health.put("application", "UP");
+        health.put("status", status);
         
-        // Check Redis connection
-        try {
-            redisTemplate.opsForValue().get("health-check");
-            health.put("redis", "UP");
-        } catch (Exception e) {
-            health.put("redis", "DOWN - " + e.getMessage());
-            allHealthy = false;
+        if (status == Status.UP || status == Status.DEGRADED) {
+            String message = status == Status.DEGRADED ? "System degraded" : "System healthy";
+            return ResponseEntity.ok(ApiResponse.success(message, health));
+        } else if (status == Status.UNKNOWN) {
+            return ResponseEntity.status(503)
+                    .body(ApiResponse.error("Health state unknown", "No recent dependency samples"));
+        } else {
+            return ResponseEntity.status(503)
+                    .body(ApiResponse.error("System unhealthy", health.toString()));
         }
+    }
+    
+    /**
+     * Readiness endpoint for load balancer probes.
+     * Reports not ready until the rule preload (when enabled) has completed.
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> readiness() {
+        Map<String, Object> readiness = new HashMap<>();
+        ReadinessState state = applicationAvailability.getReadinessState();
         
-        health.put("application", "UP");
-        health.put("status", allHealthy ? "UP" : "DOWN");
+        readiness.put("readiness", state);
+        readiness.put("rulePreload", rulePreloader.getProgress());
         
-        if (allHealthy) {
-            return ResponseEntity.ok(ApiResponse.success("System healthy", health));
+        if (state == ReadinessState.ACCEPTING_TRAFFIC) {
+            return ResponseEntity.ok(ApiResponse.success("Ready", readiness));
         } else {
             return ResponseEntity.status(503)
-                    .body(ApiResponse.error("System unhealthy", health.toString()));
+                    .body(new ApiResponse<>(false, "Not ready", readiness));
         }
     }
     
@@ -1,11 +1,18 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.RateLimit;
+import com.example.demo.model.UsageGranularity;
+import com.example.demo.model.UsageRollup;
 import com.example.demo.model.dto.ApiResponse;
 import com.example.demo.model.dto.CheckResult;
+import com.example.demo.model.dto.CursorPage;
 import com.example.demo.model.dto.RateLimitRequest;
 import com.example.demo.model.dto.UsageInfo;
 import com.example.demo.service.RateLimitService;
+import com.example.demo.service.UsageRollupService;
+import com.example.demo.service.UsageSubscriptionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,11 +20,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -25,9 +41,17 @@ public class RateLimitController {
     
     private static final Logger logger = LoggerFactory.getLogger(RateLimitController.class);
     
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+    
     @Autowired
     private RateLimitService rateLimitService;
     
+    @Autowired
+    private UsageRollupService usageRollupService;
+    
+    @Autowired
+    private UsageSubscriptionService usageSubscriptionService;
+    
     /**
      * POST /limits - Define Rate Limit
      * Set a request limit for a given API key within a time window
@@ -47,6 +71,9 @@ public class RateLimitController {
             
             return ResponseEntity.ok(ApiResponse.success(message, rateLimit));
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             logger.error("Failed to create rate limit for API key: {}", request.getApiKey(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -55,12 +82,15 @@ public class RateLimitController {
     }
     
     /**
-     * GET /check?apiKey=xxx - Check API Access
-     * Increment usage counter for the key and check if usage exceeds the limit
+     * GET /check?apiKey=xxx&cost=1 - Check API Access
+     * Add the request's cost to the usage counter for the key if it fits within the limit;
+     * a blocked request consumes nothing
      */
     @GetMapping("/check")
     public ResponseEntity<ApiResponse<CheckResult>> checkApiAccess(
-            @RequestParam String apiKey) {
+            @RequestParam String apiKey,
+            @RequestParam(defaultValue = "1") int cost,
+            HttpServletRequest request) {
         
         logger.debug("Checking API access for key: {}", apiKey);
         
@@ -68,9 +98,13 @@ public class RateLimitController {
             return ResponseEntity.badRequest()
                     .body(ApiResponse.error("API key parameter is required"));
         }
+        if (cost < 1) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("cost must be positive"));
+        }
         
         try {
-            CheckResult result = rateLimitService.checkApiAccess(apiKey.trim());
+            CheckResult result = rateLimitService.checkApiAccess(apiKey.trim(), cost, request.getRemoteAddr());
             
             if (!result.isAllowed()) {
                 // Return 429 Too Many Requests for blocked requests
@@ -87,6 +121,110 @@ public class RateLimitController {
         }
     }
     
+    /**
+     * GET /check?apiKey=xxx&mode=lean - Check API Access (lean)
+     * Same decision as /check, answered as 204 or 429 with RateLimit-* and
+     * Retry-After headers and no body, skipping the JSON envelope
+     */
+    @GetMapping(value = "/check", params = "mode=lean")
+    public void checkApiAccessLean(@RequestParam String apiKey, 
+                                   @RequestParam(defaultValue = "1") int cost, 
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) {
+        
+        String key = apiKey.trim();
+        if (key.isEmpty() || cost < 1) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        
+        try {
+            RateLimitHeaders.write(response, rateLimitService.checkApiAccess(key, cost, request.getRemoteAddr()));
+            
+        } catch (Exception e) {
+            logger.error("Failed to check API access for key: {}", apiKey, e);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * GET /check?mode=ip&cost=1 - Check Client Address
+     * Same decision as /check, keyed by the caller's address instead of an API key and limited
+     * by the longest matching "ip:<cidr>" rule. The address is the request's remote address
+     * (behind a proxy, enable server.forward-headers-strategy) unless ip=xxx is given.
+     */
+    @GetMapping(value = "/check", params = "mode=ip")
+    public ResponseEntity<ApiResponse<CheckResult>> checkIpAccess(
+            @RequestParam(required = false) String ip,
+            @RequestParam(defaultValue = "1") int cost,
+            HttpServletRequest request) {
+        
+        String clientIp = ip != null && !ip.isBlank() ? ip.trim() : request.getRemoteAddr();
+        logger.debug("Checking access for client address: {}", clientIp);
+        
+        if (cost < 1) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("cost must be positive"));
+        }
+        
+        try {
+            CheckResult result = rateLimitService.checkIpAccess(clientIp, cost);
+            
+            if (!result.isAllowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(ApiResponse.error("Request blocked", result.getReason()));
+            } else {
+                return ResponseEntity.ok(ApiResponse.success("Request allowed", result));
+            }
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Failed to check access for client address: {}", clientIp, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to check API access"));
+        }
+    }
+    
+    /**
+     * POST /refund?apiKey=xxx&amount=1 - Refund Quota
+     * Give back units consumed by a request that failed before doing real work;
+     * usage never drops below zero and the window keeps its end time
+     */
+    @PostMapping("/refund")
+    public ResponseEntity<ApiResponse<UsageInfo>> refund(
+            @RequestParam String apiKey,
+            @RequestParam(defaultValue = "1") int amount) {
+        
+        logger.debug("Refunding {} units for API key: {}", amount, apiKey);
+        
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("API key parameter is required"));
+        }
+        if (amount < 1) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("amount must be positive"));
+        }
+        
+        try {
+            UsageInfo usageInfo = rateLimitService.refund(apiKey.trim(), amount);
+            
+            if (usageInfo == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Rate limit not found for API key"));
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Quota refunded", usageInfo));
+            
+        } catch (Exception e) {
+            logger.error("Failed to refund quota for API key: {}", apiKey, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to refund quota"));
+        }
+    }
+    
     /**
      * GET /usage?apiKey=xxx - Query Usage
      * Return current usage count, remaining quota, and window TTL
@@ -119,6 +257,82 @@ public class RateLimitController {
         }
     }
     
+    /**
+     * GET /usage/stream?apiKeys=a,b - Usage Subscription
+     * Server-Sent Events stream: a snapshot of the keys first, then coalesced
+     * threshold, blocked and reset events as checks report them
+     */
+    @GetMapping(value = "/usage/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamUsage(@RequestParam List<String> apiKeys) {
+        
+        Set<String> keys = new LinkedHashSet<>();
+        for (String apiKey : apiKeys) {
+            if (apiKey != null && !apiKey.trim().isEmpty()) {
+                keys.add(apiKey.trim());
+            }
+        }
+        if (keys.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        logger.debug("Opening usage stream for {} API keys", keys.size());
+        
+        try {
+            List<UsageInfo> snapshot = new ArrayList<>(keys.size());
+            for (String apiKey : keys) {
+                UsageInfo usageInfo = rateLimitService.getUsageInfo(apiKey);
+                if (usageInfo != null) {
+                    snapshot.add(usageInfo);
+                }
+            }
+            return ResponseEntity.ok(usageSubscriptionService.subscribe(keys, snapshot));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected usage stream: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
+    /**
+     * GET /usage/history?apiKey=xxx - Historical Usage
+     * Return per-minute or per-hour allowed/denied counts from the usage rollup table.
+     * Times are UTC; defaults to the last hour of minutes or the last day of hours.
+     */
+    @GetMapping("/usage/history")
+    public ResponseEntity<ApiResponse<List<UsageRollup>>> getUsageHistory(
+            @RequestParam String apiKey,
+            @RequestParam(defaultValue = "MINUTE") UsageGranularity granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        
+        logger.debug("Getting usage history for API key: {}", apiKey);
+        
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("API key parameter is required"));
+        }
+        
+        LocalDateTime end = to != null ? to : LocalDateTime.now(ZoneOffset.UTC);
+        LocalDateTime start = from != null ? from 
+                : end.minusSeconds(granularity == UsageGranularity.MINUTE ? 3600 : 86400);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("'from' must not be after 'to'"));
+        }
+        
+        try {
+            List<UsageRollup> history = usageRollupService.getUsageHistory(apiKey.trim(), granularity, start, end);
+            return ResponseEntity.ok(ApiResponse.success("Usage history retrieved successfully", history));
+            
+        } catch (Exception e) {
+            logger.error("Failed to get usage history for API key: {}", apiKey, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve usage history"));
+        }
+    }
+    
     /**
      * DELETE /limits/{apiKey} - Remove Limit Rule
      * Remove the rate limit configuration from MySQL and clear Redis entries
@@ -144,6 +358,9 @@ public class RateLimitController {
                         .body(ApiResponse.error("Rate limit not found for API key"));
             }
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             logger.error("Failed to delete rate limit for API key: {}", apiKey, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -151,6 +368,16 @@ public class RateLimitController {
         }
     }
     
+    /**
+     * DELETE /limits?apiKey=xxx - Remove Limit Rule
+     * For keys that cannot be a path segment, such as "ip:10.0.0.0/8"
+     */
+    @DeleteMapping(value = "/limits", params = "apiKey")
+    public ResponseEntity<ApiResponse<Object>> deleteRateLimitByParam(
+            @RequestParam String apiKey) {
+        return deleteRateLimit(apiKey);
+    }
+    
     /**
      * GET /limits - View All Limits
      * List all active API keys and their associated limits with pagination support
@@ -178,6 +405,40 @@ public class RateLimitController {
         }
     }
     
+    /**
+     * GET /limits?cursor=xxx - View All Limits (keyset pagination)
+     * Walks the table in (createdAt, id) order using an opaque continuation token.
+     * Pass an empty cursor for the first page; the total count is only computed on request.
+     */
+    @GetMapping(value = "/limits", params = "cursor")
+    public ResponseEntity<ApiResponse<CursorPage<RateLimit>>> getRateLimitsByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        
+        logger.debug("Retrieving rate limits with cursor: {}, size: {}", cursor, size);
+        
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Page size must be between 1 and " + MAX_CURSOR_PAGE_SIZE));
+        }
+        
+        try {
+            CursorPage<RateLimit> page = rateLimitService.getRateLimitsByCursor(cursor, size, includeTotal);
+            
+            String message = String.format("Retrieved %d rate limits", page.getSize());
+            return ResponseEntity.ok(ApiResponse.success(message, page));
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Invalid cursor"));
+        } catch (Exception e) {
+            logger.error("Failed to retrieve rate limits by cursor", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to retrieve rate limits"));
+        }
+    }
+    
     /**
      * GET /limits/{apiKey} - Get specific rate limit
      * Retrieve rate limit configuration for a specific API key
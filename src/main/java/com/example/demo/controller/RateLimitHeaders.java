@@ -0,0 +1,63 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.dto.CheckResult;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * IETF RateLimit header fields for the lean /check mode.
+ *
+ * Header names are constants and small decimal values come from a shared table,
+ * so writing the headers for a typical decision allocates nothing.
+ */
+final class RateLimitHeaders {
+    
+    static final String LIMIT = "RateLimit-Limit";
+    static final String REMAINING = "RateLimit-Remaining";
+    static final String RESET = "RateLimit-Reset";
+    static final String RETRY_AFTER = "Retry-After";
+    
+    private static final int CACHED_VALUES = 4096;
+    private static final String[] DECIMALS = new String[CACHED_VALUES];
+    
+    static {
+        for (int i = 0; i < CACHED_VALUES; i++) {
+            DECIMALS[i] = Integer.toString(i);
+        }
+    }
+    
+    private RateLimitHeaders() {
+    }
+    
+    /**
+     * Write status and headers for a check decision; the response has no body
+     */
+    static void write(HttpServletResponse response, CheckResult result) {
+        if (result.getTotalLimit() == null) {
+            // Unknown API key: no policy to describe
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        response.setHeader(LIMIT, decimal(result.getTotalLimit()));
+        // A blocked request consumed nothing, so what's left may still fit a cheaper one
+        response.setHeader(REMAINING, decimal(result.getRemainingQuota()));
+        Integer reset = result.getWindowTtl();
+        if (reset != null) {
+            response.setHeader(RESET, decimal(reset));
+        }
+        
+        if (result.isAllowed()) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } else {
+            if (reset != null) {
+                response.setHeader(RETRY_AFTER, decimal(reset));
+            }
+            response.setStatus(429);
+        }
+    }
+    
+    static String decimal(Integer value) {
+        int v = value != null ? Math.max(0, value) : 0;
+        return v < CACHED_VALUES ? DECIMALS[v] : Integer.toString(v);
+    }
+}
\ No newline at end of file
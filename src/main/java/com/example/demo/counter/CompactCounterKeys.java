@@ -0,0 +1,72 @@
+package com.example.demo.counter;
+
+import com.example.demo.util.Fingerprints;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Addressing for the compact Redis counter layout.
+ *
+ * An API key maps to its 64-bit fingerprint. The fingerprint picks one of a
+ * fixed number of bucket hashes ("rlc:&lt;bucket&gt;") and, as 8 big-endian bytes,
+ * names the count field inside it. The window end lives in a second field with
+ * one extra suffix byte. Both values are integers, which Redis keeps natively
+ * in the listpack encoding as long as a bucket stays under
+ * hash-max-listpack-entries (128 by default, so 64 keys per bucket).
+ */
+public final class CompactCounterKeys {
+    
+    public static final String BUCKET_PREFIX = "rlc:";
+    public static final int FIELD_LENGTH = Long.BYTES;
+    static final byte EXPIRY_SUFFIX = 'e';
+    
+    private final int buckets;
+    
+    public CompactCounterKeys(int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive");
+        }
+        this.buckets = buckets;
+    }
+    
+    public int getBuckets() {
+        return buckets;
+    }
+    
+    public long fingerprint(String apiKey) {
+        return Fingerprints.of(apiKey);
+    }
+    
+    public String bucketKey(long fingerprint) {
+        // Mixed again so the bucket choice is independent of the field bytes
+        return bucketKey((int) Long.remainderUnsigned(Fingerprints.mix(fingerprint), buckets));
+    }
+    
+    public String bucketKey(int bucket) {
+        return BUCKET_PREFIX + Integer.toHexString(bucket);
+    }
+    
+    public static byte[] countField(long fingerprint) {
+        byte[] field = new byte[FIELD_LENGTH];
+        for (int i = FIELD_LENGTH - 1; i >= 0; i--) {
+            field[i] = (byte) fingerprint;
+            fingerprint >>>= 8;
+        }
+        return field;
+    }
+    
+    public static byte[] expiryField(long fingerprint) {
+        byte[] field = new byte[FIELD_LENGTH + 1];
+        System.arraycopy(countField(fingerprint), 0, field, 0, FIELD_LENGTH);
+        field[FIELD_LENGTH] = EXPIRY_SUFFIX;
+        return field;
+    }
+    
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    static byte[] bytes(long value) {
+        return bytes(Long.toString(value));
+    }
+}
\ No newline at end of file
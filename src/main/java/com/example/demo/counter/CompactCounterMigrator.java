@@ -0,0 +1,103 @@
+package com.example.demo.counter;
+
+import com.example.demo.model.dto.CounterMigrationReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Moves counters from the plain layout ("rate_limit:" + apiKey strings) into the compact one.
+ *
+ * Compact-mode nodes never read plain keys, so during a rollout a key counts from zero
+ * until its plain counter is migrated; running the migration right after switching the
+ * layout keeps that gap to one pass. Each key moves in one script that merges it with any
+ * counter compact nodes already started and deletes the plain key, so repeated or
+ * concurrent runs are safe. Both keys must live on the same Redis node.
+ */
+@Component
+@ConditionalOnExpression("'${ratelimit.counter-store.type:redis}' == 'redis' "
+        + "and '${ratelimit.counter-store.redis.encoding:plain}' == 'compact'")
+public class CompactCounterMigrator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CompactCounterMigrator.class);
+    
+    private static final RedisScript<Long> MIGRATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_migrate_counter.lua"), Long.class);
+    
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Autowired
+    private CompactRedisCounterStore counterStore;
+    
+    @Value("${ratelimit.counter-store.redis.compact.migrate-on-start:false}")
+    private boolean migrateOnStart;
+    
+    @Value("${ratelimit.counter-store.redis.compact.migrate-batch-size:1000}")
+    private int batchSize;
+    
+    @EventListener(ApplicationStartedEvent.class)
+    public void migrateOnStart() {
+        if (migrateOnStart) {
+            migrate();
+        }
+    }
+    
+    /**
+     * Migrate every plain counter and report Redis memory before and after
+     */
+    public CounterMigrationReport migrate() {
+        long start = System.currentTimeMillis();
+        long usedMemoryBefore = usedMemory();
+        CompactCounterKeys keys = counterStore.getKeys();
+        
+        long scanned = 0;
+        long migrated = 0;
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RedisCounterStore.KEY_PREFIX + "*")
+                .count(batchSize)
+                .build();
+        
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String plainKey = cursor.next();
+                long fingerprint = keys.fingerprint(plainKey.substring(RedisCounterStore.KEY_PREFIX.length()));
+                Long moved = redisTemplate.execute(MIGRATE_SCRIPT, RedisSerializer.byteArray(), null,
+                                                   List.of(plainKey, keys.bucketKey(fingerprint)),
+                                                   CompactCounterKeys.countField(fingerprint),
+                                                   CompactCounterKeys.expiryField(fingerprint));
+                scanned++;
+                migrated += moved != null ? moved : 0L;
+            }
+        }
+        
+        long usedMemoryAfter = usedMemory();
+        CounterMigrationReport report = new CounterMigrationReport(scanned, migrated, usedMemoryBefore,
+                                                                   usedMemoryAfter, System.currentTimeMillis() - start);
+        logger.info("Migrated {} of {} plain counters to the compact layout in {} ms, used_memory {} -> {} bytes",
+                   migrated, scanned, report.getDurationMillis(), usedMemoryBefore, usedMemoryAfter);
+        return report;
+    }
+    
+    private long usedMemory() {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("memory"));
+        String usedMemory = info != null ? info.getProperty("used_memory") : null;
+        return usedMemory != null ? Long.parseLong(usedMemory.trim()) : -1L;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+package com.example.demo.counter;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Counters shared by all nodes through Redis, in a memory-compact layout.
+ *
+ * Instead of one string key per API key ("rate_limit:" + apiKey), a counter is a pair of
+ * integer fields named by the 8-byte fingerprint of the key, grouped into bucket hashes
+ * small enough for the listpack encoding (see CompactCounterKeys). The window end is stored
+ * next to the count, so expiry is checked against Redis server time inside the scripts and
+ * fields of ended windows are reclaimed by a background sweep instead of a per-key TTL.
+ * One node per sweep interval holds the sweep lease and walks only the bucket keys that exist.
+ *
+ * Two API keys with the same 64-bit fingerprint share a counter. Script arguments are binary,
+ * so this store talks to Redis through RedisTemplate and never through RedisCommandBatcher.
+ */
+@Component
+@ConditionalOnExpression("'${ratelimit.counter-store.type:redis}' == 'redis' "
+        + "and '${ratelimit.counter-store.redis.encoding:plain}' == 'compact'")
+public class CompactRedisCounterStore implements CounterStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CompactRedisCounterStore.class);
+    
+    private static final RedisScript<Long> TRY_INCREMENT_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_try_increment_counter.lua"), Long.class);
+    private static final RedisScript<List> TRY_INCREMENT_MANY_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_try_increment_counters.lua"), List.class);
+    private static final RedisScript<Long> REFUND_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_refund_counter.lua"), Long.class);
+    private static final RedisScript<List> GET_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_get_counter.lua"), List.class);
+    private static final RedisScript<Long> SET_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_set_counter.lua"), Long.class);
+    private static final RedisScript<Long> SWEEP_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/compact_sweep_bucket.lua"), Long.class);
+    
+    private static final String SWEEP_LEASE_KEY = "rlc-sweep:lease";
+    
+    private static final byte[] FIELD_LENGTH_ARG = CompactCounterKeys.bytes(CompactCounterKeys.FIELD_LENGTH);
+    private static final byte[] NO_LIMIT = CompactCounterKeys.bytes(Long.MAX_VALUE);
+    private static final byte[] ONE = CompactCounterKeys.bytes(1L);
+    
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Autowired(required = false)
+    private RedisCommandBatcher batcher;
+    
+    @Value("${ratelimit.counter-store.redis.compact.buckets:1048576}")
+    private int buckets;
+    
+    @Value("${ratelimit.counter-store.redis.compact.sweep-interval-ms:60000}")
+    private long sweepIntervalMillis;
+    
+    @Value("${ratelimit.counter-store.redis.compact.sweep-batch-size:1000}")
+    private int sweepBatchSize;
+    
+    private final String sweeperId = UUID.randomUUID().toString();
+    
+    private CompactCounterKeys keys;
+    
+    @PostConstruct
+    public void init() {
+        keys = new CompactCounterKeys(buckets);
+        if (batcher != null) {
+            logger.warn("Redis command batching does not apply to the compact counter layout");
+        }
+        logger.info("Compact Redis counter layout with {} buckets", buckets);
+    }
+    
+    @Override
+    public long incrementCounter(String apiKey, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        
+        try {
+            Long count = eval(TRY_INCREMENT_SCRIPT, fingerprint,
+                              CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint),
+                              ONE, NO_LIMIT, CompactCounterKeys.bytes(windowSeconds));
+            logger.debug("Incremented compact counter for key: {}, current count: {}", apiKey, count);
+            return count != null ? count : 0L;
+        
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        
+        try {
+            Long count = eval(TRY_INCREMENT_SCRIPT, fingerprint,
+                              CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint),
+                              CompactCounterKeys.bytes(cost), CompactCounterKeys.bytes(limit),
+                              CompactCounterKeys.bytes(windowSeconds));
+            logger.debug("Weighted increment for key: {}, cost: {}, count: {}", apiKey, cost, count);
+            return count != null ? count : 0L;
+        
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long[] tryIncrementCounters(String apiKey, long[] costs, long limit, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        byte[][] args = new byte[costs.length + 4][];
+        args[0] = CompactCounterKeys.countField(fingerprint);
+        args[1] = CompactCounterKeys.expiryField(fingerprint);
+        args[2] = CompactCounterKeys.bytes(limit);
+        args[3] = CompactCounterKeys.bytes(windowSeconds);
+        for (int i = 0; i < costs.length; i++) {
+            args[i + 4] = CompactCounterKeys.bytes(costs[i]);
+        }
+        
+        try {
+            List<?> counts = eval(TRY_INCREMENT_MANY_SCRIPT, fingerprint, args);
+            if (counts == null || counts.size() != costs.length) {
+                throw new IllegalStateException("Unexpected script reply: " + counts);
+            }
+            
+            long[] results = new long[costs.length];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = ((Number) counts.get(i)).longValue();
+            }
+            logger.debug("Coalesced {} weighted increments for key: {}", costs.length, apiKey);
+            return results;
+        
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long refundCounter(String apiKey, long amount, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        
+        try {
+            Long count = eval(REFUND_SCRIPT, fingerprint,
+                              CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint),
+                              CompactCounterKeys.bytes(amount));
+            logger.debug("Refunded {} for key: {}, count: {}", amount, apiKey, count);
+            return count != null ? count : -2L;
+        
+        } catch (Exception e) {
+            logger.error("Failed to refund counter for key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long getCurrentCount(String apiKey, int windowSeconds) {
+        try {
+            return read(apiKey)[0];
+        } catch (Exception e) {
+            logger.error("Failed to get current count for key: {}", apiKey, e);
+            return 0L;
+        }
+    }
+    
+    @Override
+    public long getTtl(String apiKey, int windowSeconds) {
+        try {
+            return read(apiKey)[1];
+        } catch (Exception e) {
+            logger.error("Failed to get TTL for key: {}", apiKey, e);
+            return -1L;
+        }
+    }
+    
+    @Override
+    public boolean deleteCounter(String apiKey, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        byte[] bucketKey = CompactCounterKeys.bytes(keys.bucketKey(fingerprint));
+        
+        try {
+            Long deleted = redisTemplate.execute((RedisCallback<Long>) connection -> connection.hashCommands()
+                    .hDel(bucketKey, CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint)));
+            boolean result = deleted != null && deleted > 0;
+            logger.debug("Deleted compact counter for key: {}, success: {}", apiKey, result);
+            return result;
+        
+        } catch (Exception e) {
+            logger.error("Failed to delete counter for key: {}", apiKey, e);
+            return false;
+        }
+    }
+    
+    @Override
+    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+        long fingerprint = keys.fingerprint(apiKey);
+        
+        try {
+            eval(SET_SCRIPT, fingerprint,
+                 CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint),
+                 CompactCounterKeys.bytes(value), CompactCounterKeys.bytes(windowSeconds));
+            logger.debug("Set compact counter for key: {}, value: {}, ttl: {} seconds", apiKey, value, windowSeconds);
+        
+        } catch (Exception e) {
+            logger.error("Failed to set counter with TTL for key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public boolean keyExists(String apiKey, int windowSeconds) {
+        try {
+            return read(apiKey)[1] != -2L;
+        } catch (Exception e) {
+            logger.error("Failed to check key existence for key: {}", apiKey, e);
+            return false;
+        }
+    }
+    
+    /**
+     * Remove counters of ended windows from every existing bucket.
+     * Buckets that still receive writes keep their TTL alive, so their stale fields
+     * are only reclaimed here; a bucket with no writes at all simply expires.
+     * Only the node that takes the lease for this interval sweeps, so the cost of a pass
+     * follows the number of live buckets rather than the node count or configured buckets.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.counter-store.redis.compact.sweep-interval-ms:60000}")
+    public void sweep() {
+        try {
+            Boolean leased = redisTemplate.opsForValue()
+                    .setIfAbsent(SWEEP_LEASE_KEY, sweeperId, Duration.ofMillis(sweepIntervalMillis));
+            if (!Boolean.TRUE.equals(leased)) {
+                return;
+            }
+            
+            long start = System.currentTimeMillis();
+            long[] swept = sweepLiveBuckets();
+            logger.debug("Swept {} ended counters from {} buckets in {} ms",
+                         swept[1], swept[0], System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.warn("Compact counter sweep failed", e);
+        }
+    }
+    
+    /**
+     * Walk the bucket keys with SCAN and sweep each batch in one pipeline
+     *
+     * @return {buckets visited, counters removed}
+     */
+    private long[] sweepLiveBuckets() {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(CompactCounterKeys.BUCKET_PREFIX + "*")
+                .count(sweepBatchSize)
+                .build();
+        
+        long visited = 0;
+        long removed = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<byte[]> batch = new ArrayList<>(sweepBatchSize);
+            while (cursor.hasNext()) {
+                batch.add(CompactCounterKeys.bytes(cursor.next()));
+                if (batch.size() >= sweepBatchSize || !cursor.hasNext()) {
+                    visited += batch.size();
+                    removed += sweepBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        return new long[] { visited, removed };
+    }
+    
+    private long sweepBatch(List<byte[]> bucketKeys) {
+        byte[] script = SWEEP_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        String sha = SWEEP_SCRIPT.getSha1();
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // Loaded first on the same connection, so the EVALSHAs after it cannot hit NOSCRIPT
+            connection.scriptingCommands().scriptLoad(script);
+            for (byte[] bucketKey : bucketKeys) {
+                connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1, bucketKey, FIELD_LENGTH_ARG);
+            }
+            return null;
+        });
+        
+        long removed = 0;
+        for (Object reply : replies) {
+            if (reply instanceof Long count) {
+                removed += count;
+            }
+        }
+        return removed;
+    }
+    
+    public CompactCounterKeys getKeys() {
+        return keys;
+    }
+    
+    /**
+     * @return {count, ttl} with ttl -2 when there is no active window
+     */
+    private long[] read(String apiKey) {
+        long fingerprint = keys.fingerprint(apiKey);
+        List<?> reply = eval(GET_SCRIPT, fingerprint,
+                             CompactCounterKeys.countField(fingerprint), CompactCounterKeys.expiryField(fingerprint));
+        if (reply == null || reply.size() < 2) {
+            throw new IllegalStateException("Unexpected script reply: " + reply);
+        }
+        return new long[] { ((Number) reply.get(0)).longValue(), ((Number) reply.get(1)).longValue() };
+    }
+    
+    /**
+     * Run a script against the key's bucket with binary arguments
+     */
+    private <T> T eval(RedisScript<T> script, long fingerprint, byte[]... args) {
+        return redisTemplate.execute(script, RedisSerializer.byteArray(), null,
+                                     List.of(keys.bucketKey(fingerprint)), (Object[]) args);
+    }
+}
\ No newline at end of file
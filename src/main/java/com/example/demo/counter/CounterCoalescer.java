@@ -0,0 +1,188 @@
+package com.example.demo.counter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merges concurrent weighted increments for the same key into one counter store call.
+ *
+ * While a call for a key is in flight, further requests for that key queue up. When
+ * it returns, one of the queued requests becomes the leader and sends everything
+ * queued so far (up to max-batch-size) through CounterStore.tryIncrementCounters,
+ * which admits the requests in order. Each caller gets its own usage value and
+ * decision, exactly as if the calls had run one after another. A request waits for
+ * at most the call already in flight plus its own, so merging adds no timer delay.
+ */
+@Component
+@ConditionalOnProperty(name = "ratelimit.coalescing.enabled", havingValue = "true")
+public class CounterCoalescer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CounterCoalescer.class);
+    
+    @Autowired
+    private CounterStore counterStore;
+    
+    @Value("${ratelimit.coalescing.max-batch-size:256}")
+    private int maxBatchSize;
+    
+    private final ConcurrentHashMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    
+    /**
+     * Same contract as CounterStore.tryIncrementCounter
+     */
+    public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        Request request = new Request(cost, limit, windowSeconds);
+        while (true) {
+            KeyQueue queue = queues.computeIfAbsent(apiKey, key -> new KeyQueue());
+            queue.lock.lock();
+            try {
+                if (queue.retired) {
+                    // Removed from the map between lookup and lock; use the new queue
+                    continue;
+                }
+                queue.pending.add(request);
+                while (queue.busy && !request.done) {
+                    queue.finished.awaitUninterruptibly();
+                }
+                if (request.done) {
+                    return request.result();
+                }
+                queue.busy = true;
+            } finally {
+                queue.lock.unlock();
+            }
+            
+            lead(apiKey, queue, request);
+            return request.result();
+        }
+    }
+    
+    /**
+     * Send batches for the key until the leader's own request is answered
+     */
+    private void lead(String apiKey, KeyQueue queue, Request leader) {
+        while (true) {
+            List<Request> batch = new ArrayList<>();
+            queue.lock.lock();
+            try {
+                Request head = queue.pending.peek();
+                for (Iterator<Request> it = queue.pending.iterator(); it.hasNext() && batch.size() < maxBatchSize;) {
+                    Request request = it.next();
+                    // A rule change mid-flight can leave requests with another limit; they go in a later batch
+                    if (request.limit == head.limit && request.windowSeconds == head.windowSeconds) {
+                        batch.add(request);
+                        it.remove();
+                    }
+                }
+            } finally {
+                queue.lock.unlock();
+            }
+            
+            execute(apiKey, batch);
+            
+            queue.lock.lock();
+            try {
+                if (leader.done) {
+                    queue.busy = false;
+                    if (queue.pending.isEmpty()) {
+                        queue.retired = true;
+                        queues.remove(apiKey, queue);
+                    }
+                    queue.finished.signalAll();
+                    return;
+                }
+                // The leader did not fit in this batch; others are answered, keep going
+                queue.finished.signalAll();
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+    }
+    
+    private void execute(String apiKey, List<Request> batch) {
+        Request first = batch.get(0);
+        try {
+            long[] results;
+            if (batch.size() == 1) {
+                results = new long[] {counterStore.tryIncrementCounter(apiKey, first.cost, first.limit, first.windowSeconds)};
+            } else {
+                long[] costs = new long[batch.size()];
+                for (int i = 0; i < costs.length; i++) {
+                    costs[i] = batch.get(i).cost;
+                }
+                results = counterStore.tryIncrementCounters(apiKey, costs, first.limit, first.windowSeconds);
+                logger.debug("Coalesced {} increments for API key: {}", batch.size(), apiKey);
+            }
+            for (int i = 0; i < results.length; i++) {
+                batch.get(i).complete(results[i], null);
+            }
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.complete(0, e);
+            }
+        }
+        calls.increment();
+        requests.add(batch.size());
+    }
+    
+    public long getCalls() {
+        return calls.sum();
+    }
+    
+    public long getRequests() {
+        return requests.sum();
+    }
+    
+    private static final class KeyQueue {
+        
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition finished = lock.newCondition();
+        private final ArrayDeque<Request> pending = new ArrayDeque<>();
+        private boolean busy;
+        private boolean retired;
+    }
+    
+    private static final class Request {
+        
+        private final long cost;
+        private final long limit;
+        private final int windowSeconds;
+        private volatile boolean done;
+        private long usage;
+        private RuntimeException error;
+        
+        private Request(long cost, long limit, int windowSeconds) {
+            this.cost = cost;
+            this.limit = limit;
+            this.windowSeconds = windowSeconds;
+        }
+        
+        private void complete(long usage, RuntimeException error) {
+            this.usage = usage;
+            this.error = error;
+            this.done = true;
+        }
+        
+        private long result() {
+            if (error != null) {
+                throw error;
+            }
+            return usage;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.example.demo.counter;
+
+/**
+ * Fixed-window usage counters keyed by API key.
+ *
+ * The first increment of a window creates the counter with a TTL of the window
+ * length; later increments only add to it. Weighted checks add their cost in
+ * one step and refunds subtract it again, within the same window. RedisCounterStore keeps counters in
+ * Redis so all nodes share them; LocalCounterStore keeps them in process for
+ * single-node and edge deployments without Redis.
+ *
+ * Every method takes the window length of the key's rule. Stores that key counters
+ * by API key alone ignore it; stores that put the window into the key (epoch-aligned
+ * Redis windows) need it to find the active window.
+ */
+public interface CounterStore {
+    
+    /**
+     * Add one to the counter, starting a new window of windowSeconds if none is active
+     *
+     * @return the count after the increment
+     */
+    long incrementCounter(String apiKey, int windowSeconds);
+    
+    /**
+     * Add cost to the counter only if the result stays within limit, starting a
+     * new window of windowSeconds if none is active. A request that doesn't fit
+     * leaves the counter untouched, so rejected requests consume nothing.
+     *
+     * @return the count including cost; cost was applied only if this is at most limit
+     */
+    long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds);
+    
+    /**
+     * Weighted consume for several requests on one key, in order. Each request is
+     * admitted only if its cost still fits after the requests admitted before it.
+     * Stores with a remote counter override this to do it in one round trip.
+     *
+     * @return per request, the count including its cost; admitted if at most limit
+     */
+    default long[] tryIncrementCounters(String apiKey, long[] costs, long limit, int windowSeconds) {
+        long[] results = new long[costs.length];
+        for (int i = 0; i < costs.length; i++) {
+            results[i] = tryIncrementCounter(apiKey, costs[i], limit, windowSeconds);
+        }
+        return results;
+    }
+    
+    /**
+     * Give back units consumed in the active window, never going below zero
+     *
+     * @return the count after the refund, or -2 if there is no active window
+     */
+    long refundCounter(String apiKey, long amount, int windowSeconds);
+    
+    /**
+     * @return the count in the active window, or 0
+     */
+    long getCurrentCount(String apiKey, int windowSeconds);
+    
+    /**
+     * @return seconds until the active window ends, -2 if there is none (as Redis TTL)
+     */
+    long getTtl(String apiKey, int windowSeconds);
+    
+    boolean deleteCounter(String apiKey, int windowSeconds);
+    
+    void setCounterWithTtl(String apiKey, long value, int windowSeconds);
+    
+    boolean keyExists(String apiKey, int windowSeconds);
+}
\ No newline at end of file
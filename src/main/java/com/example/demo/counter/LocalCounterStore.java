@@ -0,0 +1,404 @@
+package com.example.demo.counter;
+
+import com.example.demo.service.SnapshotParticipant;
+import com.example.demo.util.HierarchicalTimingWheel;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process counters for single-node and edge deployments without Redis.
+ *
+ * Keys are spread over stripes. Each stripe has its own ConcurrentHashMap and
+ * its own lock. An increment inside an active window is one map read and one
+ * atomic add, with no lock. Only starting a window, deleting a key or evicting
+ * one takes the stripe lock.
+ *
+ * Each stripe holds at most max-keys / stripes counters. When a stripe is full,
+ * CLOCK (second-chance) eviction removes a counter that was not used since the
+ * hand last passed it, which approximates LRU without reordering on every hit.
+ * Windows are checked lazily on access, so expiry is exact. A hierarchical
+ * timing wheel reclaims the memory of expired counters. There are no per-key
+ * timers.
+ */
+@Component
+@ConditionalOnProperty(name = "ratelimit.counter-store.type", havingValue = "local")
+public class LocalCounterStore implements CounterStore, SnapshotParticipant {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LocalCounterStore.class);
+    
+    @Value("${ratelimit.counter-store.local.max-keys:1000000}")
+    private int maxKeys;
+    
+    @Value("${ratelimit.counter-store.local.stripes:64}")
+    private int stripeCount;
+    
+    @Value("${ratelimit.counter-store.local.tick-ms:100}")
+    private long tickMillis;
+    
+    private Stripe[] stripes;
+    private int stripeMask;
+    private HierarchicalTimingWheel<Counter> wheel;
+    
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    
+    static final class Counter {
+        final String apiKey;
+        final AtomicLong count = new AtomicLong();
+        volatile long expiresAtMillis;
+        volatile boolean referenced;
+        volatile boolean removed;
+        
+        // CLOCK ring links, guarded by the stripe lock
+        Counter prev;
+        Counter next;
+        
+        Counter(String apiKey) {
+            this.apiKey = apiKey;
+        }
+        
+        boolean isActive(long now) {
+            return !removed && now < expiresAtMillis;
+        }
+    }
+    
+    private static final class Stripe {
+        final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+        final int capacity;
+        Counter hand;
+        int size;
+        
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+    
+    @PostConstruct
+    public void init() {
+        int count = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        stripes = new Stripe[count];
+        stripeMask = count - 1;
+        int capacity = Math.max(1, (maxKeys + count - 1) / count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+        wheel = new HierarchicalTimingWheel<>(tickMillis, System.currentTimeMillis());
+        logger.info("Local counter store: {} stripes, up to {} keys", count, (long) capacity * count);
+    }
+    
+    @Override
+    public long incrementCounter(String apiKey, int windowSeconds) {
+        return incrementCounter(apiKey, windowSeconds, System.currentTimeMillis());
+    }
+    
+    long incrementCounter(String apiKey, int windowSeconds, long now) {
+        Stripe stripe = stripeFor(apiKey);
+        Counter counter = stripe.counters.get(apiKey);
+        if (counter != null && counter.isActive(now)) {
+            touch(counter);
+            return counter.count.incrementAndGet();
+        }
+        
+        synchronized (stripe) {
+            counter = getOrCreate(stripe, apiKey);
+            if (now >= counter.expiresAtMillis) {
+                // Reset the count before publishing the new window so lock-free readers never see a stale count
+                counter.count.set(0);
+                startWindow(counter, now + windowSeconds * 1000L);
+            }
+            touch(counter);
+            return counter.count.incrementAndGet();
+        }
+    }
+    
+    @Override
+    public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        return tryIncrementCounter(apiKey, cost, limit, windowSeconds, System.currentTimeMillis());
+    }
+    
+    long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds, long now) {
+        Stripe stripe = stripeFor(apiKey);
+        Counter counter = stripe.counters.get(apiKey);
+        if (counter != null && counter.isActive(now)) {
+            touch(counter);
+            return addWithin(counter.count, cost, limit);
+        }
+        if (cost > limit) {
+            // Can't fit even in an empty window; don't start one
+            return cost;
+        }
+        
+        synchronized (stripe) {
+            counter = getOrCreate(stripe, apiKey);
+            if (now >= counter.expiresAtMillis) {
+                counter.count.set(0);
+                startWindow(counter, now + windowSeconds * 1000L);
+            }
+            touch(counter);
+            return addWithin(counter.count, cost, limit);
+        }
+    }
+    
+    @Override
+    public long refundCounter(String apiKey, long amount, int windowSeconds) {
+        return refundCounter(apiKey, amount, windowSeconds, System.currentTimeMillis());
+    }
+    
+    long refundCounter(String apiKey, long amount, int windowSeconds, long now) {
+        Counter counter = stripeFor(apiKey).counters.get(apiKey);
+        if (counter == null || !counter.isActive(now)) {
+            return -2L;
+        }
+        return counter.count.updateAndGet(current -> Math.max(0, current - amount));
+    }
+    
+    @Override
+    public long getCurrentCount(String apiKey, int windowSeconds) {
+        return getCurrentCount(apiKey, windowSeconds, System.currentTimeMillis());
+    }
+    
+    long getCurrentCount(String apiKey, int windowSeconds, long now) {
+        Counter counter = stripeFor(apiKey).counters.get(apiKey);
+        return counter != null && counter.isActive(now) ? counter.count.get() : 0L;
+    }
+    
+    @Override
+    public long getTtl(String apiKey, int windowSeconds) {
+        return getTtl(apiKey, windowSeconds, System.currentTimeMillis());
+    }
+    
+    long getTtl(String apiKey, int windowSeconds, long now) {
+        Counter counter = stripeFor(apiKey).counters.get(apiKey);
+        if (counter == null || !counter.isActive(now)) {
+            return -2L;
+        }
+        // Rounded like Redis TTL
+        return (counter.expiresAtMillis - now + 500) / 1000;
+    }
+    
+    @Override
+    public boolean deleteCounter(String apiKey, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        Stripe stripe = stripeFor(apiKey);
+        synchronized (stripe) {
+            Counter counter = stripe.counters.get(apiKey);
+            if (counter == null) {
+                return false;
+            }
+            boolean active = counter.isActive(now);
+            unlink(stripe, counter);
+            return active;
+        }
+    }
+    
+    @Override
+    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+        setCounter(apiKey, value, System.currentTimeMillis() + windowSeconds * 1000L);
+    }
+    
+    @Override
+    public boolean keyExists(String apiKey, int windowSeconds) {
+        Counter counter = stripeFor(apiKey).counters.get(apiKey);
+        return counter != null && counter.isActive(System.currentTimeMillis());
+    }
+    
+    /**
+     * Drop counters whose window has ended
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.counter-store.local.tick-ms:100}")
+    public void expire() {
+        expire(System.currentTimeMillis());
+    }
+    
+    void expire(long now) {
+        List<Counter> due = wheel.advance(now);
+        for (Counter counter : due) {
+            Stripe stripe = stripeFor(counter.apiKey);
+            synchronized (stripe) {
+                // A counter that started a new window since it was scheduled stays
+                if (!counter.removed && now >= counter.expiresAtMillis) {
+                    unlink(stripe, counter);
+                    expirations.incrementAndGet();
+                }
+            }
+        }
+    }
+    
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.counters.size();
+        }
+        return size;
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    public long getExpirations() {
+        return expirations.get();
+    }
+    
+    @Override
+    public String snapshotSection() {
+        return "counters";
+    }
+    
+    /**
+     * Write (apiKey, count, expiresAt) for every active counter, ended by a false marker
+     */
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            for (Counter counter : stripe.counters.values()) {
+                long expiresAt = counter.expiresAtMillis;
+                if (counter.isActive(now)) {
+                    out.writeBoolean(true);
+                    out.writeUTF(counter.apiKey);
+                    out.writeLong(counter.count.get());
+                    out.writeLong(expiresAt);
+                }
+            }
+        }
+        out.writeBoolean(false);
+    }
+    
+    /**
+     * Restore counters whose window is still open; their original end times are kept
+     */
+    @Override
+    public void restoreSnapshot(DataInputStream in, long snapshotMillis) throws IOException {
+        long now = System.currentTimeMillis();
+        int restored = 0;
+        while (in.readBoolean()) {
+            String apiKey = in.readUTF();
+            long count = in.readLong();
+            long expiresAt = in.readLong();
+            if (expiresAt > now) {
+                setCounter(apiKey, count, expiresAt);
+                restored++;
+            }
+        }
+        logger.info("Restored {} local counters from snapshot", restored);
+    }
+    
+    private void setCounter(String apiKey, long value, long expiresAtMillis) {
+        Stripe stripe = stripeFor(apiKey);
+        synchronized (stripe) {
+            Counter counter = getOrCreate(stripe, apiKey);
+            counter.count.set(value);
+            startWindow(counter, expiresAtMillis);
+            touch(counter);
+        }
+    }
+    
+    /**
+     * CAS cost onto count unless that would pass limit
+     *
+     * @return count plus cost, applied only if within limit
+     */
+    private static long addWithin(AtomicLong count, long cost, long limit) {
+        while (true) {
+            long current = count.get();
+            long next = current + cost;
+            if (next > limit || count.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+    
+    private Stripe stripeFor(String apiKey) {
+        int hash = apiKey.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+    
+    private static void touch(Counter counter) {
+        // Read before write so hot keys don't keep dirtying the cache line
+        if (!counter.referenced) {
+            counter.referenced = true;
+        }
+    }
+    
+    private void startWindow(Counter counter, long expiresAtMillis) {
+        counter.expiresAtMillis = expiresAtMillis;
+        wheel.schedule(counter, expiresAtMillis);
+    }
+    
+    /**
+     * Caller holds the stripe lock
+     */
+    private Counter getOrCreate(Stripe stripe, String apiKey) {
+        Counter counter = stripe.counters.get(apiKey);
+        if (counter != null) {
+            return counter;
+        }
+        if (stripe.size >= stripe.capacity) {
+            evictOne(stripe);
+        }
+        counter = new Counter(apiKey);
+        if (stripe.hand == null) {
+            counter.prev = counter;
+            counter.next = counter;
+            stripe.hand = counter;
+        } else {
+            // Insert just behind the hand so a new counter gets a full sweep before eviction
+            counter.next = stripe.hand;
+            counter.prev = stripe.hand.prev;
+            stripe.hand.prev.next = counter;
+            stripe.hand.prev = counter;
+        }
+        stripe.size++;
+        stripe.counters.put(apiKey, counter);
+        return counter;
+    }
+    
+    /**
+     * CLOCK sweep: clear reference bits until an unreferenced counter comes round.
+     * Caller holds the stripe lock.
+     */
+    private void evictOne(Stripe stripe) {
+        long now = System.currentTimeMillis();
+        Counter candidate = stripe.hand;
+        while (candidate.referenced && candidate.isActive(now)) {
+            candidate.referenced = false;
+            candidate = candidate.next;
+        }
+        stripe.hand = candidate.next;
+        unlink(stripe, candidate);
+        evictions.incrementAndGet();
+    }
+    
+    /**
+     * Caller holds the stripe lock
+     */
+    private void unlink(Stripe stripe, Counter counter) {
+        counter.removed = true;
+        stripe.counters.remove(counter.apiKey, counter);
+        if (counter.next == counter) {
+            stripe.hand = null;
+        } else {
+            counter.prev.next = counter.next;
+            counter.next.prev = counter.prev;
+            if (stripe.hand == counter) {
+                stripe.hand = counter.next;
+            }
+        }
+        counter.prev = null;
+        counter.next = null;
+        stripe.size--;
+    }
+}
\ No newline at end of file
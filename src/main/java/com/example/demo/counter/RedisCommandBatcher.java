@@ -0,0 +1,247 @@
+package com.example.demo.counter;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Sends Redis commands from concurrent requests as pipelined batches on one shared connection.
+ *
+ * Callers queue a command and wait for its future. A dedicated thread takes the first
+ * queued command, keeps collecting for up to window-micros or max-batch-size commands,
+ * writes them all with auto-flush off and then flushes the socket once. Lettuce completes
+ * each future in order as the replies arrive. Under load this turns one syscall and one
+ * network packet per request into one per batch; a lone request waits at most the window.
+ *
+ * Only standalone Redis is supported. Other setups log a warning and keep using RedisTemplate.
+ */
+@Component
+@ConditionalOnProperty(name = "ratelimit.redis-batching.enabled", havingValue = "true")
+public class RedisCommandBatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RedisCommandBatcher.class);
+    
+    @Autowired
+    private LettuceConnectionFactory connectionFactory;
+    
+    @Value("${ratelimit.redis-batching.window-micros:20}")
+    private long windowMicros;
+    
+    @Value("${ratelimit.redis-batching.max-batch-size:128}")
+    private int maxBatchSize;
+    
+    @Value("${ratelimit.redis-batching.timeout-ms:2000}")
+    private long timeoutMillis;
+    
+    private final Queue<PendingCommand<?>> queue = new ConcurrentLinkedQueue<>();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedCommands = new LongAdder();
+    
+    private StatefulRedisConnection<String, String> connection;
+    private RedisAsyncCommands<String, String> commands;
+    private volatile boolean running;
+    private volatile boolean idle;
+    private Thread flusherThread;
+    
+    @PostConstruct
+    public void start() {
+        AbstractRedisClient client = connectionFactory.getNativeClient();
+        if (!(client instanceof RedisClient redisClient)) {
+            logger.warn("Redis command batching needs a standalone Redis client, found {}; batching disabled",
+                       client != null ? client.getClass().getSimpleName() : "none");
+            return;
+        }
+        start(redisClient.connect(StringCodec.UTF8));
+    }
+    
+    void start(StatefulRedisConnection<String, String> connection) {
+        this.connection = connection;
+        connection.setAutoFlushCommands(false);
+        commands = connection.async();
+        
+        running = true;
+        flusherThread = new Thread(this::flushLoop, "redis-command-batcher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+        logger.info("Redis command batching started, window {} us, max batch {}", windowMicros, maxBatchSize);
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Queue a command for the next batch. The function runs on the batcher thread and must
+     * only issue the command, never wait on it.
+     */
+    public <T> CompletableFuture<T> submit(Function<RedisAsyncCommands<String, String>, RedisFuture<T>> command) {
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        if (!running) {
+            pending.result.completeExceptionally(new IllegalStateException("Redis command batcher is not running"));
+            return pending.result;
+        }
+        queue.offer(pending);
+        if (idle) {
+            LockSupport.unpark(flusherThread);
+        }
+        return pending.result;
+    }
+    
+    /**
+     * Queue a command and wait for its reply
+     */
+    public <T> T execute(Function<RedisAsyncCommands<String, String>, RedisFuture<T>> command) throws Exception {
+        CompletableFuture<T> result = submit(command);
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            // Drops the command if it has not been written yet
+            result.cancel(false);
+        }
+    }
+    
+    /**
+     * Run a script returning an integer
+     */
+    public Long evalLong(RedisScript<Long> script, String key, String... args) throws Exception {
+        return eval(script, ScriptOutputType.INTEGER, key, args);
+    }
+    
+    /**
+     * Run a script on one key, loading it with EVAL if Redis lost its script cache
+     */
+    public <T> T eval(RedisScript<?> script, ScriptOutputType type, String key, String... args) throws Exception {
+        String[] keys = {key};
+        try {
+            return execute(c -> c.<T>evalsha(script.getSha1(), type, keys, args));
+        } catch (RedisNoScriptException e) {
+            return execute(c -> c.<T>eval(script.getScriptAsString(), type, keys, args));
+        }
+    }
+    
+    public long getFlushes() {
+        return flushes.sum();
+    }
+    
+    public long getFlushedCommands() {
+        return flushedCommands.sum();
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusherThread);
+        try {
+            flusherThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        PendingCommand<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Redis command batcher stopped"));
+        }
+        connection.close();
+        logger.info("Redis command batching stopped, {} commands in {} flushes", getFlushedCommands(), getFlushes());
+    }
+    
+    private void flushLoop() {
+        List<PendingCommand<?>> batch = new ArrayList<>(maxBatchSize);
+        long windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        while (running) {
+            PendingCommand<?> first = queue.poll();
+            if (first == null) {
+                idle = true;
+                // Re-check after publishing idle so a command queued meanwhile is not missed
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+            
+            batch.add(first);
+            long deadline = System.nanoTime() + windowNanos;
+            while (batch.size() < maxBatchSize) {
+                PendingCommand<?> next = queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                } else if (System.nanoTime() - deadline >= 0) {
+                    break;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            
+            for (PendingCommand<?> pending : batch) {
+                pending.dispatch(commands);
+            }
+            try {
+                connection.flushCommands();
+            } catch (Exception e) {
+                logger.warn("Failed to flush {} Redis commands", batch.size(), e);
+            }
+            flushes.increment();
+            flushedCommands.add(batch.size());
+            batch.clear();
+        }
+    }
+    
+    private static final class PendingCommand<T> {
+        
+        private final Function<RedisAsyncCommands<String, String>, RedisFuture<T>> command;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        
+        private PendingCommand(Function<RedisAsyncCommands<String, String>, RedisFuture<T>> command) {
+            this.command = command;
+        }
+        
+        private void dispatch(RedisAsyncCommands<String, String> commands) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                command.apply(commands).whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,340 @@
+package com.example.demo.counter;
+
+import io.lettuce.core.ScriptOutputType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counters shared by all nodes through Redis INCR + EXPIRE. The default store.
+ * With ratelimit.counter-store.redis.encoding=compact, CompactRedisCounterStore is used instead.
+ *
+ * By default a window starts with the first request and lives in "rate_limit:" + apiKey
+ * until its TTL runs out. With ratelimit.counter-store.redis.aligned-windows=true, windows
+ * are aligned to the epoch (now / windowSeconds) and the window index is part of the key.
+ * The reset time is then known locally, expiry is one idempotent EXPIREAT to the window end,
+ * and consecutive windows never share a key. Aligned keys can only be addressed with their
+ * window length, so the window-less lookups are unsupported in that mode.
+ */
+@Component
+@ConditionalOnExpression("'${ratelimit.counter-store.type:redis}' == 'redis' "
+        + "and '${ratelimit.counter-store.redis.encoding:plain}' != 'compact'")
+public class RedisCounterStore implements CounterStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RedisCounterStore.class);
+    public static final String KEY_PREFIX = "rate_limit:";
+    
+    private static final RedisScript<Long> TRY_INCREMENT_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/try_increment_counter.lua"), Long.class);
+    private static final RedisScript<List> TRY_INCREMENT_MANY_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/try_increment_counters.lua"), List.class);
+    private static final RedisScript<Long> TRY_INCREMENT_ALIGNED_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/try_increment_aligned_counter.lua"), Long.class);
+    private static final RedisScript<List> TRY_INCREMENT_ALIGNED_MANY_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/try_increment_aligned_counters.lua"), List.class);
+    private static final RedisScript<Long> REFUND_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/refund_counter.lua"), Long.class);
+    
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Autowired(required = false)
+    private RedisCommandBatcher batcher;
+    
+    @Value("${ratelimit.counter-store.redis.aligned-windows:false}")
+    private boolean alignedWindows;
+    
+    /**
+     * Increment counter for API key and set TTL if it's the first request
+     * Uses Redis INCR command for atomic increment
+     */
+    @Override
+    public long incrementCounter(String apiKey, int windowSeconds) {
+        if (alignedWindows) {
+            return incrementAligned(apiKey, windowSeconds);
+        }
+        String key = KEY_PREFIX + apiKey;
+        
+        try {
+            if (batching()) {
+                Long currentCount = batcher.execute(c -> c.incr(key));
+                if (currentCount != null && currentCount == 1) {
+                    batcher.execute(c -> c.expire(key, windowSeconds));
+                }
+                return currentCount != null ? currentCount : 0L;
+            }
+            
+            // Increment counter atomically
+            Long currentCount = redisTemplate.opsForValue().increment(key);
+            
+            // If this is the first increment (count = 1), set the TTL
+            if (currentCount != null && currentCount == 1) {
+                redisTemplate.expire(key, Duration.ofSeconds(windowSeconds));
+                logger.debug("Set TTL {} seconds for key: {}", windowSeconds, key);
+            }
+            
+            logger.debug("Incremented counter for key: {}, current count: {}", key, currentCount);
+            return currentCount != null ? currentCount : 0L;
+            
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    /**
+     * INCR and EXPIREAT to the window end, sent together in one round trip
+     */
+    private long incrementAligned(String apiKey, int windowSeconds) {
+        long now = nowSeconds();
+        String key = alignedKey(apiKey, windowSeconds, now);
+        long windowEnd = windowEnd(windowSeconds, now);
+        
+        try {
+            Long currentCount;
+            if (batching()) {
+                // Queued in order, so both land in the same batch and EXPIREAT sees the key
+                CompletableFuture<Long> count = batcher.submit(c -> c.incr(key));
+                batcher.execute(c -> c.expireat(key, windowEnd));
+                currentCount = count.get();
+            } else {
+                List<Object> replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                        ops.opsForValue().increment(key);
+                        ops.expireAt(key, Instant.ofEpochSecond(windowEnd));
+                        return null;
+                    }
+                });
+                currentCount = (Long) replies.get(0);
+            }
+            
+            logger.debug("Incremented aligned counter for key: {}, current count: {}", key, currentCount);
+            return currentCount != null ? currentCount : 0L;
+            
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    /**
+     * Read, compare and INCRBY in one Lua script so concurrent weighted checks can't overshoot
+     */
+    @Override
+    public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        long now = nowSeconds();
+        String key = counterKey(apiKey, windowSeconds, now);
+        
+        try {
+            Long count;
+            if (alignedWindows) {
+                String windowEnd = Long.toString(windowEnd(windowSeconds, now));
+                count = batching()
+                        ? batcher.evalLong(TRY_INCREMENT_ALIGNED_SCRIPT, key,
+                                           Long.toString(cost), Long.toString(limit), windowEnd)
+                        : redisTemplate.execute(TRY_INCREMENT_ALIGNED_SCRIPT, List.of(key), cost, limit, windowEnd);
+            } else {
+                count = batching()
+                        ? batcher.evalLong(TRY_INCREMENT_SCRIPT, key,
+                                           Long.toString(cost), Long.toString(limit), Integer.toString(windowSeconds))
+                        : redisTemplate.execute(TRY_INCREMENT_SCRIPT, List.of(key), cost, limit, windowSeconds);
+            }
+            logger.debug("Weighted increment for key: {}, cost: {}, count: {}", key, cost, count);
+            return count != null ? count : 0L;
+            
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    /**
+     * Admit coalesced requests for one key in a single script call
+     */
+    @Override
+    public long[] tryIncrementCounters(String apiKey, long[] costs, long limit, int windowSeconds) {
+        long now = nowSeconds();
+        String key = counterKey(apiKey, windowSeconds, now);
+        RedisScript<List> script = alignedWindows ? TRY_INCREMENT_ALIGNED_MANY_SCRIPT : TRY_INCREMENT_MANY_SCRIPT;
+        String[] args = new String[costs.length + 2];
+        args[0] = Long.toString(limit);
+        args[1] = alignedWindows ? Long.toString(windowEnd(windowSeconds, now)) : Integer.toString(windowSeconds);
+        for (int i = 0; i < costs.length; i++) {
+            args[i + 2] = Long.toString(costs[i]);
+        }
+        
+        try {
+            List<?> counts = batching()
+                    ? batcher.eval(script, ScriptOutputType.MULTI, key, args)
+                    : redisTemplate.execute(script, List.of(key), (Object[]) args);
+            if (counts == null || counts.size() != costs.length) {
+                throw new IllegalStateException("Unexpected script reply: " + counts);
+            }
+            
+            long[] results = new long[costs.length];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = ((Number) counts.get(i)).longValue();
+            }
+            logger.debug("Coalesced {} weighted increments for key: {}", costs.length, key);
+            return results;
+            
+        } catch (Exception e) {
+            logger.error("Failed to increment counter for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long refundCounter(String apiKey, long amount, int windowSeconds) {
+        String key = counterKey(apiKey, windowSeconds, nowSeconds());
+        
+        try {
+            Long count = redisTemplate.execute(REFUND_SCRIPT, List.of(key), amount);
+            logger.debug("Refunded {} for key: {}, count: {}", amount, key, count);
+            return count != null ? count : -2L;
+            
+        } catch (Exception e) {
+            logger.error("Failed to refund counter for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public long getCurrentCount(String apiKey, int windowSeconds) {
+        String key = counterKey(apiKey, windowSeconds, nowSeconds());
+        
+        try {
+            Object count = redisTemplate.opsForValue().get(key);
+            long result = count != null ? Long.parseLong(count.toString()) : 0L;
+            logger.debug("Retrieved current count for key: {}, count: {}", key, result);
+            return result;
+            
+        } catch (Exception e) {
+            logger.error("Failed to get current count for key: {}", key, e);
+            return 0L;
+        }
+    }
+    
+    /**
+     * With aligned windows the reset time follows from the clock alone, so no TTL is read
+     */
+    @Override
+    public long getTtl(String apiKey, int windowSeconds) {
+        if (alignedWindows) {
+            long now = nowSeconds();
+            return windowEnd(windowSeconds, now) - now;
+        }
+        String key = KEY_PREFIX + apiKey;
+        
+        try {
+            Long ttl = batching() ? batcher.execute(c -> c.ttl(key)) : redisTemplate.getExpire(key);
+            logger.debug("Retrieved TTL for key: {}, ttl: {} seconds", key, ttl);
+            return ttl != null ? ttl : -1L;
+            
+        } catch (Exception e) {
+            logger.error("Failed to get TTL for key: {}", key, e);
+            return -1L;
+        }
+    }
+    
+    @Override
+    public boolean deleteCounter(String apiKey, int windowSeconds) {
+        String key = counterKey(apiKey, windowSeconds, nowSeconds());
+        
+        try {
+            Boolean deleted = redisTemplate.delete(key);
+            boolean result = deleted != null && deleted;
+            logger.debug("Deleted counter for key: {}, success: {}", key, result);
+            return result;
+            
+        } catch (Exception e) {
+            logger.error("Failed to delete counter for key: {}", key, e);
+            return false;
+        }
+    }
+    
+    /**
+     * With aligned windows the counter is set for the current window and expires at its end
+     */
+    @Override
+    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+        long now = nowSeconds();
+        String key = counterKey(apiKey, windowSeconds, now);
+        long ttl = alignedWindows ? windowEnd(windowSeconds, now) - now : windowSeconds;
+        
+        try {
+            redisTemplate.opsForValue().set(key, value, Duration.ofSeconds(ttl));
+            logger.debug("Set counter for key: {}, value: {}, ttl: {} seconds",
+                        key, value, ttl);
+                        
+        } catch (Exception e) {
+            logger.error("Failed to set counter with TTL for key: {}", key, e);
+            throw new RuntimeException("Redis operation failed", e);
+        }
+    }
+    
+    @Override
+    public boolean keyExists(String apiKey, int windowSeconds) {
+        String key = counterKey(apiKey, windowSeconds, nowSeconds());
+        
+        try {
+            Boolean exists = redisTemplate.hasKey(key);
+            boolean result = exists != null && exists;
+            logger.debug("Checked key existence: {}, exists: {}", key, result);
+            return result;
+            
+        } catch (Exception e) {
+            logger.error("Failed to check key existence for key: {}", key, e);
+            return false;
+        }
+    }
+    
+    public boolean isAlignedWindows() {
+        return alignedWindows;
+    }
+    
+    /**
+     * Key of the aligned window that contains nowSeconds
+     */
+    public static String alignedKey(String apiKey, int windowSeconds, long nowSeconds) {
+        return KEY_PREFIX + apiKey + ":" + nowSeconds / windowSeconds;
+    }
+    
+    /**
+     * Epoch second at which the aligned window containing nowSeconds ends
+     */
+    public static long windowEnd(int windowSeconds, long nowSeconds) {
+        return (nowSeconds / windowSeconds + 1) * windowSeconds;
+    }
+    
+    private String counterKey(String apiKey, int windowSeconds, long nowSeconds) {
+        return alignedWindows ? alignedKey(apiKey, windowSeconds, nowSeconds) : KEY_PREFIX + apiKey;
+    }
+    
+    long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+    
+    /**
+     * Hot-path commands go through the batcher when it is enabled and connected
+     */
+    private boolean batching() {
+        return batcher != null && batcher.isRunning();
+    }
+}
\ No newline at end of file
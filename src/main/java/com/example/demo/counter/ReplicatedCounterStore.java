@@ -0,0 +1,575 @@
+package com.example.demo.counter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counters shared by a group of limiter nodes without Redis.
+ *
+ * Each key's window is a PN-counter: every node has a shard with two grow-only
+ * parts, units consumed and units refunded, and the count is the sum over the
+ * shards of consumed minus refunded. A node only changes its own shard, so
+ * checks never leave the process. Every sync interval the node sends peers, over UDP, the shards
+ * that changed since the last send (delta state). Receivers merge by taking the
+ * maximum, which makes lost, duplicated and reordered datagrams harmless. A
+ * periodic full resend repairs anything that was lost.
+ *
+ * Between syncs, peers cannot see this node's increments, so the group can admit
+ * more than the limit. To bound this, a key is synced immediately once its
+ * unsent increments exceed max-over-admission-percent of its count, divided
+ * across the nodes. Windows are aligned to the epoch (start = now - now % window)
+ * so that all nodes agree on which window a count belongs to.
+ *
+ * A shard is identified by node id plus an incarnation chosen at startup, so a node
+ * restarted mid-window starts a fresh shard instead of counting up from zero under
+ * an id whose old value peers have already max-merged. Datagrams are only accepted
+ * from the configured peer addresses and must carry an HMAC-SHA256 over their
+ * content, keyed with the shared secret; replaying one is harmless because merges
+ * are idempotent.
+ */
+@Component
+@ConditionalOnProperty(name = "ratelimit.counter-store.type", havingValue = "replicated")
+public class ReplicatedCounterStore implements CounterStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReplicatedCounterStore.class);
+    
+    private static final int MAGIC = 0x52474333; // "RGC3"
+    private static final int MAX_DATAGRAM_BYTES = 1400;
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 2;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+    private static final int FULL_SYNC_EVERY = 20;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    
+    @Value("${ratelimit.counter-store.replicated.node-id:0}")
+    private long nodeId;
+    
+    @Value("${ratelimit.counter-store.replicated.bind-address:127.0.0.1}")
+    private String bindAddress;
+    
+    @Value("${ratelimit.counter-store.replicated.port:7400}")
+    private int port;
+    
+    @Value("${ratelimit.counter-store.replicated.peers:}")
+    private List<String> peers;
+    
+    @Value("${ratelimit.counter-store.replicated.secret:}")
+    private String secret;
+    
+    @Value("${ratelimit.counter-store.replicated.sync-interval-ms:50}")
+    private long syncIntervalMillis;
+    
+    @Value("${ratelimit.counter-store.replicated.max-over-admission-percent:5}")
+    private double maxOverAdmissionPercent;
+    
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    
+    private List<InetSocketAddress> peerAddresses = List.of();
+    private Set<InetSocketAddress> acceptedSenders = Set.of();
+    private long incarnation;
+    private SecretKeySpec macKey;
+    private Mac receiveMac;
+    private DatagramChannel channel;
+    private volatile boolean running;
+    private Thread syncThread;
+    private Thread receiveThread;
+    
+    private final AtomicLong sentDatagrams = new AtomicLong();
+    private final AtomicLong receivedDatagrams = new AtomicLong();
+    private final AtomicLong eagerSyncs = new AtomicLong();
+    private final AtomicLong rejectedDatagrams = new AtomicLong();
+    
+    /**
+     * One incarnation of a node; its shard only grows while that incarnation runs
+     */
+    static final class ShardId {
+        final long nodeId;
+        final long incarnation;
+        
+        ShardId(long nodeId, long incarnation) {
+            this.nodeId = nodeId;
+            this.incarnation = incarnation;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ShardId)) return false;
+            ShardId that = (ShardId) o;
+            return nodeId == that.nodeId && incarnation == that.incarnation;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(nodeId) * 31 + Long.hashCode(incarnation);
+        }
+    }
+    
+    /**
+     * One key's PN-counter for one aligned window
+     */
+    static final class Window {
+        final long windowMillis;
+        final long windowId;
+        final AtomicLong local = new AtomicLong();
+        final AtomicLong localRefunded = new AtomicLong();
+        // Peer shard to {consumed, refunded}
+        final ConcurrentHashMap<ShardId, long[]> remote = new ConcurrentHashMap<>();
+        final AtomicLong remoteSum = new AtomicLong();
+        volatile long lastSent;
+        
+        Window(long windowMillis, long windowId) {
+            this.windowMillis = windowMillis;
+            this.windowId = windowId;
+        }
+        
+        long endMillis() {
+            return (windowId + 1) * windowMillis;
+        }
+        
+        long total() {
+            return local.get() - localRefunded.get() + remoteSum.get();
+        }
+        
+        /**
+         * Max-merge each part of a peer's shard; both only grow within a window
+         */
+        void merge(ShardId shard, long count, long refunded) {
+            long[] delta = new long[1];
+            remote.compute(shard, (k, old) -> {
+                long previousCount = old != null ? old[0] : 0L;
+                long previousRefunded = old != null ? old[1] : 0L;
+                if (count <= previousCount && refunded <= previousRefunded) {
+                    return old;
+                }
+                long mergedCount = Math.max(count, previousCount);
+                long mergedRefunded = Math.max(refunded, previousRefunded);
+                delta[0] = (mergedCount - previousCount) - (mergedRefunded - previousRefunded);
+                return new long[] {mergedCount, mergedRefunded};
+            });
+            if (delta[0] != 0) {
+                remoteSum.addAndGet(delta[0]);
+            }
+        }
+    }
+    
+    @PostConstruct
+    public void start() throws IOException {
+        if (nodeId == 0) {
+            nodeId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        }
+        incarnation = System.currentTimeMillis();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+                                                Integer.parseInt(peer.substring(colon + 1).trim())));
+        }
+        peerAddresses = List.copyOf(addresses);
+        acceptedSenders = Set.copyOf(addresses);
+        if (!peerAddresses.isEmpty()) {
+            if (secret == null || secret.isBlank()) {
+                throw new IllegalStateException(
+                    "ratelimit.counter-store.replicated.secret must be set when peers are configured");
+            }
+            macKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+            receiveMac = newMac();
+        }
+        
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.bind(new InetSocketAddress(bindAddress, port));
+        running = true;
+        
+        receiveThread = new Thread(this::receiveLoop, "replicated-counter-receiver");
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+        syncThread = new Thread(this::syncLoop, "replicated-counter-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+        logger.info("Replicated counter store node {} (incarnation {}) listening on {}, {} peers, sync every {} ms",
+                   nodeId, incarnation, channel.getLocalAddress(), peerAddresses.size(), syncIntervalMillis);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Last delta so peers see everything this node admitted
+        sync(false);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close replication channel", e);
+        }
+        LockSupport.unpark(syncThread);
+    }
+    
+    @Override
+    public long incrementCounter(String apiKey, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        Window window = currentWindow(apiKey, windowSeconds * 1000L, now);
+        long local = window.local.incrementAndGet();
+        long total = local - window.localRefunded.get() + window.remoteSum.get();
+        markChanged(apiKey, window, local, total);
+        return total;
+    }
+    
+    /**
+     * Compare and add against this node's view of the count. Atomic on this node;
+     * across nodes it is as accurate as the last sync, like plain increments.
+     */
+    @Override
+    public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        Window window = currentWindow(apiKey, windowSeconds * 1000L, now);
+        while (true) {
+            long local = window.local.get();
+            long total = local - window.localRefunded.get() + window.remoteSum.get() + cost;
+            if (total > limit) {
+                return total;
+            }
+            if (window.local.compareAndSet(local, local + cost)) {
+                markChanged(apiKey, window, local + cost, total);
+                return total;
+            }
+        }
+    }
+    
+    /**
+     * Add to this node's refunded part; the count never drops below zero in this node's view
+     */
+    @Override
+    public long refundCounter(String apiKey, long amount, int windowSeconds) {
+        Window window = activeWindow(apiKey, System.currentTimeMillis());
+        if (window == null) {
+            return -2L;
+        }
+        long total = window.total();
+        long refund = Math.min(amount, Math.max(0, total));
+        if (refund > 0) {
+            window.localRefunded.addAndGet(refund);
+            dirty.add(apiKey);
+        }
+        return total - refund;
+    }
+    
+    @Override
+    public long getCurrentCount(String apiKey, int windowSeconds) {
+        Window window = activeWindow(apiKey, System.currentTimeMillis());
+        return window != null ? window.total() : 0L;
+    }
+    
+    @Override
+    public long getTtl(String apiKey, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        Window window = activeWindow(apiKey, now);
+        return window != null ? (window.endMillis() - now + 500) / 1000 : -2L;
+    }
+    
+    /**
+     * Drop this node's view of the key. Peers keep theirs until the window ends.
+     */
+    @Override
+    public boolean deleteCounter(String apiKey, int windowSeconds) {
+        Window removed = windows.remove(apiKey);
+        dirty.remove(apiKey);
+        return removed != null && removed.endMillis() > System.currentTimeMillis();
+    }
+    
+    /**
+     * Set this node's shard so that the key counts value, in the current aligned window
+     */
+    @Override
+    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+        long windowMillis = windowSeconds * 1000L;
+        Window window = new Window(windowMillis, System.currentTimeMillis() / windowMillis);
+        window.local.set(value);
+        windows.put(apiKey, window);
+        dirty.add(apiKey);
+    }
+    
+    @Override
+    public boolean keyExists(String apiKey, int windowSeconds) {
+        return activeWindow(apiKey, System.currentTimeMillis()) != null;
+    }
+    
+    public long getNodeId() {
+        return nodeId;
+    }
+    
+    public int getLocalPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+    
+    public long getSentDatagrams() {
+        return sentDatagrams.get();
+    }
+    
+    public long getReceivedDatagrams() {
+        return receivedDatagrams.get();
+    }
+    
+    public long getEagerSyncs() {
+        return eagerSyncs.get();
+    }
+    
+    public long getRejectedDatagrams() {
+        return rejectedDatagrams.get();
+    }
+    
+    private void markChanged(String apiKey, Window window, long local, long total) {
+        // Read before write: the sync thread removes the key before reading the shard, so nothing is missed
+        if (!dirty.contains(apiKey)) {
+            dirty.add(apiKey);
+        }
+        if (local - window.lastSent > eagerSyncThreshold(total)) {
+            eagerSyncs.incrementAndGet();
+            LockSupport.unpark(syncThread);
+        }
+    }
+    
+    /**
+     * Unsent local increments allowed before this key is synced ahead of schedule
+     */
+    private long eagerSyncThreshold(long total) {
+        double share = total * maxOverAdmissionPercent / 100.0 / (peerAddresses.size() + 1);
+        return Math.max(1, (long) share);
+    }
+    
+    private Window currentWindow(String apiKey, long windowMillis, long now) {
+        long windowId = now / windowMillis;
+        Window window = windows.get(apiKey);
+        if (window != null && window.windowId == windowId && window.windowMillis == windowMillis) {
+            return window;
+        }
+        return windows.compute(apiKey, (k, existing) ->
+            existing != null && existing.windowMillis == windowMillis && existing.windowId >= windowId
+                ? existing : new Window(windowMillis, windowId));
+    }
+    
+    private Window activeWindow(String apiKey, long now) {
+        Window window = windows.get(apiKey);
+        return window != null && window.endMillis() > now && window.windowId * window.windowMillis <= now
+            ? window : null;
+    }
+    
+    private void syncLoop() {
+        long round = 0;
+        long lastSweep = System.currentTimeMillis();
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis));
+            if (!running) {
+                break;
+            }
+            try {
+                sync(++round % FULL_SYNC_EVERY == 0);
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+                    windows.values().removeIf(window -> window.endMillis() <= now);
+                    lastSweep = now;
+                }
+            } catch (Exception e) {
+                logger.warn("Counter replication round failed", e);
+            }
+        }
+    }
+    
+    /**
+     * Send this node's shard for dirty keys, or for every active key on a full sync
+     */
+    void sync(boolean full) {
+        if (peerAddresses.isEmpty()) {
+            dirty.clear();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<String> keys = full ? windows.keySet().iterator() : dirty.iterator();
+        DeltaWriter writer = new DeltaWriter();
+        while (keys.hasNext()) {
+            String apiKey = keys.next();
+            if (!full) {
+                keys.remove();
+            }
+            Window window = windows.get(apiKey);
+            if (window == null || window.endMillis() <= now) {
+                continue;
+            }
+            long local = window.local.get();
+            long refunded = window.localRefunded.get();
+            if (local == 0 && refunded == 0) {
+                continue;
+            }
+            window.lastSent = local;
+            writer.add(apiKey, window.windowMillis, window.windowId, local, refunded);
+        }
+        writer.flush();
+    }
+    
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                buffer.flip();
+                receivedDatagrams.incrementAndGet();
+                apply(source, buffer.array(), buffer.limit());
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (Exception e) {
+                logger.debug("Ignoring malformed counter delta", e);
+            }
+        }
+    }
+    
+    /**
+     * Merge a datagram from a configured peer whose MAC checks out. Called on the receive thread only.
+     */
+    void apply(SocketAddress source, byte[] data, int length) throws IOException {
+        if (!acceptedSenders.contains(source) || length < HEADER_BYTES + MAC_BYTES) {
+            rejectedDatagrams.incrementAndGet();
+            return;
+        }
+        int contentLength = length - MAC_BYTES;
+        receiveMac.update(data, 0, contentLength);
+        byte[] expected = receiveMac.doFinal();
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(data, contentLength, length))) {
+            rejectedDatagrams.incrementAndGet();
+            return;
+        }
+        
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, contentLength));
+        if (in.readInt() != MAGIC) {
+            rejectedDatagrams.incrementAndGet();
+            return;
+        }
+        long sender = in.readLong();
+        long senderIncarnation = in.readLong();
+        if (sender == nodeId && senderIncarnation == incarnation) {
+            return;
+        }
+        ShardId shard = new ShardId(sender, senderIncarnation);
+        long now = System.currentTimeMillis();
+        int entries = in.readUnsignedShort();
+        for (int i = 0; i < entries; i++) {
+            String apiKey = in.readUTF();
+            long windowMillis = in.readLong();
+            long windowId = in.readLong();
+            long count = in.readLong();
+            long refunded = in.readLong();
+            if ((windowId + 1) * windowMillis <= now) {
+                continue;
+            }
+            Window window = windows.compute(apiKey, (k, existing) ->
+                existing != null && existing.windowMillis == windowMillis && existing.windowId >= windowId
+                    ? existing : new Window(windowMillis, windowId));
+            if (window.windowId == windowId) {
+                window.merge(shard, count, refunded);
+            }
+        }
+    }
+    
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(macKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + MAC_ALGORITHM, e);
+        }
+    }
+    
+    /**
+     * Packs delta entries into datagrams of at most MAX_DATAGRAM_BYTES
+     */
+    private final class DeltaWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAX_DATAGRAM_BYTES);
+        private final List<byte[]> entries = new ArrayList<>();
+        private final Mac mac = newMac();
+        private int size;
+        
+        void add(String apiKey, long windowMillis, long windowId, long count, long refunded) {
+            try {
+                ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(64);
+                DataOutputStream entry = new DataOutputStream(entryBytes);
+                entry.writeUTF(apiKey);
+                entry.writeLong(windowMillis);
+                entry.writeLong(windowId);
+                entry.writeLong(count);
+                entry.writeLong(refunded);
+                byte[] encoded = entryBytes.toByteArray();
+                if (size + encoded.length > MAX_DATAGRAM_BYTES - HEADER_BYTES - MAC_BYTES || entries.size() == 0xFFFF) {
+                    flush();
+                }
+                entries.add(encoded);
+                size += encoded.length;
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to encode counter delta", e);
+            }
+        }
+        
+        void flush() {
+            if (entries.isEmpty()) {
+                return;
+            }
+            try {
+                bytes.reset();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeLong(nodeId);
+                out.writeLong(incarnation);
+                out.writeShort(entries.size());
+                for (byte[] entry : entries) {
+                    out.write(entry);
+                }
+                out.write(mac.doFinal(bytes.toByteArray()));
+                ByteBuffer datagram = ByteBuffer.wrap(bytes.toByteArray());
+                for (InetSocketAddress peer : peerAddresses) {
+                    channel.send(datagram.rewind(), peer);
+                    sentDatagrams.incrementAndGet();
+                }
+            } catch (IOException e) {
+                logger.debug("Failed to send counter delta", e);
+            }
+            entries.clear();
+            size = 0;
+        }
+    }
+}
\ No newline at end of file
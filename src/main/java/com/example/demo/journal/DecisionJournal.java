@@ -0,0 +1,241 @@
+package com.example.demo.journal;
+
+import com.example.demo.service.DecisionListener;
+import com.example.demo.util.Fingerprints;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Optional append-only journal of every allow/deny decision.
+ *
+ * Request threads only put the decision into a DecisionRingBuffer. One writer
+ * thread drains it into memory-mapped segment files of fixed-size records,
+ * rolls to a new segment when the current one is full, and deletes segments past
+ * the retention. The journal stores key fingerprints, not raw API keys.
+ * Use JournalReader to inspect segments offline.
+ */
+@Component
+public class DecisionJournal implements DecisionListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DecisionJournal.class);
+    
+    private static final int DRAIN_BATCH = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long FORCE_INTERVAL_MILLIS = 1000;
+    
+    @Value("${ratelimit.journal.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.journal.directory:./journal}")
+    private String directory;
+    
+    @Value("${ratelimit.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+    
+    @Value("${ratelimit.journal.buffer-size:65536}")
+    private int bufferSize;
+    
+    @Value("${ratelimit.journal.retention-segments:48}")
+    private int retentionSegments;
+    
+    @Value("${ratelimit.journal.retention-hours:168}")
+    private int retentionHours;
+    
+    private volatile DecisionRingBuffer ring;
+    private volatile boolean running;
+    private Thread writerThread;
+    
+    // Writer thread state
+    private Path journalDir;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStartMillis;
+    private long lastForceMillis;
+    private long writtenRecords;
+    
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journalDir = Paths.get(directory).toAbsolutePath();
+            Files.createDirectories(journalDir);
+            ring = new DecisionRingBuffer(bufferSize);
+            openSegment(System.currentTimeMillis());
+        } catch (IOException e) {
+            logger.error("Failed to open decision journal in {}, journaling disabled", directory, e);
+            ring = null;
+            return;
+        }
+        
+        running = true;
+        writerThread = new Thread(this::writeLoop, "decision-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Decision journal started in {}, segment size {} MB", journalDir, segmentSizeMb);
+    }
+    
+    @Override
+    public void onDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                           Integer resetInSeconds) {
+        DecisionRingBuffer buffer = ring;
+        if (buffer == null || !running) {
+            return;
+        }
+        buffer.offer(System.currentTimeMillis(), Fingerprints.of(apiKey), currentUsage, limit,
+                     allowed ? JournalFormat.FLAG_ALLOWED : 0);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Decision journal stopped, {} records written, {} dropped",
+                   writtenRecords, ring.getDropped());
+    }
+    
+    public long getDroppedRecords() {
+        DecisionRingBuffer buffer = ring;
+        return buffer != null ? buffer.getDropped() : 0;
+    }
+    
+    public long getBacklog() {
+        DecisionRingBuffer buffer = ring;
+        return buffer != null ? buffer.getBacklog() : 0;
+    }
+    
+    private void writeLoop() {
+        DecisionRingBuffer.RecordHandler handler = this::append;
+        while (running) {
+            try {
+                int drained = ring.drain(handler, DRAIN_BATCH);
+                if (drained == 0) {
+                    forceIfDue(System.currentTimeMillis());
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (Exception e) {
+                logger.error("Decision journal writer failed, journaling stopped", e);
+                running = false;
+            }
+        }
+        
+        // Final drain so decisions accepted before shutdown are not lost
+        try {
+            while (ring.drain(handler, DRAIN_BATCH) > 0) {
+                // keep draining
+            }
+            closeSegment();
+        } catch (Exception e) {
+            logger.warn("Failed to flush decision journal on shutdown", e);
+        }
+    }
+    
+    private void append(long timestamp, long fingerprint, long usage, int limit, int flags) {
+        if (segment.remaining() < JournalFormat.RECORD_SIZE) {
+            rollSegment(timestamp);
+        }
+        int position = segment.position();
+        segment.putLong(position + JournalFormat.OFFSET_FINGERPRINT, fingerprint);
+        segment.putLong(position + JournalFormat.OFFSET_USAGE, usage);
+        segment.putInt(position + JournalFormat.OFFSET_LIMIT, limit);
+        segment.putInt(position + JournalFormat.OFFSET_FLAGS, flags);
+        // Timestamp last: a non-zero timestamp marks the record as complete for readers
+        segment.putLong(position + JournalFormat.OFFSET_TIMESTAMP, Math.max(1, timestamp));
+        segment.position(position + JournalFormat.RECORD_SIZE);
+        writtenRecords++;
+    }
+    
+    private void rollSegment(long timestamp) {
+        try {
+            closeSegment();
+            openSegment(timestamp);
+            applyRetention(timestamp);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to roll decision journal segment", e);
+        }
+    }
+    
+    private void openSegment(long timestamp) throws IOException {
+        // Segment names must be unique and increasing even if a segment fills within a millisecond
+        long startMillis = Math.max(timestamp, segmentStartMillis + 1);
+        segmentStartMillis = startMillis;
+        long size = (long) segmentSizeMb * 1024 * 1024;
+        size -= (size - JournalFormat.HEADER_SIZE) % JournalFormat.RECORD_SIZE;
+        
+        Path file = journalDir.resolve(JournalFormat.segmentName(startMillis));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        JournalFormat.writeHeader(segment, startMillis);
+        segment.position(JournalFormat.HEADER_SIZE);
+        lastForceMillis = startMillis;
+        logger.debug("Opened decision journal segment {}", file);
+    }
+    
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+    
+    private void forceIfDue(long now) {
+        if (now - lastForceMillis >= FORCE_INTERVAL_MILLIS && segment != null) {
+            segment.force();
+            lastForceMillis = now;
+        }
+    }
+    
+    /**
+     * Delete the oldest segments beyond the segment count, and any segment whose
+     * successor started before the retention cutoff (all its records are older)
+     */
+    private void applyRetention(long now) throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            segments = files.filter(JournalFormat::isSegment).sorted().toList();
+        }
+        
+        long cutoff = now - TimeUnit.HOURS.toMillis(retentionHours);
+        int excess = segments.size() - retentionSegments;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            boolean expired = JournalFormat.segmentStart(segments.get(i + 1)) < cutoff;
+            if (i < excess || expired) {
+                Files.deleteIfExists(segments.get(i));
+                logger.info("Deleted decision journal segment {}", segments.get(i).getFileName());
+            }
+        }
+    }
+}
\ No newline at end of file
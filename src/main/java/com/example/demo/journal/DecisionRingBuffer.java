@@ -0,0 +1,106 @@
+package com.example.demo.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring of decision records.
+ *
+ * Request threads claim a slot with one CAS, fill the preallocated column arrays
+ * and publish the slot by writing its sequence number. The single journal writer
+ * drains published slots in order. Nothing is allocated per record, and a
+ * producer never waits: when the ring is full the record is dropped and counted.
+ */
+final class DecisionRingBuffer {
+    
+    /** Receives drained records; arguments mirror the journal record layout */
+    interface RecordHandler {
+        void onRecord(long timestamp, long fingerprint, long usage, int limit, int flags);
+    }
+    
+    private final int mask;
+    private final long[] timestamps;
+    private final long[] fingerprints;
+    private final long[] usages;
+    private final int[] limits;
+    private final int[] flags;
+    private final AtomicLongArray published;
+    
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    
+    DecisionRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.fingerprints = new long[size];
+        this.usages = new long[size];
+        this.limits = new int[size];
+        this.flags = new int[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+    
+    /**
+     * @return false if the ring was full and the record was dropped
+     */
+    boolean offer(long timestamp, long fingerprint, long usage, int limit, int recordFlags) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        
+        int index = (int) sequence & mask;
+        timestamps[index] = timestamp;
+        fingerprints[index] = fingerprint;
+        usages[index] = usage;
+        limits[index] = limit;
+        flags[index] = recordFlags;
+        // Release store: the column writes above become visible before the slot is published
+        published.lazySet(index, sequence);
+        return true;
+    }
+    
+    /**
+     * Hand every published record, in sequence order, to the handler.
+     * Must only be called from the single consumer thread.
+     *
+     * @return number of records drained
+     */
+    int drain(RecordHandler handler, int maxRecords) {
+        long next = consumed.get();
+        int count = 0;
+        while (count < maxRecords) {
+            int index = (int) next & mask;
+            if (published.get(index) != next) {
+                break;
+            }
+            handler.onRecord(timestamps[index], fingerprints[index], usages[index], limits[index], flags[index]);
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            consumed.lazySet(next);
+        }
+        return count;
+    }
+    
+    int capacity() {
+        return mask + 1;
+    }
+    
+    long getDropped() {
+        return dropped.get();
+    }
+    
+    long getBacklog() {
+        return claimed.get() - consumed.get();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.example.demo.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * On-disk layout of decision journal segments.
+ *
+ * A segment is a 32-byte header followed by fixed-size 32-byte little-endian records:
+ * <pre>
+ *   0  long  timestamp (epoch millis, never 0)
+ *   8  long  API key fingerprint (Fingerprints.of)
+ *  16  long  usage after the decision
+ *  24  int   limit
+ *  28  int   flags (bit 0: allowed)
+ * </pre>
+ * Segments are pre-sized and zero-filled, so the first record with a zero
+ * timestamp marks the end of the written data.
+ */
+public final class JournalFormat {
+    
+    public static final int MAGIC = 0x524C4A31; // "RLJ1"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    
+    static final int OFFSET_TIMESTAMP = 0;
+    static final int OFFSET_FINGERPRINT = 8;
+    static final int OFFSET_USAGE = 16;
+    static final int OFFSET_LIMIT = 24;
+    static final int OFFSET_FLAGS = 28;
+    
+    static final int FLAG_ALLOWED = 1;
+    
+    private static final String FILE_PREFIX = "decisions-";
+    private static final String FILE_SUFFIX = ".journal";
+    
+    private JournalFormat() {
+    }
+    
+    /**
+     * Segment file name; the zero-padded start time keeps names in time order
+     */
+    static String segmentName(long startMillis) {
+        return String.format("%s%019d%s", FILE_PREFIX, startMillis, FILE_SUFFIX);
+    }
+    
+    static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+    
+    static long segmentStart(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+    
+    static void writeHeader(ByteBuffer buffer, long createdMillis) {
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, (short) RECORD_SIZE);
+        buffer.putLong(8, createdMillis);
+    }
+    
+    static void checkHeader(ByteBuffer buffer, Path file) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a decision journal segment: " + file);
+        }
+        if (buffer.getShort(4) != VERSION || buffer.getShort(6) != RECORD_SIZE) {
+            throw new IllegalStateException("Unsupported journal segment version: " + file);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.example.demo.journal;
+
+import com.example.demo.util.Fingerprints;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Offline reader for decision journal segments.
+ *
+ * Usage:
+ * <pre>
+ *   JournalReader &lt;dir&gt; [--mode dump|aggregate|replay] [--from ISO-instant] [--to ISO-instant]
+ *                 [--key apiKey] [--denied] [--top N] [--speed X]
+ * </pre>
+ * dump prints matching records as CSV, aggregate prints per-key allowed/denied
+ * totals (largest first), and replay prints records paced by their original
+ * spacing divided by --speed. Keys are shown as fingerprints; --key filters
+ * on the fingerprint of the given API key.
+ */
+public final class JournalReader {
+    
+    /** Receives matching records in journal order */
+    public interface RecordVisitor {
+        void visit(long timestamp, long fingerprint, boolean allowed, long usage, int limit);
+    }
+    
+    private JournalReader() {
+    }
+    
+    /**
+     * Visit every record with from &lt;= timestamp &lt; to across all segments in the directory
+     *
+     * @return number of records visited
+     */
+    public static long read(Path directory, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(JournalFormat::isSegment).sorted().toList();
+        }
+        
+        long visited = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            if (JournalFormat.segmentStart(segment) >= toMillis) {
+                break;
+            }
+            // The next segment starting before 'from' means this one holds only older records
+            if (i + 1 < segments.size() && JournalFormat.segmentStart(segments.get(i + 1)) < fromMillis) {
+                continue;
+            }
+            visited += readSegment(segment, fromMillis, toMillis, visitor);
+        }
+        return visited;
+    }
+    
+    private static long readSegment(Path file, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            JournalFormat.checkHeader(buffer, file);
+            
+            long visited = 0;
+            for (int position = JournalFormat.HEADER_SIZE;
+                 position + JournalFormat.RECORD_SIZE <= buffer.limit();
+                 position += JournalFormat.RECORD_SIZE) {
+                long timestamp = buffer.getLong(position + JournalFormat.OFFSET_TIMESTAMP);
+                if (timestamp == 0) {
+                    break;
+                }
+                if (timestamp < fromMillis || timestamp >= toMillis) {
+                    continue;
+                }
+                visitor.visit(timestamp,
+                              buffer.getLong(position + JournalFormat.OFFSET_FINGERPRINT),
+                              (buffer.getInt(position + JournalFormat.OFFSET_FLAGS) & JournalFormat.FLAG_ALLOWED) != 0,
+                              buffer.getLong(position + JournalFormat.OFFSET_USAGE),
+                              buffer.getInt(position + JournalFormat.OFFSET_LIMIT));
+                visited++;
+            }
+            return visited;
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: JournalReader <dir> [--mode dump|aggregate|replay] [--from ISO-instant] "
+                    + "[--to ISO-instant] [--key apiKey] [--denied] [--top N] [--speed X]");
+            System.exit(2);
+        }
+        
+        Path directory = Paths.get(args[0]);
+        String mode = "dump";
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        Long keyFingerprint = null;
+        boolean deniedOnly = false;
+        int top = 50;
+        double speed = 1.0;
+        
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mode" -> mode = args[++i];
+                case "--from" -> from = Instant.parse(args[++i]).toEpochMilli();
+                case "--to" -> to = Instant.parse(args[++i]).toEpochMilli();
+                case "--key" -> keyFingerprint = Fingerprints.of(args[++i]);
+                case "--denied" -> deniedOnly = true;
+                case "--top" -> top = Integer.parseInt(args[++i]);
+                case "--speed" -> speed = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        
+        Filter filter = new Filter(keyFingerprint, deniedOnly);
+        PrintStream out = System.out;
+        switch (mode) {
+            case "dump" -> {
+                out.println("timestamp,key_fingerprint,allowed,usage,limit");
+                read(directory, from, to, filter.wrap((ts, fp, allowed, usage, limit) ->
+                    out.println(Instant.ofEpochMilli(ts) + "," + Long.toHexString(fp) + ","
+                                + allowed + "," + usage + "," + limit)));
+            }
+            case "aggregate" -> aggregate(directory, from, to, filter, top, out);
+            case "replay" -> replay(directory, from, to, filter, speed, out);
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+    
+    private static void aggregate(Path directory, long from, long to, Filter filter,
+                                  int top, PrintStream out) throws IOException {
+        // fingerprint -> {allowed, denied, max usage}
+        Map<Long, long[]> totals = new HashMap<>();
+        long records = read(directory, from, to, filter.wrap((ts, fp, allowed, usage, limit) -> {
+            long[] counts = totals.computeIfAbsent(fp, k -> new long[3]);
+            counts[allowed ? 0 : 1]++;
+            counts[2] = Math.max(counts[2], usage);
+        }));
+        
+        List<Map.Entry<Long, long[]>> sorted = new ArrayList<>(totals.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0] + b.getValue()[1], a.getValue()[0] + a.getValue()[1]));
+        
+        out.println("key_fingerprint,allowed,denied,max_usage");
+        for (Map.Entry<Long, long[]> entry : sorted.subList(0, Math.min(top, sorted.size()))) {
+            long[] counts = entry.getValue();
+            out.println(Long.toHexString(entry.getKey()) + "," + counts[0] + "," + counts[1] + "," + counts[2]);
+        }
+        out.println("# " + records + " records, " + totals.size() + " keys");
+    }
+    
+    private static void replay(Path directory, long from, long to, Filter filter,
+                               double speed, PrintStream out) throws IOException {
+        long[] previous = {0};
+        read(directory, from, to, filter.wrap((ts, fp, allowed, usage, limit) -> {
+            if (previous[0] != 0 && speed > 0 && ts > previous[0]) {
+                try {
+                    Thread.sleep((long) ((ts - previous[0]) / speed));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            previous[0] = ts;
+            out.println(Instant.ofEpochMilli(ts) + " " + Long.toHexString(fp)
+                        + (allowed ? " ALLOW " : " DENY ") + usage + "/" + limit);
+        }));
+    }
+    
+    private static final class Filter {
+        final Long fingerprint;
+        final boolean deniedOnly;
+        
+        Filter(Long fingerprint, boolean deniedOnly) {
+            this.fingerprint = fingerprint;
+            this.deniedOnly = deniedOnly;
+        }
+        
+        RecordVisitor wrap(RecordVisitor visitor) {
+            return (ts, fp, allowed, usage, limit) -> {
+                if ((fingerprint == null || fingerprint == fp) && !(deniedOnly && allowed)) {
+                    visitor.visit(ts, fp, allowed, usage, limit);
+                }
+            };
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.example.demo.model;
+
+/**
+ * How a concurrency limit adapts to the latency samples reported on release
+ */
+public enum ConcurrencyAlgorithm {
+    
+    /**
+     * Additive increase while requests succeed, multiplicative decrease on a drop or timeout
+     */
+    AIMD,
+    
+    /**
+     * Scale the limit by the ratio of long-term to current latency, plus a small queue allowance
+     */
+    GRADIENT
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rule limiting the number of in-flight requests for an API key.
+ * The live limit moves between minLimit and maxLimit as latency changes.
+ */
+@Entity
+@Table(name = "concurrency_limits")
+public class ConcurrencyLimit {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotBlank(message = "API key cannot be blank")
+    @Size(max = 255, message = "API key must not exceed 255 characters")
+    @Column(name = "api_key", unique = true, nullable = false)
+    private String apiKey;
+    
+    @NotNull(message = "Algorithm cannot be null")
+    @Enumerated(EnumType.STRING)
+    @Column(name = "algorithm", nullable = false, length = 16)
+    private ConcurrencyAlgorithm algorithm;
+    
+    @NotNull(message = "Initial limit cannot be null")
+    @Min(value = 1, message = "Initial limit must be positive")
+    @Column(name = "initial_limit", nullable = false)
+    private Integer initialLimit;
+    
+    @NotNull(message = "Min limit cannot be null")
+    @Min(value = 1, message = "Min limit must be positive")
+    @Column(name = "min_limit", nullable = false)
+    private Integer minLimit;
+    
+    @NotNull(message = "Max limit cannot be null")
+    @Min(value = 1, message = "Max limit must be positive")
+    @Column(name = "max_limit", nullable = false)
+    private Integer maxLimit;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public ConcurrencyLimit() {
+    }
+    
+    public ConcurrencyLimit(String apiKey, ConcurrencyAlgorithm algorithm,
+                            Integer initialLimit, Integer minLimit, Integer maxLimit) {
+        this.apiKey = apiKey;
+        this.algorithm = algorithm;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public ConcurrencyAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(ConcurrencyAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public Integer getInitialLimit() {
+        return initialLimit;
+    }
+    
+    public void setInitialLimit(Integer initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+    
+    public Integer getMinLimit() {
+        return minLimit;
+    }
+    
+    public void setMinLimit(Integer minLimit) {
+        this.minLimit = minLimit;
+    }
+    
+    public Integer getMaxLimit() {
+        return maxLimit;
+    }
+    
+    public void setMaxLimit(Integer maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcurrencyLimit{" +
+                "id=" + id +
+                ", apiKey='" + apiKey + '\'' +
+                ", algorithm=" + algorithm +
+                ", initialLimit=" + initialLimit +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", createdAt=" + createdAt +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rule-change event waiting to be published to RocketMQ.
+ * Written in the same transaction as the rule change; the id gives the publish order.
+ * A relay claims a batch for a while before publishing it so other relays leave it alone.
+ */
+@Entity
+@Table(name = "rate_limit_outbox", indexes = {
+    @Index(name = "idx_outbox_published_id", columnList = "published_at, id")
+})
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "tag", nullable = false, length = 32)
+    private String tag;
+    
+    @Column(name = "api_key", nullable = false)
+    private String apiKey;
+    
+    @Column(name = "payload", nullable = false, length = 2000)
+    private String payload;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+    
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+    
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+    
+    public OutboxEvent() {
+    }
+    
+    public OutboxEvent(String tag, String apiKey, String payload) {
+        this.tag = tag;
+        this.apiKey = apiKey;
+        this.payload = payload;
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getTag() {
+        return tag;
+    }
+    
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+    
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public String getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+    
+    public void setPublishedAt(LocalDateTime publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+    
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+    
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+    
+    public LocalDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+    
+    public void setClaimedUntil(LocalDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+    
+    @Override
+    public String toString() {
+        return "OutboxEvent{" +
+                "id=" + id +
+                ", tag='" + tag + '\'' +
+                ", apiKey='" + apiKey + '\'' +
+                ", createdAt=" + createdAt +
+                ", publishedAt=" + publishedAt +
+                '}';
+    }
+}
\ No newline at end of file
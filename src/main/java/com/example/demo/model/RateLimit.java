@@ -9,7 +9,9 @@ import jakarta.validation.constraints.Size;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "rate_limits")
+@Table(name = "rate_limits", indexes = {
+    @Index(name = "idx_created_at_id", columnList = "created_at, id")
+})
 public class RateLimit {
     
     @Id
@@ -0,0 +1,27 @@
+package com.example.demo.model;
+
+/**
+ * Bucket size of a usage rollup row
+ */
+public enum UsageGranularity {
+    
+    MINUTE(60),
+    HOUR(3600);
+    
+    private final int seconds;
+    
+    UsageGranularity(int seconds) {
+        this.seconds = seconds;
+    }
+    
+    public int getSeconds() {
+        return seconds;
+    }
+    
+    /**
+     * Start of the bucket containing the given epoch second
+     */
+    public long bucketStart(long epochSecond) {
+        return epochSecond - Math.floorMod(epochSecond, seconds);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Allowed/denied request counts for one API key in one minute or hour bucket.
+ * Rows are written additively by UsageRollupService; bucket_start is UTC.
+ */
+@Entity
+@Table(name = "usage_rollups")
+@IdClass(UsageRollupId.class)
+public class UsageRollup {
+    
+    @Id
+    @Column(name = "api_key", nullable = false)
+    private String apiKey;
+    
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", length = 8, nullable = false)
+    private UsageGranularity granularity;
+    
+    @Id
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    
+    @Column(name = "allowed_count", nullable = false)
+    private long allowedCount;
+    
+    @Column(name = "denied_count", nullable = false)
+    private long deniedCount;
+    
+    public UsageRollup() {
+    }
+    
+    public UsageRollup(String apiKey, UsageGranularity granularity, LocalDateTime bucketStart,
+                      long allowedCount, long deniedCount) {
+        this.apiKey = apiKey;
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.allowedCount = allowedCount;
+        this.deniedCount = deniedCount;
+    }
+    
+    // Getters and Setters
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public UsageGranularity getGranularity() {
+        return granularity;
+    }
+    
+    public void setGranularity(UsageGranularity granularity) {
+        this.granularity = granularity;
+    }
+    
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+    
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    
+    public long getAllowedCount() {
+        return allowedCount;
+    }
+    
+    public void setAllowedCount(long allowedCount) {
+        this.allowedCount = allowedCount;
+    }
+    
+    public long getDeniedCount() {
+        return deniedCount;
+    }
+    
+    public void setDeniedCount(long deniedCount) {
+        this.deniedCount = deniedCount;
+    }
+    
+    @Override
+    public String toString() {
+        return "UsageRollup{" +
+                "apiKey='" + apiKey + '\'' +
+                ", granularity=" + granularity +
+                ", bucketStart=" + bucketStart +
+                ", allowedCount=" + allowedCount +
+                ", deniedCount=" + deniedCount +
+                '}';
+    }
+}
\ No newline at end of file
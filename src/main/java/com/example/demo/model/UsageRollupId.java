@@ -0,0 +1,39 @@
+package com.example.demo.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Composite primary key of UsageRollup
+ */
+public class UsageRollupId implements Serializable {
+    
+    private String apiKey;
+    private UsageGranularity granularity;
+    private LocalDateTime bucketStart;
+    
+    public UsageRollupId() {
+    }
+    
+    public UsageRollupId(String apiKey, UsageGranularity granularity, LocalDateTime bucketStart) {
+        this.apiKey = apiKey;
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UsageRollupId)) return false;
+        UsageRollupId that = (UsageRollupId) o;
+        return Objects.equals(apiKey, that.apiKey)
+                && granularity == that.granularity
+                && Objects.equals(bucketStart, that.bucketStart);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(apiKey, granularity, bucketStart);
+    }
+}
\ No newline at end of file
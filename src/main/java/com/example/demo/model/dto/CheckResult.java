@@ -9,6 +9,7 @@ public class CheckResult {
     private Integer remainingQuota;
     private Integer windowTtl;
     private Integer totalLimit;
+    private Integer cost;
     
     public CheckResult() {
     }
@@ -39,7 +40,13 @@ public class CheckResult {
     
     public static CheckResult blocked(String apiKey, String reason, 
                                     Integer currentUsage, Integer totalLimit) {
-        return new CheckResult(apiKey, false, reason, currentUsage, 0, null, totalLimit);
+        return blocked(apiKey, reason, currentUsage, totalLimit, null);
+    }
+    
+    public static CheckResult blocked(String apiKey, String reason, 
+                                    Integer currentUsage, Integer totalLimit, 
+                                    Integer windowTtl) {
+        return new CheckResult(apiKey, false, reason, currentUsage, 0, windowTtl, totalLimit);
     }
     
     public static CheckResult notFound(String apiKey) {
@@ -103,6 +110,17 @@ public class CheckResult {
         this.totalLimit = totalLimit;
     }
     
+    /**
+     * Units of quota this request asked for; currentUsage and remainingQuota are in the same units
+     */
+    public Integer getCost() {
+        return cost;
+    }
+    
+    public void setCost(Integer cost) {
+        this.cost = cost;
+    }
+    
     @Override
     public String toString() {
         return "CheckResult{" +
@@ -113,6 +131,7 @@ public class CheckResult {
                 ", remainingQuota=" + remainingQuota +
                 ", windowTtl=" + windowTtl +
                 ", totalLimit=" + totalLimit +
+                ", cost=" + cost +
                 '}';
     }
 }
\ No newline at end of file
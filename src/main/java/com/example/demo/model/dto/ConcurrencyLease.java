@@ -0,0 +1,65 @@
+package com.example.demo.model.dto;
+
+/**
+ * Permission to run one request; hand the lease id back on release to the node that issued it
+ */
+public class ConcurrencyLease {
+    
+    private String apiKey;
+    private long leaseId;
+    private String node;
+    private int limit;
+    private int inFlight;
+    
+    public ConcurrencyLease() {
+    }
+    
+    public ConcurrencyLease(String apiKey, long leaseId, String node, int limit, int inFlight) {
+        this.apiKey = apiKey;
+        this.leaseId = leaseId;
+        this.node = node;
+        this.limit = limit;
+        this.inFlight = inFlight;
+    }
+    
+    // Getters and Setters
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public long getLeaseId() {
+        return leaseId;
+    }
+    
+    public void setLeaseId(long leaseId) {
+        this.leaseId = leaseId;
+    }
+    
+    public String getNode() {
+        return node;
+    }
+    
+    public void setNode(String node) {
+        this.node = node;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    public int getInFlight() {
+        return inFlight;
+    }
+    
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+}
\ No newline at end of file
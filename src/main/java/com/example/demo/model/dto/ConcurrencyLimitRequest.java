@@ -0,0 +1,93 @@
+package com.example.demo.model.dto;
+
+import com.example.demo.model.ConcurrencyAlgorithm;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+public class ConcurrencyLimitRequest {
+    
+    @NotBlank(message = "API key cannot be blank")
+    @Size(max = 255, message = "API key must not exceed 255 characters")
+    private String apiKey;
+    
+    @NotNull(message = "Algorithm cannot be null")
+    private ConcurrencyAlgorithm algorithm;
+    
+    @NotNull(message = "Initial limit cannot be null")
+    @Min(value = 1, message = "Initial limit must be positive")
+    private Integer initialLimit;
+    
+    @NotNull(message = "Min limit cannot be null")
+    @Min(value = 1, message = "Min limit must be positive")
+    private Integer minLimit;
+    
+    @NotNull(message = "Max limit cannot be null")
+    @Min(value = 1, message = "Max limit must be positive")
+    private Integer maxLimit;
+    
+    public ConcurrencyLimitRequest() {
+    }
+    
+    public ConcurrencyLimitRequest(String apiKey, ConcurrencyAlgorithm algorithm,
+                                   Integer initialLimit, Integer minLimit, Integer maxLimit) {
+        this.apiKey = apiKey;
+        this.algorithm = algorithm;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+    
+    // Getters and Setters
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public ConcurrencyAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(ConcurrencyAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public Integer getInitialLimit() {
+        return initialLimit;
+    }
+    
+    public void setInitialLimit(Integer initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+    
+    public Integer getMinLimit() {
+        return minLimit;
+    }
+    
+    public void setMinLimit(Integer minLimit) {
+        this.minLimit = minLimit;
+    }
+    
+    public Integer getMaxLimit() {
+        return maxLimit;
+    }
+    
+    public void setMaxLimit(Integer maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitRequest{" +
+                "apiKey='" + apiKey + '\'' +
+                ", algorithm=" + algorithm +
+                ", initialLimit=" + initialLimit +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.example.demo.model.dto;
+
+import com.example.demo.model.ConcurrencyLimit;
+
+/**
+ * A concurrency rule with the live state of its limiter on this node.
+ * remoteInFlight is what the other nodes last published to Redis, 0 without aggregation.
+ */
+public class ConcurrencyStatus {
+    
+    private ConcurrencyLimit rule;
+    private int currentLimit;
+    private int inFlight;
+    private int remoteInFlight;
+    private long rejected;
+    private long dropped;
+    
+    public ConcurrencyStatus() {
+    }
+    
+    public ConcurrencyStatus(ConcurrencyLimit rule, int currentLimit, int inFlight,
+                             int remoteInFlight, long rejected, long dropped) {
+        this.rule = rule;
+        this.currentLimit = currentLimit;
+        this.inFlight = inFlight;
+        this.remoteInFlight = remoteInFlight;
+        this.rejected = rejected;
+        this.dropped = dropped;
+    }
+    
+    // Getters and Setters
+    public ConcurrencyLimit getRule() {
+        return rule;
+    }
+    
+    public void setRule(ConcurrencyLimit rule) {
+        this.rule = rule;
+    }
+    
+    public int getCurrentLimit() {
+        return currentLimit;
+    }
+    
+    public void setCurrentLimit(int currentLimit) {
+        this.currentLimit = currentLimit;
+    }
+    
+    public int getInFlight() {
+        return inFlight;
+    }
+    
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+    
+    public int getRemoteInFlight() {
+        return remoteInFlight;
+    }
+    
+    public void setRemoteInFlight(int remoteInFlight) {
+        this.remoteInFlight = remoteInFlight;
+    }
+    
+    public long getRejected() {
+        return rejected;
+    }
+    
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+    
+    public long getDropped() {
+        return dropped;
+    }
+    
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.example.demo.model.dto;
+
+/**
+ * Outcome of moving plain Redis counters into the compact layout, with Redis
+ * used_memory sampled before and after the pass.
+ */
+public class CounterMigrationReport {
+    
+    private long scannedKeys;
+    private long migratedKeys;
+    private long usedMemoryBefore;
+    private long usedMemoryAfter;
+    private long durationMillis;
+    
+    public CounterMigrationReport() {
+    }
+    
+    public CounterMigrationReport(long scannedKeys, long migratedKeys, long usedMemoryBefore,
+                                  long usedMemoryAfter, long durationMillis) {
+        this.scannedKeys = scannedKeys;
+        this.migratedKeys = migratedKeys;
+        this.usedMemoryBefore = usedMemoryBefore;
+        this.usedMemoryAfter = usedMemoryAfter;
+        this.durationMillis = durationMillis;
+    }
+    
+    /**
+     * Memory freed per migrated counter, or 0 when nothing was migrated.
+     * Other writes during the pass also move used_memory, so this is an estimate.
+     */
+    public double getBytesSavedPerKey() {
+        return migratedKeys > 0 ? (double) (usedMemoryBefore - usedMemoryAfter) / migratedKeys : 0;
+    }
+    
+    // Getters and Setters
+    public long getScannedKeys() {
+        return scannedKeys;
+    }
+    
+    public void setScannedKeys(long scannedKeys) {
+        this.scannedKeys = scannedKeys;
+    }
+    
+    public long getMigratedKeys() {
+        return migratedKeys;
+    }
+    
+    public void setMigratedKeys(long migratedKeys) {
+        this.migratedKeys = migratedKeys;
+    }
+    
+    public long getUsedMemoryBefore() {
+        return usedMemoryBefore;
+    }
+    
+    public void setUsedMemoryBefore(long usedMemoryBefore) {
+        this.usedMemoryBefore = usedMemoryBefore;
+    }
+    
+    public long getUsedMemoryAfter() {
+        return usedMemoryAfter;
+    }
+    
+    public void setUsedMemoryAfter(long usedMemoryAfter) {
+        this.usedMemoryAfter = usedMemoryAfter;
+    }
+    
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+    
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.demo.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.
+ * nextCursor is absent on the last page; totalElements only when requested.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPage<T> {
+    
+    private List<T> content;
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;
+    private Long totalElements;
+    
+    public CursorPage() {
+    }
+    
+    public CursorPage(List<T> content, boolean hasMore, String nextCursor, Long totalElements) {
+        this.content = content;
+        this.size = content.size();
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+        this.totalElements = totalElements;
+    }
+    
+    // Getters and Setters
+    public List<T> getContent() {
+        return content;
+    }
+    
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public void setSize(int size) {
+        this.size = size;
+    }
+    
+    public boolean isHasMore() {
+        return hasMore;
+    }
+    
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public Long getTotalElements() {
+        return totalElements;
+    }
+    
+    public void setTotalElements(Long totalElements) {
+        this.totalElements = totalElements;
+    }
+    
+    @Override
+    public String toString() {
+        return "CursorPage{" +
+                "size=" + size +
+                ", hasMore=" + hasMore +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", totalElements=" + totalElements +
+                '}';
+    }
+}
\ No newline at end of file
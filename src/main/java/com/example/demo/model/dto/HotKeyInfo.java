@@ -0,0 +1,78 @@
+package com.example.demo.model.dto;
+
+/**
+ * One entry of the hot-keys report.
+ * Request counts are count-min estimates and may be slightly high;
+ * usage and limit are as seen on the key's last check in the interval.
+ */
+public class HotKeyInfo {
+    
+    private String apiKey;
+    private long estimatedRequests;
+    private double requestsPerSecond;
+    private long currentUsage;
+    private int limit;
+    private double usageRatio;
+    
+    public HotKeyInfo() {
+    }
+    
+    public HotKeyInfo(String apiKey, long estimatedRequests, double requestsPerSecond,
+                      long currentUsage, int limit) {
+        this.apiKey = apiKey;
+        this.estimatedRequests = estimatedRequests;
+        this.requestsPerSecond = requestsPerSecond;
+        this.currentUsage = currentUsage;
+        this.limit = limit;
+        this.usageRatio = limit > 0 ? (double) currentUsage / limit : 0;
+    }
+    
+    // Getters and Setters
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public long getEstimatedRequests() {
+        return estimatedRequests;
+    }
+    
+    public void setEstimatedRequests(long estimatedRequests) {
+        this.estimatedRequests = estimatedRequests;
+    }
+    
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+    
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+    
+    public long getCurrentUsage() {
+        return currentUsage;
+    }
+    
+    public void setCurrentUsage(long currentUsage) {
+        this.currentUsage = currentUsage;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    public double getUsageRatio() {
+        return usageRatio;
+    }
+    
+    public void setUsageRatio(double usageRatio) {
+        this.usageRatio = usageRatio;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.example.demo.model.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Top keys by request rate and by usage-to-limit ratio over the last
+ * completed tracking interval.
+ */
+public class HotKeysReport {
+    
+    private LocalDateTime intervalStart;
+    private LocalDateTime intervalEnd;
+    private List<HotKeyInfo> topByRate;
+    private List<HotKeyInfo> nearLimit;
+    
+    public HotKeysReport() {
+    }
+    
+    public HotKeysReport(LocalDateTime intervalStart, LocalDateTime intervalEnd,
+                         List<HotKeyInfo> topByRate, List<HotKeyInfo> nearLimit) {
+        this.intervalStart = intervalStart;
+        this.intervalEnd = intervalEnd;
+        this.topByRate = topByRate;
+        this.nearLimit = nearLimit;
+    }
+    
+    /**
+     * Copy of this report keeping only the first k entries of each list
+     */
+    public HotKeysReport limitTo(int k) {
+        return new HotKeysReport(intervalStart, intervalEnd,
+                topByRate.subList(0, Math.min(k, topByRate.size())),
+                nearLimit.subList(0, Math.min(k, nearLimit.size())));
+    }
+    
+    // Getters and Setters
+    public LocalDateTime getIntervalStart() {
+        return intervalStart;
+    }
+    
+    public void setIntervalStart(LocalDateTime intervalStart) {
+        this.intervalStart = intervalStart;
+    }
+    
+    public LocalDateTime getIntervalEnd() {
+        return intervalEnd;
+    }
+    
+    public void setIntervalEnd(LocalDateTime intervalEnd) {
+        this.intervalEnd = intervalEnd;
+    }
+    
+    public List<HotKeyInfo> getTopByRate() {
+        return topByRate;
+    }
+    
+    public void setTopByRate(List<HotKeyInfo> topByRate) {
+        this.topByRate = topByRate;
+    }
+    
+    public List<HotKeyInfo> getNearLimit() {
+        return nearLimit;
+    }
+    
+    public void setNearLimit(List<HotKeyInfo> nearLimit) {
+        this.nearLimit = nearLimit;
+    }
+}
\ No newline at end of file
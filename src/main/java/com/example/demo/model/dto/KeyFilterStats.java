@@ -0,0 +1,158 @@
+package com.example.demo.model.dto;
+
+/**
+ * State of the unknown-key filter: its size, the false-positive rate it was sized for
+ * and the rate at its current fill, how many checks it and the negative cache answered,
+ * and whether it is letting every key through because config events may be missing.
+ */
+public class KeyFilterStats {
+    
+    private boolean enabled;
+    private boolean ready;
+    private long keys;
+    private long bitSize;
+    private int hashes;
+    private long memoryBytes;
+    private double targetFalsePositiveRate;
+    private double estimatedFalsePositiveRate;
+    private long rejectedChecks;
+    private long falsePositives;
+    private long negativeCacheHits;
+    private int negativeCacheSize;
+    private boolean failingOpen;
+    private String lastEventCatchUpAt;
+    private String lastRebuildAt;
+    private long rebuildDurationMillis;
+    
+    public KeyFilterStats() {
+    }
+    
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+    
+    public long getKeys() {
+        return keys;
+    }
+    
+    public void setKeys(long keys) {
+        this.keys = keys;
+    }
+    
+    public long getBitSize() {
+        return bitSize;
+    }
+    
+    public void setBitSize(long bitSize) {
+        this.bitSize = bitSize;
+    }
+    
+    public int getHashes() {
+        return hashes;
+    }
+    
+    public void setHashes(int hashes) {
+        this.hashes = hashes;
+    }
+    
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+    
+    public void setMemoryBytes(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+    
+    public double getTargetFalsePositiveRate() {
+        return targetFalsePositiveRate;
+    }
+    
+    public void setTargetFalsePositiveRate(double targetFalsePositiveRate) {
+        this.targetFalsePositiveRate = targetFalsePositiveRate;
+    }
+    
+    public double getEstimatedFalsePositiveRate() {
+        return estimatedFalsePositiveRate;
+    }
+    
+    public void setEstimatedFalsePositiveRate(double estimatedFalsePositiveRate) {
+        this.estimatedFalsePositiveRate = estimatedFalsePositiveRate;
+    }
+    
+    public long getRejectedChecks() {
+        return rejectedChecks;
+    }
+    
+    public void setRejectedChecks(long rejectedChecks) {
+        this.rejectedChecks = rejectedChecks;
+    }
+    
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+    
+    public void setFalsePositives(long falsePositives) {
+        this.falsePositives = falsePositives;
+    }
+    
+    public long getNegativeCacheHits() {
+        return negativeCacheHits;
+    }
+    
+    public void setNegativeCacheHits(long negativeCacheHits) {
+        this.negativeCacheHits = negativeCacheHits;
+    }
+    
+    public int getNegativeCacheSize() {
+        return negativeCacheSize;
+    }
+    
+    public void setNegativeCacheSize(int negativeCacheSize) {
+        this.negativeCacheSize = negativeCacheSize;
+    }
+    
+    public boolean isFailingOpen() {
+        return failingOpen;
+    }
+    
+    public void setFailingOpen(boolean failingOpen) {
+        this.failingOpen = failingOpen;
+    }
+    
+    public String getLastEventCatchUpAt() {
+        return lastEventCatchUpAt;
+    }
+    
+    public void setLastEventCatchUpAt(String lastEventCatchUpAt) {
+        this.lastEventCatchUpAt = lastEventCatchUpAt;
+    }
+    
+    public String getLastRebuildAt() {
+        return lastRebuildAt;
+    }
+    
+    public void setLastRebuildAt(String lastRebuildAt) {
+        this.lastRebuildAt = lastRebuildAt;
+    }
+    
+    public long getRebuildDurationMillis() {
+        return rebuildDurationMillis;
+    }
+    
+    public void setRebuildDurationMillis(long rebuildDurationMillis) {
+        this.rebuildDurationMillis = rebuildDurationMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.example.demo.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Usage state change pushed to stream subscribers.
+ * thresholdPercent is only set on THRESHOLD events, resetInSeconds when known.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UsageEvent {
+    
+    public enum Type {
+        /** Current state sent once when a subscription starts */
+        SNAPSHOT,
+        /** Usage crossed one of the configured percentages of the limit */
+        THRESHOLD,
+        /** First request over the limit in this window */
+        BLOCKED,
+        /** A new window started after the key was above a threshold or blocked */
+        RESET
+    }
+    
+    private String apiKey;
+    private Type type;
+    private long currentUsage;
+    private int limit;
+    private Integer thresholdPercent;
+    private Integer resetInSeconds;
+    private long timestamp;
+    
+    public UsageEvent() {
+    }
+    
+    public UsageEvent(String apiKey, Type type, long currentUsage, int limit,
+                      Integer thresholdPercent, Integer resetInSeconds, long timestamp) {
+        this.apiKey = apiKey;
+        this.type = type;
+        this.currentUsage = currentUsage;
+        this.limit = limit;
+        this.thresholdPercent = thresholdPercent;
+        this.resetInSeconds = resetInSeconds;
+        this.timestamp = timestamp;
+    }
+    
+    // Getters and Setters
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public void setType(Type type) {
+        this.type = type;
+    }
+    
+    public long getCurrentUsage() {
+        return currentUsage;
+    }
+    
+    public void setCurrentUsage(long currentUsage) {
+        this.currentUsage = currentUsage;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    public Integer getThresholdPercent() {
+        return thresholdPercent;
+    }
+    
+    public void setThresholdPercent(Integer thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+    
+    public Integer getResetInSeconds() {
+        return resetInSeconds;
+    }
+    
+    public void setResetInSeconds(Integer resetInSeconds) {
+        this.resetInSeconds = resetInSeconds;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
\ No newline at end of file
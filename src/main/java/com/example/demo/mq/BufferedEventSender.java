@@ -0,0 +1,346 @@
+package com.example.demo.mq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Owns the RocketMQ producer and connects it in the background, so node startup
+ * never waits for the name server or broker.
+ *
+ * Fire-and-forget events are queued in a bounded in-memory buffer and sent in order
+ * by the "mq-event-sender" thread. While the producer is not started yet, or sends
+ * are failing, events stay buffered and are replayed once a send succeeds again.
+ * When the buffer is full new events are dropped and counted. A message the broker
+ * rejects for good (illegal message, no permission) is discarded at once, and one
+ * the broker keeps answering with an error is discarded after a fixed number of
+ * attempts, so a single bad message cannot hold up the events queued behind it.
+ * Connection failures and an overloaded broker never count against a message: the
+ * buffer waits for the broker and replays everything once it is back. Config events do not
+ * need this buffer: they are stored in the outbox table until the relay publishes them.
+ */
+@Component
+public class BufferedEventSender {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BufferedEventSender.class);
+    
+    private static final MessageQueueSelector BY_SHARD_KEY =
+            (queues, message, shardKey) -> queues.get(Math.floorMod(shardKey.hashCode(), queues.size()));
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${rocketmq.name-server:localhost:9876}")
+    private String nameServer;
+    
+    @Value("${rocketmq.producer.group:rate-limit-producer-group}")
+    private String producerGroup;
+    
+    @Value("${rocketmq.producer.send-message-timeout:3000}")
+    private int sendMessageTimeout;
+    
+    @Value("${rocketmq.producer.buffer-capacity:10000}")
+    private int bufferCapacity;
+    
+    @Value("${rocketmq.producer.retry-interval-ms:1000}")
+    private long retryIntervalMillis;
+    
+    @Value("${rocketmq.producer.max-backoff-ms:30000}")
+    private long maxBackoffMillis;
+    
+    @Value("${rocketmq.producer.max-attempts-per-message:10}")
+    private int maxAttemptsPerMessage;
+    
+    private final ArrayDeque<Message> buffer = new ArrayDeque<>();
+    
+    private volatile DefaultMQProducer producer;
+    private volatile boolean connected;
+    private volatile boolean running;
+    private Thread senderThread;
+    private int consecutiveFailures;
+    
+    /**
+     * Attempts the broker answered with an error for the message at the head of the
+     * buffer; sender thread only
+     */
+    private int headFailures;
+    
+    private Counter sentEvents;
+    private Counter droppedEvents;
+    private Counter failedEvents;
+    
+    @PostConstruct
+    public void init() {
+        sentEvents = meterRegistry.counter("ratelimit.mq.events.sent");
+        droppedEvents = meterRegistry.counter("ratelimit.mq.events.dropped");
+        failedEvents = meterRegistry.counter("ratelimit.mq.events.failed");
+        meterRegistry.gauge("ratelimit.mq.events.buffered", this, BufferedEventSender::getBufferedCount);
+        meterRegistry.gauge("ratelimit.mq.connected", this, sender -> sender.isConnected() ? 1 : 0);
+    }
+    
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        running = true;
+        senderThread = new Thread(this::sendLoop, "mq-event-sender");
+        senderThread.setDaemon(true);
+        senderThread.start();
+        logger.info("RocketMQ event sender started, connecting to {} in the background", nameServer);
+    }
+    
+    /**
+     * Queue a message for sending without blocking.
+     * Returns false if the buffer is full and the message was dropped.
+     */
+    public boolean offer(Message message) {
+        synchronized (buffer) {
+            if (buffer.size() >= bufferCapacity) {
+                droppedEvents.increment();
+                return false;
+            }
+            buffer.addLast(message);
+        }
+        Thread thread = senderThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+    
+    /**
+     * Send a message on the caller's thread to the queue selected by shardKey, so
+     * messages with the same key always share a queue. Throws instead of buffering
+     * when the producer is not connected, so callers with their own durable retry
+     * (the outbox relay) keep control of ordering.
+     */
+    public SendResult sendOrdered(Message message, String shardKey) throws Exception {
+        DefaultMQProducer current = producer;
+        if (current == null || !connected) {
+            throw new IllegalStateException("RocketMQ producer is not connected");
+        }
+        return current.send(message, BY_SHARD_KEY, shardKey);
+    }
+    
+    /**
+     * Round trip to the name server for the event topic's route, used as a health probe
+     */
+    public void probe() throws MQClientException {
+        DefaultMQProducer current = producer;
+        if (current == null) {
+            throw new IllegalStateException("RocketMQ producer is not connected");
+        }
+        current.fetchPublishMessageQueues(RateLimitEventProducer.TOPIC_RATE_LIMIT_EVENTS);
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    public int getBufferedCount() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (running) {
+            running = false;
+            LockSupport.unpark(senderThread);
+            try {
+                senderThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = getBufferedCount();
+        if (remaining > 0) {
+            logger.warn("Discarding {} buffered events on shutdown", remaining);
+        }
+        connected = false;
+        DefaultMQProducer current = producer;
+        if (current != null) {
+            current.shutdown();
+        }
+        logger.info("RocketMQ event sender stopped");
+    }
+    
+    private void sendLoop() {
+        while (running) {
+            long waitMillis;
+            try {
+                if (producer == null) {
+                    connect();
+                }
+                int sent = sendBuffered();
+                if (consecutiveFailures > 0) {
+                    logger.info("RocketMQ producer recovered after {} failed attempts, replayed {} buffered events",
+                               consecutiveFailures, sent);
+                    consecutiveFailures = 0;
+                }
+                // Sleep until offer() wakes us; the timeout only re-checks running
+                waitMillis = TimeUnit.SECONDS.toMillis(1);
+            } catch (Exception e) {
+                connected = false;
+                consecutiveFailures++;
+                if (consecutiveFailures == 1) {
+                    logger.warn("RocketMQ producer unavailable, buffering events and retrying", e);
+                }
+                waitMillis = backoffMillis(consecutiveFailures);
+            }
+            if (running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMillis));
+            }
+        }
+    }
+    
+    /**
+     * Create and start a producer. A producer whose start failed cannot be started
+     * again, so every attempt uses a new instance.
+     */
+    void connect() throws MQClientException {
+        DefaultMQProducer candidate = newProducer();
+        try {
+            candidate.start();
+        } catch (MQClientException | RuntimeException e) {
+            candidate.shutdown();
+            throw e;
+        }
+        producer = candidate;
+        connected = true;
+        logger.info("RocketMQ Producer started successfully. NameServer: {}, Group: {}", nameServer, producerGroup);
+    }
+    
+    DefaultMQProducer newProducer() {
+        DefaultMQProducer candidate = new DefaultMQProducer(producerGroup);
+        candidate.setNamesrvAddr(nameServer);
+        candidate.setSendMsgTimeout(sendMessageTimeout);
+        candidate.setRetryTimesWhenSendFailed(3);
+        candidate.setRetryTimesWhenSendAsyncFailed(3);
+        return candidate;
+    }
+    
+    /**
+     * Send buffered messages oldest first until the buffer is empty.
+     * A failed message stays at the head, so order is kept when it is retried, until
+     * it fails with a non-retryable error or uses up its attempts; then it is discarded.
+     */
+    int sendBuffered() throws Exception {
+        int sent = 0;
+        while (true) {
+            Message next;
+            synchronized (buffer) {
+                next = buffer.peekFirst();
+            }
+            if (next == null) {
+                connected = true;
+                return sent;
+            }
+            
+            SendResult sendResult;
+            try {
+                sendResult = producer.send(next);
+            } catch (Exception e) {
+                if (!isRetryable(e)) {
+                    discardHead(next, "was rejected", e);
+                    continue;
+                }
+                if (isMessageFailure(e) && ++headFailures >= maxAttemptsPerMessage) {
+                    discardHead(next, "failed " + headFailures + " times", e);
+                }
+                // Back off before the next attempt either way
+                throw e;
+            }
+            synchronized (buffer) {
+                buffer.pollFirst();
+            }
+            headFailures = 0;
+            connected = true;
+            sentEvents.increment();
+            sent++;
+            logger.debug("Sent {} event - MessageId: {}, Status: {}",
+                        next.getTags(), sendResult.getMsgId(), sendResult.getSendStatus());
+        }
+    }
+    
+    private void discardHead(Message message, String reason, Exception cause) {
+        synchronized (buffer) {
+            if (buffer.peekFirst() == message) {
+                buffer.pollFirst();
+            }
+        }
+        headFailures = 0;
+        failedEvents.increment();
+        logger.warn("Discarding {} event that {}: {}", message.getTags(), reason, cause.toString());
+    }
+    
+    /**
+     * Whether a failed send may succeed later. Errors about the message itself or the
+     * producer's permissions do not go away by retrying.
+     */
+    static boolean isRetryable(Exception e) {
+        int responseCode;
+        if (e instanceof MQClientException clientException) {
+            responseCode = clientException.getResponseCode();
+        } else if (e instanceof MQBrokerException brokerException) {
+            responseCode = brokerException.getResponseCode();
+        } else {
+            return true;
+        }
+        return switch (responseCode) {
+            case ResponseCode.MESSAGE_ILLEGAL, ResponseCode.NO_PERMISSION, ResponseCode.INVALID_PARAMETER,
+                 ResponseCode.VERSION_NOT_SUPPORTED, ResponseCode.REQUEST_CODE_NOT_SUPPORTED,
+                 ResponseCode.ILLEGAL_OPERATION -> false;
+            default -> true;
+        };
+    }
+    
+    /**
+     * Whether the broker received the message and answered with an error. Transport
+     * failures (no name server, no route, connection refused, timeouts; client-side
+     * codes from 10000 up or none at all) and a busy or unavailable broker say nothing
+     * about the message and leave it at the head.
+     */
+    static boolean isMessageFailure(Exception e) {
+        int responseCode;
+        if (e instanceof MQBrokerException brokerException) {
+            responseCode = brokerException.getResponseCode();
+        } else if (e instanceof MQClientException clientException) {
+            responseCode = clientException.getResponseCode();
+        } else {
+            return false;
+        }
+        if (responseCode <= 0 || responseCode >= 10000) {
+            return false;
+        }
+        return switch (responseCode) {
+            case ResponseCode.SYSTEM_BUSY, ResponseCode.FLOW_CONTROL, ResponseCode.SERVICE_NOT_AVAILABLE,
+                 ResponseCode.SLAVE_NOT_AVAILABLE, ResponseCode.FLUSH_DISK_TIMEOUT,
+                 ResponseCode.FLUSH_SLAVE_TIMEOUT -> false;
+            default -> true;
+        };
+    }
+    
+    long backoffMillis(int failures) {
+        long backoff = retryIntervalMillis << Math.min(failures - 1, 20);
+        return Math.min(backoff, Math.max(maxBackoffMillis, retryIntervalMillis));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.example.demo.mq;
+
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.repository.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes outbox events to RocketMQ from a background thread, oldest first.
+ *
+ * Each batch goes through three steps so no row lock is held while the broker is called:
+ * a short transaction reads the oldest unpublished rows and claims them for this relay,
+ * the batch is sent outside any transaction, and a second short transaction marks it
+ * published. While a relay's claim on the head of the outbox is live, other relays wait,
+ * so batches still go out in id order. If the send fails the same relay retries the
+ * same batch after a backoff; if it dies, another relay takes over once the claim
+ * expires. Delivery is at least once: a crash or failed update after the send
+ * republishes the batch, and consumers apply config events idempotently.
+ */
+@Component
+public class OutboxRelay {
+    
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+    
+    @Autowired
+    private RateLimitEventProducer eventProducer;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${ratelimit.outbox.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${ratelimit.outbox.relay-interval-ms:1000}")
+    private long relayIntervalMillis;
+    
+    @Value("${ratelimit.outbox.max-backoff-ms:30000}")
+    private long maxBackoffMillis;
+    
+    @Value("${ratelimit.outbox.claim-timeout-ms:60000}")
+    private long claimTimeoutMillis;
+    
+    @Value("${ratelimit.outbox.retention-minutes:1440}")
+    private long retentionMinutes;
+    
+    private final String relayId = UUID.randomUUID().toString();
+    private volatile boolean running;
+    private Thread relayThread;
+    private int consecutiveFailures;
+    
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        running = true;
+        relayThread = new Thread(this::relayLoop, "outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+        logger.info("Outbox relay started, batch size {}, interval {} ms", batchSize, relayIntervalMillis);
+    }
+    
+    /**
+     * Ask the relay to look for new events now instead of at its next poll
+     */
+    public void wakeUp() {
+        Thread thread = relayThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(relayThread);
+        try {
+            relayThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Outbox relay stopped");
+    }
+    
+    private void relayLoop() {
+        while (running) {
+            long waitMillis;
+            try {
+                int published = relayBatch();
+                if (consecutiveFailures > 0) {
+                    logger.info("Outbox relay recovered after {} failed attempts", consecutiveFailures);
+                    consecutiveFailures = 0;
+                }
+                // A full batch means more may be waiting
+                waitMillis = published >= batchSize ? 0 : relayIntervalMillis;
+            } catch (Exception e) {
+                consecutiveFailures++;
+                if (consecutiveFailures == 1) {
+                    logger.warn("Failed to publish outbox events, will retry", e);
+                }
+                waitMillis = backoffMillis(consecutiveFailures);
+            }
+            if (waitMillis > 0 && running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMillis));
+            }
+        }
+    }
+    
+    /**
+     * Publish the oldest unpublished batch.
+     * Returns the number of events published; throws if the broker rejected the batch.
+     */
+    int relayBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> claimBatch());
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            eventProducer.publishBatch(batch);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to publish " + batch.size() + " outbox events", e);
+        }
+        List<Long> ids = batch.stream().map(OutboxEvent::getId).toList();
+        transactionTemplate.execute(status -> outboxRepository.markPublished(ids, LocalDateTime.now()));
+        return batch.size();
+    }
+    
+    /**
+     * Claim the oldest unpublished batch, or nothing while another relay's claim on it is live
+     */
+    private List<OutboxEvent> claimBatch() {
+        List<OutboxEvent> batch = outboxRepository.findUnpublished(PageRequest.of(0, batchSize));
+        LocalDateTime now = LocalDateTime.now();
+        for (OutboxEvent event : batch) {
+            if (event.getClaimedUntil() != null && event.getClaimedUntil().isAfter(now)
+                    && !relayId.equals(event.getClaimedBy())) {
+                logger.debug("Outbox event {} is claimed by relay {}", event.getId(), event.getClaimedBy());
+                return List.of();
+            }
+        }
+        if (!batch.isEmpty()) {
+            outboxRepository.claim(batch.stream().map(OutboxEvent::getId).toList(), relayId,
+                                   now.plus(claimTimeoutMillis, ChronoUnit.MILLIS));
+        }
+        return batch;
+    }
+    
+    long backoffMillis(int failures) {
+        long backoff = relayIntervalMillis << Math.min(failures - 1, 20);
+        return Math.min(backoff, Math.max(maxBackoffMillis, relayIntervalMillis));
+    }
+    
+    /**
+     * Delete published events older than the retention period
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.outbox.prune-interval-ms:600000}")
+    public void prune() {
+        try {
+            LocalDateTime before = LocalDateTime.now().minusMinutes(retentionMinutes);
+            Integer deleted = transactionTemplate.execute(status -> outboxRepository.deletePublishedBefore(before));
+            if (deleted != null && deleted > 0) {
+                logger.info("Pruned {} published outbox events older than {}", deleted, before);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to prune outbox events", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.example.demo.mq;
+
+import com.example.demo.mq.RateLimitEventProducer.RateLimitConfigEvent;
+import com.example.demo.service.ApiKeyFilter;
+import com.example.demo.service.IpRuleMatcher;
+import com.example.demo.service.RuleCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.MQAdminImpl;
+import org.apache.rocketmq.client.impl.MQClientManager;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.protocol.heartbeat.MessageModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies rate limit config events published by RateLimitEventProducer to the local RuleCache,
+ * ApiKeyFilter and IpRuleMatcher. Uses broadcasting mode so every limiter node receives every change.
+ *
+ * The key filter can only reject keys while it is sure no event is missing, so the consumer
+ * tells it when it has subscribed and, periodically, when it has consumed up to the end of
+ * every queue. Caught up means caught up with the broker, not with the outbox: a key
+ * committed on another node is rejected as not found until OutboxRelay publishes its
+ * event, normally right after the commit and at most relay-interval-ms later while the
+ * broker is reachable.
+ */
+@Component
+public class RateLimitEventConsumer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitEventConsumer.class);
+    
+    private static final String CONFIG_EVENT_TAGS = RateLimitEventProducer.TAG_LIMIT_CREATED + " || "
+            + RateLimitEventProducer.TAG_LIMIT_UPDATED + " || "
+            + RateLimitEventProducer.TAG_LIMIT_DELETED;
+            
+    @Autowired
+    private RuleCache ruleCache;
+    
+    @Autowired
+    private ApiKeyFilter keyFilter;
+    
+    @Autowired
+    private IpRuleMatcher ipRuleMatcher;
+    
+    @Value("${rocketmq.name-server:localhost:9876}")
+    private String nameServer;
+    
+    @Value("${rocketmq.consumer.group:rate-limit-consumer-group}")
+    private String consumerGroup;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private volatile DefaultMQPushConsumer consumer;
+    private volatile boolean subscribed;
+    
+    /**
+     * Subscribe before the ApplicationRunners execute so changes made while
+     * the preload is running are captured and replayed afterwards
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        if (!ruleCache.isEnabled() && !keyFilter.isEnabled() && !ipRuleMatcher.isEnabled()) {
+            return;
+        }
+        
+        try {
+            consumer = new DefaultMQPushConsumer(consumerGroup);
+            consumer.setNamesrvAddr(nameServer);
+            consumer.setMessageModel(MessageModel.BROADCASTING);
+            consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+            consumer.subscribe(RateLimitEventProducer.TOPIC_RATE_LIMIT_EVENTS, CONFIG_EVENT_TAGS);
+            // Orderly, so changes to one key (all on the same queue) are applied in the order they were made
+            consumer.registerMessageListener((MessageListenerOrderly) (messages, context) -> {
+                for (MessageExt message : messages) {
+                    handleMessage(message);
+                }
+                return ConsumeOrderlyStatus.SUCCESS;
+            });
+            consumer.start();
+            subscribed = true;
+            logger.info("RocketMQ config event consumer started. NameServer: {}, Group: {}",
+                       nameServer, consumerGroup);
+            keyFilter.eventsSubscribed();
+        } catch (MQClientException e) {
+            logger.error("Failed to start RocketMQ config event consumer, "
+                    + "rule changes from other nodes will only be seen through lookups and rebuilds", e);
+        }
+    }
+    
+    /**
+     * Report to the key filter when every queue has been consumed up to the offset it had
+     * when the check started, i.e. every config event published before then is applied
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.key-filter.catch-up-check-interval-ms:5000}")
+    public void checkCatchUp() {
+        DefaultMQPushConsumer current = consumer;
+        if (current == null || !subscribed || !keyFilter.isEnabled()) {
+            return;
+        }
+        long checkedAt = System.currentTimeMillis();
+        try {
+            // The started consumer registered itself with the shared client instance for its config
+            MQClientInstance client = MQClientManager.getInstance().getOrCreateMQClientInstance(current);
+            if (!(client.selectConsumer(consumerGroup) instanceof DefaultMQPushConsumerImpl consumerImpl)) {
+                return;
+            }
+            MQAdminImpl admin = client.getMQAdminImpl();
+            for (MessageQueue queue : admin.fetchSubscribeMessageQueues(RateLimitEventProducer.TOPIC_RATE_LIMIT_EVENTS)) {
+                // Read the end of the queue before our position, so a match means we were caught up at checkedAt
+                long end = admin.maxOffset(queue);
+                long consumed = consumerImpl.getOffsetStore().readOffset(queue, ReadOffsetType.READ_FROM_MEMORY);
+                if (consumed < end) {
+                    logger.debug("Config events behind on {}: consumed {} of {}", queue, consumed, end);
+                    return;
+                }
+            }
+            keyFilter.eventsCaughtUp(checkedAt);
+        } catch (Exception e) {
+            logger.debug("Failed to check config event lag", e);
+        }
+    }
+    
+    private void handleMessage(MessageExt message) {
+        try {
+            RateLimitConfigEvent event = objectMapper.readValue(
+                new String(message.getBody(), StandardCharsets.UTF_8), RateLimitConfigEvent.class);
+                
+            boolean deleted = RateLimitEventProducer.TAG_LIMIT_DELETED.equals(message.getTags());
+            if (ruleCache.isEnabled()) {
+                ruleCache.applyChange(event.getApiKey(), event.getLimit(), event.getWindowSeconds(), deleted);
+            }
+            // Deleted keys stay in the filter until its next rebuild; lookups for them fall through to MySQL
+            if (!deleted) {
+                keyFilter.add(event.getApiKey());
+            }
+            ipRuleMatcher.applyChange(event.getApiKey(), event.getLimit(), event.getWindowSeconds(), deleted);
+            logger.debug("Applied {} config event for API key: {}", message.getTags(), event.getApiKey());
+            
+        } catch (Exception e) {
+            logger.warn("Failed to apply config event, MessageId: {}", message.getMsgId(), e);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        subscribed = false;
+        keyFilter.eventsUnsubscribed();
+        if (consumer != null) {
+            consumer.shutdown();
+        }
+    }
+}
\ No newline at end of file
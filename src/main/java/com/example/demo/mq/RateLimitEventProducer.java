@@ -1,31 +1,32 @@
 package com.example.demo.mq;
 
+import com.example.demo.model.OutboxEvent;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.rocketmq.client.exception.MQBrokerException;
-import org.apache.rocketmq.client.exception.MQClientException;
-import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.common.message.Message;
-import org.apache.rocketmq.remoting.exception.RemotingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 @Component
 public class RateLimitEventProducer {
     
     private static final Logger logger = LoggerFactory.getLogger(RateLimitEventProducer.class);
     
-    private static final String TOPIC_RATE_LIMIT_EVENTS = "rate-limit-events";
-    private static final String TAG_LIMIT_EXCEEDED = "LIMIT_EXCEEDED";
-    private static final String TAG_LIMIT_CREATED = "LIMIT_CREATED";
-    private static final String TAG_LIMIT_UPDATED = "LIMIT_UPDATED";
-    private static final String TAG_LIMIT_DELETED = "LIMIT_DELETED";
+    public static final String TOPIC_RATE_LIMIT_EVENTS = "rate-limit-events";
+    public static final String TAG_LIMIT_EXCEEDED = "LIMIT_EXCEEDED";
+    public static final String TAG_LIMIT_CREATED = "LIMIT_CREATED";
+    public static final String TAG_LIMIT_UPDATED = "LIMIT_UPDATED";
+    public static final String TAG_LIMIT_DELETED = "LIMIT_DELETED";
     
     @Autowired
-    private DefaultMQProducer producer;
+    private BufferedEventSender sender;
     
     private final ObjectMapper objectMapper = new ObjectMapper();
     
@@ -74,7 +75,31 @@ public class RateLimitEventProducer {
     }
     
     /**
-     * Generic method to send message to RocketMQ
+     * Publish outbox events in outbox order. Each event goes to the queue selected by its
+     * API key, so all changes to one key stay on one queue and are consumed in order.
+     * Failures are thrown so the relay can retry; events sent before the failure are
+     * sent again, which consumers tolerate.
+     */
+    public void publishBatch(List<OutboxEvent> events) throws Exception {
+        for (OutboxEvent event : events) {
+            Message message = new Message(
+                TOPIC_RATE_LIMIT_EVENTS,
+                event.getTag(),
+                event.getPayload().getBytes(StandardCharsets.UTF_8)
+            );
+            message.setKeys(event.getApiKey());
+            
+            SendResult sendResult = sender.sendOrdered(message, event.getApiKey());
+            if (sendResult.getSendStatus() != SendStatus.SEND_OK) {
+                throw new IllegalStateException("Broker returned " + sendResult.getSendStatus());
+            }
+        }
+        logger.info("Published {} outbox events", events.size());
+    }
+    
+    /**
+     * Generic method to send message to RocketMQ. Only queues the message, so the
+     * caller never waits for the broker.
      */
     private void sendMessage(String tag, Object event, String logMessage) {
         try {
@@ -86,15 +111,14 @@ public class RateLimitEventProducer {
                 messageBody.getBytes("UTF-8")
             );
             
-            SendResult sendResult = producer.send(message);
-            
-            logger.info("{} - MessageId: {}, Status: {}", 
-                       logMessage, sendResult.getMsgId(), sendResult.getSendStatus());
+            if (sender.offer(message)) {
+                logger.info("{} - queued for sending", logMessage);
+            } else {
+                logger.warn("{} - event buffer full, dropped", logMessage);
+            }
                        
         } catch (JsonProcessingException e) {
             logger.error("Failed to serialize event: {}", logMessage, e);
-        } catch (MQClientException | RemotingException | MQBrokerException | InterruptedException e) {
-            logger.error("Failed to send message: {}", logMessage, e);
         } catch (Exception e) {
             logger.error("Unexpected error while sending message: {}", logMessage, e);
         }
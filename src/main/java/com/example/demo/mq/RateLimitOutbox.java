@@ -0,0 +1,69 @@
+package com.example.demo.mq;
+
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.mq.RateLimitEventProducer.RateLimitConfigEvent;
+import com.example.demo.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Records rule-change events in the outbox table as part of the caller's transaction.
+ * The event exists only if the rule change commits; OutboxRelay publishes it afterwards.
+ */
+@Component
+public class RateLimitOutbox {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitOutbox.class);
+    
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+    
+    @Autowired
+    private OutboxRelay relay;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    public void recordLimitCreated(String apiKey, int limit, int windowSeconds) {
+        record(RateLimitEventProducer.TAG_LIMIT_CREATED,
+               new RateLimitConfigEvent(apiKey, limit, windowSeconds, "CREATED", System.currentTimeMillis()));
+    }
+    
+    public void recordLimitUpdated(String apiKey, int limit, int windowSeconds) {
+        record(RateLimitEventProducer.TAG_LIMIT_UPDATED,
+               new RateLimitConfigEvent(apiKey, limit, windowSeconds, "UPDATED", System.currentTimeMillis()));
+    }
+    
+    public void recordLimitDeleted(String apiKey) {
+        record(RateLimitEventProducer.TAG_LIMIT_DELETED,
+               new RateLimitConfigEvent(apiKey, 0, 0, "DELETED", System.currentTimeMillis()));
+    }
+    
+    private void record(String tag, RateLimitConfigEvent event) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize config event for API key: " + event.getApiKey(), e);
+        }
+        outboxRepository.save(new OutboxEvent(tag, event.getApiKey(), payload));
+        logger.debug("Recorded {} outbox event for API key: {}", tag, event.getApiKey());
+        
+        // Wake the relay once the row is visible instead of waiting for its next poll
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    relay.wakeUp();
+                }
+            });
+        } else {
+            relay.wakeUp();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.ConcurrencyLimit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConcurrencyLimitRepository extends JpaRepository<ConcurrencyLimit, Long> {
+    
+    /**
+     * Find concurrency limit configuration by API key
+     */
+    Optional<ConcurrencyLimit> findByApiKey(String apiKey);
+    
+    /**
+     * Current rules for a batch of keys, used to refresh limiters cached on this node
+     */
+    List<ConcurrencyLimit> findByApiKeyIn(Collection<String> apiKeys);
+    
+    /**
+     * Delete concurrency limit by API key
+     */
+    @Modifying
+    @Query("DELETE FROM ConcurrencyLimit c WHERE c.apiKey = :apiKey")
+    int deleteByApiKey(@Param("apiKey") String apiKey);
+}
\ No newline at end of file
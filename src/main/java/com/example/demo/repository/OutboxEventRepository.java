@@ -0,0 +1,48 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    /**
+     * Oldest unpublished events, locked until the transaction ends so two relays
+     * cannot claim the same batch at once; keep that transaction short
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM OutboxEvent e WHERE e.publishedAt IS NULL ORDER BY e.id")
+    List<OutboxEvent> findUnpublished(Pageable limit);
+    
+    /**
+     * Claim events for a relay until the given time
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedBy = :relayId, e.claimedUntil = :until WHERE e.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("relayId") String relayId, @Param("until") LocalDateTime until);
+    
+    /**
+     * Mark events as published
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.publishedAt = :publishedAt WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+    
+    /**
+     * Delete events that were published before the given time
+     */
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.publishedAt IS NOT NULL AND e.publishedAt < :before")
+    int deletePublishedBefore(@Param("before") LocalDateTime before);
+}
\ No newline at end of file
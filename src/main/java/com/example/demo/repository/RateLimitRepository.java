@@ -9,6 +9,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -36,6 +39,22 @@ public interface RateLimitRepository extends JpaRepository<RateLimit, Long> {
      */
     Page<RateLimit> findAll(Pageable pageable);
     
+    /**
+     * First keyset page ordered by (createdAt, id); the Pageable only supplies the row limit
+     */
+    @Query("SELECT r FROM RateLimit r ORDER BY r.createdAt ASC, r.id ASC")
+    List<RateLimit> findKeysetFirstPage(Pageable limit);
+    
+    /**
+     * Keyset page of rows strictly after (createdAt, id), served by idx_created_at_id without OFFSET or COUNT
+     */
+    @Query("SELECT r FROM RateLimit r WHERE r.createdAt >= :createdAt " +
+           "AND (r.createdAt > :createdAt OR r.id > :id) " +
+           "ORDER BY r.createdAt ASC, r.id ASC")
+    List<RateLimit> findKeysetPageAfter(@Param("createdAt") LocalDateTime createdAt, 
+                                       @Param("id") Long id, 
+                                       Pageable limit);
+    
     /**
      * Find rate limits by request limit range
      */
@@ -57,4 +76,43 @@ public interface RateLimitRepository extends JpaRepository<RateLimit, Long> {
      */
     @Query("SELECT COUNT(r) FROM RateLimit r")
     long countRateLimits();
+    
+    /**
+     * Lowest primary key, used to split bulk loads into id ranges
+     */
+    @Query("SELECT MIN(r.id) FROM RateLimit r")
+    Long findMinId();
+    
+    /**
+     * Highest primary key, used to split bulk loads into id ranges
+     */
+    @Query("SELECT MAX(r.id) FROM RateLimit r")
+    Long findMaxId();
+    
+    /**
+     * Which of the given API keys still have a rule
+     */
+    @Query("SELECT r.apiKey FROM RateLimit r WHERE r.apiKey IN :apiKeys")
+    List<String> findExistingApiKeys(@Param("apiKeys") Collection<String> apiKeys);
+    
+    /**
+     * Find rate limits in an inclusive id range
+     */
+    List<RateLimit> findByIdBetween(Long fromId, Long toId);
+    
+    /**
+     * API keys in an inclusive id range, without loading the entities
+     */
+    @Query("SELECT r.apiKey FROM RateLimit r WHERE r.id BETWEEN :fromId AND :toId")
+    List<String> findApiKeysByIdBetween(@Param("fromId") Long fromId, @Param("toId") Long toId);
+    
+    /**
+     * Rules whose API key starts with the prefix, used to load the "ip:" client-address rules
+     */
+    List<RateLimit> findByApiKeyStartingWith(String prefix);
+    
+    /**
+     * Rules created or changed after the given time, used to catch up after a snapshot restore
+     */
+    List<RateLimit> findByUpdatedAtAfter(LocalDateTime updatedAt);
 }
\ No newline at end of file
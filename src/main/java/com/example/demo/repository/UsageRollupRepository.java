@@ -0,0 +1,21 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.UsageGranularity;
+import com.example.demo.model.UsageRollup;
+import com.example.demo.model.UsageRollupId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UsageRollupRepository extends JpaRepository<UsageRollup, UsageRollupId> {
+    
+    /**
+     * Find rollups for an API key in a time range, oldest first
+     */
+    List<UsageRollup> findByApiKeyAndGranularityAndBucketStartBetweenOrderByBucketStartAsc(
+            String apiKey, UsageGranularity granularity, LocalDateTime from, LocalDateTime to, Pageable limit);
+}
\ No newline at end of file
@@ -0,0 +1,308 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.KeyFilterStats;
+import com.example.demo.repository.RateLimitRepository;
+import com.example.demo.util.BloomFilter;
+import com.example.demo.util.Fingerprints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers checks for API keys that have no rule without going to MySQL or Redis.
+ *
+ * A Bloom filter holds every configured key. It is built from rate_limits in id-range
+ * chunks and rebuilt periodically to shed deleted keys; keys created here or announced
+ * by config events are added as they appear. A key the filter rejects certainly has no
+ * rule. Keys that pass but turn out to be missing (false positives, or keys deleted
+ * since the last rebuild) go into a short-lived negative cache, unless the key was
+ * added while the lookup that missed it was running.
+ *
+ * A key created on another node is only known here once its config event arrives, so
+ * the filter relies on the event consumer and fails open (every key passes) whenever it
+ * cannot vouch for a miss: before the consumer has subscribed, while the current filter
+ * was built from a snapshot taken before the subscription (events from that gap were
+ * never received), and when the consumer has not confirmed it is caught up on events
+ * within max-event-lag-ms. The first build therefore starts once the consumer subscribes.
+ */
+@Component
+public class ApiKeyFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyFilter.class);
+    
+    /** A miss whose lookup took longer than this is not cached; add times are kept twice as long */
+    private static final long MAX_MISS_LOOKUP_NANOS = TimeUnit.SECONDS.toNanos(10);
+    
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+    
+    @Value("${ratelimit.key-filter.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.key-filter.expected-keys:1000000}")
+    private long expectedKeys;
+    
+    @Value("${ratelimit.key-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    @Value("${ratelimit.key-filter.chunk-size:10000}")
+    private int chunkSize;
+    
+    @Value("${ratelimit.key-filter.negative-cache.ttl-ms:30000}")
+    private long negativeTtlMillis;
+    
+    @Value("${ratelimit.key-filter.negative-cache.max-size:100000}")
+    private int negativeMaxSize;
+    
+    @Value("${ratelimit.key-filter.max-event-lag-ms:30000}")
+    private long maxEventLagMillis;
+    
+    private volatile BloomFilter filter;
+    
+    /**
+     * Filter being built by rebuild(); keys added meanwhile go into both
+     */
+    private volatile BloomFilter building;
+    
+    /** API key -> expiry millis */
+    private final ConcurrentHashMap<String, Long> negativeCache = new ConcurrentHashMap<>();
+    
+    /** API key -> System.nanoTime() of its last add(), pruned by rebuild() */
+    private final ConcurrentHashMap<String, Long> recentAdds = new ConcurrentHashMap<>();
+    
+    private final AtomicLong keys = new AtomicLong();
+    private final LongAdder rejectedChecks = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder negativeCacheHits = new LongAdder();
+    private volatile long lastRebuildMillis;
+    private volatile long rebuildDurationMillis;
+    
+    /** When the current filter's snapshot of rate_limits was started */
+    private volatile long builtFromMillis;
+    
+    /** When the config event consumer subscribed, 0 while it is not subscribed */
+    private volatile long eventsSubscribedAt;
+    
+    /** Last time the consumer had applied every config event published before it */
+    private volatile long eventsCaughtUpAt;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * @return false if the key certainly has no rule
+     */
+    public boolean mightExist(String apiKey) {
+        BloomFilter current = filter;
+        if (!enabled || current == null || !eventsCurrent()) {
+            return true;
+        }
+        if (!current.mightContain(Fingerprints.of(apiKey))) {
+            rejectedChecks.increment();
+            return false;
+        }
+        
+        Long expiry = negativeCache.get(apiKey);
+        if (expiry != null) {
+            if (expiry > System.currentTimeMillis()) {
+                negativeCacheHits.increment();
+                return false;
+            }
+            negativeCache.remove(apiKey, expiry);
+        }
+        return true;
+    }
+    
+    /**
+     * Whether every key created elsewhere has reached the filter, either through the
+     * snapshot it was built from or through a config event applied since
+     */
+    private boolean eventsCurrent() {
+        long subscribedAt = eventsSubscribedAt;
+        return subscribedAt > 0 && builtFromMillis >= subscribedAt
+                && System.currentTimeMillis() - eventsCaughtUpAt <= maxEventLagMillis;
+    }
+    
+    /**
+     * Called by the config event consumer once it has subscribed. Starts the first
+     * build, since only a snapshot taken after this point misses no key.
+     */
+    public void eventsSubscribed() {
+        eventsSubscribedAt = System.currentTimeMillis();
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "key-filter-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+    
+    /**
+     * Called when the config event consumer stops; every key passes from then on
+     */
+    public void eventsUnsubscribed() {
+        eventsSubscribedAt = 0;
+    }
+    
+    /**
+     * Called by the config event consumer after confirming it had applied every
+     * event published before the given time. Rules committed elsewhere whose outbox
+     * event is not yet published are not covered.
+     */
+    public void eventsCaughtUp(long caughtUpAt) {
+        eventsCaughtUpAt = Math.max(eventsCaughtUpAt, caughtUpAt);
+    }
+    
+    /**
+     * Stamp to take before looking up a key in MySQL, for {@link #recordMissing}
+     */
+    public long missStamp() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Remember a key that passed the filter but has no rule. Not cached when the key was
+     * added since the stamp was taken: the lookup raced the key's creation.
+     */
+    public void recordMissing(String apiKey, long stamp) {
+        if (!enabled || filter == null) {
+            return;
+        }
+        falsePositives.increment();
+        if (System.nanoTime() - stamp > MAX_MISS_LOOKUP_NANOS || addedSince(apiKey, stamp)) {
+            return;
+        }
+        // Under a flood of distinct false positives stop caching rather than grow without bound
+        if (negativeCache.size() < negativeMaxSize) {
+            Long expiry = System.currentTimeMillis() + negativeTtlMillis;
+            negativeCache.put(apiKey, expiry);
+            // add() records the key before clearing the cache, so one of us sees the other
+            if (addedSince(apiKey, stamp)) {
+                negativeCache.remove(apiKey, expiry);
+            }
+        }
+    }
+    
+    private boolean addedSince(String apiKey, long stamp) {
+        Long addedAt = recentAdds.get(apiKey);
+        return addedAt != null && addedAt - stamp >= 0;
+    }
+    
+    /**
+     * Add a key that now has a rule
+     */
+    public void add(String apiKey) {
+        if (!enabled) {
+            return;
+        }
+        long fingerprint = Fingerprints.of(apiKey);
+        // Read building before filter: rebuild() publishes the new filter before clearing
+        // building, so one of the two reads always sees the filter that stays in use
+        BloomFilter next = building;
+        BloomFilter current = filter;
+        if (next != null) {
+            next.put(fingerprint);
+        }
+        if (current != null) {
+            current.put(fingerprint);
+        }
+        recentAdds.put(apiKey, System.nanoTime());
+        negativeCache.remove(apiKey);
+        keys.incrementAndGet();
+    }
+    
+    /**
+     * Build a filter from rate_limits and swap it in. Runs once the event consumer has
+     * subscribed and then periodically, dropping keys of deleted rules and expired
+     * negative entries.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.key-filter.rebuild-interval-ms:600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long pruneBefore = System.nanoTime() - 2 * MAX_MISS_LOOKUP_NANOS;
+        recentAdds.values().removeIf(addedAt -> addedAt - pruneBefore < 0);
+        if (eventsSubscribedAt == 0) {
+            logger.debug("Config event consumer not subscribed, not building the API key filter");
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        try {
+            long count = rateLimitRepository.countRateLimits();
+            // Headroom so keys added until the next rebuild don't push the rate past the target
+            BloomFilter next = new BloomFilter(Math.max(expectedKeys, count + count / 4), falsePositiveRate);
+            building = next;
+            
+            long loaded = 0;
+            Long minId = rateLimitRepository.findMinId();
+            Long maxId = rateLimitRepository.findMaxId();
+            if (minId != null && maxId != null) {
+                for (long from = minId; from <= maxId; from += chunkSize) {
+                    List<String> apiKeys = rateLimitRepository.findApiKeysByIdBetween(
+                        from, Math.min(maxId, from + chunkSize - 1));
+                    for (String apiKey : apiKeys) {
+                        next.put(Fingerprints.of(apiKey));
+                    }
+                    loaded += apiKeys.size();
+                }
+            }
+            
+            filter = next;
+            builtFromMillis = start;
+            building = null;
+            keys.set(loaded);
+            negativeCache.values().removeIf(expiry -> expiry <= start);
+            lastRebuildMillis = System.currentTimeMillis();
+            rebuildDurationMillis = lastRebuildMillis - start;
+            logger.info("Built API key filter: {} keys, {} KB, {} hashes, estimated false-positive rate {} in {} ms",
+                       loaded, next.memoryBytes() / 1024, next.hashes(),
+                       String.format("%.5f", next.estimatedFalsePositiveRate()), rebuildDurationMillis);
+                       
+        } catch (Exception e) {
+            building = null;
+            // Keep serving from the previous filter, or let every key through if there is none yet
+            logger.warn("Failed to build API key filter", e);
+        }
+    }
+    
+    public KeyFilterStats getStats() {
+        BloomFilter current = filter;
+        KeyFilterStats stats = new KeyFilterStats();
+        stats.setEnabled(enabled);
+        stats.setReady(current != null);
+        stats.setKeys(keys.get());
+        stats.setTargetFalsePositiveRate(falsePositiveRate);
+        if (current != null) {
+            stats.setBitSize(current.bitSize());
+            stats.setHashes(current.hashes());
+            stats.setMemoryBytes(current.memoryBytes());
+            stats.setEstimatedFalsePositiveRate(current.estimatedFalsePositiveRate());
+        }
+        stats.setRejectedChecks(rejectedChecks.sum());
+        stats.setFalsePositives(falsePositives.sum());
+        stats.setNegativeCacheHits(negativeCacheHits.sum());
+        stats.setNegativeCacheSize(negativeCache.size());
+        stats.setFailingOpen(current == null || !eventsCurrent());
+        if (eventsCaughtUpAt > 0) {
+            stats.setLastEventCatchUpAt(Instant.ofEpochMilli(eventsCaughtUpAt).toString());
+        }
+        if (lastRebuildMillis > 0) {
+            stats.setLastRebuildAt(Instant.ofEpochMilli(lastRebuildMillis).toString());
+            stats.setRebuildDurationMillis(rebuildDurationMillis);
+        }
+        return stats;
+    }
+}
\ No newline at end of file
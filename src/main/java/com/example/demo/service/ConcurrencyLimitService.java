@@ -0,0 +1,403 @@
+package com.example.demo.service;
+
+import com.example.demo.concurrency.AdaptiveLimit;
+import com.example.demo.concurrency.AimdLimit;
+import com.example.demo.concurrency.ConcurrencyLimiter;
+import com.example.demo.concurrency.GradientLimit;
+import com.example.demo.model.ConcurrencyAlgorithm;
+import com.example.demo.model.ConcurrencyLimit;
+import com.example.demo.model.dto.ConcurrencyLease;
+import com.example.demo.model.dto.ConcurrencyLimitRequest;
+import com.example.demo.model.dto.ConcurrencyStatus;
+import com.example.demo.repository.ConcurrencyLimitRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-key limits on requests in flight, next to the request-rate limits.
+ *
+ * Callers acquire a lease before calling the backend and release it with the
+ * observed latency afterwards. Each key's limiter lives on this node and adapts
+ * its limit with AIMD or the latency gradient. A lease that is never released is
+ * reclaimed after the lease timeout and counted as a drop.
+ *
+ * Leases live only on the node that handed them out, so a release must reach that
+ * node. Lease ids carry a per-process tag in their high bits; a release that lands on
+ * another node is recognised by the tag and rejected instead of looking like an
+ * unknown lease.
+ *
+ * With Redis aggregation enabled, every node periodically publishes its in-flight
+ * count per key and subtracts what the other nodes published from its own allowance,
+ * so the limit applies to the cluster as a whole (as of the last aggregation round).
+ */
+@Service
+public class ConcurrencyLimitService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitService.class);
+    
+    private static final int BATCH_SIZE = 1000;
+    
+    /**
+     * Low bits of a lease id hold the sequence, the bits above them the issuing process's tag
+     */
+    private static final int LEASE_SEQUENCE_BITS = 48;
+    private static final long LEASE_SEQUENCE_MASK = (1L << LEASE_SEQUENCE_BITS) - 1;
+    
+    @Autowired
+    private ConcurrencyLimitRepository concurrencyLimitRepository;
+    
+    @Autowired
+    private RedisService redisService;
+    
+    @Value("${ratelimit.concurrency.lease-timeout-ms:30000}")
+    private long leaseTimeoutMillis;
+    
+    @Value("${ratelimit.concurrency.rule-refresh-interval-ms:30000}")
+    private long ruleRefreshIntervalMillis;
+    
+    @Value("${ratelimit.concurrency.aimd.backoff-ratio:0.9}")
+    private double aimdBackoffRatio;
+    
+    @Value("${ratelimit.concurrency.aimd.timeout-ms:5000}")
+    private long aimdTimeoutMillis;
+    
+    @Value("${ratelimit.concurrency.gradient.smoothing:0.2}")
+    private double gradientSmoothing;
+    
+    @Value("${ratelimit.concurrency.gradient.long-window:600}")
+    private int gradientLongWindow;
+    
+    @Value("${ratelimit.concurrency.negative-cache.ttl-ms:5000}")
+    private long negativeTtlMillis;
+    
+    @Value("${ratelimit.concurrency.negative-cache.max-size:100000}")
+    private int negativeMaxSize;
+    
+    @Value("${ratelimit.concurrency.redis-aggregation.enabled:false}")
+    private boolean redisAggregationEnabled;
+    
+    @Value("${ratelimit.concurrency.redis-aggregation.node-id:}")
+    private String nodeId;
+    
+    @Value("${ratelimit.concurrency.redis-aggregation.interval-ms:500}")
+    private long aggregationIntervalMillis;
+    
+    private final Map<String, KeyLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong leaseIds = new AtomicLong();
+    private final long leaseTag = (long) ThreadLocalRandom.current().nextInt(1, 1 << 15) << LEASE_SEQUENCE_BITS;
+    
+    /**
+     * Keys without a concurrency rule, so repeated acquires for them do not each query MySQL
+     */
+    private final Map<String, Long> missingRules = new ConcurrentHashMap<>();
+    private volatile long lastRuleRefreshMillis = System.currentTimeMillis();
+    
+    private record KeyLimiter(ConcurrencyLimit rule, ConcurrencyLimiter limiter) {
+    }
+    
+    private record Lease(String apiKey, ConcurrencyLimiter limiter, int inFlightAtAcquire,
+                         long startNanos, long expiresAtMillis) {
+    }
+    
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+        if (redisAggregationEnabled) {
+            logger.info("Concurrency limits aggregated through Redis as node {}", nodeId);
+        }
+    }
+    
+    /**
+     * Create or update the concurrency rule for an API key.
+     * An existing limiter on this node restarts from the new initial limit once the change commits.
+     */
+    @Transactional
+    public ConcurrencyLimit createConcurrencyLimit(ConcurrencyLimitRequest request) {
+        if (request.getMinLimit() > request.getInitialLimit() || request.getInitialLimit() > request.getMaxLimit()) {
+            throw new IllegalArgumentException("Limits must satisfy minLimit <= initialLimit <= maxLimit");
+        }
+        logger.info("Creating/updating concurrency limit for API key: {}", request.getApiKey());
+        
+        ConcurrencyLimit rule = concurrencyLimitRepository.findByApiKey(request.getApiKey())
+                .orElseGet(ConcurrencyLimit::new);
+        rule.setApiKey(request.getApiKey());
+        rule.setAlgorithm(request.getAlgorithm());
+        rule.setInitialLimit(request.getInitialLimit());
+        rule.setMinLimit(request.getMinLimit());
+        rule.setMaxLimit(request.getMaxLimit());
+        
+        ConcurrencyLimit saved = concurrencyLimitRepository.save(rule);
+        afterCommit(() -> {
+            missingRules.remove(saved.getApiKey());
+            limiters.compute(saved.getApiKey(), (apiKey, current) -> reconfigure(current, saved));
+        });
+        return saved;
+    }
+    
+    /**
+     * Delete the concurrency rule; leases already handed out can still be released
+     */
+    @Transactional
+    public boolean deleteConcurrencyLimit(String apiKey) {
+        logger.info("Deleting concurrency limit for API key: {}", apiKey);
+        
+        int deletedCount = concurrencyLimitRepository.deleteByApiKey(apiKey);
+        afterCommit(() -> limiters.remove(apiKey));
+        return deletedCount > 0;
+    }
+    
+    /**
+     * The rule for an API key with the live state of its limiter, or empty when there is no rule
+     */
+    @Transactional(readOnly = true)
+    public Optional<ConcurrencyStatus> getStatus(String apiKey) {
+        return Optional.ofNullable(limiterFor(apiKey)).map(keyLimiter -> {
+            ConcurrencyLimiter limiter = keyLimiter.limiter();
+            return new ConcurrencyStatus(keyLimiter.rule(), limiter.getLimit(), limiter.getInFlight(),
+                                         limiter.getRemoteInFlight(), limiter.getRejected(), limiter.getDropped());
+        });
+    }
+    
+    /**
+     * Try to start a request for an API key.
+     *
+     * @return a lease, or empty when the key is at its limit
+     * @throws IllegalArgumentException when the key has no concurrency rule
+     */
+    public Optional<ConcurrencyLease> acquire(String apiKey) {
+        KeyLimiter keyLimiter = limiterFor(apiKey);
+        if (keyLimiter == null) {
+            throw new IllegalArgumentException("Concurrency limit not found for API key: " + apiKey);
+        }
+        
+        ConcurrencyLimiter limiter = keyLimiter.limiter();
+        int inFlight = limiter.tryAcquire();
+        if (inFlight < 0) {
+            logger.debug("Concurrency limit reached for API key: {}, limit: {}", apiKey, limiter.getLimit());
+            return Optional.empty();
+        }
+        
+        long leaseId = leaseTag | (leaseIds.incrementAndGet() & LEASE_SEQUENCE_MASK);
+        leases.put(leaseId, new Lease(apiKey, limiter, inFlight, System.nanoTime(),
+                                      System.currentTimeMillis() + leaseTimeoutMillis));
+        return Optional.of(new ConcurrencyLease(apiKey, leaseId, nodeId, limiter.getLimit(), inFlight));
+    }
+    
+    /**
+     * Whether a lease id was handed out by this process; releases of other ids belong to another node
+     */
+    public boolean issuedHere(long leaseId) {
+        return (leaseId & ~LEASE_SEQUENCE_MASK) == leaseTag;
+    }
+    
+    /**
+     * Finish a request and report how it went.
+     *
+     * @param latencyMillis latency measured by the caller; when null, the time since acquire is used
+     * @param dropped whether the request timed out or was rejected downstream
+     * @return false when the lease is unknown, already released or expired
+     */
+    public boolean release(String apiKey, long leaseId, Long latencyMillis, boolean dropped) {
+        Lease lease = leases.get(leaseId);
+        if (lease == null || !lease.apiKey().equals(apiKey) || !leases.remove(leaseId, lease)) {
+            return false;
+        }
+        
+        long rttNanos = latencyMillis != null
+                ? TimeUnit.MILLISECONDS.toNanos(latencyMillis)
+                : System.nanoTime() - lease.startNanos();
+        lease.limiter().release(lease.inFlightAtAcquire(), rttNanos, dropped);
+        return true;
+    }
+    
+    /**
+     * Reclaim leases that were never released, and pick up rule changes made on other nodes
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.concurrency.sweep-interval-ms:1000}")
+    public void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+    
+    void sweep(long now) {
+        int expired = 0;
+        Iterator<Lease> iterator = leases.values().iterator();
+        while (iterator.hasNext()) {
+            Lease lease = iterator.next();
+            if (now >= lease.expiresAtMillis()) {
+                iterator.remove();
+                lease.limiter().release(lease.inFlightAtAcquire(), TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis), true);
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.warn("Reclaimed {} concurrency leases that were not released within {} ms", expired, leaseTimeoutMillis);
+        }
+        missingRules.values().removeIf(expiry -> expiry <= now);
+        
+        if (now - lastRuleRefreshMillis >= ruleRefreshIntervalMillis) {
+            lastRuleRefreshMillis = now;
+            try {
+                refreshRules();
+            } catch (Exception e) {
+                logger.warn("Failed to refresh concurrency rules", e);
+            }
+        }
+    }
+    
+    /**
+     * Publish this node's in-flight counts and read back the other nodes' counts
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.concurrency.redis-aggregation.interval-ms:500}")
+    public void aggregate() {
+        if (!redisAggregationEnabled || limiters.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // Entries not refreshed for a few rounds belong to nodes that are gone
+        long staleBefore = now - 3 * aggregationIntervalMillis;
+        int ttlSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(10 * aggregationIntervalMillis));
+        
+        try {
+            for (List<String> batch : batches(new ArrayList<>(limiters.keySet()))) {
+                Map<String, Integer> local = new HashMap<>(batch.size() * 2);
+                for (String apiKey : batch) {
+                    KeyLimiter keyLimiter = limiters.get(apiKey);
+                    local.put(apiKey, keyLimiter != null ? keyLimiter.limiter().getInFlight() : 0);
+                }
+                redisService.publishInFlight(nodeId, local, now, ttlSeconds);
+                
+                List<Map<Object, Object>> published = redisService.getInFlightByNode(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    KeyLimiter keyLimiter = limiters.get(batch.get(i));
+                    if (keyLimiter != null) {
+                        keyLimiter.limiter().setRemoteInFlight(remoteInFlight(published.get(i), staleBefore));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to aggregate concurrency counts through Redis", e);
+        }
+    }
+    
+    private int remoteInFlight(Map<Object, Object> published, long staleBefore) {
+        int total = 0;
+        for (Map.Entry<Object, Object> entry : published.entrySet()) {
+            if (nodeId.equals(entry.getKey().toString())) {
+                continue;
+            }
+            String value = entry.getValue().toString();
+            int separator = value.indexOf(':');
+            if (separator > 0 && Long.parseLong(value.substring(separator + 1)) >= staleBefore) {
+                total += Integer.parseInt(value.substring(0, separator));
+            }
+        }
+        return total;
+    }
+    
+    private void refreshRules() {
+        for (List<String> batch : batches(new ArrayList<>(limiters.keySet()))) {
+            Set<String> missing = new HashSet<>(batch);
+            for (ConcurrencyLimit rule : concurrencyLimitRepository.findByApiKeyIn(batch)) {
+                missing.remove(rule.getApiKey());
+                limiters.computeIfPresent(rule.getApiKey(), (apiKey, current) ->
+                    Objects.equals(current.rule().getUpdatedAt(), rule.getUpdatedAt())
+                            ? current : reconfigure(current, rule));
+            }
+            missing.forEach(limiters::remove);
+        }
+    }
+    
+    private KeyLimiter limiterFor(String apiKey) {
+        KeyLimiter keyLimiter = limiters.get(apiKey);
+        if (keyLimiter != null) {
+            return keyLimiter;
+        }
+        Long expiry = missingRules.get(apiKey);
+        if (expiry != null) {
+            if (expiry > System.currentTimeMillis()) {
+                return null;
+            }
+            missingRules.remove(apiKey, expiry);
+        }
+        Optional<ConcurrencyLimit> rule = concurrencyLimitRepository.findByApiKey(apiKey);
+        if (rule.isEmpty()) {
+            if (missingRules.size() < negativeMaxSize) {
+                missingRules.put(apiKey, System.currentTimeMillis() + negativeTtlMillis);
+            }
+            return null;
+        }
+        return limiters.computeIfAbsent(apiKey, key -> reconfigure(null, rule.get()));
+    }
+    
+    /**
+     * Build the limiter for a rule, keeping the in-flight count of the limiter it replaces
+     */
+    private KeyLimiter reconfigure(KeyLimiter current, ConcurrencyLimit rule) {
+        AdaptiveLimit limit = newLimit(rule);
+        if (current == null) {
+            return new KeyLimiter(rule, new ConcurrencyLimiter(limit));
+        }
+        current.limiter().setLimit(limit);
+        return new KeyLimiter(rule, current.limiter());
+    }
+    
+    private AdaptiveLimit newLimit(ConcurrencyLimit rule) {
+        if (rule.getAlgorithm() == ConcurrencyAlgorithm.AIMD) {
+            return new AimdLimit(rule.getInitialLimit(), rule.getMinLimit(), rule.getMaxLimit(),
+                                 aimdBackoffRatio, TimeUnit.MILLISECONDS.toNanos(aimdTimeoutMillis));
+        }
+        return new GradientLimit(rule.getInitialLimit(), rule.getMinLimit(), rule.getMaxLimit(),
+                                 gradientSmoothing, gradientLongWindow);
+    }
+    
+    /**
+     * Run an action once the current transaction commits, or right away outside one,
+     * so a rolled-back change never reaches the limiters on this node
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static List<List<String>> batches(List<String> apiKeys) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < apiKeys.size(); from += BATCH_SIZE) {
+            batches.add(apiKeys.subList(from, Math.min(apiKeys.size(), from + BATCH_SIZE)));
+        }
+        return batches;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.demo.service;
+
+/**
+ * Observer of allow/deny decisions made by RateLimitService.
+ *
+ * Called synchronously on the request thread for every evaluated check, so
+ * implementations must only touch memory: no I/O, no locks held for long.
+ */
+public interface DecisionListener {
+    
+    /**
+     * @param resetInSeconds seconds until the key's current window ends, or null if unknown
+     */
+    void onDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                    Integer resetInSeconds);
+}
\ No newline at end of file
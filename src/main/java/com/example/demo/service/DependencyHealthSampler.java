@@ -0,0 +1,341 @@
+package com.example.demo.service;
+
+import com.example.demo.mq.BufferedEventSender;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Probes MySQL, Redis and RocketMQ from a background thread and keeps the result,
+ * so health checks cost no I/O no matter how many load balancers poll them.
+ *
+ * Each dependency keeps the latencies of its last successful probes and reports
+ * nearest-rank p50/p95/p99 over them. A dependency is DEGRADED when its last probe
+ * failed or its p95 is over the threshold, and DOWN after several failures in a row.
+ *
+ * Every probe runs on a small fixed pool and is abandoned after probe-timeout-seconds,
+ * so a hung connection counts as a failure instead of stalling the sampler. A dependency
+ * whose previous probe is still stuck is not probed again and counts as timed out, so
+ * hung probes never hold more than one thread each. If the
+ * newest sample is still older than a few sample intervals, the overall status is
+ * UNKNOWN rather than the last state that was seen.
+ */
+@Component
+public class DependencyHealthSampler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DependencyHealthSampler.class);
+    
+    public static final String MYSQL = "mysql";
+    public static final String REDIS = "redis";
+    public static final String ROCKETMQ = "rocketmq";
+    
+    public enum Status { UNKNOWN, UP, DEGRADED, DOWN, NOT_USED }
+    
+    /**
+     * State of one dependency as of its last probe. Latencies are in milliseconds.
+     */
+    public record DependencyHealth(Status status, double p50Millis, double p95Millis, double p99Millis,
+                                   int samples, int consecutiveFailures, String lastError, long sampledAt) {
+        
+        static DependencyHealth of(Status status) {
+            return new DependencyHealth(status, 0, 0, 0, 0, 0, null, 0);
+        }
+    }
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Autowired
+    private BufferedEventSender eventSender;
+    
+    @Value("${ratelimit.counter-store.type:redis}")
+    private String counterStoreType;
+    
+    @Value("${ratelimit.health.sample-interval-ms:5000}")
+    private long sampleIntervalMillis;
+    
+    @Value("${ratelimit.health.window-size:120}")
+    private int windowSize;
+    
+    @Value("${ratelimit.health.degraded-p95-ms:250}")
+    private long degradedP95Millis;
+    
+    @Value("${ratelimit.health.down-after-failures:2}")
+    private int downAfterFailures;
+    
+    @Value("${ratelimit.health.probe-timeout-seconds:2}")
+    private int probeTimeoutSeconds;
+    
+    @Value("${ratelimit.health.stale-after-intervals:3}")
+    private int staleAfterIntervals;
+    
+    /** One thread per dependency; at most one probe per dependency is in flight */
+    private final ExecutorService probeExecutor = Executors.newFixedThreadPool(3, runnable -> {
+        Thread thread = new Thread(runnable, "health-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /** Dependencies whose last probe has not returned yet, even if it was abandoned */
+    private final Set<String> probesInFlight = ConcurrentHashMap.newKeySet();
+    
+    /** Only touched by the sampling thread */
+    private final Map<String, LatencyWindow> windows = new HashMap<>();
+    
+    private volatile Map<String, DependencyHealth> health = Map.of(
+        MYSQL, DependencyHealth.of(Status.UNKNOWN),
+        REDIS, DependencyHealth.of(Status.UNKNOWN),
+        ROCKETMQ, DependencyHealth.of(Status.UNKNOWN));
+    
+    private volatile boolean running;
+    private Thread samplerThread;
+    
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        running = true;
+        samplerThread = new Thread(this::sampleLoop, "health-sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+        logger.info("Dependency health sampler started, interval {} ms", sampleIntervalMillis);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        probeExecutor.shutdownNow();
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(samplerThread);
+        try {
+            samplerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Latest state per dependency, without any I/O
+     */
+    public Map<String, DependencyHealth> getHealth() {
+        return health;
+    }
+    
+    /**
+     * DOWN when MySQL or Redis is down. RocketMQ can only degrade the node,
+     * since events are buffered while the broker is unavailable. UNKNOWN when
+     * nothing has been sampled recently.
+     */
+    public Status getOverallStatus() {
+        return getOverallStatus(System.currentTimeMillis());
+    }
+    
+    Status getOverallStatus(long now) {
+        Map<String, DependencyHealth> current = health;
+        long newestSample = 0;
+        for (DependencyHealth dependency : current.values()) {
+            newestSample = Math.max(newestSample, dependency.sampledAt());
+        }
+        if (now - newestSample > staleAfterMillis()) {
+            return Status.UNKNOWN;
+        }
+        
+        Status overall = Status.UP;
+        for (Map.Entry<String, DependencyHealth> entry : current.entrySet()) {
+            Status status = entry.getValue().status();
+            if (status == Status.DOWN && !ROCKETMQ.equals(entry.getKey())) {
+                return Status.DOWN;
+            }
+            if (status == Status.DOWN || status == Status.DEGRADED) {
+                overall = Status.DEGRADED;
+            }
+        }
+        return overall;
+    }
+    
+    private void sampleLoop() {
+        while (running) {
+            try {
+                sample();
+            } catch (Exception e) {
+                logger.warn("Dependency health sampling failed", e);
+            }
+            if (running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis));
+            }
+        }
+    }
+    
+    /**
+     * Probe every dependency once and publish the new state
+     */
+    void sample() {
+        Map<String, DependencyHealth> next = new LinkedHashMap<>();
+        next.put(MYSQL, probe(MYSQL, this::probeMysql));
+        next.put(REDIS, "redis".equals(counterStoreType)
+                ? probe(REDIS, () -> redisTemplate.opsForValue().get("health-check"))
+                : DependencyHealth.of(Status.NOT_USED));
+        next.put(ROCKETMQ, probe(ROCKETMQ, eventSender::probe));
+        
+        Map<String, DependencyHealth> previous = health;
+        health = Collections.unmodifiableMap(next);
+        next.forEach((name, current) -> {
+            DependencyHealth before = previous.get(name);
+            if (before != null && before.status() != current.status()) {
+                logger.info("Dependency {} changed from {} to {} (p95 {} ms, last error: {})",
+                           name, before.status(), current.status(), current.p95Millis(), current.lastError());
+            }
+        });
+    }
+    
+    /**
+     * Age after which the last sample no longer says anything: a few intervals plus
+     * the time one round of probes may take when every probe times out
+     */
+    long staleAfterMillis() {
+        return staleAfterIntervals * sampleIntervalMillis + 3 * TimeUnit.SECONDS.toMillis(probeTimeoutSeconds);
+    }
+    
+    private DependencyHealth probe(String name, Probe probe) {
+        LatencyWindow window = windows.computeIfAbsent(name, n -> new LatencyWindow(windowSize));
+        if (!probesInFlight.add(name)) {
+            // Interrupts don't reach a probe blocked in socket I/O; wait for it instead of piling up threads
+            window.recordFailure("Timed out, previous probe still running");
+            return window.snapshot(TimeUnit.MILLISECONDS.toNanos(degradedP95Millis), downAfterFailures,
+                                   System.currentTimeMillis());
+        }
+        
+        long start = System.nanoTime();
+        Future<?> result;
+        try {
+            result = probeExecutor.submit(() -> {
+                try {
+                    probe.run();
+                } finally {
+                    probesInFlight.remove(name);
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            probesInFlight.remove(name);
+            throw e;
+        }
+        try {
+            result.get(probeTimeoutSeconds, TimeUnit.SECONDS);
+            window.recordSuccess(System.nanoTime() - start);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            window.recordFailure("Timed out after " + probeTimeoutSeconds + " s");
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            window.recordFailure("Interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            window.recordFailure(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        }
+        return window.snapshot(TimeUnit.MILLISECONDS.toNanos(degradedP95Millis), downAfterFailures,
+                               System.currentTimeMillis());
+    }
+    
+    private void probeMysql() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!connection.isValid(probeTimeoutSeconds)) {
+                throw new SQLException("Connection is not valid");
+            }
+        }
+    }
+    
+    private interface Probe {
+        void run() throws Exception;
+    }
+    
+    /**
+     * Ring of the last successful probe latencies plus the current failure streak
+     */
+    static final class LatencyWindow {
+        
+        private final long[] latencies;
+        private int count;
+        private int next;
+        private int consecutiveFailures;
+        private String lastError;
+        
+        LatencyWindow(int size) {
+            this.latencies = new long[Math.max(1, size)];
+        }
+        
+        void recordSuccess(long nanos) {
+            latencies[next] = nanos;
+            next = (next + 1) % latencies.length;
+            count = Math.min(count + 1, latencies.length);
+            consecutiveFailures = 0;
+            lastError = null;
+        }
+        
+        void recordFailure(String error) {
+            consecutiveFailures++;
+            lastError = error;
+        }
+        
+        DependencyHealth snapshot(long degradedP95Nanos, int downAfterFailures, long sampledAt) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long p95 = percentile(sorted, 0.95);
+            
+            Status status;
+            if (consecutiveFailures >= downAfterFailures) {
+                status = Status.DOWN;
+            } else if (consecutiveFailures > 0 || p95 > degradedP95Nanos) {
+                status = Status.DEGRADED;
+            } else if (count == 0) {
+                status = Status.UNKNOWN;
+            } else {
+                status = Status.UP;
+            }
+            return new DependencyHealth(status, millis(percentile(sorted, 0.50)), millis(p95),
+                                        millis(percentile(sorted, 0.99)), count, consecutiveFailures,
+                                        lastError, sampledAt);
+        }
+        
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+        
+        private static double millis(long nanos) {
+            return Math.round(nanos / 10_000.0) / 100.0;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,229 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.HotKeyInfo;
+import com.example.demo.model.dto.HotKeysReport;
+import com.example.demo.util.CountMinSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate top-K of API keys by request rate and by usage-to-limit ratio.
+ *
+ * Fed from the check stream: each decision adds one to a count-min sketch for the
+ * current interval and offers the key to a bounded candidate set. A key enters the
+ * set while it has room, or when it beats the weakest survivor of the last prune.
+ * Every refresh interval the candidates are ranked into a report, which is
+ * what the admin endpoint serves, and a fresh interval starts.
+ */
+@Service
+public class HotKeyTracker implements DecisionListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HotKeyTracker.class);
+    
+    private static final Comparator<HotKeyInfo> BY_RATE =
+            Comparator.comparingLong(HotKeyInfo::getEstimatedRequests).reversed();
+    private static final Comparator<HotKeyInfo> BY_RATIO =
+            Comparator.comparingDouble(HotKeyInfo::getUsageRatio).reversed();
+    
+    @Value("${ratelimit.hot-keys.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.hot-keys.top-k:20}")
+    private int topK;
+    
+    @Value("${ratelimit.hot-keys.sketch-width:4096}")
+    private int sketchWidth;
+    
+    @Value("${ratelimit.hot-keys.sketch-depth:4}")
+    private int sketchDepth;
+    
+    private volatile Interval current;
+    private volatile HotKeysReport report;
+    
+    static final class Candidate {
+        final String apiKey;
+        volatile long estimate;
+        volatile long currentUsage;
+        volatile int limit;
+        
+        Candidate(String apiKey) {
+            this.apiKey = apiKey;
+        }
+        
+        void update(long estimate, long currentUsage, int limit) {
+            this.estimate = estimate;
+            this.currentUsage = currentUsage;
+            this.limit = limit;
+        }
+    }
+    
+    private static final class Interval {
+        final long startMillis;
+        final CountMinSketch sketch;
+        final ConcurrentHashMap<String, Candidate> candidates = new ConcurrentHashMap<>();
+        volatile long rateFloor;
+        volatile double ratioFloor;
+        
+        Interval(long startMillis, CountMinSketch sketch) {
+            this.startMillis = startMillis;
+            this.sketch = sketch;
+        }
+    }
+    
+    @Override
+    public void onDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                           Integer resetInSeconds) {
+        if (!enabled) {
+            return;
+        }
+        
+        Interval interval = current != null ? current : startIntervalIfAbsent(System.currentTimeMillis());
+        long estimate = interval.sketch.increment(apiKey);
+        
+        Candidate candidate = interval.candidates.get(apiKey);
+        if (candidate != null) {
+            candidate.update(estimate, currentUsage, limit);
+            return;
+        }
+        
+        int maxCandidates = maxCandidates();
+        double ratio = limit > 0 ? (double) currentUsage / limit : 0;
+        if (interval.candidates.size() < maxCandidates
+                || estimate > interval.rateFloor
+                || ratio > interval.ratioFloor) {
+            interval.candidates.computeIfAbsent(apiKey, Candidate::new).update(estimate, currentUsage, limit);
+            if (interval.candidates.size() > maxCandidates * 3) {
+                prune(interval, maxCandidates);
+            }
+        }
+    }
+    
+    /**
+     * Publish the report for the interval just ended and start a new one
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.hot-keys.refresh-interval-ms:10000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        rollInterval(System.currentTimeMillis());
+    }
+    
+    void rollInterval(long nowMillis) {
+        Interval ended;
+        synchronized (this) {
+            ended = current;
+            current = newInterval(nowMillis);
+        }
+        if (ended == null) {
+            return;
+        }
+        
+        // Re-read the sketch: late increments may have landed after a candidate's last update
+        double seconds = Math.max(1, nowMillis - ended.startMillis) / 1000.0;
+        List<HotKeyInfo> candidates = new ArrayList<>(ended.candidates.size());
+        for (Candidate candidate : ended.candidates.values()) {
+            long estimate = ended.sketch.estimate(candidate.apiKey);
+            candidates.add(new HotKeyInfo(candidate.apiKey, estimate, estimate / seconds,
+                                          candidate.currentUsage, candidate.limit));
+        }
+        
+        report = new HotKeysReport(
+            toUtc(ended.startMillis),
+            toUtc(nowMillis),
+            rank(candidates, BY_RATE, false),
+            rank(candidates, BY_RATIO, true)
+        );
+        logger.debug("Hot keys refreshed from {} candidates over {} s", candidates.size(), seconds);
+    }
+    
+    /**
+     * Latest report, trimmed to at most k entries per list
+     */
+    public HotKeysReport getReport(int k) {
+        HotKeysReport latest = report;
+        if (latest == null) {
+            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+            return new HotKeysReport(now, now, List.of(), List.of());
+        }
+        return latest.limitTo(Math.min(k, topK));
+    }
+    
+    public int getTopK() {
+        return topK;
+    }
+    
+    private synchronized Interval startIntervalIfAbsent(long nowMillis) {
+        if (current == null) {
+            current = newInterval(nowMillis);
+        }
+        return current;
+    }
+    
+    private Interval newInterval(long nowMillis) {
+        return new Interval(nowMillis, new CountMinSketch(sketchWidth, sketchDepth));
+    }
+    
+    /**
+     * Shrink the candidate set to the best maxCandidates by rate and by ratio,
+     * and raise the admission floors to the weakest survivors
+     */
+    private void prune(Interval interval, int maxCandidates) {
+        synchronized (interval) {
+            if (interval.candidates.size() <= maxCandidates * 3) {
+                return;
+            }
+            // Snapshot first: writers keep updating candidates while we sort
+            List<HotKeyInfo> all = new ArrayList<>(interval.candidates.size());
+            for (Candidate c : interval.candidates.values()) {
+                all.add(new HotKeyInfo(c.apiKey, c.estimate, 0, c.currentUsage, c.limit));
+            }
+            
+            all.sort(BY_RATE);
+            List<HotKeyInfo> byRate = all.subList(0, maxCandidates);
+            Set<String> keep = new HashSet<>();
+            byRate.forEach(c -> keep.add(c.getApiKey()));
+            long rateFloor = byRate.get(byRate.size() - 1).getEstimatedRequests();
+            
+            all.sort(BY_RATIO);
+            List<HotKeyInfo> byRatio = all.subList(0, maxCandidates);
+            byRatio.forEach(c -> keep.add(c.getApiKey()));
+            double ratioFloor = byRatio.get(byRatio.size() - 1).getUsageRatio();
+            
+            interval.candidates.keySet().retainAll(keep);
+            interval.rateFloor = rateFloor;
+            interval.ratioFloor = ratioFloor;
+        }
+    }
+    
+    private List<HotKeyInfo> rank(List<HotKeyInfo> candidates, Comparator<HotKeyInfo> order,
+                                  boolean limitedOnly) {
+        return candidates.stream()
+                .filter(c -> !limitedOnly || c.getLimit() > 0)
+                .sorted(order)
+                .limit(topK)
+                .toList();
+    }
+    
+    /** Candidates kept per ranking; slack over K absorbs sketch error and churn */
+    private int maxCandidates() {
+        return Math.max(topK * 8, 64);
+    }
+    
+    private static LocalDateTime toUtc(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
\ No newline at end of file
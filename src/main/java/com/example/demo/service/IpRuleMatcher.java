@@ -0,0 +1,145 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.repository.RateLimitRepository;
+import com.example.demo.util.CompactRuleIndex;
+import com.example.demo.util.IpPrefix;
+import com.example.demo.util.PrefixTrie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-address rules: rate_limits rows whose API key is "ip:&lt;cidr&gt;", matched
+ * by longest prefix.
+ *
+ * The rules are kept in a map by canonical key and compiled into one immutable
+ * PrefixTrie per address family, swapped in with a single volatile write. Changes
+ * from this node and from config events only touch the map; the tries are rebuilt
+ * on the next rebuild interval, so a change takes up to that long to apply.
+ */
+@Component
+public class IpRuleMatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IpRuleMatcher.class);
+    
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+    
+    @Value("${ratelimit.ip-rules.enabled:false}")
+    private boolean enabled;
+    
+    private static final class Tries {
+        final PrefixTrie ipv4;
+        final PrefixTrie ipv6;
+        
+        Tries(PrefixTrie ipv4, PrefixTrie ipv6) {
+            this.ipv4 = ipv4;
+            this.ipv6 = ipv6;
+        }
+    }
+    
+    /** Canonical rule key -> rule packed as (limit, window) */
+    private final ConcurrentHashMap<String, Long> rules = new ConcurrentHashMap<>();
+    private volatile Tries tries = new Tries(new PrefixTrie.Builder(32).build(), new PrefixTrie.Builder(128).build());
+    private volatile boolean dirty;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Load all IP rules and compile them before the first check
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        for (RateLimit rateLimit : rateLimitRepository.findByApiKeyStartingWith(IpPrefix.RULE_PREFIX)) {
+            put(rateLimit.getApiKey(), rateLimit.getRequestLimit(), rateLimit.getWindowSeconds());
+        }
+        rebuild();
+    }
+    
+    /**
+     * Rule packed as (limit, window) for the longest prefix covering the address,
+     * or CompactRuleIndex.NOT_FOUND
+     */
+    public long match(IpPrefix address) {
+        Tries current = tries;
+        return address.isIpv6()
+                ? current.ipv6.lookup(address.high(), address.low())
+                : current.ipv4.lookup(address.high(), address.low());
+    }
+    
+    public void put(String ruleKey, int limit, int windowSeconds) {
+        try {
+            rules.put(IpPrefix.ofRuleKey(ruleKey).toRuleKey(), CompactRuleIndex.pack(limit, windowSeconds));
+            dirty = true;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring IP rule with an invalid prefix: {}", ruleKey);
+        }
+    }
+    
+    public void remove(String ruleKey) {
+        try {
+            rules.remove(IpPrefix.ofRuleKey(ruleKey).toRuleKey());
+            dirty = true;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring removal of IP rule with an invalid prefix: {}", ruleKey);
+        }
+    }
+    
+    /**
+     * Apply a change coming from a config event; other API keys are ignored
+     */
+    public void applyChange(String apiKey, int limit, int windowSeconds, boolean deleted) {
+        if (!enabled || !IpPrefix.isRuleKey(apiKey)) {
+            return;
+        }
+        if (deleted) {
+            remove(apiKey);
+        } else {
+            put(apiKey, limit, windowSeconds);
+        }
+    }
+    
+    /**
+     * Recompile the tries if any rule changed since the last build
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.ip-rules.rebuild-interval-ms:1000}")
+    public synchronized void rebuild() {
+        if (!enabled || !dirty) {
+            return;
+        }
+        // Cleared first so a change made during the build triggers another one
+        dirty = false;
+        
+        long start = System.nanoTime();
+        PrefixTrie.Builder ipv4 = new PrefixTrie.Builder(32);
+        PrefixTrie.Builder ipv6 = new PrefixTrie.Builder(128);
+        for (Map.Entry<String, Long> rule : rules.entrySet()) {
+            IpPrefix prefix = IpPrefix.ofRuleKey(rule.getKey());
+            (prefix.isIpv6() ? ipv6 : ipv4).put(prefix, rule.getValue());
+        }
+        Tries rebuilt = new Tries(ipv4.build(), ipv6.build());
+        tries = rebuilt;
+        logger.info("Compiled IP rules: {} IPv4 and {} IPv6 prefixes, {} KB, {} ms",
+                   rebuilt.ipv4.size(), rebuilt.ipv6.size(),
+                   (rebuilt.ipv4.memoryBytes() + rebuilt.ipv6.memoryBytes()) / 1024,
+                   (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    public int size() {
+        return rules.size();
+    }
+}
\ No newline at end of file
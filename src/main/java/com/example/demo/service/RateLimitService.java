@@ -1,19 +1,30 @@
 package com.example.demo.service;
 
+import com.example.demo.config.ReplicaRoutingDataSource;
 import com.example.demo.model.RateLimit;
 import com.example.demo.model.dto.CheckResult;
+import com.example.demo.model.dto.CursorPage;
 import com.example.demo.model.dto.RateLimitRequest;
 import com.example.demo.model.dto.UsageInfo;
 import com.example.demo.mq.RateLimitEventProducer;
+import com.example.demo.mq.RateLimitOutbox;
 import com.example.demo.repository.RateLimitRepository;
+import com.example.demo.util.CompactRuleIndex;
+import com.example.demo.util.IpPrefix;
+import com.example.demo.util.KeysetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -31,18 +42,46 @@ public class RateLimitService {
     @Autowired
     private RateLimitEventProducer eventProducer;
     
+    @Autowired
+    private RateLimitOutbox outbox;
+    
+    @Autowired
+    private RuleCache ruleCache;
+    
+    @Autowired
+    private ApiKeyFilter keyFilter;
+    
+    @Autowired
+    private IpRuleMatcher ipRuleMatcher;
+    
+    @Autowired(required = false)
+    private List<DecisionListener> decisionListeners = List.of();
+    
+    @Value("${ratelimit.rule-mirror.enabled:false}")
+    private boolean ruleMirrorEnabled;
+    
     /**
-     * Create or update rate limit for API key
+     * Create or update rate limit for API key.
+     * Runs read-write, so the existence check reads the primary rather than a lagging replica.
+     * Keys of the form "ip:<cidr>" define client-address rules and are stored in canonical form.
+     *
+     * @throws IllegalArgumentException if an "ip:" key does not hold a valid prefix
      */
     public RateLimit createRateLimit(RateLimitRequest request) {
         logger.info("Creating/updating rate limit for API key: {}", request.getApiKey());
+        if (IpPrefix.isRuleKey(request.getApiKey())) {
+            request.setApiKey(IpPrefix.ofRuleKey(request.getApiKey()).toRuleKey());
+        }
         
         Optional<RateLimit> existingLimit = rateLimitRepository.findByApiKey(request.getApiKey());
         
         RateLimit rateLimit;
+        // Window of the counter to clear; aligned window keys depend on it
+        int previousWindowSeconds = request.getWindowSeconds();
         if (existingLimit.isPresent()) {
             // Update existing rate limit
             rateLimit = existingLimit.get();
+            previousWindowSeconds = rateLimit.getWindowSeconds();
             rateLimit.setRequestLimit(request.getLimit());
             rateLimit.setWindowSeconds(request.getWindowSeconds());
             logger.info("Updated existing rate limit for API key: {}", request.getApiKey());
@@ -55,18 +94,30 @@ public class RateLimitService {
         RateLimit savedLimit = rateLimitRepository.save(rateLimit);
         
         // Clear any existing Redis counter when rate limit is updated
-        redisService.deleteCounter(request.getApiKey());
+        redisService.deleteCounter(request.getApiKey(), previousWindowSeconds);
         logger.debug("Cleared Redis counter for API key: {}", request.getApiKey());
         
-        // Send MQ event
-        try {
-            if (existingLimit.isPresent()) {
-                eventProducer.sendLimitUpdatedEvent(request.getApiKey(), request.getLimit(), request.getWindowSeconds());
-            } else {
-                eventProducer.sendLimitCreatedEvent(request.getApiKey(), request.getLimit(), request.getWindowSeconds());
-            }
-        } catch (Exception e) {
-            logger.warn("Failed to send MQ event for rate limit operation", e);
+        if (keyFilter.isEnabled()) {
+            keyFilter.add(request.getApiKey());
+        }
+        
+        int limit = request.getLimit();
+        int windowSeconds = request.getWindowSeconds();
+        if (ruleCache.isEnabled()) {
+            afterCommit(() -> ruleCache.put(new RateLimit(request.getApiKey(), limit, windowSeconds)));
+        }
+        if (ipRuleMatcher.isEnabled() && IpPrefix.isRuleKey(request.getApiKey())) {
+            afterCommit(() -> ipRuleMatcher.put(request.getApiKey(), limit, windowSeconds));
+        }
+        if (ruleMirrorEnabled) {
+            afterCommit(() -> mirrorRuleQuietly(request.getApiKey(), limit, windowSeconds));
+        }
+        
+        // Record the MQ event in the same transaction; OutboxRelay publishes it after commit
+        if (existingLimit.isPresent()) {
+            outbox.recordLimitUpdated(request.getApiKey(), request.getLimit(), request.getWindowSeconds());
+        } else {
+            outbox.recordLimitCreated(request.getApiKey(), request.getLimit(), request.getWindowSeconds());
         }
         
         return savedLimit;
@@ -75,67 +126,263 @@ public class RateLimitService {
     /**
      * Check API access and increment usage counter
      */
+    @Transactional(readOnly = true)
     public CheckResult checkApiAccess(String apiKey) {
-        logger.debug("Checking API access for key: {}", apiKey);
+        return checkApiAccess(apiKey, 1);
+    }
+    
+    /**
+     * Check API access for a request that costs several units of quota.
+     * The cost is added atomically and only if it fits, so a rejected request consumes nothing.
+     */
+    @Transactional(readOnly = true)
+    public CheckResult checkApiAccess(String apiKey, int cost) {
+        return checkApiAccess(apiKey, cost, null);
+    }
+    
+    /**
+     * Check API access on behalf of a caller whose address is reported in limit-exceeded events
+     */
+    @Transactional(readOnly = true)
+    public CheckResult checkApiAccess(String apiKey, int cost, String clientIp) {
+        logger.debug("Checking API access for key: {}, cost: {}", apiKey, cost);
+        
+        // Keys with no rule are answered from memory so random keys never reach MySQL or Redis
+        if (keyFilter.isEnabled() && !keyFilter.mightExist(apiKey)) {
+            logger.debug("API key rejected by key filter: {}", apiKey);
+            return CheckResult.notFound(apiKey);
+        }
+        
+        // Mirror mode: rule lookup and counter update in a single Redis round trip
+        if (ruleMirrorEnabled) {
+            RedisService.MirroredCheck mirrored = redisService.checkWithMirroredRule(apiKey, cost);
+            if (mirrored != null) {
+                return evaluateUsage(apiKey, cost, mirrored.getCurrentUsage(), mirrored.getLimit(), 
+                                     mirrored.getWindowSeconds(), mirrored.getTtl(), clientIp);
+            }
+        }
         
         // Find rate limit configuration
-        Optional<RateLimit> rateLimitOpt = rateLimitRepository.findByApiKey(apiKey);
+        long missStamp = keyFilter.isEnabled() ? keyFilter.missStamp() : 0;
+        Optional<RateLimit> rateLimitOpt = findRule(apiKey);
         if (rateLimitOpt.isEmpty()) {
             logger.warn("Rate limit not found for API key: {}", apiKey);
+            // A replica may not have the row yet, so only a miss on the primary is cached
+            if (keyFilter.isEnabled() && !ReplicaRoutingDataSource.isReadingFromReplica()) {
+                keyFilter.recordMissing(apiKey, missStamp);
+            }
             return CheckResult.notFound(apiKey);
         }
         
         RateLimit rateLimit = rateLimitOpt.get();
         
-        // Increment usage counter in Redis
-        Long currentUsage = redisService.incrementCounter(apiKey, rateLimit.getWindowSeconds());
+        if (ruleMirrorEnabled) {
+            // Repair the missing mirror so the next check for this key stays in Redis
+            mirrorRuleQuietly(apiKey, rateLimit.getRequestLimit(), rateLimit.getWindowSeconds());
+        }
+        
+        // Add the cost to the usage counter if it fits
+        Long currentUsage = redisService.tryIncrementCounter(apiKey, cost, rateLimit.getRequestLimit(), 
+                                                             rateLimit.getWindowSeconds());
+        
+        return evaluateUsage(apiKey, cost, currentUsage, rateLimit.getRequestLimit(), rateLimit.getWindowSeconds(), null,
+                             clientIp);
+    }
+    
+    /**
+     * Check a request by the caller's address against the IP rules. The longest prefix
+     * covering the address supplies limit and window; each address has its own counter,
+     * "ip:" + address.
+     *
+     * @throws IllegalArgumentException if clientIp is not an IPv4 or IPv6 literal
+     */
+    @Transactional(readOnly = true)
+    public CheckResult checkIpAccess(String clientIp, int cost) {
+        IpPrefix address = IpPrefix.parseAddress(clientIp);
+        String counterKey = IpPrefix.RULE_PREFIX + address.addressString();
+        logger.debug("Checking IP access for: {}, cost: {}", counterKey, cost);
+        
+        long rule = ipRuleMatcher.isEnabled() ? ipRuleMatcher.match(address) : CompactRuleIndex.NOT_FOUND;
+        if (rule == CompactRuleIndex.NOT_FOUND) {
+            logger.debug("No IP rule covers client address: {}", clientIp);
+            return CheckResult.notFound(counterKey);
+        }
+        
+        int limit = CompactRuleIndex.limitOf(rule);
+        int windowSeconds = CompactRuleIndex.windowOf(rule);
+        Long currentUsage = redisService.tryIncrementCounter(counterKey, cost, limit, windowSeconds);
+        return evaluateUsage(counterKey, cost, currentUsage, limit, windowSeconds, null, address.addressString());
+    }
+    
+    /**
+     * Give back quota consumed by requests that failed before doing real work.
+     * The counter never drops below zero and the window end does not move.
+     * 
+     * @return usage after the refund, or null when the API key has no rule
+     */
+    @Transactional(readOnly = true)
+    public UsageInfo refund(String apiKey, int amount) {
+        logger.debug("Refunding {} units for API key: {}", amount, apiKey);
+        
+        Optional<RateLimit> rateLimitOpt = findRule(apiKey);
+        if (rateLimitOpt.isEmpty()) {
+            logger.warn("Rate limit not found for API key: {}", apiKey);
+            return null;
+        }
+        
+        RateLimit rateLimit = rateLimitOpt.get();
+        Long count = redisService.refundCounter(apiKey, amount, rateLimit.getWindowSeconds());
+        int usage = count != null && count > 0 ? count.intValue() : 0;
+        
+        Long ttlSeconds = redisService.getTtl(apiKey, rateLimit.getWindowSeconds());
+        Integer windowTtl = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds.intValue() : null;
+        
+        return new UsageInfo(
+            apiKey,
+            usage,
+            Math.max(0, rateLimit.getRequestLimit() - usage),
+            windowTtl,
+            rateLimit.getRequestLimit(),
+            rateLimit.getWindowSeconds()
+        );
+    }
+    
+    /**
+     * Turn the usage including this request's cost into an allow/block decision
+     * 
+     * @param currentUsage usage including cost; the counter holds it only if the request was allowed
+     * @param knownTtl window TTL if already known, otherwise it is read from the counter store
+     * @param clientIp caller address for the limit-exceeded event, or null if unknown
+     */
+    private CheckResult evaluateUsage(String apiKey, int cost, long currentUsage, int limit, int windowSeconds, Long knownTtl,
+                                      String clientIp) {
+        boolean allowed = currentUsage <= limit;
+        
+        // Window TTL: reset time for allowed requests, Retry-After for blocked ones
+        Long ttlSeconds = knownTtl != null ? knownTtl : redisService.getTtl(apiKey, windowSeconds);
+        Integer windowTtl = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds.intValue() : null;
+        notifyDecision(apiKey, allowed, currentUsage, limit, windowSeconds, windowTtl);
         
         // Check if usage exceeds limit
-        if (currentUsage > rateLimit.getRequestLimit()) {
+        if (!allowed) {
             logger.warn("Rate limit exceeded for API key: {}, usage: {}, limit: {}", 
-                       apiKey, currentUsage, rateLimit.getRequestLimit());
+                       apiKey, currentUsage, limit);
                        
             // Send MQ event for rate limit exceeded
             try {
-                eventProducer.sendLimitExceededEvent(apiKey, currentUsage.intValue(), 
-                                                   rateLimit.getRequestLimit(), "unknown");
+                eventProducer.sendLimitExceededEvent(apiKey, (int) currentUsage, limit,
+                                                    clientIp != null ? clientIp : "unknown");
             } catch (Exception e) {
                 logger.warn("Failed to send MQ event for rate limit exceeded", e);
             }
                        
-            return CheckResult.blocked(
+            // Nothing was consumed, so the quota left is what the counter holds without this request
+            CheckResult blocked = CheckResult.blocked(
                 apiKey, 
                 "Rate limit exceeded", 
-                currentUsage.intValue(), 
-                rateLimit.getRequestLimit()
+                (int) currentUsage, 
+                limit,
+                windowTtl
             );
+            blocked.setRemainingQuota(Math.max(0, limit - (int) (currentUsage - cost)));
+            blocked.setCost(cost);
+            return blocked;
         }
         
-        // Calculate remaining quota and TTL
-        Integer remainingQuota = Math.max(0, rateLimit.getRequestLimit() - currentUsage.intValue());
-        Long ttlSeconds = redisService.getTtl(apiKey);
-        Integer windowTtl = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds.intValue() : null;
+        // Calculate remaining quota
+        Integer remainingQuota = Math.max(0, limit - (int) currentUsage);
         
         logger.debug("API access allowed for key: {}, usage: {}, remaining: {}", 
                     apiKey, currentUsage, remainingQuota);
         
-        return CheckResult.allowed(
+        CheckResult allowedResult = CheckResult.allowed(
             apiKey,
-            currentUsage.intValue(),
+            (int) currentUsage,
             remainingQuota,
             windowTtl,
-            rateLimit.getRequestLimit()
+            limit
         );
+        allowedResult.setCost(cost);
+        return allowedResult;
+    }
+    
+    /**
+     * Resolve the rule for an API key, serving from the preloaded RuleCache when enabled.
+     * A cache miss still falls through to MySQL so rules created on another node are
+     * found before their config event arrives. The row is cached only if no change for
+     * the key reached the cache while it was being read.
+     */
+    private Optional<RateLimit> findRule(String apiKey) {
+        long fillStamp = 0;
+        if (ruleCache.isEnabled()) {
+            fillStamp = ruleCache.fillStamp();
+            Optional<RateLimit> cached = ruleCache.get(apiKey);
+            if (cached.isPresent()) {
+                return cached;
+            }
+        }
+        
+        Optional<RateLimit> rateLimit = rateLimitRepository.findByApiKey(apiKey);
+        if (ruleCache.isEnabled() && rateLimit.isPresent()) {
+            ruleCache.fill(rateLimit.get(), fillStamp);
+        }
+        return rateLimit;
+    }
+    
+    private void notifyDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                                Integer resetInSeconds) {
+        for (DecisionListener listener : decisionListeners) {
+            try {
+                listener.onDecision(apiKey, allowed, currentUsage, limit, windowSeconds, resetInSeconds);
+            } catch (Exception e) {
+                logger.warn("Decision listener {} failed", listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+    
+    private void mirrorRuleQuietly(String apiKey, int limit, int windowSeconds) {
+        try {
+            redisService.mirrorRule(apiKey, limit, windowSeconds);
+        } catch (Exception e) {
+            // The reconciliation job repairs the mirror later
+            logger.warn("Failed to mirror rule for API key: {}", apiKey, e);
+        }
+    }
+    
+    private void removeRuleMirrorQuietly(String apiKey) {
+        try {
+            redisService.removeRuleMirror(apiKey);
+        } catch (Exception e) {
+            logger.warn("Failed to remove rule mirror for API key: {}", apiKey, e);
+        }
+    }
+    
+    /**
+     * Run an action once the surrounding transaction commits, or immediately without one,
+     * so neither Redis nor the in-memory rule caches reflect a rule change that was rolled back
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
     
     /**
      * Get current usage information for API key
      */
+    @Transactional(readOnly = true)
     public UsageInfo getUsageInfo(String apiKey) {
         logger.debug("Getting usage info for API key: {}", apiKey);
         
         // Find rate limit configuration
-        Optional<RateLimit> rateLimitOpt = rateLimitRepository.findByApiKey(apiKey);
+        Optional<RateLimit> rateLimitOpt = findRule(apiKey);
         if (rateLimitOpt.isEmpty()) {
             logger.warn("Rate limit not found for API key: {}", apiKey);
             return null;
@@ -144,14 +391,14 @@ public class RateLimitService {
         RateLimit rateLimit = rateLimitOpt.get();
         
         // Get current usage from Redis
-        Long currentUsage = redisService.getCurrentCount(apiKey);
+        Long currentUsage = redisService.getCurrentCount(apiKey, rateLimit.getWindowSeconds());
         Integer usage = currentUsage != null ? currentUsage.intValue() : 0;
         
         // Calculate remaining quota
         Integer remainingQuota = Math.max(0, rateLimit.getRequestLimit() - usage);
         
         // Get TTL
-        Long ttlSeconds = redisService.getTtl(apiKey);
+        Long ttlSeconds = redisService.getTtl(apiKey, rateLimit.getWindowSeconds());
         Integer windowTtl = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds.intValue() : null;
         
         logger.debug("Retrieved usage info for key: {}, usage: {}, remaining: {}", 
@@ -170,23 +417,33 @@ public class RateLimitService {
     /**
      * Delete rate limit configuration
      */
-    public boolean deleteRateLimit(String apiKey) {
-        logger.info("Deleting rate limit for API key: {}", apiKey);
+    public boolean deleteRateLimit(String requestedKey) {
+        logger.info("Deleting rate limit for API key: {}", requestedKey);
+        // IP rules are stored under their canonical prefix
+        String apiKey = IpPrefix.isRuleKey(requestedKey) ? IpPrefix.ofRuleKey(requestedKey).toRuleKey() : requestedKey;
+        
+        // The rule's window addresses its counter when windows are epoch-aligned
+        Optional<RateLimit> existingLimit = findRule(apiKey);
         
         // Delete from database
         int deletedCount = rateLimitRepository.deleteByApiKey(apiKey);
         
         if (deletedCount > 0) {
             // Clear Redis counter
-            redisService.deleteCounter(apiKey);
+            existingLimit.ifPresent(rateLimit -> redisService.deleteCounter(apiKey, rateLimit.getWindowSeconds()));
+            if (ruleCache.isEnabled()) {
+                afterCommit(() -> ruleCache.remove(apiKey));
+            }
+            if (ipRuleMatcher.isEnabled() && IpPrefix.isRuleKey(apiKey)) {
+                afterCommit(() -> ipRuleMatcher.remove(apiKey));
+            }
+            if (ruleMirrorEnabled) {
+                afterCommit(() -> removeRuleMirrorQuietly(apiKey));
+            }
             logger.info("Successfully deleted rate limit for API key: {}", apiKey);
             
-            // Send MQ event for rate limit deleted
-            try {
-                eventProducer.sendLimitDeletedEvent(apiKey);
-            } catch (Exception e) {
-                logger.warn("Failed to send MQ event for rate limit deletion", e);
-            }
+            // Record the MQ event for rate limit deleted
+            outbox.recordLimitDeleted(apiKey);
             
             return true;
         } else {
@@ -204,6 +461,39 @@ public class RateLimitService {
         return rateLimitRepository.findAll(pageable);
     }
     
+    /**
+     * Get rate limits using keyset pagination over (createdAt, id).
+     * Avoids OFFSET scans and only runs COUNT when includeTotal is set.
+     * 
+     * @param cursor continuation token from the previous page, or blank for the first page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<RateLimit> getRateLimitsByCursor(String cursor, int size, boolean includeTotal) {
+        logger.debug("Retrieving rate limits with keyset pagination, cursor: {}, size: {}", cursor, size);
+        
+        // Fetch one extra row to learn whether another page exists
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<RateLimit> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = rateLimitRepository.findKeysetFirstPage(limit);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = rateLimitRepository.findKeysetPageAfter(after.getCreatedAt(), after.getId(), limit);
+        }
+        
+        boolean hasMore = rows.size() > size;
+        List<RateLimit> content = hasMore ? rows.subList(0, size) : rows;
+        
+        String nextCursor = null;
+        if (hasMore) {
+            RateLimit last = content.get(content.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        
+        Long total = includeTotal ? rateLimitRepository.countRateLimits() : null;
+        return new CursorPage<>(content, hasMore, nextCursor, total);
+    }
+    
     /**
      * Check if rate limit exists for API key
      */
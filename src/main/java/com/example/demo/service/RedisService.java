@@ -1,133 +1,330 @@
 package com.example.demo.service;
 
+import com.example.demo.counter.CounterCoalescer;
+import com.example.demo.counter.CounterStore;
+import com.example.demo.counter.RedisCounterStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class RedisService {
     
     private static final Logger logger = LoggerFactory.getLogger(RedisService.class);
-    private static final String RATE_LIMIT_KEY_PREFIX = "rate_limit:";
+    private static final String RULE_MIRROR_KEY_PREFIX = "rate_limit_rule:";
+    private static final String CONCURRENCY_KEY_PREFIX = "concurrency_inflight:";
+    
+    private static final String FIELD_LIMIT = "limit";
+    private static final String FIELD_WINDOW = "window";
+    private static final String FIELD_ALGORITHM = "algo";
+    private static final String ALGORITHM_FIXED_WINDOW = "fixed_window";
+    
+    private static final RedisScript<List> CHECK_MIRRORED_RULE_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/check_mirrored_rule.lua"), List.class);
+    private static final RedisScript<List> CHECK_MIRRORED_RULE_ALIGNED_SCRIPT = 
+            RedisScript.of(new ClassPathResource("redis/check_mirrored_rule_aligned.lua"), List.class);
     
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
     
+    /**
+     * Usage counters; Redis by default, or in process with ratelimit.counter-store.type=local
+     */
+    @Autowired
+    private CounterStore counterStore;
+    
+    /**
+     * Merges concurrent increments for the same key when ratelimit.coalescing.enabled=true
+     */
+    @Autowired(required = false)
+    private CounterCoalescer coalescer;
+    
     /**
      * Increment counter for API key and set TTL if it's the first request
-     * Uses Redis INCR command for atomic increment
      */
     public Long incrementCounter(String apiKey, int windowSeconds) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
-        
-        try {
-            // Increment counter atomically
-            Long currentCount = redisTemplate.opsForValue().increment(key);
-            
-            // If this is the first increment (count = 1), set the TTL
-            if (currentCount != null && currentCount == 1) {
-                redisTemplate.expire(key, Duration.ofSeconds(windowSeconds));
-                logger.debug("Set TTL {} seconds for key: {}", windowSeconds, key);
-            }
-            
-            logger.debug("Incremented counter for key: {}, current count: {}", key, currentCount);
-            return currentCount != null ? currentCount : 0L;
-            
-        } catch (Exception e) {
-            logger.error("Failed to increment counter for key: {}", key, e);
-            throw new RuntimeException("Redis operation failed", e);
+        return counterStore.incrementCounter(apiKey, windowSeconds);
+    }
+    
+    /**
+     * Add cost to the counter only if it stays within limit; rejected requests consume nothing
+     * 
+     * @return the count including cost, applied only if within limit
+     */
+    public Long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+        if (coalescer != null) {
+            return coalescer.tryIncrementCounter(apiKey, cost, limit, windowSeconds);
         }
+        return counterStore.tryIncrementCounter(apiKey, cost, limit, windowSeconds);
+    }
+    
+    /**
+     * Give back consumed units in the active window of a rule with windowSeconds
+     * 
+     * @return the count after the refund, or -2 if there is no active window
+     */
+    public Long refundCounter(String apiKey, long amount, int windowSeconds) {
+        return counterStore.refundCounter(apiKey, amount, windowSeconds);
     }
     
     /**
      * Get current count for API key
      */
-    public Long getCurrentCount(String apiKey) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
+    public Long getCurrentCount(String apiKey, int windowSeconds) {
+        return counterStore.getCurrentCount(apiKey, windowSeconds);
+    }
+    
+    /**
+     * Get TTL (Time To Live) for API key in seconds; computed locally with aligned windows
+     */
+    public Long getTtl(String apiKey, int windowSeconds) {
+        return counterStore.getTtl(apiKey, windowSeconds);
+    }
+    
+    /**
+     * Delete counter for API key
+     */
+    public boolean deleteCounter(String apiKey, int windowSeconds) {
+        return counterStore.deleteCounter(apiKey, windowSeconds);
+    }
+    
+    /**
+     * Set counter value with TTL
+     */
+    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+        counterStore.setCounterWithTtl(apiKey, value, windowSeconds);
+    }
+    
+    /**
+     * Check if a counter exists for the API key
+     */
+    public boolean keyExists(String apiKey, int windowSeconds) {
+        return counterStore.keyExists(apiKey, windowSeconds);
+    }
+    
+    /**
+     * Result of a check evaluated entirely inside Redis against a mirrored rule
+     */
+    public static class MirroredCheck {
+        private final long currentUsage;
+        private final int limit;
+        private final int windowSeconds;
+        private final long ttl;
         
-        try {
-            Object count = redisTemplate.opsForValue().get(key);
-            Long result = count != null ? Long.parseLong(count.toString()) : 0L;
-            logger.debug("Retrieved current count for key: {}, count: {}", key, result);
-            return result;
-            
-        } catch (Exception e) {
-            logger.error("Failed to get current count for key: {}", key, e);
-            return 0L;
+        public MirroredCheck(long currentUsage, int limit, int windowSeconds, long ttl) {
+            this.currentUsage = currentUsage;
+            this.limit = limit;
+            this.windowSeconds = windowSeconds;
+            this.ttl = ttl;
         }
+        
+        public long getCurrentUsage() { return currentUsage; }
+        public int getLimit() { return limit; }
+        public int getWindowSeconds() { return windowSeconds; }
+        public long getTtl() { return ttl; }
+    }
+    
+    /**
+     * Whether checkWithMirroredRule can run; the mirror script only updates RedisCounterStore keys
+     */
+    public boolean supportsRuleMirror() {
+        return counterStore instanceof RedisCounterStore;
     }
     
     /**
-     * Get TTL (Time To Live) for API key in seconds
+     * Read the mirrored rule and add cost to the counter in one round trip.
+     * Both keys must live on the same node, so this mode needs a single Redis
+     * instance (or hash-tagged keys) rather than a sharded cluster.
+     * 
+     * @return the check result, or null when the rule is not mirrored or counters are local
      */
-    public Long getTtl(String apiKey) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
+    @SuppressWarnings("unchecked")
+    public MirroredCheck checkWithMirroredRule(String apiKey, long cost) {
+        if (!(counterStore instanceof RedisCounterStore redisCounterStore)) {
+            // The script increments the Redis counter; with local counters fall back to the normal path
+            return null;
+        }
         
         try {
-            Long ttl = redisTemplate.getExpire(key);
-            logger.debug("Retrieved TTL for key: {}, ttl: {} seconds", key, ttl);
-            return ttl != null ? ttl : -1L;
+            List<Long> result;
+            if (redisCounterStore.isAlignedWindows()) {
+                // The window index depends on the rule's window, so the script builds the counter key
+                result = redisTemplate.execute(CHECK_MIRRORED_RULE_ALIGNED_SCRIPT, 
+                                               List.of(RULE_MIRROR_KEY_PREFIX + apiKey), cost, 
+                                               RedisCounterStore.KEY_PREFIX + apiKey + ":", 
+                                               System.currentTimeMillis() / 1000);
+            } else {
+                List<String> keys = List.of(RULE_MIRROR_KEY_PREFIX + apiKey, RedisCounterStore.KEY_PREFIX + apiKey);
+                result = redisTemplate.execute(CHECK_MIRRORED_RULE_SCRIPT, keys, cost);
+            }
+            if (result == null || result.size() < 4) {
+                logger.debug("No mirrored rule for API key: {}", apiKey);
+                return null;
+            }
+            return new MirroredCheck(result.get(0), result.get(1).intValue(), 
+                                     result.get(2).intValue(), result.get(3));
             
         } catch (Exception e) {
-            logger.error("Failed to get TTL for key: {}", key, e);
-            return -1L;
+            logger.error("Failed to run mirrored rule check for API key: {}", apiKey, e);
+            throw new RuntimeException("Redis operation failed", e);
         }
     }
     
     /**
-     * Delete counter for API key
+     * Write a rule into its Redis mirror hash
      */
-    public boolean deleteCounter(String apiKey) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
+    public void mirrorRule(String apiKey, int limit, int windowSeconds) {
+        String key = RULE_MIRROR_KEY_PREFIX + apiKey;
+        redisTemplate.opsForHash().putAll(key, ruleFields(limit, windowSeconds));
+        logger.debug("Mirrored rule for key: {}, limit: {}, window: {}", key, limit, windowSeconds);
+    }
+    
+    /**
+     * Write many rules into their mirror hashes in one pipeline
+     */
+    public void mirrorRules(Map<String, int[]> rules) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                rules.forEach((apiKey, rule) -> 
+                    ops.opsForHash().putAll(RULE_MIRROR_KEY_PREFIX + apiKey, ruleFields(rule[0], rule[1])));
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Read mirrored rules for many keys in one pipeline.
+     * 
+     * @return {limit, window} per key, or null where the key has no mirror
+     */
+    public List<int[]> getMirroredRules(List<String> apiKeys) {
+        List<Object> replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (String apiKey : apiKeys) {
+                    ops.opsForHash().multiGet(RULE_MIRROR_KEY_PREFIX + apiKey, List.of(FIELD_LIMIT, FIELD_WINDOW));
+                }
+                return null;
+            }
+        });
         
-        try {
-            Boolean deleted = redisTemplate.delete(key);
-            boolean result = deleted != null && deleted;
-            logger.debug("Deleted counter for key: {}, success: {}", key, result);
-            return result;
-            
-        } catch (Exception e) {
-            logger.error("Failed to delete counter for key: {}", key, e);
-            return false;
+        List<int[]> rules = new ArrayList<>(replies.size());
+        for (Object reply : replies) {
+            List<?> values = (List<?>) reply;
+            if (values == null || values.size() < 2 || values.get(0) == null || values.get(1) == null) {
+                rules.add(null);
+            } else {
+                rules.add(new int[] {
+                    Integer.parseInt(values.get(0).toString()), 
+                    Integer.parseInt(values.get(1).toString())
+                });
+            }
         }
+        return rules;
     }
     
     /**
-     * Set counter value with TTL
+     * Delete the mirror hash for an API key
      */
-    public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
+    public boolean removeRuleMirror(String apiKey) {
+        Boolean deleted = redisTemplate.delete(RULE_MIRROR_KEY_PREFIX + apiKey);
+        return deleted != null && deleted;
+    }
+    
+    /**
+     * Walk all mirrored API keys with SCAN, handing them over in batches
+     */
+    public void scanMirroredApiKeys(int batchSize, Consumer<List<String>> batchConsumer) {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RULE_MIRROR_KEY_PREFIX + "*")
+                .count(batchSize)
+                .build();
         
-        try {
-            redisTemplate.opsForValue().set(key, value, Duration.ofSeconds(windowSeconds));
-            logger.debug("Set counter for key: {}, value: {}, ttl: {} seconds", 
-                        key, value, windowSeconds);
-            
-        } catch (Exception e) {
-            logger.error("Failed to set counter with TTL for key: {}", key, e);
-            throw new RuntimeException("Redis operation failed", e);
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next().substring(RULE_MIRROR_KEY_PREFIX.length()));
+                if (batch.size() >= batchSize) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
         }
     }
     
     /**
-     * Check if key exists in Redis
+     * Publish this node's in-flight count for each key in one pipeline.
+     * Each key is a hash with one "count:publishedAtMillis" field per node.
+     */
+    public void publishInFlight(String nodeId, Map<String, Integer> inFlight, long nowMillis, int ttlSeconds) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                inFlight.forEach((apiKey, count) -> {
+                    String key = CONCURRENCY_KEY_PREFIX + apiKey;
+                    ops.opsForHash().put(key, nodeId, count + ":" + nowMillis);
+                    ops.expire(key, Duration.ofSeconds(ttlSeconds));
+                });
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Read every node's published in-flight entry for many keys in one pipeline.
+     * 
+     * @return node id to "count:publishedAtMillis" per key, empty where nothing was published
      */
-    public boolean keyExists(String apiKey) {
-        String key = RATE_LIMIT_KEY_PREFIX + apiKey;
+    @SuppressWarnings("unchecked")
+    public List<Map<Object, Object>> getInFlightByNode(List<String> apiKeys) {
+        List<Object> replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (String apiKey : apiKeys) {
+                    ops.opsForHash().entries(CONCURRENCY_KEY_PREFIX + apiKey);
+                }
+                return null;
+            }
+        });
         
-        try {
-            Boolean exists = redisTemplate.hasKey(key);
-            boolean result = exists != null && exists;
-            logger.debug("Checked key existence: {}, exists: {}", key, result);
-            return result;
-            
-        } catch (Exception e) {
-            logger.error("Failed to check key existence for key: {}", key, e);
-            return false;
+        List<Map<Object, Object>> entries = new ArrayList<>(replies.size());
+        for (Object reply : replies) {
+            entries.add(reply instanceof Map<?, ?> map ? (Map<Object, Object>) map : Map.of());
         }
+        return entries;
+    }
+    
+    private static Map<String, String> ruleFields(int limit, int windowSeconds) {
+        return Map.of(
+            FIELD_LIMIT, Integer.toString(limit),
+            FIELD_WINDOW, Integer.toString(windowSeconds),
+            FIELD_ALGORITHM, ALGORITHM_FIXED_WINDOW
+        );
     }
 }
\ No newline at end of file
@@ -0,0 +1,478 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.util.CompactRuleIndex;
+import com.example.demo.util.Fingerprints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of the rate_limits table used by the check path.
+ * Populated by RulePreloader at startup and kept current from config events.
+ *
+ * Rules live in an immutable CompactRuleIndex snapshot. Changes made after the
+ * snapshot was built go to a small overlay map and are folded into a fresh
+ * snapshot by {@link #rebuild()}, which swaps it in with a single volatile write.
+ *
+ * The check path fills misses from MySQL through {@link #fill}. Such a read may predate
+ * a change that reached the cache meanwhile (or come from a lagging replica), so a fill
+ * is refused for a key changed since shortly before its lookup started.
+ */
+@Component
+public class RuleCache implements SnapshotParticipant {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RuleCache.class);
+    
+    /** Overlay marker for a rule deleted since the snapshot was built */
+    private static final long TOMBSTONE = -2L;
+    
+    @Value("${ratelimit.rules.preload.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.rules.index.off-heap:false}")
+    private boolean offHeap;
+    
+    /** How far before its start a miss-path lookup may have read; covers replica lag */
+    @Value("${ratelimit.rules.fill-guard-ms:${ratelimit.datasource.replica.max-lag-ms:1000}}")
+    private long fillGuardMillis;
+    
+    /**
+     * Snapshot plus the overlays not yet folded into it. Replaced as a whole so
+     * readers always see a consistent combination.
+     */
+    private static final class State {
+        final CompactRuleIndex index;
+        final Map<String, Long> frozenOverlay;
+        
+        State(CompactRuleIndex index, Map<String, Long> frozenOverlay) {
+            this.index = index;
+            this.frozenOverlay = frozenOverlay;
+        }
+    }
+    
+    private volatile State state = new State(CompactRuleIndex.empty(), Map.of());
+    private volatile ConcurrentHashMap<String, Long> overlay = new ConcurrentHashMap<>();
+    private final Object rebuildLock = new Object();
+    
+    /**
+     * Rows streamed in by the preloader, kept as primitives until the load finishes
+     */
+    private LoadBuffer loadBuffer;
+    
+    /**
+     * Config events received while the bulk load is running. They are applied
+     * once the load completes so a late chunk cannot resurrect a deleted rule.
+     */
+    private final Queue<Runnable> pendingChanges = new ArrayDeque<>();
+    private boolean loading;
+    
+    /**
+     * Changes made while a reload is running, keyed like the overlay. Kept on top of
+     * the reloaded index, which may have read those rows before they changed.
+     */
+    private Map<String, Long> changesSinceReload;
+    
+    /** API key -> System.nanoTime() of its last put or remove, pruned by rebuild() */
+    private final Map<String, Long> recentChanges = new HashMap<>();
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Find a cached rule by API key. The returned RateLimit is a transient
+     * value built from the index and carries only apiKey, limit and window.
+     */
+    public Optional<RateLimit> get(String apiKey) {
+        long packed = lookup(apiKey);
+        if (packed == CompactRuleIndex.NOT_FOUND) {
+            return Optional.empty();
+        }
+        return Optional.of(new RateLimit(apiKey, CompactRuleIndex.limitOf(packed), CompactRuleIndex.windowOf(packed)));
+    }
+    
+    /**
+     * Allocation-free lookup returning the rule packed as (limit, window)
+     * or CompactRuleIndex.NOT_FOUND
+     */
+    public long lookup(String apiKey) {
+        Long change = overlay.get(apiKey);
+        State current = state;
+        if (change == null) {
+            change = current.frozenOverlay.get(apiKey);
+        }
+        if (change != null) {
+            return change == TOMBSTONE ? CompactRuleIndex.NOT_FOUND : change;
+        }
+        return current.index.lookup(apiKey);
+    }
+    
+    /**
+     * Insert or replace a rule
+     */
+    public synchronized void put(RateLimit rateLimit) {
+        recentChanges.put(rateLimit.getApiKey(), System.nanoTime());
+        store(rateLimit);
+    }
+    
+    /**
+     * Stamp to take before looking up a missing rule in MySQL, for {@link #fill}
+     */
+    public long fillStamp() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Cache a rule read from MySQL after a miss, unless the key was put or removed
+     * since shortly before the lookup began. The change already in the cache is then
+     * newer than the row that was read.
+     *
+     * @return false when the fill was refused
+     */
+    public synchronized boolean fill(RateLimit rateLimit, long stamp) {
+        long guardNanos = TimeUnit.MILLISECONDS.toNanos(fillGuardMillis);
+        if (System.nanoTime() - stamp > guardNanos) {
+            // Too slow to tell whether a pruned change happened meanwhile
+            return false;
+        }
+        Long changedAt = recentChanges.get(rateLimit.getApiKey());
+        if (changedAt != null && changedAt - (stamp - guardNanos) >= 0) {
+            return false;
+        }
+        store(rateLimit);
+        return true;
+    }
+    
+    private void store(RateLimit rateLimit) {
+        long packed = CompactRuleIndex.pack(rateLimit.getRequestLimit(), rateLimit.getWindowSeconds());
+        overlay.put(rateLimit.getApiKey(), packed);
+        if (changesSinceReload != null) {
+            changesSinceReload.put(rateLimit.getApiKey(), packed);
+        }
+    }
+    
+    /**
+     * Bulk insert used by the preloader
+     */
+    public void putAll(Collection<RateLimit> rateLimits) {
+        LoadBuffer buffer;
+        synchronized (pendingChanges) {
+            buffer = loadBuffer;
+        }
+        if (buffer != null) {
+            buffer.addAll(rateLimits);
+            return;
+        }
+        for (RateLimit rateLimit : rateLimits) {
+            put(rateLimit);
+        }
+    }
+    
+    public synchronized void remove(String apiKey) {
+        recentChanges.put(apiKey, System.nanoTime());
+        overlay.put(apiKey, TOMBSTONE);
+        if (changesSinceReload != null) {
+            changesSinceReload.put(apiKey, TOMBSTONE);
+        }
+    }
+    
+    /**
+     * Approximate number of rules, counting overlay entries as additions
+     */
+    public int size() {
+        State current = state;
+        return current.index.size() + current.frozenOverlay.size() + overlay.size();
+    }
+    
+    /**
+     * Apply a change coming from a config event, deferring it while a bulk load is in progress
+     */
+    public void applyChange(String apiKey, int limit, int windowSeconds, boolean deleted) {
+        Runnable change = deleted
+                ? () -> remove(apiKey)
+                : () -> put(new RateLimit(apiKey, limit, windowSeconds));
+                
+        synchronized (pendingChanges) {
+            if (loading) {
+                pendingChanges.add(change);
+                return;
+            }
+        }
+        change.run();
+    }
+    
+    void beginLoad() {
+        synchronized (pendingChanges) {
+            loading = true;
+            loadBuffer = new LoadBuffer();
+        }
+    }
+    
+    void endLoad() {
+        synchronized (pendingChanges) {
+            LoadBuffer loaded = loadBuffer;
+            loadBuffer = null;
+            
+            // Swapped under rebuildLock so a running rebuild cannot put back the index it started from
+            CompactRuleIndex index = buildIndex(loaded);
+            synchronized (rebuildLock) {
+                synchronized (this) {
+                    state = new State(index, state.frozenOverlay);
+                }
+            }
+            
+            int replayed = pendingChanges.size();
+            Runnable change;
+            while ((change = pendingChanges.poll()) != null) {
+                change.run();
+            }
+            loading = false;
+            logger.info("Rule cache load finished, {} rules indexed, {} deferred changes applied",
+                       loaded.size, replayed);
+        }
+        rebuild();
+    }
+    
+    /**
+     * Start a reload of all rules while the current ones keep serving. Rows go into
+     * the returned buffer; config events are applied as usual, not deferred.
+     */
+    synchronized Reload beginReload() {
+        changesSinceReload = new HashMap<>();
+        return new Reload();
+    }
+    
+    /**
+     * Swap in the index built from a completed reload. Changes made since it began
+     * stay in front of it until the next rebuild folds them in.
+     */
+    void commitReload(Reload reload) {
+        CompactRuleIndex index = buildIndex(reload.rows);
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                Map<String, Long> frozen = new HashMap<>(state.frozenOverlay);
+                frozen.putAll(changesSinceReload);
+                state = new State(index, frozen);
+                changesSinceReload = null;
+            }
+        }
+        logger.info("Rule cache reloaded, {} rules indexed", index.size());
+    }
+    
+    /**
+     * Drop a failed reload; the current rules stay in place
+     */
+    synchronized void abortReload() {
+        changesSinceReload = null;
+    }
+    
+    /**
+     * Fold the overlay into a new immutable snapshot and swap it in.
+     * Lookups keep working against the old snapshot while this runs; writers
+     * are only blocked for the overlay swap, not for the rebuild itself.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.rules.index.rebuild-interval-ms:5000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.nanoTime();
+            State previous;
+            Map<String, Long> frozen;
+            
+            // Freeze the current overlay; new changes go to a fresh one
+            synchronized (this) {
+                // fill() refuses stamps older than the guard, so a change twice that old can no longer matter
+                long pruneBefore = start - 2 * TimeUnit.MILLISECONDS.toNanos(fillGuardMillis);
+                recentChanges.values().removeIf(changedAt -> changedAt - pruneBefore < 0);
+                if (overlay.isEmpty()) {
+                    return;
+                }
+                previous = state;
+                frozen = new HashMap<>(previous.frozenOverlay);
+                frozen.putAll(overlay);
+                state = new State(previous.index, frozen);
+                overlay = new ConcurrentHashMap<>();
+            }
+            
+            Map<Long, Long> changesByFingerprint = new HashMap<>(frozen.size() * 2);
+            for (Map.Entry<String, Long> entry : frozen.entrySet()) {
+                changesByFingerprint.put(Fingerprints.of(entry.getKey()), entry.getValue());
+            }
+            
+            CompactRuleIndex.Builder builder = new CompactRuleIndex.Builder(
+                previous.index.size() + changesByFingerprint.size(), offHeap);
+            previous.index.forEach((fingerprint, limit, windowSeconds) -> {
+                if (!changesByFingerprint.containsKey(fingerprint)) {
+                    builder.putFingerprint(fingerprint, limit, windowSeconds);
+                }
+            });
+            changesByFingerprint.forEach((fingerprint, packed) -> {
+                if (packed != TOMBSTONE) {
+                    builder.putFingerprint(fingerprint, CompactRuleIndex.limitOf(packed), CompactRuleIndex.windowOf(packed));
+                }
+            });
+            
+            CompactRuleIndex rebuilt = builder.build();
+            state = new State(rebuilt, Map.of());
+            logger.debug("Rebuilt rule index: {} rules, {} changes folded, {} KB, {} ms",
+                        rebuilt.size(), frozen.size(), rebuilt.memoryBytes() / 1024,
+                        (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+    
+    @Override
+    public String snapshotSection() {
+        return "rules";
+    }
+    
+    @Override
+    public boolean isSnapshotEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Write (fingerprint, limit, window) triples for the current rules, ended by
+     * a zero fingerprint. Reads the immutable index plus a copy of the overlays,
+     * so checks and config events are never blocked.
+     */
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        State current;
+        Map<String, Long> changes;
+        synchronized (this) {
+            current = state;
+            changes = new HashMap<>(current.frozenOverlay);
+            changes.putAll(overlay);
+        }
+        
+        Map<Long, Long> changesByFingerprint = new HashMap<>(changes.size() * 2);
+        for (Map.Entry<String, Long> entry : changes.entrySet()) {
+            changesByFingerprint.put(Fingerprints.of(entry.getKey()), entry.getValue());
+        }
+        
+        IOException[] failure = new IOException[1];
+        current.index.forEach((fingerprint, limit, windowSeconds) -> {
+            if (failure[0] == null && !changesByFingerprint.containsKey(fingerprint)) {
+                try {
+                    writeRule(out, fingerprint, limit, windowSeconds);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (Map.Entry<Long, Long> change : changesByFingerprint.entrySet()) {
+            long packed = change.getValue();
+            if (packed != TOMBSTONE) {
+                writeRule(out, change.getKey(), CompactRuleIndex.limitOf(packed), CompactRuleIndex.windowOf(packed));
+            }
+        }
+        out.writeLong(0L);
+    }
+    
+    /**
+     * Replace the index with the saved rules. Overlay changes made since boot are kept.
+     */
+    @Override
+    public void restoreSnapshot(DataInputStream in, long snapshotMillis) throws IOException {
+        LoadBuffer restored = new LoadBuffer();
+        long fingerprint;
+        while ((fingerprint = in.readLong()) != 0L) {
+            restored.add(fingerprint, in.readInt(), in.readInt());
+        }
+        
+        CompactRuleIndex index = buildIndex(restored);
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                state = new State(index, state.frozenOverlay);
+            }
+        }
+        logger.info("Rule cache restored from snapshot, {} rules indexed", index.size());
+    }
+    
+    private CompactRuleIndex buildIndex(LoadBuffer rules) {
+        CompactRuleIndex.Builder builder = new CompactRuleIndex.Builder(rules.size, offHeap);
+        for (int i = 0; i < rules.size; i++) {
+            builder.putFingerprint(rules.fingerprints[i], rules.limits[i], rules.windows[i]);
+        }
+        return builder.build();
+    }
+    
+    private static void writeRule(DataOutputStream out, long fingerprint, int limit, int windowSeconds) throws IOException {
+        out.writeLong(fingerprint);
+        out.writeInt(limit);
+        out.writeInt(windowSeconds);
+    }
+    
+    /**
+     * Current immutable snapshot (excluding changes still in the overlay)
+     */
+    public CompactRuleIndex getIndex() {
+        return state.index;
+    }
+    
+    /**
+     * Rows of a reload in progress, see {@link #beginReload()}
+     */
+    static final class Reload {
+        private final LoadBuffer rows = new LoadBuffer();
+        
+        void addAll(Collection<RateLimit> rateLimits) {
+            rows.addAll(rateLimits);
+        }
+    }
+    
+    /**
+     * Growable primitive arrays filled by the preloader's parallel chunk loaders
+     */
+    private static final class LoadBuffer {
+        long[] fingerprints = new long[1024];
+        int[] limits = new int[1024];
+        int[] windows = new int[1024];
+        int size;
+        
+        synchronized void addAll(Collection<RateLimit> rateLimits) {
+            ensureCapacity(size + rateLimits.size());
+            for (RateLimit rateLimit : rateLimits) {
+                fingerprints[size] = Fingerprints.of(rateLimit.getApiKey());
+                limits[size] = rateLimit.getRequestLimit();
+                windows[size] = rateLimit.getWindowSeconds();
+                size++;
+            }
+        }
+        
+        synchronized void add(long fingerprint, int limit, int windowSeconds) {
+            ensureCapacity(size + 1);
+            fingerprints[size] = fingerprint;
+            limits[size] = limit;
+            windows[size] = windowSeconds;
+            size++;
+        }
+        
+        private void ensureCapacity(int required) {
+            if (required > fingerprints.length) {
+                int capacity = Math.max(required, fingerprints.length * 2);
+                fingerprints = Arrays.copyOf(fingerprints, capacity);
+                limits = Arrays.copyOf(limits, capacity);
+                windows = Arrays.copyOf(windows, capacity);
+            }
+        }
+    }
+}
\ No newline at end of file
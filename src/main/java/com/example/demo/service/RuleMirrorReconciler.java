@@ -0,0 +1,131 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.repository.RateLimitRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repairs drift between MySQL (source of truth) and the Redis rule mirror.
+ *
+ * Write-through from RateLimitService keeps the mirror current in the normal case;
+ * this job covers failed writes, manual edits and Redis restarts by rewriting
+ * mismatched or missing mirrors and deleting mirrors whose rule no longer exists.
+ */
+@Component
+public class RuleMirrorReconciler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RuleMirrorReconciler.class);
+    
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+    
+    @Autowired
+    private RedisService redisService;
+    
+    @Value("${ratelimit.rule-mirror.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.rule-mirror.batch-size:1000}")
+    private int batchSize;
+    
+    /**
+     * Refuse to start in mirror mode with a counter store the mirror script cannot update;
+     * every check would miss the mirror and still pay for the repair write
+     */
+    @PostConstruct
+    public void checkCounterStore() {
+        if (enabled && !redisService.supportsRuleMirror()) {
+            throw new IllegalStateException(
+                "ratelimit.rule-mirror.enabled=true requires ratelimit.counter-store.type=redis with plain encoding");
+        }
+    }
+    
+    @Scheduled(initialDelayString = "${ratelimit.rule-mirror.reconcile-initial-delay-ms:10000}",
+               fixedDelayString = "${ratelimit.rule-mirror.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        
+        long start = System.currentTimeMillis();
+        try {
+            int repaired = repairMirrors();
+            int removed = removeOrphanedMirrors();
+            logger.info("Rule mirror reconciliation finished in {} ms: {} repaired, {} orphans removed",
+                       System.currentTimeMillis() - start, repaired, removed);
+        } catch (Exception e) {
+            logger.error("Rule mirror reconciliation failed", e);
+        }
+    }
+    
+    /**
+     * Rewrite every mirror that is missing or differs from MySQL
+     */
+    int repairMirrors() {
+        Long minId = rateLimitRepository.findMinId();
+        Long maxId = rateLimitRepository.findMaxId();
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+        
+        int repaired = 0;
+        for (long from = minId; from <= maxId; from += batchSize) {
+            List<RateLimit> rows = rateLimitRepository.findByIdBetween(from, Math.min(maxId, from + batchSize - 1));
+            if (rows.isEmpty()) {
+                continue;
+            }
+            
+            List<String> apiKeys = new ArrayList<>(rows.size());
+            for (RateLimit row : rows) {
+                apiKeys.add(row.getApiKey());
+            }
+            List<int[]> mirrored = redisService.getMirroredRules(apiKeys);
+            
+            Map<String, int[]> stale = new HashMap<>();
+            for (int i = 0; i < rows.size(); i++) {
+                RateLimit row = rows.get(i);
+                int[] mirror = mirrored.get(i);
+                if (mirror == null
+                        || mirror[0] != row.getRequestLimit()
+                        || mirror[1] != row.getWindowSeconds()) {
+                    stale.put(row.getApiKey(), new int[] {row.getRequestLimit(), row.getWindowSeconds()});
+                }
+            }
+            
+            if (!stale.isEmpty()) {
+                redisService.mirrorRules(stale);
+                repaired += stale.size();
+            }
+        }
+        return repaired;
+    }
+    
+    /**
+     * Delete mirrors whose rule has been removed from MySQL
+     */
+    int removeOrphanedMirrors() {
+        int[] removed = new int[1];
+        redisService.scanMirroredApiKeys(batchSize, apiKeys -> {
+            Set<String> existing = new HashSet<>(rateLimitRepository.findExistingApiKeys(apiKeys));
+            for (String apiKey : apiKeys) {
+                if (!existing.contains(apiKey) && redisService.removeRuleMirror(apiKey)) {
+                    removed[0]++;
+                }
+            }
+        });
+        return removed[0];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import com.example.demo.repository.RateLimitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Streams every rate_limits row into the RuleCache before the node takes traffic.
+ *
+ * The table is split into id ranges which are loaded in parallel. Spring Boot only
+ * switches readiness to ACCEPTING_TRAFFIC after all ApplicationRunners return, so
+ * running the load here keeps the node out of the load balancer until it is done.
+ *
+ * With ratelimit.snapshot enabled a fresh local snapshot replaces the bulk load:
+ * the node restores it, catches up on rows updated since, and becomes ready.
+ * A full load then runs in the background to pick up rules deleted meanwhile; it
+ * fills a separate buffer and replaces the restored rules only if it completes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RulePreloader implements ApplicationRunner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RulePreloader.class);
+    
+    public enum Status { DISABLED, PENDING, RESTORED, LOADING, COMPLETED, FAILED }
+    
+    /** Allowance for clock skew between this node and the database when catching up */
+    private static final long CATCH_UP_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    
+    @Autowired
+    private RateLimitRepository rateLimitRepository;
+    
+    @Autowired
+    private RuleCache ruleCache;
+    
+    @Autowired
+    private StateSnapshotService stateSnapshotService;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${ratelimit.rules.preload.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.rules.preload.chunk-size:5000}")
+    private int chunkSize;
+    
+    @Value("${ratelimit.rules.preload.parallelism:4}")
+    private int parallelism;
+    
+    @Value("${ratelimit.snapshot.verify-after-restore:true}")
+    private boolean verifyAfterRestore;
+    
+    private volatile Status status = Status.PENDING;
+    private final AtomicLong loadedRows = new AtomicLong();
+    private final AtomicInteger reportedDecile = new AtomicInteger();
+    private volatile long totalRows;
+    private volatile long durationMillis;
+    private volatile long restoredSnapshotMillis;
+    private volatile long caughtUpRows;
+    
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            status = Status.DISABLED;
+            return;
+        }
+        
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        if (restoreFromSnapshot()) {
+            if (verifyAfterRestore) {
+                Thread verifier = new Thread(this::verifyInBackground, "rule-preload-verify");
+                verifier.setDaemon(true);
+                verifier.start();
+            }
+            return;
+        }
+        preload();
+    }
+    
+    /**
+     * Restore the rule cache from the local snapshot and apply rows changed since
+     *
+     * @return false if there was no usable snapshot
+     */
+    boolean restoreFromSnapshot() {
+        long start = System.currentTimeMillis();
+        OptionalLong snapshotMillis = stateSnapshotService.restore();
+        if (snapshotMillis.isEmpty()) {
+            return false;
+        }
+        
+        LocalDateTime since = LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(snapshotMillis.getAsLong() - CATCH_UP_SKEW_MILLIS), ZoneId.systemDefault());
+        List<RateLimit> changed = rateLimitRepository.findByUpdatedAtAfter(since);
+        ruleCache.putAll(changed);
+        ruleCache.rebuild();
+        
+        restoredSnapshotMillis = snapshotMillis.getAsLong();
+        caughtUpRows = changed.size();
+        durationMillis = System.currentTimeMillis() - start;
+        status = Status.RESTORED;
+        logger.info("Rule cache warm-started from snapshot, {} rules updated since applied in {} ms",
+                   changed.size(), durationMillis);
+        return true;
+    }
+    
+    /**
+     * Reload all rules while the restored ones keep serving. Config events are applied
+     * as they arrive, and the reloaded index replaces the restored one only on success.
+     */
+    void verifyInBackground() {
+        RuleCache.Reload reload = ruleCache.beginReload();
+        try {
+            loadAll(reload::addAll);
+            ruleCache.commitReload(reload);
+        } catch (Exception e) {
+            ruleCache.abortReload();
+            // The restored rules keep serving; the next restart or config events will correct them
+            logger.error("Background rule reload after snapshot restore failed", e);
+        }
+    }
+    
+    /**
+     * Load all rules in parallel id-range chunks. Fails startup if the load cannot complete.
+     */
+    public void preload() {
+        ruleCache.beginLoad();
+        try {
+            loadAll(ruleCache::putAll);
+        } finally {
+            ruleCache.endLoad();
+        }
+    }
+    
+    /**
+     * Read every rule in parallel id-range chunks into the given sink
+     */
+    private void loadAll(Consumer<Collection<RateLimit>> sink) {
+        long start = System.currentTimeMillis();
+        status = Status.LOADING;
+        loadedRows.set(0);
+        reportedDecile.set(0);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            totalRows = rateLimitRepository.countRateLimits();
+            Long minId = rateLimitRepository.findMinId();
+            Long maxId = rateLimitRepository.findMaxId();
+            logger.info("Preloading {} rate limit rules (chunk size: {}, parallelism: {})",
+                       totalRows, chunkSize, parallelism);
+                       
+            List<Future<?>> chunks = new ArrayList<>();
+            if (minId != null && maxId != null) {
+                for (long from = minId; from <= maxId; from += chunkSize) {
+                    long fromId = from;
+                    long toId = Math.min(maxId, from + chunkSize - 1);
+                    chunks.add(executor.submit(() -> loadChunk(fromId, toId, sink)));
+                }
+            }
+            
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+            
+            durationMillis = System.currentTimeMillis() - start;
+            status = Status.COMPLETED;
+            logger.info("Preloaded {} rate limit rules in {} ms", loadedRows.get(), durationMillis);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = Status.FAILED;
+            throw new IllegalStateException("Rule preload interrupted", e);
+        } catch (ExecutionException e) {
+            status = Status.FAILED;
+            throw new IllegalStateException("Rule preload failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private void loadChunk(long fromId, long toId, Consumer<Collection<RateLimit>> sink) {
+        List<RateLimit> rows = rateLimitRepository.findByIdBetween(fromId, toId);
+        sink.accept(rows);
+        
+        long loaded = loadedRows.addAndGet(rows.size());
+        long total = totalRows;
+        logger.debug("Loaded rule chunk [{}, {}]: {} rows", fromId, toId, rows.size());
+        
+        // Log at every 10% step so long loads show visible progress
+        if (total > 0) {
+            int decile = (int) Math.min(10, loaded * 10 / total);
+            int previous = reportedDecile.get();
+            if (decile > previous && reportedDecile.compareAndSet(previous, decile)) {
+                logger.info("Rule preload progress: {}/{} ({}%)", loaded, total, decile * 10);
+            }
+        }
+    }
+    
+    /**
+     * Current load status and progress for readiness reporting
+     */
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("status", status);
+        progress.put("loadedRules", loadedRows.get());
+        progress.put("totalRules", totalRows);
+        if (totalRows > 0) {
+            progress.put("percent", Math.min(100, loadedRows.get() * 100 / totalRows));
+        }
+        if (status == Status.COMPLETED || status == Status.RESTORED) {
+            progress.put("durationMillis", durationMillis);
+        }
+        if (restoredSnapshotMillis > 0) {
+            progress.put("restoredSnapshotAt", Instant.ofEpochMilli(restoredSnapshotMillis).toString());
+            progress.put("caughtUpRules", caughtUpRows);
+        }
+        return progress;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+}
\ No newline at end of file
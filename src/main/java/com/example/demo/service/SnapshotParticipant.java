@@ -0,0 +1,35 @@
+package com.example.demo.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * In-process state that StateSnapshotService saves to local disk and restores on boot.
+ *
+ * writeSnapshot runs on the snapshot thread while checks keep going, so it must
+ * read a consistent view without blocking the check path for long.
+ */
+public interface SnapshotParticipant {
+    
+    /**
+     * Stable section name in the snapshot file
+     */
+    String snapshotSection();
+    
+    /**
+     * Whether this state is in use on this node and should be saved
+     */
+    default boolean isSnapshotEnabled() {
+        return true;
+    }
+    
+    void writeSnapshot(DataOutputStream out) throws IOException;
+    
+    /**
+     * Replace the current state with the saved one
+     *
+     * @param snapshotMillis when the snapshot was taken
+     */
+    void restoreSnapshot(DataInputStream in, long snapshotMillis) throws IOException;
+}
\ No newline at end of file
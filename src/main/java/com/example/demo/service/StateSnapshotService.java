@@ -0,0 +1,259 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodic binary snapshots of in-process limiter state for warm restarts.
+ *
+ * Each SnapshotParticipant writes its own section; the file is a header, the
+ * sections and a CRC32 trailer. It is written to a temporary file and moved into
+ * place atomically, so a crash mid-write leaves the previous snapshot intact.
+ * On boot {@link #restore()} loads the snapshot only if the checksum matches
+ * and it is younger than max-age; callers then catch up on newer changes.
+ */
+@Service
+public class StateSnapshotService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StateSnapshotService.class);
+    
+    private static final int MAGIC = 0x524C5331; // "RLS1"
+    private static final short VERSION = 1;
+    private static final String SNAPSHOT_FILE = "limiter-state.snapshot";
+    
+    @Autowired(required = false)
+    private List<SnapshotParticipant> participants = List.of();
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ratelimit.snapshot.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.snapshot.directory:./snapshot}")
+    private String directory;
+    
+    @Value("${ratelimit.snapshot.max-age-minutes:60}")
+    private long maxAgeMinutes;
+    
+    private final AtomicLong lastSnapshotBytes = new AtomicLong();
+    private final AtomicLong lastSnapshotMillis = new AtomicLong();
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Scheduled(initialDelayString = "${ratelimit.snapshot.interval-ms:300000}",
+               fixedDelayString = "${ratelimit.snapshot.interval-ms:300000}")
+    public void scheduledSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            writeSnapshot();
+        } catch (Exception e) {
+            logger.error("Failed to write limiter state snapshot", e);
+        }
+    }
+    
+    /**
+     * Save a last snapshot on graceful shutdown so the next boot starts warm
+     */
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        scheduledSnapshot();
+    }
+    
+    /**
+     * Write all enabled participants to the snapshot file
+     *
+     * @return snapshot size in bytes
+     */
+    public long writeSnapshot() throws IOException {
+        long start = System.nanoTime();
+        long createdMillis = System.currentTimeMillis();
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(SNAPSHOT_FILE);
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        
+        List<SnapshotParticipant> active = participants.stream()
+                .filter(SnapshotParticipant::isSnapshotEnabled)
+                .toList();
+        
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream fileOut = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(fileOut, 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(createdMillis);
+            out.writeInt(active.size());
+            
+            for (SnapshotParticipant participant : active) {
+                ByteArrayOutputStream section = new ByteArrayOutputStream();
+                participant.writeSnapshot(new DataOutputStream(section));
+                out.writeUTF(participant.snapshotSection());
+                out.writeInt(section.size());
+                section.writeTo(out);
+            }
+            out.flush();
+            
+            // Trailer is not part of the checksum
+            DataOutputStream trailer = new DataOutputStream(fileOut);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        long size = Files.size(target);
+        long elapsed = System.nanoTime() - start;
+        timer("ratelimit.snapshot.write").record(elapsed, TimeUnit.NANOSECONDS);
+        lastSnapshotBytes.set(size);
+        lastSnapshotMillis.set(createdMillis);
+        meterRegistry.gauge("ratelimit.snapshot.size.bytes", lastSnapshotBytes);
+        logger.info("Wrote limiter state snapshot: {} sections, {} KB in {} ms",
+                   active.size(), size / 1024, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return size;
+    }
+    
+    /**
+     * Load the snapshot into the participants if it is valid and fresh enough
+     *
+     * @return when the restored snapshot was taken, or empty if nothing was restored
+     */
+    public OptionalLong restore() {
+        if (!enabled) {
+            return OptionalLong.empty();
+        }
+        Path file = Paths.get(directory).resolve(SNAPSHOT_FILE);
+        if (!Files.isRegularFile(file)) {
+            logger.info("No limiter state snapshot at {}, starting cold", file);
+            return OptionalLong.empty();
+        }
+        
+        long start = System.nanoTime();
+        try {
+            if (!checksumMatches(file)) {
+                logger.warn("Limiter state snapshot {} failed its checksum, starting cold", file);
+                return OptionalLong.empty();
+            }
+            
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                    logger.warn("Unsupported limiter state snapshot format in {}, starting cold", file);
+                    return OptionalLong.empty();
+                }
+                long createdMillis = in.readLong();
+                long ageMillis = System.currentTimeMillis() - createdMillis;
+                if (ageMillis > TimeUnit.MINUTES.toMillis(maxAgeMinutes)) {
+                    logger.info("Limiter state snapshot is {} s old, older than {} min, starting cold",
+                               ageMillis / 1000, maxAgeMinutes);
+                    return OptionalLong.empty();
+                }
+                
+                Map<String, SnapshotParticipant> bySection = new HashMap<>();
+                for (SnapshotParticipant participant : participants) {
+                    if (participant.isSnapshotEnabled()) {
+                        bySection.put(participant.snapshotSection(), participant);
+                    }
+                }
+                
+                int sections = in.readInt();
+                for (int i = 0; i < sections; i++) {
+                    String name = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    SnapshotParticipant participant = bySection.get(name);
+                    if (participant == null) {
+                        logger.debug("Skipping snapshot section {} with no participant", name);
+                        continue;
+                    }
+                    participant.restoreSnapshot(new DataInputStream(new ByteArrayInputStream(data)), createdMillis);
+                }
+                
+                long elapsed = System.nanoTime() - start;
+                timer("ratelimit.snapshot.restore").record(elapsed, TimeUnit.NANOSECONDS);
+                logger.info("Restored limiter state snapshot taken {} s ago in {} ms",
+                           ageMillis / 1000, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                return OptionalLong.of(createdMillis);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to restore limiter state snapshot {}, starting cold", file, e);
+            return OptionalLong.empty();
+        }
+    }
+    
+    public long getLastSnapshotMillis() {
+        return lastSnapshotMillis.get();
+    }
+    
+    private Timer timer(String name) {
+        return Timer.builder(name)
+                .description("Limiter state snapshot duration")
+                .register(meterRegistry);
+    }
+    
+    private static boolean checksumMatches(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size < Long.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 64 * 1024), crc)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = size - Long.BYTES;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return false;
+                }
+                remaining -= read;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+            channel.read(trailer, size - Long.BYTES);
+            return trailer.flip().getLong() == crc.getValue();
+        }
+    }
+}
\ No newline at end of file
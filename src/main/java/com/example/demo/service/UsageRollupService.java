@@ -0,0 +1,323 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UsageGranularity;
+import com.example.demo.model.UsageRollup;
+import com.example.demo.repository.UsageRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-key allowed/denied counts aggregated in memory and flushed to usage_rollups.
+ *
+ * Recording only touches a per-minute ConcurrentHashMap of LongAdders. A scheduled
+ * flush takes completed minutes out of memory, folds them into minute and hour rows
+ * and writes them with additive upserts in JDBC batches, so several nodes can
+ * write into the same bucket.
+ *
+ * Memory is bounded by max-keys: once that many keys are tracked, counts for new
+ * keys are folded into a single overflow key until the next flush. Rows of a batch
+ * that fails to write are kept and retried with the next flush, up to max-keys rows
+ * per granularity. Rows older than the retention periods are pruned on a schedule.
+ */
+@Service
+public class UsageRollupService implements DecisionListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UsageRollupService.class);
+    
+    /** Aggregate key for traffic of keys beyond the max-keys bound */
+    public static final String OVERFLOW_KEY = "__overflow__";
+    
+    /** How long after a minute ends before it is flushed, so in-flight increments land first */
+    private static final long FLUSH_GRACE_SECONDS = 5;
+    
+    private static final int MAX_HISTORY_ROWS = 1440;
+    
+    private static final String PRUNE_SQL =
+            "DELETE FROM usage_rollups WHERE granularity = ? AND bucket_start < ? LIMIT ?";
+    
+    private static final String UPSERT_SQL =
+            "INSERT INTO usage_rollups (api_key, granularity, bucket_start, allowed_count, denied_count) " +
+            "VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE allowed_count = allowed_count + VALUES(allowed_count), " +
+            "denied_count = denied_count + VALUES(denied_count)";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private UsageRollupRepository usageRollupRepository;
+    
+    @Value("${ratelimit.usage-rollup.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.usage-rollup.max-keys:100000}")
+    private int maxKeys;
+    
+    @Value("${ratelimit.usage-rollup.batch-size:1000}")
+    private int batchSize;
+    
+    @Value("${ratelimit.usage-rollup.retention.minute-hours:48}")
+    private long minuteRetentionHours;
+    
+    @Value("${ratelimit.usage-rollup.retention.hour-days:90}")
+    private long hourRetentionDays;
+    
+    /** Epoch minute -> apiKey -> counts */
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, Counts>> minutes = new ConcurrentHashMap<>();
+    private final AtomicInteger trackedKeys = new AtomicInteger();
+    private final AtomicLong overflowedRecords = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong droppedRows = new AtomicLong();
+    
+    /** Rows folded from completed minutes but not written yet; only touched by the flush */
+    private final Map<RollupKey, long[]> unwritten = new HashMap<>();
+    
+    static final class Counts {
+        final LongAdder allowed = new LongAdder();
+        final LongAdder denied = new LongAdder();
+    }
+    
+    @Override
+    public void onDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                           Integer resetInSeconds) {
+        if (!enabled) {
+            return;
+        }
+        record(apiKey, allowed, System.currentTimeMillis() / 60_000);
+    }
+    
+    void record(String apiKey, boolean allowed, long epochMinute) {
+        ConcurrentHashMap<String, Counts> bucket = minutes.get(epochMinute);
+        if (bucket == null) {
+            bucket = minutes.computeIfAbsent(epochMinute, m -> new ConcurrentHashMap<>());
+        }
+        
+        Counts counts = bucket.get(apiKey);
+        if (counts == null) {
+            String trackedKey = apiKey;
+            if (trackedKeys.get() >= maxKeys) {
+                trackedKey = OVERFLOW_KEY;
+                overflowedRecords.incrementAndGet();
+            }
+            counts = bucket.computeIfAbsent(trackedKey, k -> {
+                trackedKeys.incrementAndGet();
+                return new Counts();
+            });
+        }
+        
+        if (allowed) {
+            counts.allowed.increment();
+        } else {
+            counts.denied.increment();
+        }
+    }
+    
+    /**
+     * Flush every completed minute to MySQL
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.usage-rollup.flush-interval-ms:30000}")
+    public void flush() {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        flushCompletedMinutes((nowSeconds - FLUSH_GRACE_SECONDS) / 60);
+    }
+    
+    /**
+     * Flush minutes strictly before the given epoch minute
+     */
+    synchronized void flushCompletedMinutes(long beforeEpochMinute) {
+        Map<RollupKey, long[]> rows = unwritten;
+        
+        Iterator<Map.Entry<Long, ConcurrentHashMap<String, Counts>>> it = minutes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, ConcurrentHashMap<String, Counts>> entry = it.next();
+            long epochMinute = entry.getKey();
+            if (epochMinute >= beforeEpochMinute) {
+                continue;
+            }
+            it.remove();
+            trackedKeys.addAndGet(-entry.getValue().size());
+            
+            long epochSecond = epochMinute * 60;
+            for (Map.Entry<String, Counts> keyCounts : entry.getValue().entrySet()) {
+                long allowed = keyCounts.getValue().allowed.sum();
+                long denied = keyCounts.getValue().denied.sum();
+                for (UsageGranularity granularity : UsageGranularity.values()) {
+                    RollupKey key = new RollupKey(keyCounts.getKey(), granularity, granularity.bucketStart(epochSecond));
+                    long[] sums = rows.computeIfAbsent(key, k -> new long[2]);
+                    sums[0] += allowed;
+                    sums[1] += denied;
+                }
+            }
+        }
+        
+        if (rows.isEmpty()) {
+            return;
+        }
+        writeBatches(rows);
+        dropExcessUnwritten();
+    }
+    
+    /**
+     * Write rows in batches, removing each batch from the map once it is written.
+     * Rows of a failed batch stay in the map for the next flush.
+     */
+    private void writeBatches(Map<RollupKey, long[]> rows) {
+        long start = System.currentTimeMillis();
+        int total = rows.size();
+        List<RollupKey> written = new ArrayList<>(total);
+        List<RollupKey> keys = new ArrayList<>(batchSize);
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (Map.Entry<RollupKey, long[]> row : rows.entrySet()) {
+            RollupKey key = row.getKey();
+            keys.add(key);
+            batch.add(new Object[] {
+                key.apiKey,
+                key.granularity.name(),
+                LocalDateTime.ofEpochSecond(key.bucketStart, 0, ZoneOffset.UTC),
+                row.getValue()[0],
+                row.getValue()[1]
+            });
+            if (batch.size() >= batchSize) {
+                if (writeBatch(batch)) {
+                    written.addAll(keys);
+                }
+                keys = new ArrayList<>(batchSize);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty() && writeBatch(batch)) {
+            written.addAll(keys);
+        }
+        written.forEach(rows::remove);
+        logger.debug("Flushed {} of {} usage rollup rows in {} ms", total - rows.size(), total,
+                    System.currentTimeMillis() - start);
+    }
+    
+    private boolean writeBatch(List<Object[]> batch) {
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch);
+            return true;
+        } catch (Exception e) {
+            failedRows.addAndGet(batch.size());
+            logger.error("Failed to write {} usage rollup rows, keeping them for the next flush", batch.size(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Bound the rows kept after failed writes, so a long MySQL outage cannot grow memory without limit
+     */
+    private void dropExcessUnwritten() {
+        int maxRows = maxKeys * UsageGranularity.values().length;
+        int excess = unwritten.size() - maxRows;
+        if (excess <= 0) {
+            return;
+        }
+        Iterator<RollupKey> it = unwritten.keySet().iterator();
+        for (int i = 0; i < excess; i++) {
+            it.next();
+            it.remove();
+        }
+        droppedRows.addAndGet(excess);
+        logger.error("Dropped {} unwritten usage rollup rows, more than {} rows are waiting to be written", excess, maxRows);
+    }
+    
+    /**
+     * Delete rows older than the retention period of their granularity, a batch at a time
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.usage-rollup.prune-interval-ms:3600000}")
+    public void prune() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        try {
+            int deleted = prune(UsageGranularity.MINUTE, now.minusHours(minuteRetentionHours))
+                    + prune(UsageGranularity.HOUR, now.minusDays(hourRetentionDays));
+            if (deleted > 0) {
+                logger.info("Pruned {} usage rollup rows past retention", deleted);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to prune usage rollups", e);
+        }
+    }
+    
+    private int prune(UsageGranularity granularity, LocalDateTime before) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PRUNE_SQL, granularity.name(), before, batchSize);
+            total += deleted;
+        } while (deleted >= batchSize);
+        return total;
+    }
+    
+    /**
+     * Historical usage for an API key, oldest bucket first (UTC)
+     */
+    public List<UsageRollup> getUsageHistory(String apiKey, UsageGranularity granularity,
+                                             LocalDateTime from, LocalDateTime to) {
+        return usageRollupRepository.findByApiKeyAndGranularityAndBucketStartBetweenOrderByBucketStartAsc(
+            apiKey, granularity, from, to, PageRequest.of(0, MAX_HISTORY_ROWS));
+    }
+    
+    public int getTrackedKeys() {
+        return trackedKeys.get();
+    }
+    
+    public long getOverflowedRecords() {
+        return overflowedRecords.get();
+    }
+    
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+    
+    public long getDroppedRows() {
+        return droppedRows.get();
+    }
+    
+    private static final class RollupKey {
+        final String apiKey;
+        final UsageGranularity granularity;
+        final long bucketStart;
+        
+        RollupKey(String apiKey, UsageGranularity granularity, long bucketStart) {
+            this.apiKey = apiKey;
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RollupKey)) return false;
+            RollupKey that = (RollupKey) o;
+            return bucketStart == that.bucketStart
+                    && granularity == that.granularity
+                    && apiKey.equals(that.apiKey);
+        }
+        
+        @Override
+        public int hashCode() {
+            return (apiKey.hashCode() * 31 + granularity.hashCode()) * 31 + Long.hashCode(bucketStart);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,427 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.UsageEvent;
+import com.example.demo.model.dto.UsageInfo;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events push of per-key usage state changes.
+ *
+ * Subscribers pick a set of API keys and receive an event when a key crosses one
+ * of the configured usage thresholds, becomes blocked, or starts a new window
+ * after either. Events are fed from the check stream, so pushing costs no Redis
+ * reads; checks for keys nobody watches pay a single map lookup.
+ *
+ * Per subscriber, pending events are coalesced to the latest one per key and
+ * flushed at most max-events-per-second times. An idle subscription is just an
+ * async request and a few small objects, so thousands of them are cheap.
+ *
+ * Writes to the client run on a small dedicated pool, never on the scheduler.
+ * Each subscriber has a bounded queue of unsent frames; a client that lets it
+ * fill up is too slow to keep up and is disconnected.
+ */
+@Service
+public class UsageSubscriptionService implements DecisionListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UsageSubscriptionService.class);
+    
+    @Value("${ratelimit.subscriptions.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${ratelimit.subscriptions.thresholds:50,80,100}")
+    private int[] thresholds;
+    
+    @Value("${ratelimit.subscriptions.max-events-per-second:2}")
+    private int maxEventsPerSecond;
+    
+    @Value("${ratelimit.subscriptions.max-subscribers:10000}")
+    private int maxSubscribers;
+    
+    @Value("${ratelimit.subscriptions.max-keys-per-subscriber:100}")
+    private int maxKeysPerSubscriber;
+    
+    @Value("${ratelimit.subscriptions.send-threads:4}")
+    private int sendThreads;
+    
+    @Value("${ratelimit.subscriptions.max-queued-sends:8}")
+    private int maxQueuedSends;
+    
+    /** Runs client writes; at most one drain task per subscriber is queued at a time */
+    private Executor sendExecutor;
+    
+    private final ConcurrentHashMap<String, KeyWatch> watches = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> dirty = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Last observed state of a watched key, shared by all its subscribers
+     */
+    static final class KeyWatch {
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        int level = -1;
+        boolean blocked;
+        long lastUsage;
+        int limit;
+        long resetAtMillis;
+    }
+    
+    static final class Subscriber {
+        final SseEmitter emitter;
+        final Set<String> apiKeys;
+        final ConcurrentHashMap<String, UsageEvent> pending = new ConcurrentHashMap<>();
+        final Queue<SseEmitter.SseEventBuilder> unsent = new ConcurrentLinkedQueue<>();
+        final AtomicInteger unsentCount = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile long nextSendAtMillis;
+        
+        Subscriber(SseEmitter emitter, Set<String> apiKeys) {
+            this.emitter = emitter;
+            this.apiKeys = apiKeys;
+        }
+    }
+    
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        sendExecutor = Executors.newFixedThreadPool(Math.max(1, sendThreads), runnable -> {
+            Thread thread = new Thread(runnable, "usage-sse-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (sendExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+    
+    /**
+     * Open a stream for the given keys. The snapshot, if any, is sent first.
+     *
+     * @throws IllegalStateException when the subscriber limit is reached
+     */
+    public SseEmitter subscribe(Collection<String> apiKeys, List<UsageInfo> snapshot) {
+        SseEmitter emitter = new SseEmitter(0L);
+        register(emitter, apiKeys, snapshot);
+        return emitter;
+    }
+    
+    Subscriber register(SseEmitter emitter, Collection<String> apiKeys, List<UsageInfo> snapshot) {
+        if (!enabled) {
+            throw new IllegalStateException("Usage subscriptions are disabled");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many usage subscribers");
+        }
+        if (apiKeys.size() > maxKeysPerSubscriber) {
+            throw new IllegalArgumentException("At most " + maxKeysPerSubscriber + " API keys per subscription");
+        }
+        
+        Subscriber subscriber = new Subscriber(emitter, Set.copyOf(apiKeys));
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        
+        long now = System.currentTimeMillis();
+        for (String apiKey : subscriber.apiKeys) {
+            watches.compute(apiKey, (k, watch) -> {
+                KeyWatch w = watch != null ? watch : new KeyWatch();
+                w.subscribers.add(subscriber);
+                return w;
+            });
+        }
+        
+        List<UsageEvent> initial = new ArrayList<>(snapshot.size());
+        for (UsageInfo info : snapshot) {
+            if (info.getCurrentUsage() == null || info.getTotalLimit() == null) {
+                continue;
+            }
+            seed(info, now);
+            initial.add(new UsageEvent(info.getApiKey(), UsageEvent.Type.SNAPSHOT,
+                                       info.getCurrentUsage(), info.getTotalLimit(),
+                                       null, info.getWindowTtl(), now));
+        }
+        if (!initial.isEmpty()) {
+            send(subscriber, "snapshot", initial);
+        }
+        
+        logger.debug("Usage subscriber registered for {} keys, {} subscribers",
+                     subscriber.apiKeys.size(), subscribers.size());
+        return subscriber;
+    }
+    
+    @Override
+    public void onDecision(String apiKey, boolean allowed, long currentUsage, int limit, int windowSeconds,
+                           Integer resetInSeconds) {
+        KeyWatch watch = watches.get(apiKey);
+        if (watch == null) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        UsageEvent event;
+        synchronized (watch) {
+            boolean newWindow = isNewWindow(watch, now, windowSeconds, resetInSeconds);
+            if (resetInSeconds != null && resetInSeconds > 0) {
+                watch.resetAtMillis = now + resetInSeconds * 1000L;
+            } else if (newWindow) {
+                watch.resetAtMillis = now + windowSeconds * 1000L;
+            }
+            
+            int level = levelOf(currentUsage, limit);
+            boolean blocked = !allowed;
+            Integer resetIn = watch.resetAtMillis > now
+                    ? (int) ((watch.resetAtMillis - now + 999) / 1000) : null;
+            
+            if (blocked && !watch.blocked) {
+                event = new UsageEvent(apiKey, UsageEvent.Type.BLOCKED, currentUsage, limit, null, resetIn, now);
+            } else if (level > watch.level) {
+                event = new UsageEvent(apiKey, UsageEvent.Type.THRESHOLD, currentUsage, limit,
+                                       thresholds[level], resetIn, now);
+            } else if (newWindow && (watch.level >= 0 || watch.blocked)) {
+                event = new UsageEvent(apiKey, UsageEvent.Type.RESET, currentUsage, limit, null, resetIn, now);
+            } else {
+                event = null;
+            }
+            
+            watch.level = level;
+            watch.blocked = blocked;
+            watch.lastUsage = currentUsage;
+            watch.limit = limit;
+        }
+        
+        if (event != null) {
+            publish(watch, event);
+        }
+    }
+    
+    /**
+     * Send coalesced pending events to subscribers whose rate budget allows it
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.subscriptions.flush-interval-ms:100}")
+    public void flush() {
+        flushPending(System.currentTimeMillis());
+    }
+    
+    void flushPending(long now) {
+        long minIntervalMillis = 1000L / Math.max(1, maxEventsPerSecond);
+        for (Subscriber subscriber : dirty) {
+            if (now < subscriber.nextSendAtMillis) {
+                continue;
+            }
+            dirty.remove(subscriber);
+            
+            List<UsageEvent> events = new ArrayList<>(subscriber.pending.size());
+            for (Map.Entry<String, UsageEvent> entry : subscriber.pending.entrySet()) {
+                if (subscriber.pending.remove(entry.getKey(), entry.getValue())) {
+                    events.add(entry.getValue());
+                }
+            }
+            if (!events.isEmpty()) {
+                subscriber.nextSendAtMillis = now + minIntervalMillis;
+                send(subscriber, "usage", events);
+            }
+        }
+    }
+    
+    /**
+     * Push RESET for blocked or elevated keys whose window has expired without
+     * further traffic, since no check will report it
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.subscriptions.reset-sweep-interval-ms:1000}")
+    public void sweepResets() {
+        sweepResets(System.currentTimeMillis());
+    }
+    
+    void sweepResets(long now) {
+        for (Map.Entry<String, KeyWatch> entry : watches.entrySet()) {
+            KeyWatch watch = entry.getValue();
+            UsageEvent event = null;
+            synchronized (watch) {
+                if ((watch.level >= 0 || watch.blocked) && watch.resetAtMillis > 0 && now >= watch.resetAtMillis) {
+                    event = new UsageEvent(entry.getKey(), UsageEvent.Type.RESET, 0, watch.limit, null, null, now);
+                    watch.level = -1;
+                    watch.blocked = false;
+                    watch.lastUsage = 0;
+                    watch.resetAtMillis = 0;
+                }
+            }
+            if (event != null) {
+                publish(watch, event);
+            }
+        }
+    }
+    
+    /**
+     * Keep-alive comment so proxies don't drop idle streams and dead clients are noticed
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.subscriptions.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().comment("keep-alive"));
+        }
+    }
+    
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+    
+    public int getWatchedKeyCount() {
+        return watches.size();
+    }
+    
+    private void publish(KeyWatch watch, UsageEvent event) {
+        for (Subscriber subscriber : watch.subscribers) {
+            subscriber.pending.put(event.getApiKey(), event);
+            dirty.add(subscriber);
+        }
+    }
+    
+    private void send(Subscriber subscriber, String name, List<UsageEvent> events) {
+        enqueue(subscriber, SseEmitter.event().name(name).data(events, MediaType.APPLICATION_JSON));
+    }
+    
+    /**
+     * Hand a frame to the send pool; a subscriber whose queue is full is dropped
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder frame) {
+        if (subscriber.unsentCount.incrementAndGet() > maxQueuedSends) {
+            logger.debug("Dropping usage subscriber with {} unsent frames", maxQueuedSends);
+            unsubscribe(subscriber);
+            return;
+        }
+        subscriber.unsent.add(frame);
+        scheduleDrain(subscriber);
+    }
+    
+    private void scheduleDrain(Subscriber subscriber) {
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendExecutor.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.draining.set(false);
+            unsubscribe(subscriber);
+        }
+    }
+    
+    /**
+     * Write queued frames in order; only one drain per subscriber runs at a time
+     */
+    private void drain(Subscriber subscriber) {
+        SseEmitter.SseEventBuilder frame;
+        while ((frame = subscriber.unsent.poll()) != null) {
+            subscriber.unsentCount.decrementAndGet();
+            if (!subscribers.contains(subscriber)) {
+                continue;
+            }
+            try {
+                subscriber.emitter.send(frame);
+            } catch (Exception e) {
+                logger.debug("Dropping usage subscriber after failed send", e);
+                unsubscribe(subscriber);
+            }
+        }
+        subscriber.draining.set(false);
+        // A frame added after the last poll but before the flag was cleared has no drain scheduled
+        if (!subscriber.unsent.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+    
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        dirty.remove(subscriber);
+        for (String apiKey : subscriber.apiKeys) {
+            watches.computeIfPresent(apiKey, (k, watch) -> {
+                watch.subscribers.remove(subscriber);
+                return watch.subscribers.isEmpty() ? null : watch;
+            });
+        }
+        subscriber.emitter.complete();
+    }
+    
+    /**
+     * Initialise a key's state from its snapshot unless checks already reported it
+     */
+    private void seed(UsageInfo info, long now) {
+        KeyWatch watch = watches.get(info.getApiKey());
+        if (watch == null) {
+            return;
+        }
+        synchronized (watch) {
+            if (watch.lastUsage > 0) {
+                return;
+            }
+            int usage = info.getCurrentUsage();
+            watch.lastUsage = usage;
+            watch.limit = info.getTotalLimit();
+            watch.level = levelOf(usage, watch.limit);
+            watch.blocked = usage > watch.limit;
+            if (info.getWindowTtl() != null && info.getWindowTtl() > 0) {
+                watch.resetAtMillis = now + info.getWindowTtl() * 1000L;
+            }
+        }
+    }
+    
+    /**
+     * Whether a decision falls into a later window than the one the watch last saw.
+     * Usage cannot tell: weighted costs, blocked checks and refunds all move it both ways.
+     * The window end can: TTLs are whole seconds, so estimates within one window differ
+     * by at most about a second, while a new window moves the end forward by a whole window.
+     */
+    private static boolean isNewWindow(KeyWatch watch, long now, int windowSeconds, Integer resetInSeconds) {
+        if (watch.resetAtMillis == 0) {
+            return true;
+        }
+        if (resetInSeconds == null || resetInSeconds <= 0) {
+            return now >= watch.resetAtMillis;
+        }
+        long resetAtMillis = now + resetInSeconds * 1000L;
+        return resetAtMillis - watch.resetAtMillis >= Math.max(1000L, windowSeconds * 500L);
+    }
+    
+    /**
+     * Index of the highest threshold reached, or -1
+     */
+    private int levelOf(long usage, int limit) {
+        int level = -1;
+        for (int i = 0; i < thresholds.length; i++) {
+            if (limit > 0 && usage * 100 >= (long) thresholds[i] * limit) {
+                level = i;
+            }
+        }
+        return level;
+    }
+}
\ No newline at end of file
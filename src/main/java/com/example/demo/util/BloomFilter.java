@@ -0,0 +1,109 @@
+package com.example.demo.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over 64-bit key fingerprints.
+ *
+ * Sized for an expected number of keys and a target false-positive rate:
+ * m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 probes, derived from one
+ * fingerprint by double hashing. Bits are set with atomic ORs, so keys can be
+ * added while other threads query. Keys cannot be removed; a filter that has
+ * accumulated deleted keys is replaced by a freshly built one.
+ */
+public final class BloomFilter {
+    
+    private final int hashes;
+    private final long bits;
+    private final AtomicLongArray words;
+    
+    /**
+     * @param expectedKeys number of keys the false-positive rate is sized for
+     * @param falsePositiveRate target rate at expectedKeys, between 0 and 1
+     */
+    public BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Expected keys must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bits = (long) wordCount * 64;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / expectedKeys * Math.log(2))));
+    }
+    
+    public void put(String key) {
+        put(Fingerprints.of(key));
+    }
+    
+    public void put(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Fingerprints.mix(fingerprint) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0) {
+                long witness = words.compareAndExchange(word, current, current | mask);
+                if (witness == current) {
+                    break;
+                }
+                current = witness;
+            }
+        }
+    }
+    
+    /**
+     * False means the key was definitely never added
+     */
+    public boolean mightContain(String key) {
+        return mightContain(Fingerprints.of(key));
+    }
+    
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Fingerprints.mix(fingerprint) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Number of bits currently set
+     */
+    public long bitCount() {
+        long count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+    
+    /**
+     * False-positive rate at the current fill, (set bits / bits) ^ hashes.
+     * Unlike the sizing target this reflects the keys actually added.
+     */
+    public double estimatedFalsePositiveRate() {
+        return Math.pow((double) bitCount() / bits, hashes);
+    }
+    
+    public long bitSize() {
+        return bits;
+    }
+    
+    public int hashes() {
+        return hashes;
+    }
+    
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+}
\ No newline at end of file
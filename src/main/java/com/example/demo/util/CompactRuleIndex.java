@@ -0,0 +1,230 @@
+package com.example.demo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable, read-optimized map from API key to (limit, windowSeconds).
+ *
+ * Keys are stored as 64-bit fingerprints in an open-addressing table with linear
+ * probing, so no String or entity is retained per rule. On heap the table is three
+ * parallel primitive arrays; off heap it is a single direct buffer of 16-byte slots
+ * (fingerprint, limit, window). At the default load factor of 0.5 this is about
+ * 32 bytes per rule either way.
+ *
+ * Two different keys sharing a fingerprint would share a rule. With 64-bit
+ * fingerprints the chance of any collision among 50 million keys is below 1e-4.
+ */
+public final class CompactRuleIndex {
+    
+    /** Returned by {@link #lookup} when the key has no rule */
+    public static final long NOT_FOUND = -1L;
+    
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_OFF_HEAP_SLOTS = Integer.MAX_VALUE / SLOT_BYTES;
+    
+    private final int mask;
+    private final int size;
+    
+    // On-heap storage
+    private final long[] fingerprints;
+    private final int[] limits;
+    private final int[] windows;
+    
+    // Off-heap storage
+    private final ByteBuffer slots;
+    
+    private CompactRuleIndex(int capacity, int size, long[] fingerprints, int[] limits, int[] windows, ByteBuffer slots) {
+        this.mask = capacity - 1;
+        this.size = size;
+        this.fingerprints = fingerprints;
+        this.limits = limits;
+        this.windows = windows;
+        this.slots = slots;
+    }
+    
+    public static CompactRuleIndex empty() {
+        return new Builder(0, false).build();
+    }
+    
+    /**
+     * Look up the rule for an API key.
+     *
+     * @return the rule packed as {@code (limit << 32) | windowSeconds}, or {@link #NOT_FOUND}
+     */
+    public long lookup(String apiKey) {
+        return lookupFingerprint(Fingerprints.of(apiKey));
+    }
+    
+    public long lookupFingerprint(long fingerprint) {
+        int slot = (int) Fingerprints.mix(fingerprint) & mask;
+        if (slots == null) {
+            while (true) {
+                long current = fingerprints[slot];
+                if (current == fingerprint) {
+                    return pack(limits[slot], windows[slot]);
+                }
+                if (current == 0L) {
+                    return NOT_FOUND;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        
+        while (true) {
+            int offset = slot * SLOT_BYTES;
+            long current = slots.getLong(offset);
+            if (current == fingerprint) {
+                return pack(slots.getInt(offset + 8), slots.getInt(offset + 12));
+            }
+            if (current == 0L) {
+                return NOT_FOUND;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Visit every rule in the index
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            if (slots == null) {
+                if (fingerprints[slot] != 0L) {
+                    visitor.visit(fingerprints[slot], limits[slot], windows[slot]);
+                }
+            } else {
+                int offset = slot * SLOT_BYTES;
+                long fingerprint = slots.getLong(offset);
+                if (fingerprint != 0L) {
+                    visitor.visit(fingerprint, slots.getInt(offset + 8), slots.getInt(offset + 12));
+                }
+            }
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    public boolean isOffHeap() {
+        return slots != null;
+    }
+    
+    /**
+     * Bytes held by the table itself, excluding object headers
+     */
+    public long memoryBytes() {
+        return (long) capacity() * SLOT_BYTES;
+    }
+    
+    public static long pack(int limit, int windowSeconds) {
+        return ((long) limit << 32) | (windowSeconds & 0xffffffffL);
+    }
+    
+    public static int limitOf(long packed) {
+        return (int) (packed >>> 32);
+    }
+    
+    public static int windowOf(long packed) {
+        return (int) packed;
+    }
+    
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long fingerprint, int limit, int windowSeconds);
+    }
+    
+    /**
+     * Single-threaded builder. Later puts for the same fingerprint replace earlier ones.
+     */
+    public static final class Builder {
+        
+        private final int capacity;
+        private final boolean offHeap;
+        private long[] fingerprints;
+        private int[] limits;
+        private int[] windows;
+        private ByteBuffer slots;
+        private int size;
+        
+        public Builder(int expectedSize, boolean offHeap) {
+            this.capacity = tableSizeFor(expectedSize);
+            this.offHeap = offHeap;
+            if (offHeap) {
+                if (capacity > MAX_OFF_HEAP_SLOTS) {
+                    throw new IllegalArgumentException("Too many rules for a single off-heap buffer: " + expectedSize);
+                }
+                slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+            } else {
+                fingerprints = new long[capacity];
+                limits = new int[capacity];
+                windows = new int[capacity];
+            }
+        }
+        
+        public Builder put(String apiKey, int limit, int windowSeconds) {
+            return putFingerprint(Fingerprints.of(apiKey), limit, windowSeconds);
+        }
+        
+        public Builder putFingerprint(long fingerprint, int limit, int windowSeconds) {
+            int slot = (int) Fingerprints.mix(fingerprint) & (capacity - 1);
+            while (true) {
+                long current = offHeap ? slots.getLong(slot * SLOT_BYTES) : fingerprints[slot];
+                if (current == 0L || current == fingerprint) {
+                    if (current == 0L) {
+                        if (size == capacity - 1) {
+                            throw new IllegalStateException("Rule index capacity exceeded: " + capacity);
+                        }
+                        size++;
+                    }
+                    write(slot, fingerprint, limit, windowSeconds);
+                    return this;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+        
+        private void write(int slot, long fingerprint, int limit, int windowSeconds) {
+            if (offHeap) {
+                int offset = slot * SLOT_BYTES;
+                slots.putLong(offset, fingerprint);
+                slots.putInt(offset + 8, limit);
+                slots.putInt(offset + 12, windowSeconds);
+            } else {
+                fingerprints[slot] = fingerprint;
+                limits[slot] = limit;
+                windows[slot] = windowSeconds;
+            }
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public CompactRuleIndex build() {
+            CompactRuleIndex index = new CompactRuleIndex(capacity, size, fingerprints, limits, windows, slots);
+            fingerprints = null;
+            limits = null;
+            windows = null;
+            slots = null;
+            return index;
+        }
+        
+        /**
+         * Power-of-two capacity keeping the load factor at or below 0.5
+         */
+        private static int tableSizeFor(int expectedSize) {
+            long target = Math.max(16L, (long) expectedSize * 2);
+            long capacity = Long.highestOneBit(target - 1) << 1;
+            if (capacity > (1 << 30)) {
+                throw new IllegalArgumentException("Too many rules for the index: " + expectedSize);
+            }
+            return (int) capacity;
+        }
+    }
+}
\ No newline at end of file
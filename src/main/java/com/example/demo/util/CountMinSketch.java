@@ -0,0 +1,75 @@
+package com.example.demo.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size count-min sketch of per-key counts.
+ *
+ * Counts never under-estimate; with width w and depth d the over-estimate is at
+ * most (e / w) * total with probability 1 - e^-d. Rows are indexed by double
+ * hashing a single key fingerprint, so an update costs one hash and d atomic adds.
+ */
+public final class CountMinSketch {
+    
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+    
+    /**
+     * @param width counters per row, rounded up to a power of two
+     * @param depth number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Width and depth must be positive");
+        }
+        int rowWidth = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.counters = new AtomicLongArray(rowWidth * depth);
+    }
+    
+    /**
+     * Add one occurrence of the key and return its new estimated count
+     */
+    public long increment(String key) {
+        long hash = Fingerprints.of(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        return estimate;
+    }
+    
+    /**
+     * Estimated count for the key
+     */
+    public long estimate(String key) {
+        long hash = Fingerprints.of(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.get(index));
+        }
+        return estimate;
+    }
+    
+    public int width() {
+        return mask + 1;
+    }
+    
+    public int depth() {
+        return depth;
+    }
+    
+    public long memoryBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+}
\ No newline at end of file
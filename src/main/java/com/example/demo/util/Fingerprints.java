@@ -0,0 +1,39 @@
+package com.example.demo.util;
+
+/**
+ * 64-bit fingerprints of API keys.
+ *
+ * FNV-1a over the UTF-16 code units followed by the MurmurHash3 finalizer.
+ * Works on the String directly so no byte[] is allocated per lookup.
+ * Zero is never returned so it can be used as an empty-slot marker.
+ */
+public final class Fingerprints {
+    
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private Fingerprints() {
+    }
+    
+    public static long of(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash = mix(hash ^ value.length());
+        return hash != 0 ? hash : 1L;
+    }
+    
+    /**
+     * MurmurHash3 fmix64 finalizer
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.example.demo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for coarse deadlines.
+ *
+ * Four levels of 64 slots each. Level 0 slots are one tick wide, and each
+ * higher level's slots are 64 times wider than the level below. An item sits
+ * in the lowest level whose range covers its deadline. As time passes, the
+ * slots of the higher levels are cascaded down. Scheduling and expiring are
+ * O(1) per item no matter how many items are pending, and there is no per-item
+ * timer thread or heap. Deadlines beyond the top level are parked in its
+ * furthest slot and re-placed when that slot cascades.
+ *
+ * Deadlines are rounded up to the tick, so items expire at most one tick late.
+ */
+public final class HierarchicalTimingWheel<T> {
+    
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    
+    private record Entry<T>(T item, long deadlineTick) {
+    }
+    
+    private final long tickMillis;
+    private final List<Entry<T>>[][] slots;
+    private long currentTick;
+    private int size;
+    
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        this.slots = new List[LEVELS][WHEEL_SIZE];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                slots[level][slot] = new ArrayList<>();
+            }
+        }
+    }
+    
+    /**
+     * Schedule an item to be returned by {@link #advance} once deadlineMillis has passed
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        place(new Entry<>(item, Math.max(deadlineTick, currentTick + 1)));
+        size++;
+    }
+    
+    /**
+     * Move the wheel forward to nowMillis and return every item whose deadline has passed
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            
+            List<Entry<T>> due = slots[0][(int) (currentTick & WHEEL_MASK)];
+            for (Entry<T> entry : due) {
+                expired.add(entry.item());
+            }
+            due.clear();
+        }
+        size -= expired.size();
+        return expired;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * On entering a new slot at a level, spread the matching slot one level up
+     * into the levels below, starting from the highest level that rolled over
+     */
+    private void cascade() {
+        int highest = 0;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            highest = level;
+        }
+        for (int level = highest; level >= 1; level--) {
+            List<Entry<T>> slot = slots[level][(int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<Entry<T>> moving = new ArrayList<>(slot);
+            slot.clear();
+            for (Entry<T> entry : moving) {
+                place(entry);
+            }
+        }
+    }
+    
+    private void place(Entry<T> entry) {
+        long deadlineTick = Math.max(entry.deadlineTick(), currentTick);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            if ((deadlineTick >>> shift) - (currentTick >>> shift) < WHEEL_SIZE) {
+                slots[level][(int) ((deadlineTick >>> shift) & WHEEL_MASK)].add(entry);
+                return;
+            }
+        }
+        // Beyond the top level: park in its furthest slot and re-place on cascade
+        int shift = WHEEL_BITS * (LEVELS - 1);
+        slots[LEVELS - 1][(int) (((currentTick >>> shift) + WHEEL_MASK) & WHEEL_MASK)].add(entry);
+    }
+}
\ No newline at end of file
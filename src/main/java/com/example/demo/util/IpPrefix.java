@@ -0,0 +1,188 @@
+package com.example.demo.util;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Parsed IPv4 or IPv6 address or CIDR prefix, held as a left-aligned 128-bit value.
+ *
+ * IPv4 addresses occupy the top 32 bits of {@link #high()}; IPv6 addresses use both
+ * halves. Literals are parsed without name resolution: dotted quads by hand, anything
+ * containing ':' as an IPv6 literal. IPv4-mapped IPv6 addresses become IPv4.
+ */
+public final class IpPrefix {
+    
+    /** API keys of the form "ip:<cidr>" hold client-address rules */
+    public static final String RULE_PREFIX = "ip:";
+    
+    private final boolean ipv6;
+    private final long high;
+    private final long low;
+    private final int length;
+    
+    private IpPrefix(boolean ipv6, long high, long low, int length) {
+        this.ipv6 = ipv6;
+        this.length = length;
+        // Host bits below the prefix length are cleared
+        this.high = high & mask(Math.min(64, length));
+        this.low = low & mask(Math.max(0, length - 64));
+    }
+    
+    /**
+     * Parse "address" or "address/length"; a bare address is a full-length prefix
+     *
+     * @throws IllegalArgumentException if the text is not an IP literal or the length is out of range
+     */
+    public static IpPrefix parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("IP address is required");
+        }
+        String value = text.trim();
+        int slash = value.indexOf('/');
+        IpPrefix address = parseAddress(slash < 0 ? value : value.substring(0, slash));
+        if (slash < 0) {
+            return address;
+        }
+        
+        int length;
+        try {
+            length = Integer.parseInt(value.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid prefix length: " + text);
+        }
+        if (length < 0 || length > address.length) {
+            throw new IllegalArgumentException("Invalid prefix length: " + text);
+        }
+        return new IpPrefix(address.ipv6, address.high, address.low, length);
+    }
+    
+    /**
+     * Parse a single address (no prefix length)
+     */
+    public static IpPrefix parseAddress(String text) {
+        if (text.indexOf(':') < 0) {
+            return new IpPrefix(false, (parseIpv4(text) & 0xFFFFFFFFL) << 32, 0L, 32);
+        }
+        
+        InetAddress address;
+        try {
+            // Contains ':' so it can only be an IPv6 literal; no DNS lookup happens
+            address = InetAddress.getByName(text.startsWith("[") ? text : "[" + text + "]");
+        } catch (UnknownHostException | SecurityException e) {
+            throw new IllegalArgumentException("Invalid IP address: " + text);
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return new IpPrefix(false, (toLong(bytes, 0, 4) & 0xFFFFFFFFL) << 32, 0L, 32);
+        }
+        if (!(address instanceof Inet6Address)) {
+            throw new IllegalArgumentException("Invalid IP address: " + text);
+        }
+        return new IpPrefix(true, toLong(bytes, 0, 8), toLong(bytes, 8, 8), 128);
+    }
+    
+    public static boolean isRuleKey(String apiKey) {
+        return apiKey != null && apiKey.startsWith(RULE_PREFIX);
+    }
+    
+    /**
+     * Parse the prefix of an "ip:<cidr>" rule key
+     */
+    public static IpPrefix ofRuleKey(String apiKey) {
+        if (!isRuleKey(apiKey)) {
+            throw new IllegalArgumentException("Not an IP rule key: " + apiKey);
+        }
+        return parse(apiKey.substring(RULE_PREFIX.length()));
+    }
+    
+    public boolean isIpv6() {
+        return ipv6;
+    }
+    
+    public long high() {
+        return high;
+    }
+    
+    public long low() {
+        return low;
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    /**
+     * Canonical "ip:network/length" rule key, so equal prefixes map to one rule
+     */
+    public String toRuleKey() {
+        return RULE_PREFIX + toString();
+    }
+    
+    /**
+     * Address without the length, e.g. "10.1.2.3" or "2001:db8:0:0:0:0:0:1"
+     */
+    public String addressString() {
+        if (!ipv6) {
+            int value = (int) (high >>> 32);
+            return (value >>> 24) + "." + ((value >>> 16) & 0xFF) + "." + ((value >>> 8) & 0xFF) + "." + (value & 0xFF);
+        }
+        StringBuilder builder = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            long half = group < 4 ? high : low;
+            if (group > 0) {
+                builder.append(':');
+            }
+            builder.append(Long.toHexString((half >>> (48 - (group % 4) * 16)) & 0xFFFF));
+        }
+        return builder.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return addressString() + "/" + length;
+    }
+    
+    private static int parseIpv4(String text) {
+        int value = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    throw new IllegalArgumentException("Invalid IP address: " + text);
+                }
+                value = (value << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    throw new IllegalArgumentException("Invalid IP address: " + text);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid IP address: " + text);
+            }
+        }
+        if (octets != 4) {
+            throw new IllegalArgumentException("Invalid IP address: " + text);
+        }
+        return value;
+    }
+    
+    private static long toLong(byte[] bytes, int offset, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+    
+    /**
+     * Mask keeping the top bits of a 64-bit half
+     */
+    private static long mask(int bits) {
+        return bits == 0 ? 0L : -1L << (64 - bits);
+    }
+}
\ No newline at end of file
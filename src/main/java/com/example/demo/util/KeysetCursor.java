@@ -0,0 +1,54 @@
+package com.example.demo.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for keyset pagination over (createdAt, id).
+ * Encoded as URL-safe Base64 so clients treat it as a black box.
+ */
+public final class KeysetCursor {
+    
+    private static final String VERSION = "v1";
+    
+    private final LocalDateTime createdAt;
+    private final long id;
+    
+    public KeysetCursor(LocalDateTime createdAt, long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String encode() {
+        String raw = VERSION + "|" + createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Decode a token produced by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 3 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new KeysetCursor(LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,281 @@
+package com.example.demo.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable longest-prefix-match table over left-aligned 128-bit keys
+ * (IPv4 uses the top 32 bits, see IpPrefix).
+ *
+ * A multibit radix trie with a stride of four bits: every node is 16 slots in
+ * two flat int arrays, one holding the child node and one the value index of
+ * the longest prefix ending in that slot. A prefix whose length is not a multiple
+ * of four is expanded over the 2, 4 or 8 slots it covers, longer prefixes taking
+ * precedence. A lookup reads one slot per nibble and stops at the first missing
+ * child, so an IPv4 key costs at most 8 slot reads and an IPv6 key at most 32,
+ * no matter how many prefixes are stored.
+ *
+ * Runs of nodes with a single child and no values, common below the shared upper
+ * levels of IPv6 prefixes, are path-compressed when the trie is built: the next
+ * real node stores the skipped nibbles and a lookup compares them in one step.
+ * Links to such nodes carry a flag bit, so nodes without a skip cost no extra read.
+ */
+public final class PrefixTrie {
+    
+    public static final long NOT_FOUND = -1L;
+    
+    private static final int STRIDE = 4;
+    private static final int FANOUT = 1 << STRIDE;
+    private static final int NONE = -1;
+    
+    /** Longest run of nibbles one node can skip; 15 nibbles fit in a long */
+    private static final int MAX_SKIP = 15;
+    /** Set on a link whose target node starts with skipped nibbles */
+    private static final int SKIP_FLAG = Integer.MIN_VALUE;
+    
+    private final int[] children;
+    private final int[] slotValues;
+    /** Per node: number of nibbles skipped before its slots, and their value */
+    private final byte[] skips;
+    private final long[] skipValues;
+    private final long[] values;
+    private final int defaultValue;
+    private final int size;
+    private final int nodes;
+    /** Link to the root: 0, or SKIP_FLAG when the root itself skips */
+    private final int rootLink;
+    
+    private PrefixTrie(Builder builder) {
+        this.nodes = countCompressed(builder, 0);
+        this.children = new int[nodes * FANOUT];
+        this.slotValues = new int[nodes * FANOUT];
+        this.skips = new byte[nodes];
+        this.skipValues = new long[nodes];
+        this.values = Arrays.copyOf(builder.values, builder.valueCount);
+        this.defaultValue = builder.defaultValue;
+        this.size = builder.size;
+        this.rootLink = copyCompressed(builder, 0, new int[1]);
+    }
+    
+    /**
+     * Value of the longest stored prefix covering the key, or NOT_FOUND
+     */
+    public long lookup(long high, long low) {
+        int best = defaultValue;
+        int link = rootLink;
+        int depth = 0;
+        while (true) {
+            int node = link & ~SKIP_FLAG;
+            if (link < 0) {
+                int skip = skips[node];
+                if (nibbles(high, low, depth, skip) != skipValues[node]) {
+                    break;
+                }
+                depth += skip;
+            }
+            int slot = node * FANOUT + (int) nibbles(high, low, depth, 1);
+            int value = slotValues[slot];
+            if (value != NONE) {
+                best = value;
+            }
+            link = children[slot];
+            if (link == 0) {
+                break;
+            }
+            depth++;
+        }
+        return best != NONE ? values[best] : NOT_FOUND;
+    }
+    
+    /**
+     * Number of prefixes added, counting re-added prefixes once per add
+     */
+    public int size() {
+        return size;
+    }
+    
+    public int nodeCount() {
+        return nodes;
+    }
+    
+    public long memoryBytes() {
+        return (long) nodes * FANOUT * Integer.BYTES * 2 + (long) nodes * (Byte.BYTES + Long.BYTES)
+                + (long) values.length * Long.BYTES;
+    }
+    
+    /**
+     * count nibbles of the key starting at nibble index depth, as an unsigned value
+     */
+    private static long nibbles(long high, long low, int depth, int count) {
+        int shift = depth * STRIDE;
+        long top = shift == 0 ? high : shift < 64 ? (high << shift) | (low >>> (64 - shift)) : low << (shift - 64);
+        return top >>> (64 - count * STRIDE);
+    }
+    
+    /**
+     * Number of nodes left below and including the builder node after path compression
+     */
+    private static int countCompressed(Builder builder, int source) {
+        int onlySlot;
+        for (int skip = 0; skip < MAX_SKIP && (onlySlot = builder.onlyChildSlot(source)) >= 0; skip++) {
+            source = builder.children[source * FANOUT + onlySlot];
+        }
+        int count = 1;
+        for (int i = 0; i < FANOUT; i++) {
+            int child = builder.children[source * FANOUT + i];
+            if (child != 0) {
+                count += countCompressed(builder, child);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Copy the builder node and everything below it, folding single-child chains into
+     * skips, and return the link to it. The root is copied first and lands at index 0,
+     * so a link of 0 can mean "no child".
+     */
+    private int copyCompressed(Builder builder, int source, int[] nextNode) {
+        int skip = 0;
+        long skipValue = 0;
+        int onlySlot;
+        while (skip < MAX_SKIP && (onlySlot = builder.onlyChildSlot(source)) >= 0) {
+            skipValue = (skipValue << STRIDE) | onlySlot;
+            source = builder.children[source * FANOUT + onlySlot];
+            skip++;
+        }
+        
+        int node = nextNode[0]++;
+        skips[node] = (byte) skip;
+        skipValues[node] = skipValue;
+        for (int i = 0; i < FANOUT; i++) {
+            int slot = source * FANOUT + i;
+            slotValues[node * FANOUT + i] = builder.slotValues[slot];
+            int child = builder.children[slot];
+            if (child != 0) {
+                children[node * FANOUT + i] = copyCompressed(builder, child, nextNode);
+            }
+        }
+        return skip != 0 ? node | SKIP_FLAG : node;
+    }
+    
+    public static final class Builder {
+        
+        private final int keyBits;
+        private int[] children;
+        private int[] slotValues;
+        /** Length of the prefix that wrote each slot value, to let longer prefixes win */
+        private byte[] slotLengths;
+        private long[] values = new long[16];
+        private int valueCount;
+        private int nodes;
+        private int defaultValue = NONE;
+        private int size;
+        
+        /**
+         * @param keyBits 32 for IPv4 or 128 for IPv6
+         */
+        public Builder(int keyBits) {
+            if (keyBits <= 0 || keyBits > 128 || keyBits % STRIDE != 0) {
+                throw new IllegalArgumentException("Key bits must be a positive multiple of 4 up to 128");
+            }
+            this.keyBits = keyBits;
+            this.children = new int[FANOUT * 16];
+            this.slotValues = new int[FANOUT * 16];
+            this.slotLengths = new byte[FANOUT * 16];
+            newNode();
+        }
+        
+        /**
+         * Add a prefix; a later add of the same prefix replaces the earlier value
+         */
+        public Builder put(long high, long low, int length, long value) {
+            if (length < 0 || length > keyBits) {
+                throw new IllegalArgumentException("Prefix length out of range: " + length);
+            }
+            int index = addValue(value);
+            size++;
+            if (length == 0) {
+                defaultValue = index;
+                return this;
+            }
+            
+            // Walk to the node holding the prefix's last (partial) nibble, creating nodes on the way
+            int lastDepth = (length - 1) / STRIDE;
+            int node = 0;
+            for (int depth = 0; depth < lastDepth; depth++) {
+                int slot = node * FANOUT + nibble(high, low, depth);
+                if (children[slot] == 0) {
+                    int child = newNode();
+                    children[slot] = child;
+                }
+                node = children[slot];
+            }
+            
+            int fixedBits = length - lastDepth * STRIDE;
+            int first = nibble(high, low, lastDepth) & ~((1 << (STRIDE - fixedBits)) - 1);
+            for (int i = 0; i < 1 << (STRIDE - fixedBits); i++) {
+                int slot = node * FANOUT + first + i;
+                if (slotValues[slot] == NONE || (slotLengths[slot] & 0xFF) <= length) {
+                    slotValues[slot] = index;
+                    slotLengths[slot] = (byte) length;
+                }
+            }
+            return this;
+        }
+        
+        public Builder put(IpPrefix prefix, long value) {
+            if (prefix.isIpv6() != (keyBits == 128)) {
+                throw new IllegalArgumentException("Prefix family does not match the trie: " + prefix);
+            }
+            return put(prefix.high(), prefix.low(), prefix.length(), value);
+        }
+        
+        public PrefixTrie build() {
+            return new PrefixTrie(this);
+        }
+        
+        /**
+         * The slot of the node's only child if it has exactly one and holds no values, otherwise -1
+         */
+        private int onlyChildSlot(int node) {
+            int only = -1;
+            for (int i = 0; i < FANOUT; i++) {
+                int slot = node * FANOUT + i;
+                if (slotValues[slot] != NONE) {
+                    return -1;
+                }
+                if (children[slot] != 0) {
+                    if (only >= 0) {
+                        return -1;
+                    }
+                    only = i;
+                }
+            }
+            return only;
+        }
+        
+        private int addValue(long value) {
+            if (valueCount == values.length) {
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+            values[valueCount] = value;
+            return valueCount++;
+        }
+        
+        private int newNode() {
+            int required = (nodes + 1) * FANOUT;
+            if (required > children.length) {
+                int capacity = Math.max(required, children.length * 2);
+                children = Arrays.copyOf(children, capacity);
+                slotValues = Arrays.copyOf(slotValues, capacity);
+                slotLengths = Arrays.copyOf(slotLengths, capacity);
+            }
+            Arrays.fill(slotValues, nodes * FANOUT, required, NONE);
+            return nodes++;
+        }
+        
+        private static int nibble(long high, long low, int depth) {
+            return (int) nibbles(high, low, depth, 1);
+        }
+    }
+}
\ No newline at end of file
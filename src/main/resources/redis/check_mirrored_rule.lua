@@ -0,0 +1,23 @@
+-- Fixed-window check against a rule mirrored into Redis.
+-- KEYS[1] = rule hash (rate_limit_rule:<apiKey>), KEYS[2] = counter (rate_limit:<apiKey>)
+-- ARGV[1] = cost; the counter only grows when the cost fits in the limit.
+-- Returns {-1} when the rule is not mirrored, otherwise {count including cost, limit, window, ttl}.
+local rule = redis.call('HMGET', KEYS[1], 'limit', 'window')
+if not rule[1] or not rule[2] then
+    return {-1}
+end
+
+local limit = tonumber(rule[1])
+local window = tonumber(rule[2])
+local cost = tonumber(ARGV[1])
+
+local count = tonumber(redis.call('GET', KEYS[2]) or '0') + cost
+if count <= limit then
+    redis.call('INCRBY', KEYS[2], cost)
+    if redis.call('TTL', KEYS[2]) < 0 then
+        redis.call('EXPIRE', KEYS[2], window)
+    end
+end
+
+local ttl = redis.call('TTL', KEYS[2])
+return {count, limit, window, ttl}
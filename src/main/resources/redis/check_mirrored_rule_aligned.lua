@@ -0,0 +1,25 @@
+-- Fixed-window check against a rule mirrored into Redis, with epoch-aligned windows.
+-- KEYS[1] = rule hash (rate_limit_rule:<apiKey>), ARGV[1] = cost,
+-- ARGV[2] = counter key prefix (rate_limit:<apiKey>:), ARGV[3] = caller's time in epoch seconds
+-- The window length is only known once the rule is read, so the counter key is built here;
+-- like the non-aligned check this needs both keys on one Redis node.
+-- Returns {-1} when the rule is not mirrored, otherwise {count including cost, limit, window, ttl}.
+local rule = redis.call('HMGET', KEYS[1], 'limit', 'window')
+if not rule[1] or not rule[2] then
+    return {-1}
+end
+
+local limit = tonumber(rule[1])
+local window = tonumber(rule[2])
+local cost = tonumber(ARGV[1])
+local now = tonumber(ARGV[3])
+local index = math.floor(now / window)
+local windowEnd = (index + 1) * window
+local counter = ARGV[2] .. string.format('%d', index)
+
+local count = tonumber(redis.call('GET', counter) or '0') + cost
+if count <= limit then
+    redis.call('INCRBY', counter, cost)
+    redis.call('EXPIREAT', counter, windowEnd)
+end
+return {count, limit, window, windowEnd - now}
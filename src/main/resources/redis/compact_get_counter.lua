@@ -0,0 +1,10 @@
+-- Read one counter in the compact layout.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field, ARGV[2] = window-end field
+-- Returns {count, seconds until the window ends}, or {0, -2} when there is no active window (as Redis TTL).
+local now = tonumber(redis.call('TIME')[1])
+local fields = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+local expiry = tonumber(fields[2] or '0')
+if not fields[1] or expiry <= now then
+    return {0, -2}
+end
+return {tonumber(fields[1]), expiry - now}
@@ -0,0 +1,27 @@
+-- Move one counter from the plain layout into the compact layout, keeping its count and window end.
+-- KEYS[1] = plain counter (rate_limit:<apiKey>), KEYS[2] = bucket hash (rlc:<bucket>),
+-- ARGV[1] = count field, ARGV[2] = window-end field
+-- A counter that compact-mode nodes already started is merged: counts add up, the later window end wins.
+-- Returns 1 when a counter was moved, 0 when the plain key had no active window (it is deleted either way).
+local value = redis.call('GET', KEYS[1])
+local ttl = redis.call('TTL', KEYS[1])
+redis.call('DEL', KEYS[1])
+if not value or ttl <= 0 then
+    return 0
+end
+
+local now = tonumber(redis.call('TIME')[1])
+local fields = redis.call('HMGET', KEYS[2], ARGV[1], ARGV[2])
+local expiry = tonumber(fields[2] or '0')
+if expiry > now then
+    redis.call('HINCRBY', KEYS[2], ARGV[1], tonumber(value))
+    if now + ttl > expiry then
+        redis.call('HSET', KEYS[2], ARGV[2], now + ttl)
+    end
+else
+    redis.call('HSET', KEYS[2], ARGV[1], tonumber(value), ARGV[2], now + ttl)
+end
+if redis.call('TTL', KEYS[2]) < ttl then
+    redis.call('EXPIRE', KEYS[2], ttl)
+end
+return 1
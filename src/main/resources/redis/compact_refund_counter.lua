@@ -0,0 +1,10 @@
+-- Give back consumed units without going below zero, in the compact layout.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field, ARGV[2] = window-end field, ARGV[3] = amount
+-- Returns the count after the refund, or -2 when there is no active window.
+local now = tonumber(redis.call('TIME')[1])
+local fields = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+if not fields[1] or tonumber(fields[2] or '0') <= now then
+    return -2
+end
+local current = tonumber(fields[1])
+return redis.call('HINCRBY', KEYS[1], ARGV[1], -math.min(current, tonumber(ARGV[3])))
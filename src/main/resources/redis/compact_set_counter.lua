@@ -0,0 +1,10 @@
+-- Overwrite one counter and start a new window, in the compact layout.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field, ARGV[2] = window-end field,
+-- ARGV[3] = value, ARGV[4] = window seconds
+local now = tonumber(redis.call('TIME')[1])
+local window = tonumber(ARGV[4])
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[3], ARGV[2], now + window)
+if redis.call('TTL', KEYS[1]) < window then
+    redis.call('EXPIRE', KEYS[1], window)
+end
+return 1
@@ -0,0 +1,15 @@
+-- Remove counters whose window has ended from one bucket of the compact layout.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field length in bytes
+-- Window-end fields are the count field plus one suffix byte. Returns the number of counters removed.
+local now = tonumber(redis.call('TIME')[1])
+local fieldLength = tonumber(ARGV[1])
+local entries = redis.call('HGETALL', KEYS[1])
+local removed = 0
+for i = 1, #entries, 2 do
+    local field = entries[i]
+    if #field == fieldLength + 1 and tonumber(entries[i + 1]) <= now then
+        redis.call('HDEL', KEYS[1], field, string.sub(field, 1, fieldLength))
+        removed = removed + 1
+    end
+end
+return removed
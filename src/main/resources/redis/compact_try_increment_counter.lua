@@ -0,0 +1,24 @@
+-- Weighted fixed-window consume in the compact layout: INCRBY only when the cost fits in the limit.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field, ARGV[2] = window-end field,
+-- ARGV[3] = cost, ARGV[4] = limit, ARGV[5] = window seconds
+-- The window end is Redis server time in epoch seconds; an ended window counts as empty.
+-- Returns the count including the cost; the counter holds it only when it is within the limit.
+local now = tonumber(redis.call('TIME')[1])
+local fields = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+local active = tonumber(fields[2] or '0') > now
+local count = active and tonumber(fields[1] or '0') or 0
+local cost = tonumber(ARGV[3])
+if count + cost > tonumber(ARGV[4]) then
+    return count + cost
+end
+
+if active then
+    redis.call('HINCRBY', KEYS[1], ARGV[1], cost)
+else
+    local window = tonumber(ARGV[5])
+    redis.call('HSET', KEYS[1], ARGV[1], cost, ARGV[2], now + window)
+    if redis.call('TTL', KEYS[1]) < window then
+        redis.call('EXPIRE', KEYS[1], window)
+    end
+end
+return count + cost
@@ -0,0 +1,32 @@
+-- Weighted fixed-window consume for several coalesced requests on one key, in the compact layout.
+-- KEYS[1] = bucket hash (rlc:<bucket>), ARGV[1] = count field, ARGV[2] = window-end field,
+-- ARGV[3] = limit, ARGV[4] = window seconds, ARGV[5..n] = request costs in arrival order
+-- Requests are admitted in order while their cost still fits; only admitted costs are added.
+-- Returns, per request, the count including its cost; the request was admitted when that is within the limit.
+local now = tonumber(redis.call('TIME')[1])
+local fields = redis.call('HMGET', KEYS[1], ARGV[1], ARGV[2])
+local active = tonumber(fields[2] or '0') > now
+local count = active and tonumber(fields[1] or '0') or 0
+local limit = tonumber(ARGV[3])
+local admitted = 0
+local results = {}
+for i = 5, #ARGV do
+    local usage = count + admitted + tonumber(ARGV[i])
+    if usage <= limit then
+        admitted = admitted + tonumber(ARGV[i])
+    end
+    results[#results + 1] = usage
+end
+
+if admitted > 0 then
+    if active then
+        redis.call('HINCRBY', KEYS[1], ARGV[1], admitted)
+    else
+        local window = tonumber(ARGV[4])
+        redis.call('HSET', KEYS[1], ARGV[1], admitted, ARGV[2], now + window)
+        if redis.call('TTL', KEYS[1]) < window then
+            redis.call('EXPIRE', KEYS[1], window)
+        end
+    end
+end
+return results
@@ -0,0 +1,8 @@
+-- Give back consumed units without going below zero; DECRBY keeps the window TTL.
+-- KEYS[1] = counter (rate_limit:<apiKey>), ARGV[1] = amount
+-- Returns the count after the refund, or -2 when there is no active window.
+local current = redis.call('GET', KEYS[1])
+if not current then
+    return -2
+end
+return redis.call('DECRBY', KEYS[1], math.min(tonumber(current), tonumber(ARGV[1])))
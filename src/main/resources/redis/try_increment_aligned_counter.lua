@@ -0,0 +1,14 @@
+-- Weighted consume on an epoch-aligned window: INCRBY only when the cost fits in the limit.
+-- KEYS[1] = counter of one window (rate_limit:<apiKey>:<window index>), ARGV[1] = cost, ARGV[2] = limit,
+-- ARGV[3] = window end in epoch seconds
+-- The key names its window, so EXPIREAT to the window end is the same on every call and no TTL read is needed.
+-- Returns the count including the cost; the counter holds it only when it is within the limit.
+local cost = tonumber(ARGV[1])
+local count = tonumber(redis.call('GET', KEYS[1]) or '0') + cost
+if count > tonumber(ARGV[2]) then
+    return count
+end
+
+redis.call('INCRBY', KEYS[1], cost)
+redis.call('EXPIREAT', KEYS[1], ARGV[3])
+return count
@@ -0,0 +1,22 @@
+-- Weighted consume for several coalesced requests on one key, on an epoch-aligned window.
+-- KEYS[1] = counter of one window (rate_limit:<apiKey>:<window index>), ARGV[1] = limit,
+-- ARGV[2] = window end in epoch seconds, ARGV[3..n] = request costs in arrival order
+-- Requests are admitted in order while their cost still fits; only admitted costs are added, in one INCRBY.
+-- Returns, per request, the count including its cost; the request was admitted when that is within the limit.
+local limit = tonumber(ARGV[1])
+local count = tonumber(redis.call('GET', KEYS[1]) or '0')
+local admitted = 0
+local results = {}
+for i = 3, #ARGV do
+    local usage = count + admitted + tonumber(ARGV[i])
+    if usage <= limit then
+        admitted = admitted + tonumber(ARGV[i])
+    end
+    results[#results + 1] = usage
+end
+
+if admitted > 0 then
+    redis.call('INCRBY', KEYS[1], admitted)
+    redis.call('EXPIREAT', KEYS[1], ARGV[2])
+end
+return results
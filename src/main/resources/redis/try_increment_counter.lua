@@ -0,0 +1,14 @@
+-- Weighted fixed-window consume: INCRBY only when the cost fits in the limit.
+-- KEYS[1] = counter (rate_limit:<apiKey>), ARGV[1] = cost, ARGV[2] = limit, ARGV[3] = window seconds
+-- Returns the count including the cost; the counter holds it only when it is within the limit.
+local cost = tonumber(ARGV[1])
+local count = tonumber(redis.call('GET', KEYS[1]) or '0') + cost
+if count > tonumber(ARGV[2]) then
+    return count
+end
+
+redis.call('INCRBY', KEYS[1], cost)
+if redis.call('TTL', KEYS[1]) < 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+return count
@@ -0,0 +1,24 @@
+-- Weighted fixed-window consume for several coalesced requests on one key.
+-- KEYS[1] = counter (rate_limit:<apiKey>), ARGV[1] = limit, ARGV[2] = window seconds,
+-- ARGV[3..n] = request costs in arrival order
+-- Requests are admitted in order while their cost still fits; only admitted costs are added, in one INCRBY.
+-- Returns, per request, the count including its cost; the request was admitted when that is within the limit.
+local limit = tonumber(ARGV[1])
+local count = tonumber(redis.call('GET', KEYS[1]) or '0')
+local admitted = 0
+local results = {}
+for i = 3, #ARGV do
+    local usage = count + admitted + tonumber(ARGV[i])
+    if usage <= limit then
+        admitted = admitted + tonumber(ARGV[i])
+    end
+    results[#results + 1] = usage
+end
+
+if admitted > 0 then
+    redis.call('INCRBY', KEYS[1], admitted)
+    if redis.call('TTL', KEYS[1]) < 0 then
+        redis.call('EXPIRE', KEYS[1], ARGV[2])
+    end
+end
+return results
@@ -0,0 +1,110 @@
+package com.example.demo.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+    
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(40);
+    
+    @Test
+    void testAcquireStopsAtLimitAndReleaseFreesPermit() {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new AimdLimit(2, 1, 10, 0.5, TIMEOUT_NANOS));
+        
+        // Act
+        int first = limiter.tryAcquire();
+        int second = limiter.tryAcquire();
+        int third = limiter.tryAcquire();
+        limiter.release(first, FAST, false);
+        int fourth = limiter.tryAcquire();
+        
+        // Assert
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(-1, third);
+        assertEquals(2, fourth);
+        assertEquals(1, limiter.getRejected());
+    }
+    
+    @Test
+    void testRemoteInFlightCountsAgainstLimit() {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new AimdLimit(5, 1, 10, 0.5, TIMEOUT_NANOS));
+        limiter.setRemoteInFlight(4);
+        
+        // Act
+        int first = limiter.tryAcquire();
+        int second = limiter.tryAcquire();
+        
+        // Assert
+        assertEquals(1, first);
+        assertEquals(-1, second);
+    }
+    
+    @Test
+    void testAimdGrowsWhenBusyAndBacksOffOnDrop() {
+        // Arrange
+        AimdLimit limit = new AimdLimit(10, 2, 12, 0.5, TIMEOUT_NANOS);
+        
+        // Act
+        limit.onSample(FAST, 2, false);
+        int idle = limit.getLimit();
+        for (int i = 0; i < 5; i++) {
+            limit.onSample(FAST, 10, false);
+        }
+        int busy = limit.getLimit();
+        limit.onSample(FAST, 10, true);
+        int afterDrop = limit.getLimit();
+        limit.onSample(TIMEOUT_NANOS + 1, 6, false);
+        int afterTimeout = limit.getLimit();
+        
+        // Assert
+        assertEquals(10, idle);
+        assertEquals(12, busy);
+        assertEquals(6, afterDrop);
+        assertEquals(3, afterTimeout);
+    }
+    
+    @Test
+    void testGradientShrinksWhenLatencyRisesAndRecovers() {
+        // Arrange
+        GradientLimit limit = new GradientLimit(50, 5, 200, 0.5, 100);
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(FAST, 50, false);
+        }
+        int baseline = limit.getLimit();
+        
+        // Act
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(SLOW, limit.getLimit(), false);
+        }
+        int degraded = limit.getLimit();
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(FAST, limit.getLimit(), false);
+        }
+        int recovered = limit.getLimit();
+        
+        // Assert
+        assertTrue(baseline > 50, "flat latency should let the limit probe upwards");
+        assertTrue(degraded < baseline / 2, "limit should shrink when latency quadruples: " + degraded);
+        assertTrue(recovered > degraded, "limit should grow again once latency recovers");
+    }
+    
+    @Test
+    void testGradientIgnoresSamplesWellBelowLimit() {
+        // Arrange
+        GradientLimit limit = new GradientLimit(100, 5, 200, 0.5, 100);
+        
+        // Act
+        limit.onSample(SLOW, 1, false);
+        
+        // Assert
+        assertEquals(100, limit.getLimit());
+    }
+}
\ No newline at end of file
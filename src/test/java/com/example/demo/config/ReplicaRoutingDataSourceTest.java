@@ -0,0 +1,190 @@
+package com.example.demo.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory H2 databases stand in for the MySQL primary and replica.
+ * Replication is simulated by copying the heartbeat row by hand.
+ */
+class ReplicaRoutingDataSourceTest {
+    
+    private static final long MAX_LAG_MS = 1000;
+    
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private FailingDataSource replica;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+    
+    @BeforeEach
+    void setUp() throws SQLException {
+        DataSource primary = h2("primary");
+        replica = new FailingDataSource(h2("replica"));
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replica);
+        primaryJdbc.execute("CREATE TABLE marker (name VARCHAR(16))");
+        primaryJdbc.update("INSERT INTO marker VALUES ('primary')");
+        replicaJdbc.execute("CREATE TABLE marker (name VARCHAR(16))");
+        replicaJdbc.update("INSERT INTO marker VALUES ('replica')");
+        replicaJdbc.execute("CREATE TABLE replica_heartbeat (node_id VARCHAR(64) PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+        
+        routing = new ReplicaRoutingDataSource(primary, replica, MAX_LAG_MS, 500);
+        routing.afterPropertiesSet();
+        routing.initHeartbeat(System.currentTimeMillis());
+        
+        DataSource lazy = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(lazy);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(lazy);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+    
+    @Test
+    void testReadOnlyTransactionUsesReplicaWhenCaughtUp() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now);
+        
+        // Act
+        routing.heartbeat(now);
+        
+        // Assert
+        assertEquals(0, routing.getLagMillis());
+        assertEquals("replica", readOnly.execute(status -> currentDatabase()));
+    }
+    
+    @Test
+    void testReportsWhetherTheLastReadCameFromReplica() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now);
+        routing.heartbeat(now);
+        
+        // Act
+        boolean replicaRead = readOnly.execute(status -> {
+            currentDatabase();
+            return ReplicaRoutingDataSource.isReadingFromReplica();
+        });
+        boolean primaryRead = readWrite.execute(status -> {
+            currentDatabase();
+            return ReplicaRoutingDataSource.isReadingFromReplica();
+        });
+        
+        // Assert
+        assertTrue(replicaRead);
+        assertFalse(primaryRead);
+    }
+    
+    @Test
+    void testReadWriteTransactionUsesPrimary() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now);
+        routing.heartbeat(now);
+        
+        // Act & Assert
+        assertEquals("primary", readWrite.execute(status -> currentDatabase()));
+    }
+    
+    @Test
+    void testLaggingReplicaFallsBackToPrimary() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now - 5000);
+        
+        // Act
+        routing.heartbeat(now);
+        
+        // Assert
+        assertEquals(5000, routing.getLagMillis());
+        assertEquals("primary", readOnly.execute(status -> currentDatabase()));
+    }
+    
+    @Test
+    void testNoReplicatedHeartbeatFallsBackToPrimary() {
+        // Act
+        routing.heartbeat(System.currentTimeMillis());
+        
+        // Assert
+        assertEquals("primary", readOnly.execute(status -> currentDatabase()));
+    }
+    
+    @Test
+    void testReadAfterLocalWriteStaysOnPrimary() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now);
+        routing.heartbeat(now);
+        
+        // Act: the rule is committed on the primary but has not replicated yet
+        readWrite.executeWithoutResult(status -> jdbc.update("UPDATE marker SET name = 'written'"));
+        String afterWrite = readOnly.execute(status -> currentDatabase());
+        
+        // Assert
+        assertEquals("written", afterWrite);
+    }
+    
+    @Test
+    void testUnavailableReplicaFallsBackToPrimary() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        replicate(now);
+        routing.heartbeat(now);
+        replica.failing = true;
+        
+        // Act & Assert
+        assertEquals("primary", readOnly.execute(status -> currentDatabase()));
+        assertFalse(routing.isReplicaUsable(System.currentTimeMillis()));
+    }
+    
+    private String currentDatabase() {
+        return jdbc.queryForObject("SELECT name FROM marker", String.class);
+    }
+    
+    /**
+     * Copy this node's heartbeat to the replica as if replication had caught up to beatMillis
+     */
+    private void replicate(long beatMillis) {
+        replicaJdbc.update("MERGE INTO replica_heartbeat KEY (node_id) VALUES (?, ?)", routing.getNodeId(), beatMillis);
+    }
+    
+    private static DataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+    
+    private static final class FailingDataSource extends DelegatingDataSource {
+        
+        private volatile boolean failing;
+        
+        private FailingDataSource(DataSource target) {
+            super(target);
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (failing) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+    }
+}
\ No newline at end of file
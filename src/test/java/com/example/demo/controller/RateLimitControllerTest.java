@@ -1,10 +1,15 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.RateLimit;
+import com.example.demo.model.UsageGranularity;
+import com.example.demo.model.UsageRollup;
 import com.example.demo.model.dto.CheckResult;
+import com.example.demo.model.dto.CursorPage;
 import com.example.demo.model.dto.RateLimitRequest;
 import com.example.demo.model.dto.UsageInfo;
 import com.example.demo.service.RateLimitService;
+import com.example.demo.service.UsageRollupService;
+import com.example.demo.service.UsageSubscriptionService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,9 +21,12 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -34,6 +42,12 @@ class RateLimitControllerTest {
     @MockBean
     private RateLimitService rateLimitService;
     
+    @MockBean
+    private UsageRollupService usageRollupService;
+    
+    @MockBean
+    private UsageSubscriptionService usageSubscriptionService;
+    
     @Autowired
     private ObjectMapper objectMapper;
     
@@ -87,7 +101,7 @@ class RateLimitControllerTest {
     void testCheckApiAccess_Allowed() throws Exception {
         // Arrange
         CheckResult allowedResult = CheckResult.allowed("test-key", 5, 95, 50, 100);
-        when(rateLimitService.checkApiAccess("test-key")).thenReturn(allowedResult);
+        when(rateLimitService.checkApiAccess("test-key", 1, "127.0.0.1")).thenReturn(allowedResult);
         
         // Act & Assert
         mockMvc.perform(get("/api/v1/check")
@@ -99,14 +113,14 @@ class RateLimitControllerTest {
                 .andExpect(jsonPath("$.data.currentUsage").value(5))
                 .andExpect(jsonPath("$.data.remainingQuota").value(95));
         
-        verify(rateLimitService).checkApiAccess("test-key");
+        verify(rateLimitService).checkApiAccess("test-key", 1, "127.0.0.1");
     }
     
     @Test
     void testCheckApiAccess_Blocked() throws Exception {
         // Arrange
         CheckResult blockedResult = CheckResult.blocked("test-key", "Rate limit exceeded", 101, 100);
-        when(rateLimitService.checkApiAccess("test-key")).thenReturn(blockedResult);
+        when(rateLimitService.checkApiAccess("test-key", 1, "127.0.0.1")).thenReturn(blockedResult);
         
         // Act & Assert
         mockMvc.perform(get("/api/v1/check")
@@ -115,7 +129,128 @@ class RateLimitControllerTest {
                 .andExpect(jsonPath("$.success").value(false))
                 .andExpect(jsonPath("$.error").value("Rate limit exceeded"));
         
-        verify(rateLimitService).checkApiAccess("test-key");
+        verify(rateLimitService).checkApiAccess("test-key", 1, "127.0.0.1");
+    }
+    
+    @Test
+    void testCheckApiAccessLean_Allowed() throws Exception {
+        // Arrange
+        CheckResult allowedResult = CheckResult.allowed("test-key", 5, 95, 50, 100);
+        when(rateLimitService.checkApiAccess("test-key", 1, "127.0.0.1")).thenReturn(allowedResult);
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("apiKey", "test-key")
+                .param("mode", "lean"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("RateLimit-Limit", "100"))
+                .andExpect(header().string("RateLimit-Remaining", "95"))
+                .andExpect(header().string("RateLimit-Reset", "50"))
+                .andExpect(header().doesNotExist("Retry-After"))
+                .andExpect(content().string(""));
+    }
+    
+    @Test
+    void testCheckApiAccessLean_Blocked() throws Exception {
+        // Arrange
+        CheckResult blockedResult = CheckResult.blocked("test-key", "Rate limit exceeded", 101, 100, 30);
+        when(rateLimitService.checkApiAccess("test-key", 1, "127.0.0.1")).thenReturn(blockedResult);
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("apiKey", "test-key")
+                .param("mode", "lean"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("RateLimit-Remaining", "0"))
+                .andExpect(header().string("Retry-After", "30"))
+                .andExpect(content().string(""));
+    }
+    
+    @Test
+    void testCheckApiAccess_WeightedCost() throws Exception {
+        // Arrange
+        CheckResult blockedResult = CheckResult.blocked("test-key", "Rate limit exceeded", 130, 100, 30);
+        blockedResult.setRemainingQuota(20);
+        blockedResult.setCost(50);
+        when(rateLimitService.checkApiAccess("test-key", 50, "127.0.0.1")).thenReturn(blockedResult);
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("apiKey", "test-key")
+                .param("cost", "50")
+                .param("mode", "lean"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("RateLimit-Remaining", "20"));
+        
+        verify(rateLimitService).checkApiAccess("test-key", 50, "127.0.0.1");
+    }
+    
+    @Test
+    void testCheckIpAccess_UsesRemoteAddress() throws Exception {
+        // Arrange
+        CheckResult allowedResult = CheckResult.allowed("ip:127.0.0.1", 1, 9, 60, 10);
+        when(rateLimitService.checkIpAccess("127.0.0.1", 1)).thenReturn(allowedResult);
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("mode", "ip"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.apiKey").value("ip:127.0.0.1"))
+                .andExpect(jsonPath("$.data.remainingQuota").value(9));
+    }
+    
+    @Test
+    void testCheckIpAccess_InvalidAddress() throws Exception {
+        // Arrange
+        when(rateLimitService.checkIpAccess("not-an-ip", 1))
+                .thenThrow(new IllegalArgumentException("Invalid IP address: not-an-ip"));
+                
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("mode", "ip")
+                .param("ip", "not-an-ip"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid IP address: not-an-ip"));
+    }
+    
+    @Test
+    void testCheckApiAccess_InvalidCost() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/check")
+                .param("apiKey", "test-key")
+                .param("cost", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("cost must be positive"));
+        
+        verify(rateLimitService, never()).checkApiAccess(any(), anyInt(), any());
+    }
+    
+    @Test
+    void testRefund_Success() throws Exception {
+        // Arrange
+        UsageInfo usageInfo = new UsageInfo("test-key", 10, 90, 45, 100, 60);
+        when(rateLimitService.refund("test-key", 50)).thenReturn(usageInfo);
+        
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/refund")
+                .param("apiKey", "test-key")
+                .param("amount", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data.currentUsage").value(10))
+                .andExpect(jsonPath("$.data.remainingQuota").value(90));
+    }
+    
+    @Test
+    void testRefund_NotFound() throws Exception {
+        // Arrange
+        when(rateLimitService.refund("unknown-key", 1)).thenReturn(null);
+        
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/refund")
+                .param("apiKey", "unknown-key"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.success").value(false));
     }
     
     @Test
@@ -126,7 +261,7 @@ class RateLimitControllerTest {
                 .andExpect(jsonPath("$.success").value(false))
                 .andExpect(jsonPath("$.error").value("API key parameter is required"));
         
-        verify(rateLimitService, never()).checkApiAccess(any());
+        verify(rateLimitService, never()).checkApiAccess(any(), anyInt(), any());
     }
     
     @Test
@@ -162,6 +297,67 @@ class RateLimitControllerTest {
         verify(rateLimitService).getUsageInfo("unknown-key");
     }
     
+    @Test
+    void testStreamUsage() throws Exception {
+        // Arrange
+        UsageInfo usageInfo = new UsageInfo("key-1", 5, 95, 30, 100, 60);
+        when(rateLimitService.getUsageInfo("key-1")).thenReturn(usageInfo);
+        when(rateLimitService.getUsageInfo("key-2")).thenReturn(null);
+        when(usageSubscriptionService.subscribe(any(), any())).thenReturn(new SseEmitter());
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/usage/stream")
+                .param("apiKeys", "key-1, key-2,key-1"))
+                .andExpect(request().asyncStarted());
+        
+        verify(usageSubscriptionService).subscribe(eq(Set.of("key-1", "key-2")), 
+                argThat(snapshot -> snapshot.size() == 1));
+    }
+    
+    @Test
+    void testStreamUsage_TooManySubscribers() throws Exception {
+        // Arrange
+        when(usageSubscriptionService.subscribe(any(), any()))
+                .thenThrow(new IllegalStateException("Too many usage subscribers"));
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/usage/stream")
+                .param("apiKeys", "key-1"))
+                .andExpect(status().isServiceUnavailable());
+    }
+    
+    @Test
+    void testGetUsageHistory() throws Exception {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 1, 1, 11, 0);
+        UsageRollup rollup = new UsageRollup("test-key", UsageGranularity.MINUTE, from, 40, 2);
+        when(usageRollupService.getUsageHistory("test-key", UsageGranularity.MINUTE, from, to))
+                .thenReturn(Arrays.asList(rollup));
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/usage/history")
+                .param("apiKey", "test-key")
+                .param("from", "2024-01-01T10:00:00")
+                .param("to", "2024-01-01T11:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data[0].allowedCount").value(40))
+                .andExpect(jsonPath("$.data[0].deniedCount").value(2));
+    }
+    
+    @Test
+    void testGetUsageHistory_InvalidRange() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/usage/history")
+                .param("apiKey", "test-key")
+                .param("from", "2024-01-02T00:00:00")
+                .param("to", "2024-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+        
+        verify(usageRollupService, never()).getUsageHistory(any(), any(), any(), any());
+    }
+    
     @Test
     void testDeleteRateLimit_Success() throws Exception {
         // Arrange
@@ -176,6 +372,20 @@ class RateLimitControllerTest {
         verify(rateLimitService).deleteRateLimit("test-key");
     }
     
+    @Test
+    void testDeleteRateLimit_ByParam() throws Exception {
+        // Arrange
+        when(rateLimitService.deleteRateLimit("ip:10.0.0.0/8")).thenReturn(true);
+        
+        // Act & Assert
+        mockMvc.perform(delete("/api/v1/limits")
+                .param("apiKey", "ip:10.0.0.0/8"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true));
+                
+        verify(rateLimitService).deleteRateLimit("ip:10.0.0.0/8");
+    }
+    
     @Test
     void testDeleteRateLimit_NotFound() throws Exception {
         // Arrange
@@ -207,6 +417,39 @@ class RateLimitControllerTest {
         verify(rateLimitService).getAllRateLimits(any());
     }
     
+    @Test
+    void testGetRateLimitsByCursor() throws Exception {
+        // Arrange
+        CursorPage<RateLimit> page = new CursorPage<>(Arrays.asList(testRateLimit), true, "next-token", null);
+        when(rateLimitService.getRateLimitsByCursor("", 1, false)).thenReturn(page);
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/limits")
+                .param("cursor", "")
+                .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data.content[0].apiKey").value("test-key"))
+                .andExpect(jsonPath("$.data.hasMore").value(true))
+                .andExpect(jsonPath("$.data.nextCursor").value("next-token"))
+                .andExpect(jsonPath("$.data.totalElements").doesNotExist());
+        
+        verify(rateLimitService, never()).getAllRateLimits(any());
+    }
+    
+    @Test
+    void testGetRateLimitsByCursor_InvalidCursor() throws Exception {
+        // Arrange
+        when(rateLimitService.getRateLimitsByCursor(eq("bogus"), anyInt(), anyBoolean()))
+                .thenThrow(new IllegalArgumentException("Invalid cursor"));
+        
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/limits")
+                .param("cursor", "bogus"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor"));
+    }
+    
     @Test
     void testGetRateLimit_Success() throws Exception {
         // Arrange
@@ -0,0 +1,68 @@
+package com.example.demo.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactCounterKeysTest {
+    
+    @Test
+    void testFieldsAreFixedLengthBigEndianFingerprint() {
+        // Arrange
+        long fingerprint = 0x0102030405060708L;
+        
+        // Act
+        byte[] count = CompactCounterKeys.countField(fingerprint);
+        byte[] expiry = CompactCounterKeys.expiryField(fingerprint);
+        
+        // Assert
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, count);
+        assertEquals(CompactCounterKeys.FIELD_LENGTH + 1, expiry.length);
+        for (int i = 0; i < CompactCounterKeys.FIELD_LENGTH; i++) {
+            assertEquals(count[i], expiry[i]);
+        }
+        assertEquals(CompactCounterKeys.EXPIRY_SUFFIX, expiry[CompactCounterKeys.FIELD_LENGTH]);
+    }
+    
+    @Test
+    void testBucketIsStableForKey() {
+        // Arrange
+        CompactCounterKeys keys = new CompactCounterKeys(1024);
+        CompactCounterKeys sameLayout = new CompactCounterKeys(1024);
+        
+        // Act
+        String bucket = keys.bucketKey(keys.fingerprint("test-api-key"));
+        
+        // Assert
+        assertTrue(bucket.startsWith(CompactCounterKeys.BUCKET_PREFIX));
+        assertEquals(bucket, sameLayout.bucketKey(sameLayout.fingerprint("test-api-key")));
+    }
+    
+    @Test
+    void testKeysSpreadEvenlyOverBuckets() {
+        // Arrange
+        int buckets = 256;
+        int keysPerBucket = 32;
+        CompactCounterKeys keys = new CompactCounterKeys(buckets);
+        Map<String, Integer> sizes = new HashMap<>();
+        
+        // Act
+        for (int i = 0; i < buckets * keysPerBucket; i++) {
+            sizes.merge(keys.bucketKey(keys.fingerprint("key-" + i)), 1, Integer::sum);
+        }
+        
+        // Assert: every bucket used, none near the 64-key listpack limit
+        int largest = sizes.values().stream().max(Integer::compare).orElse(0);
+        assertEquals(buckets, sizes.size());
+        assertTrue(largest < 64, "largest bucket has " + largest + " keys");
+    }
+    
+    @Test
+    void testRejectsNonPositiveBucketCount() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new CompactCounterKeys(0));
+    }
+}
\ No newline at end of file
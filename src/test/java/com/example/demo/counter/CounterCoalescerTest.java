@@ -0,0 +1,170 @@
+package com.example.demo.counter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterCoalescerTest {
+    
+    private LocalCounterStore backing;
+    private CounterCoalescer coalescer;
+    
+    @BeforeEach
+    void setUp() {
+        backing = new LocalCounterStore();
+        ReflectionTestUtils.setField(backing, "maxKeys", 16);
+        ReflectionTestUtils.setField(backing, "stripeCount", 1);
+        ReflectionTestUtils.setField(backing, "tickMillis", 100L);
+        backing.init();
+        
+        coalescer = new CounterCoalescer();
+        ReflectionTestUtils.setField(coalescer, "counterStore", new SlowCounterStore(backing));
+        ReflectionTestUtils.setField(coalescer, "maxBatchSize", 64);
+    }
+    
+    @Test
+    void testSingleRequestPassesThrough() {
+        // Act
+        long first = coalescer.tryIncrementCounter("test-key", 3, 10, 60);
+        long blocked = coalescer.tryIncrementCounter("test-key", 8, 10, 60);
+        
+        // Assert
+        assertEquals(3, first);
+        assertEquals(11, blocked);
+        assertEquals(3, backing.getCurrentCount("test-key", 60));
+        assertEquals(2, coalescer.getCalls());
+    }
+    
+    @Test
+    void testConcurrentRequestsAreMergedWithExactDecisions() throws Exception {
+        // Arrange
+        int threads = 50;
+        int perThread = 10;
+        long limit = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<long[]> outcomes = new ConcurrentLinkedQueue<>();
+        
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long cost = 1 + t % 3;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    outcomes.add(new long[] {cost, coalescer.tryIncrementCounter("hot-key", cost, limit, 60)});
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        
+        // Assert
+        long admitted = 0;
+        Set<Long> usages = new HashSet<>();
+        for (long[] outcome : outcomes) {
+            if (outcome[1] <= limit) {
+                admitted += outcome[0];
+                assertTrue(usages.add(outcome[1]), "each admitted request sees its own usage");
+            }
+        }
+        assertEquals(limit, admitted);
+        assertEquals(limit, backing.getCurrentCount("hot-key", 60));
+        assertEquals(threads * perThread, coalescer.getRequests());
+        assertTrue(coalescer.getCalls() < coalescer.getRequests());
+    }
+    
+    @Test
+    void testStoreFailureReachesCaller() {
+        // Arrange
+        ReflectionTestUtils.setField(coalescer, "counterStore", new SlowCounterStore(null));
+        
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> coalescer.tryIncrementCounter("test-key", 1, 10, 60));
+    }
+    
+    /**
+     * Adds a round trip's worth of latency so concurrent requests pile up
+     */
+    private static final class SlowCounterStore implements CounterStore {
+        
+        private final CounterStore delegate;
+        
+        private SlowCounterStore(CounterStore delegate) {
+            this.delegate = delegate;
+        }
+        
+        private CounterStore roundTrip() {
+            if (delegate == null) {
+                throw new IllegalStateException("store down");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate;
+        }
+        
+        @Override
+        public long tryIncrementCounter(String apiKey, long cost, long limit, int windowSeconds) {
+            return roundTrip().tryIncrementCounter(apiKey, cost, limit, windowSeconds);
+        }
+        
+        @Override
+        public long[] tryIncrementCounters(String apiKey, long[] costs, long limit, int windowSeconds) {
+            return roundTrip().tryIncrementCounters(apiKey, costs, limit, windowSeconds);
+        }
+        
+        @Override
+        public long incrementCounter(String apiKey, int windowSeconds) {
+            return roundTrip().incrementCounter(apiKey, windowSeconds);
+        }
+        
+        @Override
+        public long refundCounter(String apiKey, long amount, int windowSeconds) {
+            return roundTrip().refundCounter(apiKey, amount, windowSeconds);
+        }
+        
+        @Override
+        public long getCurrentCount(String apiKey, int windowSeconds) {
+            return roundTrip().getCurrentCount(apiKey, windowSeconds);
+        }
+        
+        @Override
+        public long getTtl(String apiKey, int windowSeconds) {
+            return roundTrip().getTtl(apiKey, windowSeconds);
+        }
+        
+        @Override
+        public boolean deleteCounter(String apiKey, int windowSeconds) {
+            return roundTrip().deleteCounter(apiKey, windowSeconds);
+        }
+        
+        @Override
+        public void setCounterWithTtl(String apiKey, long value, int windowSeconds) {
+            roundTrip().setCounterWithTtl(apiKey, value, windowSeconds);
+        }
+        
+        @Override
+        public boolean keyExists(String apiKey, int windowSeconds) {
+            return roundTrip().keyExists(apiKey, windowSeconds);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package com.example.demo.counter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalCounterStoreTest {
+    
+    private LocalCounterStore store;
+    
+    @BeforeEach
+    void setUp() {
+        store = new LocalCounterStore();
+        ReflectionTestUtils.setField(store, "maxKeys", 4);
+        ReflectionTestUtils.setField(store, "stripeCount", 1);
+        ReflectionTestUtils.setField(store, "tickMillis", 100L);
+        store.init();
+    }
+    
+    @Test
+    void testIncrementStartsAndResetsWindow() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        
+        // Act
+        long first = store.incrementCounter("test-key", 60, now);
+        long second = store.incrementCounter("test-key", 60, now + 1000);
+        long afterWindow = store.incrementCounter("test-key", 60, now + 60_000);
+        
+        // Assert
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(1, afterWindow);
+        assertEquals(60, store.getTtl("test-key", 60, now + 60_000));
+    }
+    
+    @Test
+    void testMissingKeyLooksLikeRedis() {
+        // Act & Assert
+        assertEquals(0, store.getCurrentCount("missing", 60));
+        assertEquals(-2, store.getTtl("missing", 60));
+        assertFalse(store.keyExists("missing", 60));
+        assertFalse(store.deleteCounter("missing", 60));
+    }
+    
+    @Test
+    void testExpiredCountersAreReclaimed() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        store.incrementCounter("short", 1, now);
+        store.incrementCounter("long", 60, now);
+        
+        // Act
+        store.expire(now + 1_200);
+        
+        // Assert
+        assertEquals(1, store.size());
+        assertEquals(1, store.getExpirations());
+        assertEquals(1, store.getCurrentCount("long", 60, now + 1_200));
+    }
+    
+    @Test
+    void testEvictionSparesRecentlyUsedKeys() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            store.incrementCounter("key-" + i, 60, now);
+        }
+        // Inserting key-4 sweeps every reference bit clear and evicts key-0; key-1 is then used again
+        store.incrementCounter("key-4", 60, now);
+        store.incrementCounter("key-1", 60, now);
+        
+        // Act
+        store.incrementCounter("key-5", 60, now);
+        
+        // Assert
+        assertEquals(4, store.size());
+        assertEquals(2, store.getEvictions());
+        assertEquals(2, store.getCurrentCount("key-1", 60, now));
+        assertEquals(0, store.getCurrentCount("key-2", 60, now));
+    }
+    
+    @Test
+    void testSetCounterWithTtl() {
+        // Act
+        store.setCounterWithTtl("test-key", 42, 30);
+        
+        // Assert
+        assertTrue(store.keyExists("test-key", 30));
+        assertEquals(42, store.getCurrentCount("test-key", 30));
+        assertEquals(43, store.incrementCounter("test-key", 60));
+        assertTrue(store.deleteCounter("test-key", 30));
+        assertEquals(0, store.getCurrentCount("test-key", 30));
+    }
+    
+    @Test
+    void testWeightedIncrementOnlyAppliesWhenItFits() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        
+        // Act
+        long first = store.tryIncrementCounter("test-key", 70, 100, 60, now);
+        long rejected = store.tryIncrementCounter("test-key", 50, 100, 60, now);
+        long fits = store.tryIncrementCounter("test-key", 30, 100, 60, now);
+        long tooBig = store.tryIncrementCounter("other-key", 101, 100, 60, now);
+        
+        // Assert
+        assertEquals(70, first);
+        assertEquals(120, rejected);
+        assertEquals(100, fits);
+        assertEquals(100, store.getCurrentCount("test-key", 60, now));
+        assertEquals(101, tooBig);
+        assertEquals(-2, store.getTtl("other-key", 60, now));
+    }
+    
+    @Test
+    void testRefundStopsAtZeroAndKeepsWindow() {
+        // Arrange
+        long now = System.currentTimeMillis();
+        store.tryIncrementCounter("test-key", 40, 100, 60, now);
+        
+        // Act
+        long afterRefund = store.refundCounter("test-key", 30, 60, now + 1000);
+        long floored = store.refundCounter("test-key", 30, 60, now + 1000);
+        long missing = store.refundCounter("missing", 5, 60, now);
+        
+        // Assert
+        assertEquals(10, afterRefund);
+        assertEquals(0, floored);
+        assertEquals(-2, missing);
+        assertEquals(59, store.getTtl("test-key", 60, now + 1000));
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.demo.counter;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class RedisCommandBatcherTest {
+    
+    private final List<Runnable> unflushed = new ArrayList<>();
+    private final AtomicLong counter = new AtomicLong();
+    
+    private RedisAsyncCommands<String, String> commands;
+    private StatefulRedisConnection<String, String> connection;
+    private RedisCommandBatcher batcher;
+    
+    @BeforeEach
+    void setUp() {
+        commands = mock(RedisAsyncCommands.class);
+        connection = mock(StatefulRedisConnection.class);
+        when(connection.async()).thenReturn(commands);
+        // Replies arrive only after the buffered commands are flushed
+        doAnswer(invocation -> {
+            List<Runnable> replies;
+            synchronized (unflushed) {
+                replies = new ArrayList<>(unflushed);
+                unflushed.clear();
+            }
+            CompletableFuture.runAsync(() -> replies.forEach(Runnable::run));
+            return null;
+        }).when(connection).flushCommands();
+        when(commands.incr("test-key")).thenAnswer(invocation -> reply(counter::incrementAndGet));
+        
+        batcher = new RedisCommandBatcher();
+        ReflectionTestUtils.setField(batcher, "windowMicros", 50L);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 64);
+        ReflectionTestUtils.setField(batcher, "timeoutMillis", 2000L);
+        batcher.start(connection);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+    
+    @Test
+    void testExecuteReturnsReplyAfterFlush() throws Exception {
+        // Act
+        Long count = batcher.execute(c -> c.incr("test-key"));
+        
+        // Assert
+        assertEquals(1L, count);
+        verify(connection).setAutoFlushCommands(false);
+        verify(connection, atLeastOnce()).flushCommands();
+    }
+    
+    @Test
+    void testConcurrentCommandsShareFlushes() throws Exception {
+        // Arrange
+        int threads = 16;
+        int perThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    batcher.execute(c -> c.incr("test-key"));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        
+        // Assert
+        assertEquals(threads * perThread, counter.get());
+        assertEquals(threads * perThread, batcher.getFlushedCommands());
+        assertTrue(batcher.getFlushes() < batcher.getFlushedCommands());
+    }
+    
+    @Test
+    void testEvalFallsBackWhenScriptIsNotCached() throws Exception {
+        // Arrange
+        RedisScript<Long> script = mock(RedisScript.class);
+        when(script.getSha1()).thenReturn("sha");
+        when(script.getScriptAsString()).thenReturn("return 7");
+        when(commands.evalsha(eq("sha"), eq(ScriptOutputType.INTEGER), any(String[].class), any(String[].class)))
+            .thenAnswer(invocation -> failure(new RedisNoScriptException("NOSCRIPT No matching script")));
+        when(commands.eval(eq("return 7"), eq(ScriptOutputType.INTEGER), any(String[].class), any(String[].class)))
+            .thenAnswer(invocation -> reply(() -> 7L));
+        
+        // Act
+        Long result = batcher.evalLong(script, "test-key", "1");
+        
+        // Assert
+        assertEquals(7L, result);
+    }
+    
+    @Test
+    void testSubmitAfterStopFails() {
+        // Arrange
+        batcher.stop();
+        
+        // Act
+        CompletableFuture<Long> result = batcher.submit(c -> c.incr("test-key"));
+        
+        // Assert
+        assertTrue(result.isCompletedExceptionally());
+    }
+    
+    private <T> RedisFuture<T> reply(Supplier<T> value) {
+        TestFuture<T> future = new TestFuture<>();
+        synchronized (unflushed) {
+            unflushed.add(() -> future.complete(value.get()));
+        }
+        return future;
+    }
+    
+    private <T> RedisFuture<T> failure(Exception error) {
+        TestFuture<T> future = new TestFuture<>();
+        synchronized (unflushed) {
+            unflushed.add(() -> future.completeExceptionally(error));
+        }
+        return future;
+    }
+    
+    private static final class TestFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+        
+        @Override
+        public String getError() {
+            return null;
+        }
+        
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
\ No newline at end of file
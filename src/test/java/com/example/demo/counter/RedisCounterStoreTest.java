@@ -0,0 +1,79 @@
+package com.example.demo.counter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class RedisCounterStoreTest {
+    
+    // 1_700_000_000 is 20 seconds into the 60-second window with index 28_333_333
+    private static final long NOW = 1_700_000_000L;
+    
+    private RedisTemplate<String, Object> redisTemplate;
+    private RedisCounterStore store;
+    
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        store = spy(new RedisCounterStore());
+        ReflectionTestUtils.setField(store, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(store, "alignedWindows", true);
+        doReturn(NOW).when(store).nowSeconds();
+    }
+    
+    @Test
+    void testAlignedKeyAndWindowEnd() {
+        assertEquals("rate_limit:k:28333333", RedisCounterStore.alignedKey("k", 60, NOW));
+        assertEquals(1_700_000_040L, RedisCounterStore.windowEnd(60, NOW));
+        // The last second of a window still belongs to it
+        assertEquals("rate_limit:k:28333333", RedisCounterStore.alignedKey("k", 60, 1_700_000_039L));
+        assertEquals("rate_limit:k:28333334", RedisCounterStore.alignedKey("k", 60, 1_700_000_040L));
+    }
+    
+    @Test
+    void testTryIncrementCounter_Aligned_UsesWindowKeyAndEnd() {
+        // Arrange
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(3L);
+        
+        // Act
+        long count = store.tryIncrementCounter("k", 2L, 100L, 60);
+        
+        // Assert
+        assertEquals(3L, count);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("rate_limit:k:28333333")),
+                                      eq(2L), eq(100L), eq("1700000040"));
+    }
+    
+    @Test
+    void testGetTtl_Aligned_ComputedWithoutRedis() {
+        // Act
+        long ttl = store.getTtl("k", 60);
+        
+        // Assert
+        assertEquals(40L, ttl);
+        verifyNoInteractions(redisTemplate);
+    }
+    
+    @Test
+    void testKeyExists_Plain_UsesApiKeyKey() {
+        // Arrange
+        ReflectionTestUtils.setField(store, "alignedWindows", false);
+        when(redisTemplate.hasKey("rate_limit:k")).thenReturn(true);
+        
+        // Act
+        boolean exists = store.keyExists("k", 60);
+        
+        // Assert
+        assertTrue(exists);
+        verify(redisTemplate).hasKey("rate_limit:k");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.demo.counter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatedCounterStoreTest {
+    
+    private static final ReplicatedCounterStore.ShardId PEER_7 = new ReplicatedCounterStore.ShardId(7L, 1L);
+    private static final ReplicatedCounterStore.ShardId PEER_8 = new ReplicatedCounterStore.ShardId(8L, 1L);
+    
+    private ReplicatedCounterStore nodeA;
+    private ReplicatedCounterStore nodeB;
+    
+    private static final String SECRET = "test-secret";
+    
+    @AfterEach
+    void tearDown() {
+        if (nodeA != null) {
+            nodeA.stop();
+        }
+        if (nodeB != null) {
+            nodeB.stop();
+        }
+    }
+    
+    @Test
+    void testMergeIgnoresDuplicateAndStaleShards() {
+        // Arrange
+        ReplicatedCounterStore.Window window = new ReplicatedCounterStore.Window(60_000, 1);
+        window.local.set(3);
+        
+        // Act - a reordered, duplicated stream of one peer's shard plus another peer
+        window.merge(PEER_7, 5, 0);
+        window.merge(PEER_7, 2, 0);
+        window.merge(PEER_7, 5, 0);
+        window.merge(PEER_8, 4, 0);
+        
+        // Assert
+        assertEquals(12, window.total());
+    }
+    
+    @Test
+    void testRefundsMergeAsSeparateGrowOnlyPart() {
+        // Arrange
+        ReplicatedCounterStore.Window window = new ReplicatedCounterStore.Window(60_000, 1);
+        window.local.set(10);
+        window.localRefunded.set(4);
+        
+        // Act - the peer's refund arrives, then a stale datagram from before it
+        window.merge(PEER_7, 8, 3);
+        window.merge(PEER_7, 8, 0);
+        window.merge(PEER_7, 6, 3);
+        
+        // Assert
+        assertEquals(11, window.total());
+    }
+    
+    @Test
+    void testNodesConvergeOnSharedCount() throws Exception {
+        // Arrange
+        int portA = freePort();
+        int portB = freePort();
+        nodeA = newNode(1, portA, portB);
+        nodeB = newNode(2, portB, portA);
+        
+        // Act
+        for (int i = 0; i < 100; i++) {
+            nodeA.incrementCounter("test-key", 60);
+        }
+        for (int i = 0; i < 50; i++) {
+            nodeB.incrementCounter("test-key", 60);
+        }
+        
+        // Assert
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((nodeA.getCurrentCount("test-key", 60) != 150 || nodeB.getCurrentCount("test-key", 60) != 150)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(150, nodeA.getCurrentCount("test-key", 60));
+        assertEquals(150, nodeB.getCurrentCount("test-key", 60));
+        assertTrue(nodeA.getTtl("test-key", 60) > 0);
+    }
+    
+    @Test
+    void testRestartedNodeStartsFreshShard() {
+        // Arrange - peers merged 40 from the node's previous incarnation
+        ReplicatedCounterStore.Window window = new ReplicatedCounterStore.Window(60_000, 1);
+        window.merge(new ReplicatedCounterStore.ShardId(7L, 100L), 40, 0);
+        
+        // Act - after the restart the same node id counts again from zero
+        window.merge(new ReplicatedCounterStore.ShardId(7L, 200L), 3, 0);
+        
+        // Assert
+        assertEquals(43, window.total());
+    }
+    
+    @Test
+    void testRejectsUnknownSendersAndForgedDatagrams() throws Exception {
+        // Arrange
+        int portA = freePort();
+        int portB = freePort();
+        nodeA = newNode(1, portA, portB);
+        ReplicatedCounterStore forger = new ReplicatedCounterStore();
+        ReflectionTestUtils.setField(forger, "nodeId", 9L);
+        ReflectionTestUtils.setField(forger, "bindAddress", "127.0.0.1");
+        ReflectionTestUtils.setField(forger, "port", portB);
+        ReflectionTestUtils.setField(forger, "peers", List.of("127.0.0.1:" + portA));
+        ReflectionTestUtils.setField(forger, "secret", "not-the-secret");
+        ReflectionTestUtils.setField(forger, "syncIntervalMillis", 10L);
+        ReflectionTestUtils.setField(forger, "maxOverAdmissionPercent", 5.0);
+        nodeB = forger;
+        forger.start();
+        
+        // Act - the forger sends from the peer's address but signs with the wrong key
+        forger.incrementCounter("test-key", 60);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nodeA.getRejectedDatagrams() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        
+        // Assert
+        assertTrue(nodeA.getRejectedDatagrams() > 0);
+        assertEquals(0, nodeA.getCurrentCount("test-key", 60));
+        InetSocketAddress stranger = new InetSocketAddress("127.0.0.1", freePort());
+        nodeA.apply(stranger, new byte[64], 64);
+        assertEquals(0, nodeA.getCurrentCount("test-key", 60));
+    }
+    
+    private static ReplicatedCounterStore newNode(long nodeId, int port, int peerPort) throws Exception {
+        ReplicatedCounterStore store = new ReplicatedCounterStore();
+        ReflectionTestUtils.setField(store, "nodeId", nodeId);
+        ReflectionTestUtils.setField(store, "bindAddress", "127.0.0.1");
+        ReflectionTestUtils.setField(store, "port", port);
+        ReflectionTestUtils.setField(store, "peers", List.of("127.0.0.1:" + peerPort));
+        ReflectionTestUtils.setField(store, "secret", SECRET);
+        ReflectionTestUtils.setField(store, "syncIntervalMillis", 10L);
+        ReflectionTestUtils.setField(store, "maxOverAdmissionPercent", 5.0);
+        store.start();
+        return store;
+    }
+    
+    private static int freePort() throws Exception {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.example.demo.journal;
+
+import com.example.demo.util.Fingerprints;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionJournalTest {
+    
+    /** Records per 1 MB segment */
+    private static final int RECORDS_PER_SEGMENT = (1024 * 1024 - JournalFormat.HEADER_SIZE) / JournalFormat.RECORD_SIZE;
+    
+    @TempDir
+    Path journalDir;
+    
+    private DecisionJournal journal;
+    
+    @BeforeEach
+    void setUp() {
+        journal = new DecisionJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", journalDir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(journal, "bufferSize", 1 << 17);
+        ReflectionTestUtils.setField(journal, "retentionSegments", 2);
+        ReflectionTestUtils.setField(journal, "retentionHours", 168);
+    }
+    
+    @Test
+    void testDecisionsAreReadBackWithFilters() throws Exception {
+        // Arrange
+        long start = System.currentTimeMillis();
+        journal.start();
+        journal.onDecision("key-a", true, 1, 2, 60, null);
+        journal.onDecision("key-a", true, 2, 2, 60, null);
+        journal.onDecision("key-a", false, 3, 2, 60, null);
+        journal.onDecision("key-b", true, 1, 10, 60, null);
+        
+        // Act
+        journal.stop();
+        long[] counts = new long[2];
+        long keyA = Fingerprints.of("key-a");
+        long visited = JournalReader.read(journalDir, start, Long.MAX_VALUE, (ts, fp, allowed, usage, limit) -> {
+            if (fp == keyA) {
+                counts[allowed ? 0 : 1]++;
+                assertEquals(2, limit);
+            }
+        });
+        
+        // Assert
+        assertEquals(4, visited);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(0, JournalReader.read(journalDir, 0, start, (ts, fp, allowed, usage, limit) -> { }));
+        assertEquals(0, journal.getDroppedRecords());
+    }
+    
+    @Test
+    void testSegmentsRollAndRetentionKeepsNewest() throws Exception {
+        // Arrange
+        int total = RECORDS_PER_SEGMENT * 2 + 1000;
+        journal.start();
+        for (int i = 0; i < total; i++) {
+            journal.onDecision("key-" + (i % 10), true, i, 100, 60, null);
+        }
+        
+        // Act
+        journal.stop();
+        
+        // Assert: three segments were written, the oldest was removed
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertEquals(2, files.count());
+        }
+        long[] lastUsage = {-1};
+        long visited = JournalReader.read(journalDir, 0, Long.MAX_VALUE, (ts, fp, allowed, usage, limit) -> {
+            assertTrue(usage > lastUsage[0]);
+            lastUsage[0] = usage;
+        });
+        assertEquals(total - RECORDS_PER_SEGMENT, visited);
+        assertEquals(total - 1, lastUsage[0]);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+package com.example.demo.mq;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.common.ClientErrorCode;
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.remoting.exception.RemotingConnectException;
+import org.apache.rocketmq.remoting.protocol.ResponseCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BufferedEventSenderTest {
+    
+    private DefaultMQProducer producer;
+    private SimpleMeterRegistry meterRegistry;
+    private BufferedEventSender sender;
+    
+    @BeforeEach
+    void setUp() {
+        producer = mock(DefaultMQProducer.class);
+        meterRegistry = new SimpleMeterRegistry();
+        sender = new BufferedEventSender() {
+            @Override
+            DefaultMQProducer newProducer() {
+                return producer;
+            }
+        };
+        ReflectionTestUtils.setField(sender, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(sender, "bufferCapacity", 2);
+        ReflectionTestUtils.setField(sender, "retryIntervalMillis", 100L);
+        ReflectionTestUtils.setField(sender, "maxBackoffMillis", 1000L);
+        ReflectionTestUtils.setField(sender, "maxAttemptsPerMessage", 2);
+        sender.init();
+    }
+    
+    @Test
+    void testOffer_BuffersUntilConnectedThenReplaysInOrder() throws Exception {
+        // Arrange
+        Message first = message("first");
+        Message second = message("second");
+        when(producer.send(any(Message.class))).thenReturn(mock(SendResult.class));
+        
+        // Act
+        sender.offer(first);
+        sender.offer(second);
+        int bufferedBeforeConnect = sender.getBufferedCount();
+        sender.connect();
+        int sent = sender.sendBuffered();
+        
+        // Assert
+        assertEquals(2, bufferedBeforeConnect);
+        assertEquals(2, sent);
+        assertEquals(0, sender.getBufferedCount());
+        assertTrue(sender.isConnected());
+        InOrder inOrder = inOrder(producer);
+        inOrder.verify(producer).send(first);
+        inOrder.verify(producer).send(second);
+        assertEquals(2.0, meterRegistry.counter("ratelimit.mq.events.sent").count());
+    }
+    
+    @Test
+    void testOffer_DropsWhenBufferFull() {
+        // Act
+        boolean first = sender.offer(message("first"));
+        boolean second = sender.offer(message("second"));
+        boolean third = sender.offer(message("third"));
+        
+        // Assert
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertEquals(2, sender.getBufferedCount());
+        assertEquals(1.0, meterRegistry.counter("ratelimit.mq.events.dropped").count());
+    }
+    
+    @Test
+    void testSendBuffered_FailedMessageStaysAtHeadForRetry() throws Exception {
+        // Arrange
+        Message first = message("first");
+        when(producer.send(first))
+                .thenThrow(new MQClientException("broker unavailable", null))
+                .thenReturn(mock(SendResult.class));
+        sender.connect();
+        sender.offer(first);
+        
+        // Act
+        assertThrows(MQClientException.class, () -> sender.sendBuffered());
+        int bufferedAfterFailure = sender.getBufferedCount();
+        int sent = sender.sendBuffered();
+        
+        // Assert
+        assertEquals(1, bufferedAfterFailure);
+        assertEquals(1, sent);
+        assertEquals(0, sender.getBufferedCount());
+    }
+    
+    @Test
+    void testSendBuffered_DiscardsMessageAfterMaxAttempts() throws Exception {
+        // Arrange
+        Message poison = message("poison");
+        Message next = message("next");
+        when(producer.send(poison)).thenThrow(new MQBrokerException(ResponseCode.SYSTEM_ERROR, "store error"));
+        when(producer.send(next)).thenReturn(mock(SendResult.class));
+        sender.connect();
+        sender.offer(poison);
+        sender.offer(next);
+        
+        // Act
+        assertThrows(MQBrokerException.class, () -> sender.sendBuffered());
+        assertThrows(MQBrokerException.class, () -> sender.sendBuffered());
+        int sent = sender.sendBuffered();
+        
+        // Assert
+        assertEquals(1, sent);
+        assertEquals(0, sender.getBufferedCount());
+        verify(producer, times(2)).send(poison);
+        assertEquals(1.0, meterRegistry.counter("ratelimit.mq.events.failed").count());
+    }
+    
+    @Test
+    void testSendBuffered_ConnectionFailuresNeverDiscard() throws Exception {
+        // Arrange
+        Message first = message("first");
+        when(producer.send(first))
+                .thenThrow(new MQClientException(ClientErrorCode.CONNECT_BROKER_EXCEPTION, "connection refused"))
+                .thenThrow(new MQClientException("No route info of this topic", null))
+                .thenThrow(new MQBrokerException(ResponseCode.SYSTEM_BUSY, "busy"))
+                .thenThrow(new RemotingConnectException("127.0.0.1:10911"))
+                .thenReturn(mock(SendResult.class));
+        sender.connect();
+        sender.offer(first);
+        
+        // Act - an outage longer than max-attempts-per-message
+        for (int attempt = 0; attempt < 4; attempt++) {
+            assertThrows(Exception.class, () -> sender.sendBuffered());
+        }
+        int sent = sender.sendBuffered();
+        
+        // Assert
+        assertEquals(1, sent);
+        assertEquals(0.0, meterRegistry.counter("ratelimit.mq.events.failed").count());
+    }
+    
+    @Test
+    void testSendBuffered_DiscardsRejectedMessageWithoutRetry() throws Exception {
+        // Arrange
+        Message illegal = message("illegal");
+        Message next = message("next");
+        when(producer.send(illegal)).thenThrow(
+            new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "message body too large"));
+        when(producer.send(next)).thenReturn(mock(SendResult.class));
+        sender.connect();
+        sender.offer(illegal);
+        sender.offer(next);
+        
+        // Act
+        int sent = sender.sendBuffered();
+        
+        // Assert
+        assertEquals(1, sent);
+        assertEquals(0, sender.getBufferedCount());
+        verify(producer, times(1)).send(illegal);
+        assertEquals(1.0, meterRegistry.counter("ratelimit.mq.events.failed").count());
+    }
+    
+    @Test
+    void testIsRetryable_ByResponseCode() {
+        // Act & Assert
+        assertTrue(BufferedEventSender.isRetryable(new MQClientException(ResponseCode.SYSTEM_BUSY, "busy")));
+        assertTrue(BufferedEventSender.isRetryable(new MQClientException("no route", null)));
+        assertFalse(BufferedEventSender.isRetryable(new MQClientException(ResponseCode.NO_PERMISSION, "denied")));
+        assertFalse(BufferedEventSender.isRetryable(new MQBrokerException(ResponseCode.MESSAGE_ILLEGAL, "illegal")));
+    }
+    
+    @Test
+    void testConnect_FailedStartShutsDownProducerAndRetries() throws Exception {
+        // Arrange
+        doThrow(new MQClientException("name server unreachable", null))
+                .doNothing()
+                .when(producer).start();
+        
+        // Act
+        assertThrows(MQClientException.class, () -> sender.connect());
+        boolean connectedAfterFailure = sender.isConnected();
+        sender.connect();
+        
+        // Assert
+        assertFalse(connectedAfterFailure);
+        assertTrue(sender.isConnected());
+        verify(producer, times(2)).start();
+        verify(producer).shutdown();
+    }
+    
+    @Test
+    void testSendOrdered_ThrowsWhenNotConnected() throws Exception {
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> sender.sendOrdered(message("first"), "test-key"));
+        verify(producer, never()).send(any(Message.class), any(MessageQueueSelector.class), any());
+    }
+    
+    @Test
+    void testSendOrdered_SameKeyAlwaysSelectsSameQueue() throws Exception {
+        // Arrange
+        List<MessageQueue> queues = List.of(new MessageQueue("t", "b", 0), new MessageQueue("t", "b", 1),
+                                            new MessageQueue("t", "b", 2), new MessageQueue("t", "b", 3));
+        Message message = message("first");
+        sender.connect();
+        
+        // Act
+        sender.sendOrdered(message, "test-key");
+        sender.sendOrdered(message, "test-key");
+        
+        // Assert
+        ArgumentCaptor<MessageQueueSelector> selector = ArgumentCaptor.forClass(MessageQueueSelector.class);
+        verify(producer, times(2)).send(eq(message), selector.capture(), eq("test-key"));
+        MessageQueue first = selector.getAllValues().get(0).select(queues, message, "test-key");
+        MessageQueue second = selector.getAllValues().get(1).select(queues, message, "test-key");
+        assertSame(first, second);
+    }
+    
+    @Test
+    void testBackoffMillis_DoublesUpToMax() {
+        // Act & Assert
+        assertEquals(100L, sender.backoffMillis(1));
+        assertEquals(200L, sender.backoffMillis(2));
+        assertEquals(1000L, sender.backoffMillis(10));
+    }
+    
+    private Message message(String body) {
+        return new Message(RateLimitEventProducer.TOPIC_RATE_LIMIT_EVENTS, RateLimitEventProducer.TAG_LIMIT_EXCEEDED,
+                           body.getBytes());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.example.demo.mq;
+
+import com.example.demo.model.OutboxEvent;
+import com.example.demo.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+    
+    @Mock
+    private OutboxEventRepository outboxRepository;
+    
+    @Mock
+    private RateLimitEventProducer eventProducer;
+    
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    
+    @InjectMocks
+    private OutboxRelay relay;
+    
+    private boolean inTransaction;
+    
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", 2);
+        ReflectionTestUtils.setField(relay, "relayIntervalMillis", 100L);
+        ReflectionTestUtils.setField(relay, "maxBackoffMillis", 1000L);
+        ReflectionTestUtils.setField(relay, "claimTimeoutMillis", 60_000L);
+        ReflectionTestUtils.setField(relay, "retentionMinutes", 60L);
+    }
+    
+    @Test
+    void testRelayBatch_PublishesInOrderAndMarksPublished() throws Exception {
+        // Arrange
+        runCallbacksInline();
+        List<OutboxEvent> batch = List.of(event(1L, "key-a"), event(2L, "key-b"));
+        when(outboxRepository.findUnpublished(any(Pageable.class))).thenReturn(batch);
+        doAnswer(invocation -> {
+            assertFalse(inTransaction, "broker must be called outside the claim transaction");
+            return null;
+        }).when(eventProducer).publishBatch(batch);
+        
+        // Act
+        int published = relay.relayBatch();
+        
+        // Assert
+        assertEquals(2, published);
+        InOrder inOrder = inOrder(outboxRepository, eventProducer);
+        inOrder.verify(outboxRepository).claim(eq(List.of(1L, 2L)), anyString(), any(LocalDateTime.class));
+        inOrder.verify(eventProducer).publishBatch(batch);
+        inOrder.verify(outboxRepository).markPublished(eq(List.of(1L, 2L)), any(LocalDateTime.class));
+        verify(transactionTemplate, times(2)).execute(any());
+    }
+    
+    @Test
+    void testRelayBatch_WaitsWhileAnotherRelayHoldsTheClaim() throws Exception {
+        // Arrange
+        runCallbacksInline();
+        OutboxEvent claimed = event(1L, "key-a");
+        claimed.setClaimedBy("other-relay");
+        claimed.setClaimedUntil(LocalDateTime.now().plusMinutes(1));
+        when(outboxRepository.findUnpublished(any(Pageable.class))).thenReturn(List.of(claimed, event(2L, "key-b")));
+        
+        // Act
+        int published = relay.relayBatch();
+        
+        // Assert
+        assertEquals(0, published);
+        verify(outboxRepository, never()).claim(anyCollection(), anyString(), any());
+        verify(eventProducer, never()).publishBatch(anyList());
+    }
+    
+    @Test
+    void testRelayBatch_TakesOverExpiredClaim() throws Exception {
+        // Arrange
+        runCallbacksInline();
+        OutboxEvent claimed = event(1L, "key-a");
+        claimed.setClaimedBy("other-relay");
+        claimed.setClaimedUntil(LocalDateTime.now().minusSeconds(1));
+        List<OutboxEvent> batch = List.of(claimed);
+        when(outboxRepository.findUnpublished(any(Pageable.class))).thenReturn(batch);
+        
+        // Act
+        int published = relay.relayBatch();
+        
+        // Assert
+        assertEquals(1, published);
+        verify(eventProducer).publishBatch(batch);
+    }
+    
+    @Test
+    void testRelayBatch_Empty() throws Exception {
+        // Arrange
+        runCallbacksInline();
+        when(outboxRepository.findUnpublished(any(Pageable.class))).thenReturn(List.of());
+        
+        // Act
+        int published = relay.relayBatch();
+        
+        // Assert
+        assertEquals(0, published);
+        verify(eventProducer, never()).publishBatch(anyList());
+        verify(outboxRepository, never()).markPublished(anyCollection(), any());
+    }
+    
+    @Test
+    void testRelayBatch_SendFailureLeavesBatchUnpublished() throws Exception {
+        // Arrange
+        runCallbacksInline();
+        List<OutboxEvent> batch = List.of(event(1L, "key-a"));
+        when(outboxRepository.findUnpublished(any(Pageable.class))).thenReturn(batch);
+        doThrow(new IllegalStateException("broker down")).when(eventProducer).publishBatch(batch);
+        
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> relay.relayBatch());
+        verify(outboxRepository, never()).markPublished(anyCollection(), any());
+    }
+    
+    @Test
+    void testBackoffMillis_DoublesUpToMax() {
+        // Act & Assert
+        assertEquals(100L, relay.backoffMillis(1));
+        assertEquals(400L, relay.backoffMillis(3));
+        assertEquals(1000L, relay.backoffMillis(30));
+    }
+    
+    @Test
+    void testPrune_DeletesPublishedBeforeRetention() {
+        // Arrange
+        runCallbacksInline();
+        when(outboxRepository.deletePublishedBefore(any(LocalDateTime.class))).thenReturn(3);
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(60);
+        
+        // Act
+        relay.prune();
+        
+        // Assert
+        verify(outboxRepository).deletePublishedBefore(argThat(before -> !before.isBefore(cutoff)));
+    }
+    
+    private void runCallbacksInline() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction = true;
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction = false;
+            }
+        });
+    }
+    
+    private static OutboxEvent event(Long id, String apiKey) {
+        OutboxEvent event = new OutboxEvent(RateLimitEventProducer.TAG_LIMIT_UPDATED, apiKey, "{}");
+        event.setId(id);
+        return event;
+    }
+}
\ No newline at end of file
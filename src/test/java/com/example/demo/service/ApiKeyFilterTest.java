@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.KeyFilterStats;
+import com.example.demo.repository.RateLimitRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ApiKeyFilterTest {
+    
+    private RateLimitRepository rateLimitRepository;
+    private ApiKeyFilter keyFilter;
+    
+    @BeforeEach
+    void setUp() {
+        rateLimitRepository = mock(RateLimitRepository.class);
+        keyFilter = new ApiKeyFilter();
+        ReflectionTestUtils.setField(keyFilter, "rateLimitRepository", rateLimitRepository);
+        ReflectionTestUtils.setField(keyFilter, "enabled", true);
+        ReflectionTestUtils.setField(keyFilter, "expectedKeys", 1000L);
+        ReflectionTestUtils.setField(keyFilter, "falsePositiveRate", 0.001);
+        ReflectionTestUtils.setField(keyFilter, "chunkSize", 2);
+        ReflectionTestUtils.setField(keyFilter, "negativeTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(keyFilter, "negativeMaxSize", 10);
+        ReflectionTestUtils.setField(keyFilter, "maxEventLagMillis", 60_000L);
+        // Consumer subscribed and caught up; eventsSubscribed() would also start a build thread
+        ReflectionTestUtils.setField(keyFilter, "eventsSubscribedAt", System.currentTimeMillis());
+        keyFilter.eventsCaughtUp(System.currentTimeMillis());
+        
+        when(rateLimitRepository.countRateLimits()).thenReturn(3L);
+        when(rateLimitRepository.findMinId()).thenReturn(1L);
+        when(rateLimitRepository.findMaxId()).thenReturn(3L);
+        when(rateLimitRepository.findApiKeysByIdBetween(1L, 2L)).thenReturn(List.of("key-1", "key-2"));
+        when(rateLimitRepository.findApiKeysByIdBetween(3L, 3L)).thenReturn(List.of("key-3"));
+    }
+    
+    @Test
+    void testEveryKeyPassesBeforeFirstBuild() {
+        // Act & Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+        assertFalse(keyFilter.getStats().isReady());
+    }
+    
+    @Test
+    void testRebuild_LoadsKeysInChunks() {
+        // Act
+        keyFilter.rebuild();
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("key-1"));
+        assertTrue(keyFilter.mightExist("key-3"));
+        assertFalse(keyFilter.mightExist("unknown-key"));
+        
+        KeyFilterStats stats = keyFilter.getStats();
+        assertTrue(stats.isReady());
+        assertEquals(3, stats.getKeys());
+        assertEquals(1, stats.getRejectedChecks());
+        assertTrue(stats.getMemoryBytes() > 0);
+    }
+    
+    @Test
+    void testAdd_MakesKeyVisibleAndClearsNegativeEntry() {
+        // Arrange
+        keyFilter.rebuild();
+        keyFilter.recordMissing("key-1", keyFilter.missStamp());
+        assertFalse(keyFilter.mightExist("key-1"));
+        
+        // Act
+        keyFilter.add("key-1");
+        keyFilter.add("new-key");
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("key-1"));
+        assertTrue(keyFilter.mightExist("new-key"));
+    }
+    
+    @Test
+    void testNegativeCacheExpires() {
+        // Arrange
+        keyFilter.rebuild();
+        ReflectionTestUtils.setField(keyFilter, "negativeTtlMillis", -1L);
+        
+        // Act
+        keyFilter.recordMissing("key-2", keyFilter.missStamp());
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("key-2"));
+        assertEquals(0, keyFilter.getStats().getNegativeCacheSize());
+    }
+    
+    @Test
+    void testMissRacingAddIsNotCached() {
+        // Arrange - a check misses key-4 in MySQL just before its config event arrives
+        keyFilter.rebuild();
+        long stamp = keyFilter.missStamp();
+        
+        // Act - the event's add() runs before the check records the miss
+        keyFilter.add("key-4");
+        keyFilter.recordMissing("key-4", stamp);
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("key-4"));
+        assertEquals(0, keyFilter.getStats().getNegativeCacheSize());
+    }
+    
+    @Test
+    void testNotBuiltBeforeConsumerSubscribes() {
+        // Arrange
+        keyFilter.eventsUnsubscribed();
+        
+        // Act
+        keyFilter.rebuild();
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+        assertFalse(keyFilter.getStats().isReady());
+        verifyNoInteractions(rateLimitRepository);
+    }
+    
+    @Test
+    void testFailsOpenWhenConsumerStops() {
+        // Arrange
+        keyFilter.rebuild();
+        
+        // Act
+        keyFilter.eventsUnsubscribed();
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+        assertTrue(keyFilter.getStats().isFailingOpen());
+    }
+    
+    @Test
+    void testFailsOpenWhenFilterPredatesSubscription() {
+        // Arrange
+        keyFilter.rebuild();
+        
+        // Act - the consumer resubscribed after the build; events in between were never received
+        ReflectionTestUtils.setField(keyFilter, "eventsSubscribedAt", System.currentTimeMillis() + 1000);
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+    }
+    
+    @Test
+    void testFailsOpenWhenEventCatchUpIsStale() {
+        // Arrange
+        keyFilter.rebuild();
+        assertFalse(keyFilter.mightExist("unknown-key"));
+        
+        // Act
+        ReflectionTestUtils.setField(keyFilter, "maxEventLagMillis", -1L);
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+        assertTrue(keyFilter.getStats().isFailingOpen());
+    }
+    
+    @Test
+    void testFailedBuild_LetsKeysThrough() {
+        // Arrange
+        when(rateLimitRepository.countRateLimits()).thenThrow(new RuntimeException("db down"));
+        
+        // Act
+        keyFilter.rebuild();
+        
+        // Assert
+        assertTrue(keyFilter.mightExist("unknown-key"));
+    }
+}
\ No newline at end of file
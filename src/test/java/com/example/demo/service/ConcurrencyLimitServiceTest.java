@@ -0,0 +1,90 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ConcurrencyAlgorithm;
+import com.example.demo.model.ConcurrencyLimit;
+import com.example.demo.model.dto.ConcurrencyLease;
+import com.example.demo.repository.ConcurrencyLimitRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConcurrencyLimitServiceTest {
+    
+    private ConcurrencyLimitRepository concurrencyLimitRepository;
+    private ConcurrencyLimitService service;
+    
+    @BeforeEach
+    void setUp() {
+        concurrencyLimitRepository = mock(ConcurrencyLimitRepository.class);
+        service = newService(concurrencyLimitRepository);
+        
+        when(concurrencyLimitRepository.findByApiKey("test-key")).thenReturn(
+            Optional.of(new ConcurrencyLimit("test-key", ConcurrencyAlgorithm.AIMD, 10, 1, 100)));
+        when(concurrencyLimitRepository.findByApiKey("unknown-key")).thenReturn(Optional.empty());
+    }
+    
+    @Test
+    void testLeaseFromAnotherNodeIsRecognised() {
+        // Arrange
+        ConcurrencyLimitService otherNode = newService(concurrencyLimitRepository);
+        ReflectionTestUtils.setField(service, "leaseTag", 1L << 48);
+        ReflectionTestUtils.setField(otherNode, "leaseTag", 2L << 48);
+        ConcurrencyLease lease = service.acquire("test-key").orElseThrow();
+        
+        // Act & Assert
+        assertTrue(service.issuedHere(lease.getLeaseId()));
+        assertFalse(otherNode.issuedHere(lease.getLeaseId()));
+        assertFalse(otherNode.release("test-key", lease.getLeaseId(), 10L, false));
+        assertTrue(service.release("test-key", lease.getLeaseId(), 10L, false));
+    }
+    
+    @Test
+    void testUnknownKeyIsLookedUpOnceWithinNegativeTtl() {
+        // Act
+        assertThrows(IllegalArgumentException.class, () -> service.acquire("unknown-key"));
+        assertThrows(IllegalArgumentException.class, () -> service.acquire("unknown-key"));
+        
+        // Assert
+        verify(concurrencyLimitRepository, times(1)).findByApiKey("unknown-key");
+    }
+    
+    @Test
+    void testDeleteLeavesLimiterUntilCommit() {
+        // Arrange
+        service.acquire("test-key").orElseThrow();
+        when(concurrencyLimitRepository.deleteByApiKey("test-key")).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+        
+        try {
+            // Act
+            service.deleteConcurrencyLimit("test-key");
+            
+            // Assert: still served from the limiter until the delete commits
+            assertTrue(service.getStatus("test-key").isPresent());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        when(concurrencyLimitRepository.findByApiKey("test-key")).thenReturn(Optional.empty());
+        assertTrue(service.getStatus("test-key").isEmpty());
+    }
+    
+    private static ConcurrencyLimitService newService(ConcurrencyLimitRepository repository) {
+        ConcurrencyLimitService service = new ConcurrencyLimitService();
+        ReflectionTestUtils.setField(service, "concurrencyLimitRepository", repository);
+        ReflectionTestUtils.setField(service, "leaseTimeoutMillis", 30_000L);
+        ReflectionTestUtils.setField(service, "negativeTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(service, "negativeMaxSize", 10);
+        ReflectionTestUtils.setField(service, "aimdBackoffRatio", 0.9);
+        ReflectionTestUtils.setField(service, "aimdTimeoutMillis", 5000L);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.demo.service;
+
+import com.example.demo.mq.BufferedEventSender;
+import com.example.demo.service.DependencyHealthSampler.DependencyHealth;
+import com.example.demo.service.DependencyHealthSampler.LatencyWindow;
+import com.example.demo.service.DependencyHealthSampler.Status;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DependencyHealthSamplerTest {
+    
+    @Mock
+    private DataSource dataSource;
+    
+    @Mock
+    private Connection connection;
+    
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+    
+    @Mock
+    private ValueOperations<String, Object> valueOperations;
+    
+    @Mock
+    private BufferedEventSender eventSender;
+    
+    @InjectMocks
+    private DependencyHealthSampler sampler;
+    
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(sampler, "counterStoreType", "redis");
+        ReflectionTestUtils.setField(sampler, "windowSize", 10);
+        ReflectionTestUtils.setField(sampler, "degradedP95Millis", 250L);
+        ReflectionTestUtils.setField(sampler, "downAfterFailures", 2);
+        ReflectionTestUtils.setField(sampler, "probeTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(sampler, "sampleIntervalMillis", 1000L);
+        ReflectionTestUtils.setField(sampler, "staleAfterIntervals", 3);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        sampler.stop();
+    }
+    
+    @Test
+    void testGetHealth_BeforeFirstSampleIsUnknownWithoutIo() {
+        // Act
+        Status overall = sampler.getOverallStatus();
+        
+        // Assert
+        assertEquals(Status.UNKNOWN, overall);
+        assertEquals(Status.UNKNOWN, sampler.getHealth().get(DependencyHealthSampler.MYSQL).status());
+        verifyNoInteractions(dataSource, redisTemplate, eventSender);
+    }
+    
+    @Test
+    void testSample_AllDependenciesUp() throws Exception {
+        // Arrange
+        mysqlUp();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        
+        // Act
+        sampler.sample();
+        
+        // Assert
+        assertEquals(Status.UP, sampler.getOverallStatus());
+        DependencyHealth mysql = sampler.getHealth().get(DependencyHealthSampler.MYSQL);
+        assertEquals(Status.UP, mysql.status());
+        assertEquals(1, mysql.samples());
+        assertEquals(Status.UP, sampler.getHealth().get(DependencyHealthSampler.REDIS).status());
+        assertEquals(Status.UP, sampler.getHealth().get(DependencyHealthSampler.ROCKETMQ).status());
+        verify(connection).close();
+        verify(valueOperations).get("health-check");
+        verify(eventSender).probe();
+    }
+    
+    @Test
+    void testSample_MysqlDegradedOnFirstFailureAndDownOnSecond() throws Exception {
+        // Arrange
+        when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        
+        // Act
+        sampler.sample();
+        DependencyHealth afterFirst = sampler.getHealth().get(DependencyHealthSampler.MYSQL);
+        Status overallAfterFirst = sampler.getOverallStatus();
+        sampler.sample();
+        DependencyHealth afterSecond = sampler.getHealth().get(DependencyHealthSampler.MYSQL);
+        
+        // Assert
+        assertEquals(Status.DEGRADED, afterFirst.status());
+        assertEquals(Status.DEGRADED, overallAfterFirst);
+        assertEquals(Status.DOWN, afterSecond.status());
+        assertEquals(2, afterSecond.consecutiveFailures());
+        assertEquals("Connection refused", afterSecond.lastError());
+        assertEquals(Status.DOWN, sampler.getOverallStatus());
+    }
+    
+    @Test
+    void testSample_RocketMqDownOnlyDegradesNode() throws Exception {
+        // Arrange
+        mysqlUp();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        doThrow(new MQClientException("No route info", null)).when(eventSender).probe();
+        
+        // Act
+        sampler.sample();
+        sampler.sample();
+        
+        // Assert
+        assertEquals(Status.DOWN, sampler.getHealth().get(DependencyHealthSampler.ROCKETMQ).status());
+        assertEquals(Status.DEGRADED, sampler.getOverallStatus());
+    }
+    
+    @Test
+    void testGetOverallStatus_UnknownOnceSamplesAreStale() throws Exception {
+        // Arrange
+        mysqlUp();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        sampler.sample();
+        long now = System.currentTimeMillis();
+        
+        // Act & Assert
+        assertEquals(Status.UP, sampler.getOverallStatus(now));
+        assertEquals(Status.UNKNOWN, sampler.getOverallStatus(now + sampler.staleAfterMillis() + 1000));
+    }
+    
+    @Test
+    void testSample_HungProbeTimesOut() throws Exception {
+        // Arrange
+        mysqlUp();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("health-check")).thenAnswer(invocation -> {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            return null;
+        });
+        
+        // Act
+        long start = System.nanoTime();
+        sampler.sample();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        
+        // Assert
+        DependencyHealth redis = sampler.getHealth().get(DependencyHealthSampler.REDIS);
+        assertEquals(Status.DEGRADED, redis.status());
+        assertTrue(redis.lastError().startsWith("Timed out"));
+        assertTrue(elapsedMillis < 5000, "sample took " + elapsedMillis + " ms");
+    }
+    
+    @Test
+    void testSample_StuckProbeIsNotRepeated() throws Exception {
+        // Arrange: a probe blocked in I/O ignores the interrupt from the timeout
+        mysqlUp();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        CountDownLatch unblock = new CountDownLatch(1);
+        when(valueOperations.get("health-check")).thenAnswer(invocation -> {
+            boolean released = false;
+            while (!released) {
+                try {
+                    released = unblock.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Like a read blocked on a socket, the interrupt changes nothing
+                }
+            }
+            return null;
+        });
+        
+        try {
+            // Act
+            sampler.sample();
+            sampler.sample();
+            
+            // Assert
+            DependencyHealth redis = sampler.getHealth().get(DependencyHealthSampler.REDIS);
+            assertEquals(Status.DOWN, redis.status());
+            assertEquals("Timed out, previous probe still running", redis.lastError());
+            verify(valueOperations, times(1)).get("health-check");
+        } finally {
+            unblock.countDown();
+        }
+    }
+    
+    @Test
+    void testSample_RedisNotProbedWithLocalCounters() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(sampler, "counterStoreType", "local");
+        mysqlUp();
+        
+        // Act
+        sampler.sample();
+        
+        // Assert
+        assertEquals(Status.NOT_USED, sampler.getHealth().get(DependencyHealthSampler.REDIS).status());
+        assertEquals(Status.UP, sampler.getOverallStatus());
+        verifyNoInteractions(redisTemplate);
+    }
+    
+    @Test
+    void testLatencyWindow_PercentilesAndDegradedThreshold() {
+        // Arrange
+        LatencyWindow window = new LatencyWindow(100);
+        for (int millis = 1; millis <= 100; millis++) {
+            window.recordSuccess(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        
+        // Act
+        DependencyHealth healthy = window.snapshot(TimeUnit.MILLISECONDS.toNanos(100), 2, 0);
+        DependencyHealth slow = window.snapshot(TimeUnit.MILLISECONDS.toNanos(90), 2, 0);
+        
+        // Assert
+        assertEquals(50.0, healthy.p50Millis());
+        assertEquals(95.0, healthy.p95Millis());
+        assertEquals(99.0, healthy.p99Millis());
+        assertEquals(Status.UP, healthy.status());
+        assertEquals(Status.DEGRADED, slow.status());
+    }
+    
+    @Test
+    void testLatencyWindow_KeepsOnlyMostRecentSamples() {
+        // Arrange
+        LatencyWindow window = new LatencyWindow(2);
+        window.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+        window.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        window.recordSuccess(TimeUnit.MILLISECONDS.toNanos(2));
+        
+        // Act
+        DependencyHealth health = window.snapshot(TimeUnit.MILLISECONDS.toNanos(250), 2, 0);
+        
+        // Assert
+        assertEquals(2, health.samples());
+        assertEquals(2.0, health.p99Millis());
+        assertEquals(Status.UP, health.status());
+    }
+    
+    private void mysqlUp() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.HotKeyInfo;
+import com.example.demo.model.dto.HotKeysReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotKeyTrackerTest {
+    
+    private HotKeyTracker hotKeyTracker;
+    
+    @BeforeEach
+    void setUp() {
+        hotKeyTracker = new HotKeyTracker();
+        ReflectionTestUtils.setField(hotKeyTracker, "enabled", true);
+        ReflectionTestUtils.setField(hotKeyTracker, "topK", 3);
+        ReflectionTestUtils.setField(hotKeyTracker, "sketchWidth", 1024);
+        ReflectionTestUtils.setField(hotKeyTracker, "sketchDepth", 4);
+        hotKeyTracker.rollInterval(0);
+    }
+    
+    @Test
+    void testRanksKeysByRequestRate() {
+        // Arrange
+        decide("heavy", 500, 100, 10_000);
+        decide("medium", 200, 100, 10_000);
+        decide("light", 50, 100, 10_000);
+        for (int i = 0; i < 1000; i++) {
+            decide("noise-" + i, 1, 1, 10_000);
+        }
+        
+        // Act
+        hotKeyTracker.rollInterval(10_000);
+        HotKeysReport report = hotKeyTracker.getReport(3);
+        
+        // Assert
+        List<HotKeyInfo> top = report.getTopByRate();
+        assertEquals(3, top.size());
+        assertEquals("heavy", top.get(0).getApiKey());
+        assertEquals("medium", top.get(1).getApiKey());
+        assertEquals("light", top.get(2).getApiKey());
+        assertTrue(top.get(0).getEstimatedRequests() >= 500);
+        assertEquals(50.0, top.get(0).getRequestsPerSecond(), 5.0);
+    }
+    
+    @Test
+    void testRanksKeysByUsageRatio() {
+        // Arrange
+        decide("almost-full", 1, 95, 100);
+        decide("half", 1, 50, 100);
+        decide("blocked", 1, 120, 100);
+        decide("idle", 1, 1, 100);
+        
+        // Act
+        hotKeyTracker.rollInterval(1_000);
+        List<HotKeyInfo> nearLimit = hotKeyTracker.getReport(10).getNearLimit();
+        
+        // Assert: k is capped at the configured top-k
+        assertEquals(3, nearLimit.size());
+        assertEquals("blocked", nearLimit.get(0).getApiKey());
+        assertEquals("almost-full", nearLimit.get(1).getApiKey());
+        assertEquals(0.95, nearLimit.get(1).getUsageRatio(), 0.0001);
+    }
+    
+    @Test
+    void testCandidateSetStaysBoundedAndKeepsHotKey() {
+        // Arrange: far more distinct keys than candidate slots
+        for (int i = 0; i < 5000; i++) {
+            decide("cold-" + i, 1, 1, 1000);
+            if (i % 10 == 0) {
+                decide("hot", 1, i / 10, 1000);
+            }
+        }
+        
+        // Act
+        hotKeyTracker.rollInterval(1_000);
+        HotKeysReport report = hotKeyTracker.getReport(1);
+        
+        // Assert
+        assertEquals("hot", report.getTopByRate().get(0).getApiKey());
+    }
+    
+    @Test
+    void testReportIsEmptyBeforeFirstRefresh() {
+        // Arrange
+        HotKeyTracker fresh = new HotKeyTracker();
+        ReflectionTestUtils.setField(fresh, "topK", 3);
+        
+        // Act
+        HotKeysReport report = fresh.getReport(3);
+        
+        // Assert
+        assertTrue(report.getTopByRate().isEmpty());
+        assertTrue(report.getNearLimit().isEmpty());
+    }
+    
+    private void decide(String apiKey, int times, long currentUsage, int limit) {
+        for (int i = 0; i < times; i++) {
+            hotKeyTracker.onDecision(apiKey, currentUsage <= limit, currentUsage, limit, 60, null);
+        }
+    }
+}
\ No newline at end of file
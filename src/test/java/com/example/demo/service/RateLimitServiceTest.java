@@ -2,10 +2,15 @@ package com.example.demo.service;
 
 import com.example.demo.model.RateLimit;
 import com.example.demo.model.dto.CheckResult;
+import com.example.demo.model.dto.CursorPage;
 import com.example.demo.model.dto.RateLimitRequest;
 import com.example.demo.model.dto.UsageInfo;
 import com.example.demo.mq.RateLimitEventProducer;
+import com.example.demo.mq.RateLimitOutbox;
 import com.example.demo.repository.RateLimitRepository;
+import com.example.demo.util.CompactRuleIndex;
+import com.example.demo.util.IpPrefix;
+import com.example.demo.util.KeysetCursor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,7 +21,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -36,6 +45,18 @@ class RateLimitServiceTest {
     @Mock
     private RateLimitEventProducer eventProducer;
     
+    @Mock
+    private RateLimitOutbox outbox;
+    
+    @Mock
+    private RuleCache ruleCache;
+    
+    @Mock
+    private ApiKeyFilter keyFilter;
+    
+    @Mock
+    private IpRuleMatcher ipRuleMatcher;
+    
     @InjectMocks
     private RateLimitService rateLimitService;
     
@@ -55,7 +76,7 @@ class RateLimitServiceTest {
         // Arrange
         when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.empty());
         when(rateLimitRepository.save(any(RateLimit.class))).thenReturn(testRateLimit);
-        when(redisService.deleteCounter("test-key")).thenReturn(true);
+        when(redisService.deleteCounter("test-key", 60)).thenReturn(true);
         
         // Act
         RateLimit result = rateLimitService.createRateLimit(testRequest);
@@ -68,8 +89,8 @@ class RateLimitServiceTest {
         
         verify(rateLimitRepository).findByApiKey("test-key");
         verify(rateLimitRepository).save(any(RateLimit.class));
-        verify(redisService).deleteCounter("test-key");
-        verify(eventProducer).sendLimitCreatedEvent("test-key", 100, 60);
+        verify(redisService).deleteCounter("test-key", 60);
+        verify(outbox).recordLimitCreated("test-key", 100, 60);
     }
     
     @Test
@@ -77,14 +98,36 @@ class RateLimitServiceTest {
         // Arrange
         when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
         when(rateLimitRepository.save(any(RateLimit.class))).thenReturn(testRateLimit);
-        when(redisService.deleteCounter("test-key")).thenReturn(true);
+        when(redisService.deleteCounter("test-key", 60)).thenReturn(true);
         
         // Act
         RateLimit result = rateLimitService.createRateLimit(testRequest);
         
         // Assert
         assertNotNull(result);
-        verify(eventProducer).sendLimitUpdatedEvent("test-key", 100, 60);
+        verify(outbox).recordLimitUpdated("test-key", 100, 60);
+    }
+    
+    @Test
+    void testCreateRateLimit_RuleCacheUpdatedOnlyAfterCommit() {
+        // Arrange
+        when(ruleCache.isEnabled()).thenReturn(true);
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.empty());
+        when(rateLimitRepository.save(any(RateLimit.class))).thenReturn(testRateLimit);
+        TransactionSynchronizationManager.initSynchronization();
+        
+        try {
+            // Act
+            rateLimitService.createRateLimit(testRequest);
+            
+            // Assert
+            verify(ruleCache, never()).put(any(RateLimit.class));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(ruleCache).put(argThat(rule -> rule.getApiKey().equals("test-key")
+                    && rule.getRequestLimit() == 100 && rule.getWindowSeconds() == 60));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
     
     @Test
@@ -102,12 +145,106 @@ class RateLimitServiceTest {
         assertEquals("unknown-key", result.getApiKey());
     }
     
+    @Test
+    void testCheckApiAccess_BlockedEventCarriesClientIp() {
+        // Arrange
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(101L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(30L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key", 1, "203.0.113.7");
+        
+        // Assert
+        assertFalse(result.isAllowed());
+        verify(eventProducer).sendLimitExceededEvent("test-key", 101, 100, "203.0.113.7");
+    }
+    
+    @Test
+    void testCheckIpAccess_CountsPerAddressWithMatchedRule() {
+        // Arrange
+        when(ipRuleMatcher.isEnabled()).thenReturn(true);
+        when(ipRuleMatcher.match(any(IpPrefix.class))).thenReturn(CompactRuleIndex.pack(10, 60));
+        when(redisService.tryIncrementCounter("ip:10.1.2.3", 1, 10, 60)).thenReturn(3L);
+        when(redisService.getTtl("ip:10.1.2.3", 60)).thenReturn(45L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkIpAccess("10.1.2.3", 1);
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        assertEquals("ip:10.1.2.3", result.getApiKey());
+        assertEquals(7, result.getRemainingQuota());
+        verifyNoInteractions(rateLimitRepository);
+    }
+    
+    @Test
+    void testCheckIpAccess_NoMatchingRule() {
+        // Arrange
+        when(ipRuleMatcher.isEnabled()).thenReturn(true);
+        when(ipRuleMatcher.match(any(IpPrefix.class))).thenReturn(CompactRuleIndex.NOT_FOUND);
+        
+        // Act
+        CheckResult result = rateLimitService.checkIpAccess("2001:db8::1", 1);
+        
+        // Assert
+        assertFalse(result.isAllowed());
+        assertEquals("ip:2001:db8:0:0:0:0:0:1", result.getApiKey());
+        verifyNoInteractions(redisService);
+    }
+    
+    @Test
+    void testCreateRateLimit_IpRuleStoredInCanonicalForm() {
+        // Arrange
+        RateLimitRequest request = new RateLimitRequest("ip:10.1.2.3/8", 100, 60);
+        when(rateLimitRepository.findByApiKey("ip:10.0.0.0/8")).thenReturn(Optional.empty());
+        when(rateLimitRepository.save(any(RateLimit.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ipRuleMatcher.isEnabled()).thenReturn(true);
+        
+        // Act
+        RateLimit result = rateLimitService.createRateLimit(request);
+        
+        // Assert
+        assertEquals("ip:10.0.0.0/8", result.getApiKey());
+        verify(ipRuleMatcher).put("ip:10.0.0.0/8", 100, 60);
+    }
+    
+    @Test
+    void testCheckApiAccess_RejectedByKeyFilter() {
+        // Arrange
+        when(keyFilter.isEnabled()).thenReturn(true);
+        when(keyFilter.mightExist("unknown-key")).thenReturn(false);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("unknown-key");
+        
+        // Assert
+        assertFalse(result.isAllowed());
+        assertEquals("API key not found", result.getReason());
+        verifyNoInteractions(rateLimitRepository, redisService);
+    }
+    
+    @Test
+    void testCheckApiAccess_KeyFilterFalsePositive_RecordsMissing() {
+        // Arrange
+        when(keyFilter.isEnabled()).thenReturn(true);
+        when(keyFilter.mightExist("unknown-key")).thenReturn(true);
+        when(rateLimitRepository.findByApiKey("unknown-key")).thenReturn(Optional.empty());
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("unknown-key");
+        
+        // Assert
+        assertEquals("API key not found", result.getReason());
+        verify(keyFilter).recordMissing(eq("unknown-key"), anyLong());
+    }
+    
     @Test
     void testCheckApiAccess_AllowedRequest() {
         // Arrange
         when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
-        when(redisService.incrementCounter("test-key", 60)).thenReturn(5L);
-        when(redisService.getTtl("test-key")).thenReturn(50L);
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(5L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(50L);
         
         // Act
         CheckResult result = rateLimitService.checkApiAccess("test-key");
@@ -126,7 +263,8 @@ class RateLimitServiceTest {
     void testCheckApiAccess_BlockedRequest() {
         // Arrange
         when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
-        when(redisService.incrementCounter("test-key", 60)).thenReturn(101L);
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(101L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(30L);
         
         // Act
         CheckResult result = rateLimitService.checkApiAccess("test-key");
@@ -137,17 +275,164 @@ class RateLimitServiceTest {
         assertEquals("Rate limit exceeded", result.getReason());
         assertEquals(101, result.getCurrentUsage());
         assertEquals(0, result.getRemainingQuota());
+        assertEquals(30, result.getWindowTtl());
         assertEquals(100, result.getTotalLimit());
         
         verify(eventProducer).sendLimitExceededEvent("test-key", 101, 100, "unknown");
     }
     
+    @Test
+    void testCheckApiAccess_WeightedRequestBlockedWithoutConsuming() {
+        // Arrange - 70 used, a 50-unit request does not fit
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 50, 100, 60)).thenReturn(120L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(30L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key", 50);
+        
+        // Assert
+        assertFalse(result.isAllowed());
+        assertEquals(50, result.getCost());
+        assertEquals(30, result.getRemainingQuota());
+        verify(redisService, never()).incrementCounter(anyString(), anyInt());
+    }
+    
+    @Test
+    void testCheckApiAccess_WeightedRequestAllowed() {
+        // Arrange
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 50, 100, 60)).thenReturn(60L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(30L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key", 50);
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        assertEquals(60, result.getCurrentUsage());
+        assertEquals(40, result.getRemainingQuota());
+    }
+    
+    @Test
+    void testRefund_ReturnsUsageAfterRefund() {
+        // Arrange
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.refundCounter("test-key", 50, 60)).thenReturn(10L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(45L);
+        
+        // Act
+        UsageInfo result = rateLimitService.refund("test-key", 50);
+        
+        // Assert
+        assertEquals(10, result.getCurrentUsage());
+        assertEquals(90, result.getRemainingQuota());
+        assertEquals(45, result.getWindowTtl());
+    }
+    
+    @Test
+    void testRefund_NoActiveWindow() {
+        // Arrange
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.refundCounter("test-key", 5, 60)).thenReturn(-2L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(-2L);
+        
+        // Act
+        UsageInfo result = rateLimitService.refund("test-key", 5);
+        
+        // Assert
+        assertEquals(0, result.getCurrentUsage());
+        assertEquals(100, result.getRemainingQuota());
+        assertNull(result.getWindowTtl());
+    }
+    
+    @Test
+    void testCheckApiAccess_ServedFromRuleCache() {
+        // Arrange
+        when(ruleCache.isEnabled()).thenReturn(true);
+        when(ruleCache.get("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(1L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(60L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key");
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        assertEquals(99, result.getRemainingQuota());
+        verify(rateLimitRepository, never()).findByApiKey(anyString());
+    }
+    
+    @Test
+    void testCheckApiAccess_RuleCacheMissFallsBackToDatabase() {
+        // Arrange
+        when(ruleCache.isEnabled()).thenReturn(true);
+        when(ruleCache.get("test-key")).thenReturn(Optional.empty());
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(1L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key");
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        verify(ruleCache).fill(eq(testRateLimit), anyLong());
+    }
+    
+    @Test
+    void testCheckApiAccess_MirroredRuleSkipsDatabase() {
+        // Arrange
+        ReflectionTestUtils.setField(rateLimitService, "ruleMirrorEnabled", true);
+        when(redisService.checkWithMirroredRule("test-key", 1))
+                .thenReturn(new RedisService.MirroredCheck(5L, 100, 60, 42L));
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key");
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        assertEquals(5, result.getCurrentUsage());
+        assertEquals(95, result.getRemainingQuota());
+        assertEquals(42, result.getWindowTtl());
+        verify(rateLimitRepository, never()).findByApiKey(anyString());
+        verify(redisService, never()).getTtl(anyString(), anyInt());
+    }
+    
+    @Test
+    void testCheckApiAccess_MissingMirrorIsRepaired() {
+        // Arrange
+        ReflectionTestUtils.setField(rateLimitService, "ruleMirrorEnabled", true);
+        when(redisService.checkWithMirroredRule("test-key", 1)).thenReturn(null);
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
+        when(redisService.tryIncrementCounter("test-key", 1, 100, 60)).thenReturn(1L);
+        
+        // Act
+        CheckResult result = rateLimitService.checkApiAccess("test-key");
+        
+        // Assert
+        assertTrue(result.isAllowed());
+        verify(redisService).mirrorRule("test-key", 100, 60);
+    }
+    
+    @Test
+    void testDeleteRateLimit_RemovesMirror() {
+        // Arrange
+        ReflectionTestUtils.setField(rateLimitService, "ruleMirrorEnabled", true);
+        when(rateLimitRepository.deleteByApiKey("test-key")).thenReturn(1);
+        
+        // Act
+        rateLimitService.deleteRateLimit("test-key");
+        
+        // Assert
+        verify(redisService).removeRuleMirror("test-key");
+    }
+    
     @Test
     void testGetUsageInfo_Success() {
         // Arrange
         when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
-        when(redisService.getCurrentCount("test-key")).thenReturn(25L);
-        when(redisService.getTtl("test-key")).thenReturn(30L);
+        when(redisService.getCurrentCount("test-key", 60)).thenReturn(25L);
+        when(redisService.getTtl("test-key", 60)).thenReturn(30L);
         
         // Act
         UsageInfo result = rateLimitService.getUsageInfo("test-key");
@@ -177,8 +462,9 @@ class RateLimitServiceTest {
     @Test
     void testDeleteRateLimit_Success() {
         // Arrange
+        when(rateLimitRepository.findByApiKey("test-key")).thenReturn(Optional.of(testRateLimit));
         when(rateLimitRepository.deleteByApiKey("test-key")).thenReturn(1);
-        when(redisService.deleteCounter("test-key")).thenReturn(true);
+        when(redisService.deleteCounter("test-key", 60)).thenReturn(true);
         
         // Act
         boolean result = rateLimitService.deleteRateLimit("test-key");
@@ -186,8 +472,8 @@ class RateLimitServiceTest {
         // Assert
         assertTrue(result);
         verify(rateLimitRepository).deleteByApiKey("test-key");
-        verify(redisService).deleteCounter("test-key");
-        verify(eventProducer).sendLimitDeletedEvent("test-key");
+        verify(redisService).deleteCounter("test-key", 60);
+        verify(outbox).recordLimitDeleted("test-key");
     }
     
     @Test
@@ -201,8 +487,8 @@ class RateLimitServiceTest {
         // Assert
         assertFalse(result);
         verify(rateLimitRepository).deleteByApiKey("unknown-key");
-        verify(redisService, never()).deleteCounter(anyString());
-        verify(eventProducer, never()).sendLimitDeletedEvent(anyString());
+        verify(redisService, never()).deleteCounter(anyString(), anyInt());
+        verify(outbox, never()).recordLimitDeleted(anyString());
     }
     
     @Test
@@ -221,6 +507,54 @@ class RateLimitServiceTest {
         assertEquals("test-key", result.getContent().get(0).getApiKey());
     }
     
+    @Test
+    void testGetRateLimitsByCursor_FirstPageHasMore() {
+        // Arrange
+        RateLimit second = new RateLimit("test-key-2", 50, 30);
+        second.setId(2L);
+        second.setCreatedAt(LocalDateTime.of(2024, 1, 1, 10, 0));
+        testRateLimit.setCreatedAt(LocalDateTime.of(2024, 1, 1, 9, 0));
+        when(rateLimitRepository.findKeysetFirstPage(PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(testRateLimit, second));
+        
+        // Act
+        CursorPage<RateLimit> result = rateLimitService.getRateLimitsByCursor("", 1, false);
+        
+        // Assert
+        assertEquals(1, result.getSize());
+        assertTrue(result.isHasMore());
+        assertNull(result.getTotalElements());
+        KeysetCursor next = KeysetCursor.decode(result.getNextCursor());
+        assertEquals(1L, next.getId());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 9, 0), next.getCreatedAt());
+        verify(rateLimitRepository, never()).countRateLimits();
+    }
+    
+    @Test
+    void testGetRateLimitsByCursor_LastPageWithTotal() {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 1, 9, 0);
+        String cursor = new KeysetCursor(createdAt, 1L).encode();
+        when(rateLimitRepository.findKeysetPageAfter(createdAt, 1L, PageRequest.of(0, 11)))
+                .thenReturn(Arrays.asList(testRateLimit));
+        when(rateLimitRepository.countRateLimits()).thenReturn(2L);
+        
+        // Act
+        CursorPage<RateLimit> result = rateLimitService.getRateLimitsByCursor(cursor, 10, true);
+        
+        // Assert
+        assertFalse(result.isHasMore());
+        assertNull(result.getNextCursor());
+        assertEquals(2L, result.getTotalElements());
+    }
+    
+    @Test
+    void testGetRateLimitsByCursor_InvalidCursor() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, 
+                     () -> rateLimitService.getRateLimitsByCursor("not-a-cursor", 10, false));
+    }
+    
     @Test
     void testRateLimitExists() {
         // Arrange
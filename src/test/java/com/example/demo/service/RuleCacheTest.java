@@ -0,0 +1,197 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleCacheTest {
+    
+    private RuleCache ruleCache;
+    
+    @BeforeEach
+    void setUp() {
+        ruleCache = new RuleCache();
+        ReflectionTestUtils.setField(ruleCache, "fillGuardMillis", 1000L);
+    }
+    
+    @Test
+    void testDeleteDuringMissLookupIsNotUndoneByFill() {
+        // Arrange - a check misses and starts reading the row from MySQL
+        ruleCache.put(new RateLimit("test-key", 100, 60));
+        ruleCache.rebuild();
+        long stamp = ruleCache.fillStamp();
+        RateLimit readBeforeDelete = new RateLimit("test-key", 100, 60);
+        
+        // Act - the delete commits and its tombstone is folded before the stale row arrives
+        ruleCache.remove("test-key");
+        ruleCache.rebuild();
+        boolean filled = ruleCache.fill(readBeforeDelete, stamp);
+        
+        // Assert
+        assertFalse(filled);
+        assertTrue(ruleCache.get("test-key").isEmpty());
+    }
+    
+    @Test
+    void testLaggingReadStartedJustAfterDeleteIsNotFilled() {
+        // Arrange
+        ruleCache.remove("test-key");
+        
+        // Act - the lookup starts after the delete but may read a replica that has not seen it
+        boolean filled = ruleCache.fill(new RateLimit("test-key", 100, 60), ruleCache.fillStamp());
+        
+        // Assert
+        assertFalse(filled);
+        assertTrue(ruleCache.get("test-key").isEmpty());
+    }
+    
+    @Test
+    void testFillCachesUnchangedKey() {
+        // Act
+        boolean filled = ruleCache.fill(new RateLimit("test-key", 100, 60), ruleCache.fillStamp());
+        
+        // Assert
+        assertTrue(filled);
+        assertEquals(100, ruleCache.get("test-key").orElseThrow().getRequestLimit());
+    }
+    
+    @Test
+    void testPutStoresValuesNotInstance() {
+        // Arrange
+        RateLimit rateLimit = new RateLimit("test-key", 100, 60);
+        
+        // Act
+        ruleCache.put(rateLimit);
+        rateLimit.setRequestLimit(5);
+        
+        // Assert
+        Optional<RateLimit> cached = ruleCache.get("test-key");
+        assertTrue(cached.isPresent());
+        assertEquals(100, cached.get().getRequestLimit());
+    }
+    
+    @Test
+    void testChangesDuringLoadAreDeferred() {
+        // Arrange
+        ruleCache.beginLoad();
+        
+        // Act
+        ruleCache.applyChange("test-key", 0, 0, true);
+        ruleCache.putAll(List.of(new RateLimit("test-key", 100, 60)));
+        
+        // Assert - the delete is replayed after the loaded rows are indexed
+        ruleCache.endLoad();
+        assertFalse(ruleCache.get("test-key").isPresent());
+    }
+    
+    @Test
+    void testLoadedRowsAreIndexedWhenLoadEnds() {
+        // Arrange
+        ruleCache.beginLoad();
+        ruleCache.putAll(List.of(new RateLimit("key-1", 100, 60), new RateLimit("key-2", 50, 30)));
+        
+        // Act
+        ruleCache.endLoad();
+        
+        // Assert
+        assertEquals(2, ruleCache.getIndex().size());
+        assertEquals(50, ruleCache.get("key-2").get().getRequestLimit());
+        assertEquals(30, ruleCache.get("key-2").get().getWindowSeconds());
+    }
+    
+    @Test
+    void testEndLoadWaitsForRunningRebuild() throws Exception {
+        // Arrange
+        Object rebuildLock = ReflectionTestUtils.getField(ruleCache, "rebuildLock");
+        ruleCache.beginLoad();
+        ruleCache.putAll(List.of(new RateLimit("key-1", 100, 60)));
+        Thread loader = new Thread(ruleCache::endLoad);
+        
+        // Act - hold the lock as a rebuild in progress would
+        int indexedDuringRebuild;
+        synchronized (rebuildLock) {
+            loader.start();
+            while (loader.getState() != Thread.State.BLOCKED) {
+                Thread.onSpinWait();
+            }
+            indexedDuringRebuild = ruleCache.getIndex().size();
+        }
+        loader.join();
+        
+        // Assert
+        assertEquals(0, indexedDuringRebuild);
+        assertEquals(1, ruleCache.getIndex().size());
+    }
+    
+    @Test
+    void testReloadReplacesRulesOnlyWhenCommitted() {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        ruleCache.rebuild();
+        RuleCache.Reload reload = ruleCache.beginReload();
+        reload.addAll(List.of(new RateLimit("key-2", 50, 30)));
+        
+        // Act - a delete arrives while the reload is still reading
+        boolean servedDuringReload = ruleCache.get("key-1").isPresent();
+        ruleCache.applyChange("key-2", 0, 0, true);
+        ruleCache.commitReload(reload);
+        ruleCache.rebuild();
+        
+        // Assert
+        assertTrue(servedDuringReload);
+        assertFalse(ruleCache.get("key-1").isPresent());
+        assertFalse(ruleCache.get("key-2").isPresent());
+        assertEquals(0, ruleCache.getIndex().size());
+    }
+    
+    @Test
+    void testAbortedReloadKeepsCurrentRules() {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        ruleCache.rebuild();
+        RuleCache.Reload reload = ruleCache.beginReload();
+        reload.addAll(List.of(new RateLimit("key-2", 50, 30)));
+        
+        // Act
+        ruleCache.abortReload();
+        
+        // Assert
+        assertTrue(ruleCache.get("key-1").isPresent());
+        assertFalse(ruleCache.get("key-2").isPresent());
+    }
+    
+    @Test
+    void testRebuildFoldsOverlayIntoSnapshot() {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        ruleCache.put(new RateLimit("key-2", 50, 30));
+        ruleCache.rebuild();
+        
+        // Act
+        ruleCache.remove("key-1");
+        ruleCache.put(new RateLimit("key-2", 75, 30));
+        ruleCache.rebuild();
+        
+        // Assert
+        assertEquals(1, ruleCache.getIndex().size());
+        assertFalse(ruleCache.get("key-1").isPresent());
+        assertEquals(75, ruleCache.get("key-2").get().getRequestLimit());
+    }
+    
+    @Test
+    void testChangesAfterLoadApplyImmediately() {
+        // Act
+        ruleCache.applyChange("test-key", 10, 30, false);
+        
+        // Assert
+        assertEquals(10, ruleCache.get("test-key").get().getRequestLimit());
+        assertEquals(30, ruleCache.get("test-key").get().getWindowSeconds());
+        assertEquals(1, ruleCache.size());
+    }
+}
\ No newline at end of file
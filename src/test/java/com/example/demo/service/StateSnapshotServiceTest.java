@@ -0,0 +1,100 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RateLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateSnapshotServiceTest {
+    
+    @TempDir
+    Path snapshotDir;
+    
+    private RuleCache ruleCache;
+    
+    @BeforeEach
+    void setUp() {
+        ruleCache = newRuleCache();
+    }
+    
+    @Test
+    void testRulesSurviveSnapshotRoundTrip() throws Exception {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        ruleCache.put(new RateLimit("key-2", 50, 30));
+        ruleCache.rebuild();
+        ruleCache.remove("key-1");
+        ruleCache.put(new RateLimit("key-3", 10, 1));
+        newService(ruleCache).writeSnapshot();
+        
+        // Act
+        RuleCache restored = newRuleCache();
+        OptionalLong snapshotMillis = newService(restored).restore();
+        
+        // Assert - overlay changes not yet folded into the index are included
+        assertTrue(snapshotMillis.isPresent());
+        assertEquals(2, restored.getIndex().size());
+        assertFalse(restored.get("key-1").isPresent());
+        assertEquals(50, restored.get("key-2").get().getRequestLimit());
+        assertEquals(1, restored.get("key-3").get().getWindowSeconds());
+    }
+    
+    @Test
+    void testCorruptSnapshotIsIgnored() throws Exception {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        StateSnapshotService service = newService(ruleCache);
+        service.writeSnapshot();
+        Path file = snapshotDir.resolve("limiter-state.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file, bytes);
+        
+        // Act
+        RuleCache restored = newRuleCache();
+        OptionalLong snapshotMillis = newService(restored).restore();
+        
+        // Assert
+        assertTrue(snapshotMillis.isEmpty());
+        assertEquals(0, restored.getIndex().size());
+    }
+    
+    @Test
+    void testStaleSnapshotIsIgnored() throws Exception {
+        // Arrange
+        ruleCache.put(new RateLimit("key-1", 100, 60));
+        newService(ruleCache).writeSnapshot();
+        
+        // Act
+        StateSnapshotService service = newService(newRuleCache());
+        ReflectionTestUtils.setField(service, "maxAgeMinutes", -1L);
+        
+        // Assert
+        assertTrue(service.restore().isEmpty());
+    }
+    
+    private StateSnapshotService newService(SnapshotParticipant participant) {
+        StateSnapshotService service = new StateSnapshotService();
+        ReflectionTestUtils.setField(service, "participants", List.of(participant));
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "directory", snapshotDir.toString());
+        ReflectionTestUtils.setField(service, "maxAgeMinutes", 60L);
+        return service;
+    }
+    
+    private static RuleCache newRuleCache() {
+        RuleCache cache = new RuleCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        return cache;
+    }
+}
\ No newline at end of file
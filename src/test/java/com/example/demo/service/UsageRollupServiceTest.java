@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UsageRollupServiceTest {
+    
+    // 2024-01-01T10:00:00Z
+    private static final long MINUTE_10_00 = 1704103200L / 60;
+    
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    
+    @InjectMocks
+    private UsageRollupService usageRollupService;
+    
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(usageRollupService, "maxKeys", 100);
+        ReflectionTestUtils.setField(usageRollupService, "batchSize", 1000);
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushWritesMinuteAndHourRows() {
+        // Arrange
+        usageRollupService.record("test-key", true, MINUTE_10_00);
+        usageRollupService.record("test-key", true, MINUTE_10_00);
+        usageRollupService.record("test-key", false, MINUTE_10_00 + 1);
+        
+        // Act
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00 + 2);
+        
+        // Assert
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        
+        // Two minute rows plus one hour row holding both minutes
+        assertEquals(3, rows.getValue().size());
+        Object[] hourRow = rows.getValue().stream()
+                .filter(row -> "HOUR".equals(row[1]))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(LocalDateTime.of(2024, 1, 1, 10, 0), hourRow[2]);
+        assertEquals(2L, hourRow[3]);
+        assertEquals(1L, hourRow[4]);
+        assertEquals(0, usageRollupService.getTrackedKeys());
+    }
+    
+    @Test
+    void testCurrentMinuteIsNotFlushed() {
+        // Arrange
+        usageRollupService.record("test-key", true, MINUTE_10_00);
+        
+        // Act
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00);
+        
+        // Assert
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(1, usageRollupService.getTrackedKeys());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testKeysBeyondBoundAreFoldedIntoOverflow() {
+        // Arrange
+        ReflectionTestUtils.setField(usageRollupService, "maxKeys", 2);
+        usageRollupService.record("key-1", true, MINUTE_10_00);
+        usageRollupService.record("key-2", true, MINUTE_10_00);
+        usageRollupService.record("key-3", true, MINUTE_10_00);
+        usageRollupService.record("key-4", false, MINUTE_10_00);
+        
+        // Act
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00 + 1);
+        
+        // Assert
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertTrue(rows.getValue().stream().anyMatch(row -> UsageRollupService.OVERFLOW_KEY.equals(row[0])));
+        assertTrue(rows.getValue().stream().noneMatch(row -> "key-3".equals(row[0])));
+        assertEquals(2, usageRollupService.getOverflowedRecords());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedBatchIsRetriedOnNextFlush() {
+        // Arrange
+        usageRollupService.record("test-key", true, MINUTE_10_00);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenReturn(new int[0]);
+        
+        // Act
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00 + 1);
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00 + 1);
+        
+        // Assert
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getAllValues().get(1).size());
+        assertEquals(2, usageRollupService.getFailedRows());
+        
+        // Written rows are not sent again
+        usageRollupService.flushCompletedMinutes(MINUTE_10_00 + 1);
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+    
+    @Test
+    void testPruneDeletesInBatchesUntilNoneLeft() {
+        // Arrange
+        ReflectionTestUtils.setField(usageRollupService, "enabled", true);
+        ReflectionTestUtils.setField(usageRollupService, "batchSize", 2);
+        when(jdbcTemplate.update(anyString(), eq("MINUTE"), any(LocalDateTime.class), eq(2))).thenReturn(2, 1);
+        when(jdbcTemplate.update(anyString(), eq("HOUR"), any(LocalDateTime.class), eq(2))).thenReturn(0);
+        
+        // Act
+        usageRollupService.prune();
+        
+        // Assert
+        verify(jdbcTemplate, times(2)).update(anyString(), eq("MINUTE"), any(LocalDateTime.class), eq(2));
+        verify(jdbcTemplate).update(anyString(), eq("HOUR"), any(LocalDateTime.class), eq(2));
+    }
+}
\ No newline at end of file
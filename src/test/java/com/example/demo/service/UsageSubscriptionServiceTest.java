@@ -0,0 +1,186 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.UsageEvent;
+import com.example.demo.model.dto.UsageInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsageSubscriptionServiceTest {
+    
+    private UsageSubscriptionService subscriptionService;
+    private SseEmitter emitter;
+    
+    @BeforeEach
+    void setUp() {
+        subscriptionService = new UsageSubscriptionService();
+        ReflectionTestUtils.setField(subscriptionService, "enabled", true);
+        ReflectionTestUtils.setField(subscriptionService, "thresholds", new int[] {50, 80, 100});
+        ReflectionTestUtils.setField(subscriptionService, "maxEventsPerSecond", 2);
+        ReflectionTestUtils.setField(subscriptionService, "maxSubscribers", 10);
+        ReflectionTestUtils.setField(subscriptionService, "maxKeysPerSubscriber", 10);
+        ReflectionTestUtils.setField(subscriptionService, "maxQueuedSends", 2);
+        ReflectionTestUtils.setField(subscriptionService, "sendExecutor", (Executor) Runnable::run);
+        
+        emitter = mock(SseEmitter.class);
+        subscriptionService.register(emitter, Set.of("test-key"), List.of());
+    }
+    
+    @Test
+    void testThresholdEventsAreCoalescedPerKey() throws Exception {
+        // Arrange
+        subscriptionService.onDecision("test-key", true, 50, 100, 60, 30);
+        subscriptionService.onDecision("test-key", true, 60, 100, 60, 30);
+        subscriptionService.onDecision("test-key", true, 85, 100, 60, 30);
+        
+        // Act
+        subscriptionService.flushPending(System.currentTimeMillis());
+        
+        // Assert
+        List<UsageEvent> events = sentEvents(1).get(0);
+        assertEquals(1, events.size());
+        assertEquals(UsageEvent.Type.THRESHOLD, events.get(0).getType());
+        assertEquals(80, events.get(0).getThresholdPercent());
+        assertEquals(85, events.get(0).getCurrentUsage());
+    }
+    
+    @Test
+    void testSendsAreRateLimitedPerSubscriber() throws Exception {
+        // Arrange
+        long now = System.currentTimeMillis();
+        subscriptionService.onDecision("test-key", true, 50, 100, 60, 30);
+        subscriptionService.flushPending(now);
+        subscriptionService.onDecision("test-key", false, 101, 100, 60, 30);
+        
+        // Act
+        subscriptionService.flushPending(now + 100);
+        
+        // Assert: second event held back until the 500 ms budget has passed
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        subscriptionService.flushPending(now + 600);
+        List<UsageEvent> second = sentEvents(2).get(1);
+        assertEquals(UsageEvent.Type.BLOCKED, second.get(0).getType());
+    }
+    
+    @Test
+    void testUnwatchedKeysProduceNoEvents() throws Exception {
+        // Act
+        subscriptionService.onDecision("other-key", false, 500, 100, 60, 30);
+        subscriptionService.flushPending(System.currentTimeMillis());
+        
+        // Assert
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        assertEquals(1, subscriptionService.getWatchedKeyCount());
+    }
+    
+    @Test
+    void testResetIsPushedWhenWindowExpiresWithoutTraffic() throws Exception {
+        // Arrange: zero-second window, so it has already expired
+        subscriptionService.onDecision("test-key", true, 1, 1, 0, null);
+        subscriptionService.onDecision("test-key", false, 2, 1, 0, null);
+        
+        // Act
+        subscriptionService.sweepResets(System.currentTimeMillis() + 1);
+        subscriptionService.flushPending(System.currentTimeMillis());
+        
+        // Assert: the reset supersedes the pending blocked event for the key
+        List<UsageEvent> events = sentEvents(1).get(0);
+        assertEquals(UsageEvent.Type.RESET, events.get(0).getType());
+        assertEquals(0, events.get(0).getCurrentUsage());
+    }
+    
+    @Test
+    void testRefundAndWeightedBlockInSameWindowAreNotResets() throws Exception {
+        // Arrange
+        subscriptionService.onDecision("test-key", true, 60, 100, 60, 40);
+        subscriptionService.onDecision("test-key", false, 150, 100, 60, 39);
+        subscriptionService.flushPending(System.currentTimeMillis());
+        
+        // Act: usage drops after a refund, still in the same window
+        subscriptionService.onDecision("test-key", true, 20, 100, 60, 38);
+        subscriptionService.flushPending(System.currentTimeMillis() + 1000);
+        
+        // Assert
+        List<List<UsageEvent>> sends = sentEvents(1);
+        assertTrue(sends.stream().flatMap(List::stream).noneMatch(e -> e.getType() == UsageEvent.Type.RESET));
+    }
+    
+    @Test
+    void testWeightedFirstRequestOfNextWindowIsReset() throws Exception {
+        // Arrange
+        long now = System.currentTimeMillis();
+        subscriptionService.onDecision("test-key", true, 90, 100, 60, 1);
+        subscriptionService.flushPending(now);
+        
+        // Act: a cost-5 request opens the next window
+        subscriptionService.onDecision("test-key", true, 5, 100, 60, 60);
+        subscriptionService.flushPending(now + 1000);
+        
+        // Assert
+        List<UsageEvent> second = sentEvents(2).get(1);
+        assertEquals(UsageEvent.Type.RESET, second.get(0).getType());
+        assertEquals(5, second.get(0).getCurrentUsage());
+    }
+    
+    @Test
+    void testSnapshotSeedsStateAndFailedSendUnsubscribes() throws Exception {
+        // Arrange
+        SseEmitter broken = mock(SseEmitter.class);
+        doThrow(new IOException("Broken pipe")).when(broken).send(any(SseEmitter.SseEventBuilder.class));
+        UsageInfo usageInfo = new UsageInfo("broken-key", 90, 10, 30, 100, 60);
+        
+        // Act
+        subscriptionService.register(broken, Set.of("broken-key"), List.of(usageInfo));
+        
+        // Assert
+        assertEquals(1, subscriptionService.getSubscriberCount());
+        assertEquals(1, subscriptionService.getWatchedKeyCount());
+        verify(broken).complete();
+    }
+    
+    @Test
+    void testSubscriberIsDroppedWhenItsSendQueueFills() throws Exception {
+        // Arrange: the client stops reading, so queued drains never get to write
+        List<Runnable> stalled = new ArrayList<>();
+        ReflectionTestUtils.setField(subscriptionService, "sendExecutor", (Executor) stalled::add);
+        
+        // Act
+        subscriptionService.heartbeat();
+        subscriptionService.heartbeat();
+        subscriptionService.heartbeat();
+        
+        // Assert: one drain queued for the subscriber, then dropped on the third frame
+        assertEquals(1, stalled.size());
+        assertEquals(0, subscriptionService.getSubscriberCount());
+        assertEquals(0, subscriptionService.getWatchedKeyCount());
+        verify(emitter).complete();
+        stalled.get(0).run();
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<List<UsageEvent>> sentEvents(int expectedSends) throws IOException {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> captor = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, times(expectedSends)).send(captor.capture());
+        return captor.getAllValues().stream()
+                .map(builder -> builder.build().stream()
+                        .map(part -> part.getData())
+                        .filter(List.class::isInstance)
+                        .map(data -> (List<UsageEvent>) data)
+                        .findFirst()
+                        .orElseThrow())
+                .toList();
+    }
+}
\ No newline at end of file
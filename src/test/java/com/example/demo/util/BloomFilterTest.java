@@ -0,0 +1,57 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+    
+    @Test
+    void testAddedKeysAreAlwaysFound() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("key-" + i);
+        }
+        
+        // Assert
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+        }
+    }
+    
+    @Test
+    void testFalsePositiveRateNearTarget() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("key-" + i);
+        }
+        
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        
+        // Assert
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.estimatedFalsePositiveRate(), 0.005);
+    }
+    
+    @Test
+    void testSizing() {
+        // Act
+        BloomFilter filter = new BloomFilter(1_000_000, 0.01);
+        
+        // Assert
+        assertEquals(7, filter.hashes());
+        assertTrue(filter.memoryBytes() > 1_150_000 && filter.memoryBytes() < 1_250_000);
+        assertEquals(0.0, filter.estimatedFalsePositiveRate());
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1, 1.0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRuleIndexTest {
+    
+    @Test
+    void testLookupReturnsPackedRule() {
+        // Arrange
+        CompactRuleIndex index = new CompactRuleIndex.Builder(2, false)
+                .put("key-1", 100, 60)
+                .put("key-2", 50, 30)
+                .build();
+                
+        // Act
+        long packed = index.lookup("key-2");
+        
+        // Assert
+        assertEquals(50, CompactRuleIndex.limitOf(packed));
+        assertEquals(30, CompactRuleIndex.windowOf(packed));
+        assertEquals(CompactRuleIndex.NOT_FOUND, index.lookup("unknown-key"));
+        assertEquals(2, index.size());
+    }
+    
+    @Test
+    void testLaterPutReplacesEarlier() {
+        // Act
+        CompactRuleIndex index = new CompactRuleIndex.Builder(1, false)
+                .put("key-1", 100, 60)
+                .put("key-1", 10, 5)
+                .build();
+                
+        // Assert
+        assertEquals(1, index.size());
+        assertEquals(10, CompactRuleIndex.limitOf(index.lookup("key-1")));
+    }
+    
+    @Test
+    void testOffHeapMatchesOnHeap() {
+        // Arrange
+        CompactRuleIndex.Builder onHeap = new CompactRuleIndex.Builder(10_000, false);
+        CompactRuleIndex.Builder offHeap = new CompactRuleIndex.Builder(10_000, true);
+        for (int i = 0; i < 10_000; i++) {
+            onHeap.put("key-" + i, i + 1, 60);
+            offHeap.put("key-" + i, i + 1, 60);
+        }
+        
+        // Act
+        CompactRuleIndex heapIndex = onHeap.build();
+        CompactRuleIndex directIndex = offHeap.build();
+        
+        // Assert
+        assertTrue(directIndex.isOffHeap());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(heapIndex.lookup("key-" + i), directIndex.lookup("key-" + i));
+            assertEquals(i + 1, CompactRuleIndex.limitOf(directIndex.lookup("key-" + i)));
+        }
+        assertEquals(CompactRuleIndex.NOT_FOUND, directIndex.lookup("key-10000"));
+    }
+    
+    @Test
+    void testForEachVisitsEveryRule() {
+        // Arrange
+        CompactRuleIndex index = new CompactRuleIndex.Builder(3, true)
+                .put("key-1", 1, 10)
+                .put("key-2", 2, 20)
+                .put("key-3", 3, 30)
+                .build();
+        long[] limitSum = new long[1];
+        
+        // Act
+        index.forEach((fingerprint, limit, windowSeconds) -> limitSum[0] += limit);
+        
+        // Assert
+        assertEquals(6, limitSum[0]);
+    }
+}
\ No newline at end of file
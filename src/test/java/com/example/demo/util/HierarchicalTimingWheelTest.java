@@ -0,0 +1,42 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+    
+    @Test
+    void testItemsExpireAtTheirTickAcrossLevels() {
+        // Arrange - deadlines on level 0, level 1, level 2 and beyond the top level
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 0);
+        wheel.schedule("level0", 50);
+        wheel.schedule("level1", 5_000);
+        wheel.schedule("level2", 1_000_000);
+        wheel.schedule("beyond", 200_000_000_000L);
+        
+        // Act & Assert
+        assertEquals(List.of(), wheel.advance(40));
+        assertEquals(List.of("level0"), wheel.advance(50));
+        assertEquals(List.of(), wheel.advance(4_990));
+        assertEquals(List.of("level1"), wheel.advance(5_000));
+        assertEquals(List.of(), wheel.advance(999_990));
+        assertEquals(List.of("level2"), wheel.advance(1_000_000));
+        assertEquals(1, wheel.size());
+    }
+    
+    @Test
+    void testPastDeadlineExpiresOnNextTick() {
+        // Arrange
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 1_000);
+        
+        // Act
+        wheel.schedule("late", 500);
+        
+        // Assert
+        assertEquals(List.of("late"), wheel.advance(1_010));
+        assertEquals(0, wheel.size());
+    }
+}
\ No newline at end of file
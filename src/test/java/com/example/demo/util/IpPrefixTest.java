@@ -0,0 +1,48 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpPrefixTest {
+    
+    @Test
+    void testParseCanonicalizesNetwork() {
+        // Act
+        IpPrefix ipv4 = IpPrefix.parse("10.1.2.3/8");
+        IpPrefix ipv6 = IpPrefix.parse("2001:DB8::1/32");
+        
+        // Assert
+        assertEquals("ip:10.0.0.0/8", ipv4.toRuleKey());
+        assertFalse(ipv4.isIpv6());
+        assertEquals("ip:2001:db8:0:0:0:0:0:0/32", ipv6.toRuleKey());
+        assertTrue(ipv6.isIpv6());
+    }
+    
+    @Test
+    void testBareAddressIsFullLength() {
+        // Act & Assert
+        assertEquals("1.2.3.4/32", IpPrefix.parse("1.2.3.4").toString());
+        assertEquals("0:0:0:0:0:0:0:1/128", IpPrefix.parse("::1").toString());
+        // IPv4-mapped IPv6 addresses count as IPv4
+        assertEquals("1.2.3.4/32", IpPrefix.parse("::ffff:1.2.3.4").toString());
+    }
+    
+    @Test
+    void testRejectsInvalidInput() {
+        // Act & Assert
+        for (String invalid : new String[] {"1.2.3", "256.1.1.1", "1.2.3.4.5", "1..2.3", "1.2.3.4/33",
+                                            "::1/129", "10.0.0.0/x", "example.com", ""}) {
+            assertThrows(IllegalArgumentException.class, () -> IpPrefix.parse(invalid), invalid);
+        }
+    }
+    
+    @Test
+    void testRuleKeys() {
+        // Act & Assert
+        assertTrue(IpPrefix.isRuleKey("ip:10.0.0.0/8"));
+        assertFalse(IpPrefix.isRuleKey("test-key"));
+        assertEquals(8, IpPrefix.ofRuleKey("ip:10.0.0.0/8").length());
+        assertThrows(IllegalArgumentException.class, () -> IpPrefix.ofRuleKey("test-key"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixTrieTest {
+    
+    @Test
+    void testLongestPrefixWins() {
+        // Arrange
+        PrefixTrie trie = new PrefixTrie.Builder(32)
+                .put(IpPrefix.parse("10.1.2.0/24"), 3L)
+                .put(IpPrefix.parse("10.0.0.0/8"), 1L)
+                .put(IpPrefix.parse("10.1.0.0/17"), 2L)
+                .build();
+        
+        // Act & Assert
+        assertEquals(3L, lookup(trie, "10.1.2.200"));
+        assertEquals(2L, lookup(trie, "10.1.127.1"));
+        assertEquals(1L, lookup(trie, "10.1.128.1"));
+        assertEquals(1L, lookup(trie, "10.255.255.255"));
+        assertEquals(PrefixTrie.NOT_FOUND, lookup(trie, "11.0.0.1"));
+    }
+    
+    @Test
+    void testDefaultRouteAndFullLengthPrefix() {
+        // Arrange
+        PrefixTrie trie = new PrefixTrie.Builder(128)
+                .put(IpPrefix.parse("::/0"), 7L)
+                .put(IpPrefix.parse("2001:db8::1"), 9L)
+                .build();
+        
+        // Act & Assert
+        assertEquals(9L, lookup(trie, "2001:db8::1"));
+        assertEquals(7L, lookup(trie, "2001:db8::2"));
+        assertEquals(7L, lookup(trie, "fe80::1"));
+    }
+    
+    @Test
+    void testLaterPutOfSamePrefixReplacesEarlier() {
+        // Act
+        PrefixTrie trie = new PrefixTrie.Builder(32)
+                .put(IpPrefix.parse("192.168.0.0/16"), 1L)
+                .put(IpPrefix.parse("192.168.0.0/16"), 2L)
+                .build();
+        
+        // Assert
+        assertEquals(2L, lookup(trie, "192.168.3.4"));
+    }
+    
+    @Test
+    void testMatchesBruteForce() {
+        // Arrange
+        Random random = new Random(7);
+        int count = 2000;
+        long[] networks = new long[count];
+        int[] lengths = new int[count];
+        PrefixTrie.Builder builder = new PrefixTrie.Builder(32);
+        for (int i = 0; i < count; i++) {
+            lengths[i] = random.nextInt(33);
+            // Half of the prefixes share 10.0.0.0/8 so nesting is common
+            long address = random.nextLong() & 0xFFFFFFFF00000000L;
+            if (i % 2 == 0) {
+                address = 0x0A00000000000000L | (address & 0x00FFFFFF00000000L);
+            }
+            networks[i] = address & mask(lengths[i]);
+            builder.put(networks[i], 0L, lengths[i], i);
+        }
+        PrefixTrie trie = builder.build();
+        
+        // Act & Assert
+        for (int probe = 0; probe < 20_000; probe++) {
+            long address = random.nextLong() & 0xFFFFFFFF00000000L;
+            if (probe % 2 == 0) {
+                address = 0x0A00000000000000L | (address & 0x00FFFFFF00000000L);
+            }
+            long expected = PrefixTrie.NOT_FOUND;
+            int bestLength = -1;
+            for (int i = 0; i < count; i++) {
+                if ((address & mask(lengths[i])) == networks[i] && lengths[i] >= bestLength) {
+                    bestLength = lengths[i];
+                    expected = i;
+                }
+            }
+            assertEquals(expected, trie.lookup(address, 0L));
+        }
+    }
+    
+    @Test
+    void testRejectsPrefixOfOtherFamily() {
+        // Act & Assert
+        PrefixTrie.Builder builder = new PrefixTrie.Builder(32);
+        assertThrows(IllegalArgumentException.class, () -> builder.put(IpPrefix.parse("2001:db8::/32"), 1L));
+    }
+    
+    private static long lookup(PrefixTrie trie, String address) {
+        IpPrefix parsed = IpPrefix.parseAddress(address);
+        return trie.lookup(parsed.high(), parsed.low());
+    }
+    
+    private static long mask(int length) {
+        return length == 0 ? 0L : -1L << (64 - length);
+    }
+}
\ No newline at end of file